@@ -0,0 +1,213 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.GeoJSONReader;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.MapUtils;
+
+import spatial.CountryIndex;
+
+/*
+ * Data helpers shared by the benchmarks.
+ * Everything here runs without a PApplet so benchmarks work headless.
+ */
+public class BenchmarkData {
+
+	public static final String DATA_DIR = "data/";
+	public static final String COUNTRY_FILE = DATA_DIR + "countries.geo.json";
+	public static final String CITY_FILE = DATA_DIR + "city-data.json";
+
+	//loads the country markers the same way EarthquakeCityMap does
+	public static List<Marker> loadCountryMarkers() throws IOException
+	{
+		return MapUtils.createSimpleMarkers(loadFeatures(COUNTRY_FILE));
+	}
+
+	//GeoJSONReader only needs the PApplet to read the file
+	public static List<Feature> loadFeatures(String fileName) throws IOException
+	{
+		String json = new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8);
+		return GeoJSONReader.loadDataFromJSON(null, json);
+	}
+
+	//uniformly distributed locations, seeded so runs are comparable
+	public static List<Location> randomLocations(int count, long seed)
+	{
+		Random random = new Random(seed);
+		List<Location> locations = new ArrayList<Location>(count);
+		for(int i = 0; i < count; i++)
+		{
+			float lat = random.nextFloat() * 170 - 85;
+			float lon = random.nextFloat() * 360 - 180;
+			locations.add(new Location(lat, lon));
+		}
+		return locations;
+	}
+
+	//random border vertices of the index moved by up to half a degree
+	public static List<Location> nearBorders(CountryIndex countries, int count, long seed)
+	{
+		Random random = new Random(seed);
+		List<Location> locations = new ArrayList<Location>(count);
+		while(locations.size() < count)
+		{
+			int part = random.nextInt(countries.getPartCount());
+			int vertex = random.nextInt(countries.getPartLats(part).length);
+			float lat = countries.getPartLats(part)[vertex] + random.nextFloat() - 0.5f;
+			float lon = countries.getPartLons(part)[vertex] + random.nextFloat() - 0.5f;
+			locations.add(new Location(lat, lon));
+		}
+		return locations;
+	}
+
+	/*
+	 * Synthetic quakes with the properties ParseFeed sets. Every third one
+	 * gets a country as if QuakeClassifier had found it on land.
+	 */
+	public static PointFeature randomQuake(Random random, int i)
+	{
+		float lat = random.nextFloat() * 170 - 85;
+		float lon = random.nextFloat() * 360 - 180;
+		//Gutenberg-Richter: ten times fewer quakes per magnitude step
+		float mag = Math.min(9, Math.round((2.5 - Math.log10(1 - random.nextDouble())) * 10) / 10f);
+		PointFeature quake = new PointFeature(new Location(lat, lon));
+		quake.putProperty("title", String.format(Locale.ROOT, "M %.1f - %d km SSE of Place %d", mag, random.nextInt(200), i));
+		quake.putProperty("magnitude", mag);
+		quake.putProperty("depth", Math.round(random.nextFloat() * 6000) / 10f);
+		quake.putProperty("time", 1420000000000L + i * 60000L);
+		quake.putProperty("age", i % 7 == 0 ? "Past Day" : "Past Week");
+		if(i % 3 == 0)
+		{
+			quake.putProperty("country", "Country " + random.nextInt(178));
+		}
+		return quake;
+	}
+
+	/*
+	 * Writes a synthetic feed in the USGS GeoRSS/Atom layout with the given
+	 * number of entries, so parsers can be measured without the network.
+	 */
+	public static void writeAtomFeed(File file, int count, long seed) throws IOException
+	{
+		writeAtomFeed(file, 0, count, seed);
+	}
+
+	//entries get ids first .. first+count-1, an id always has the same updated time
+	public static void writeAtomFeed(File file, int first, int count, long seed) throws IOException
+	{
+		Random random = new Random(seed);
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		try {
+			out.println("<?xml version=\"1.0\"?>");
+			out.println("<feed xmlns=\"http://www.w3.org/2005/Atom\" xmlns:georss=\"http://www.georss.org/georss\">");
+			out.println("<title>USGS Magnitude 2.5+ Earthquakes, Synthetic</title>");
+			out.println("<updated>2021-05-12T00:00:00Z</updated>");
+			for(int i = first; i < first + count; i++)
+			{
+				float lat = random.nextFloat() * 170 - 85;
+				float lon = random.nextFloat() * 360 - 180;
+				float mag = (float)Math.min(9, 2.5 - Math.log10(1 - random.nextDouble()));
+				int elev = -(int)(random.nextFloat() * 600000);
+				long time = 1620000000000L + i * 60000L;
+				String age = i % 7 == 0 ? "Past Day" : "Past Week";
+				out.println("<entry>");
+				out.println("<id>urn:earthquake-usgs-gov:us:synth" + i + "</id>");
+				out.printf(Locale.ROOT, "<title>M %.1f - %d km SSE of Somewhere, Someland</title>%n", mag, random.nextInt(200));
+				//the quake was revised ten minutes after it happened
+				out.println("<updated>" + Instant.ofEpochMilli(time + 600000L) + "</updated>");
+				out.println("<link rel=\"alternate\" type=\"text/html\" href=\"https://earthquake.usgs.gov/earthquakes/eventpage/synth" + i + "\"/>");
+				out.println("<summary type=\"html\"><![CDATA[<dl><dt>Time</dt><dd>"
+						+ Instant.ofEpochMilli(time).toString().replace('T', ' ').replace("Z", " UTC") + "</dd></dl>]]></summary>");
+				out.printf(Locale.ROOT, "<georss:point>%.4f %.4f</georss:point>%n", lat, lon);
+				out.println("<georss:elev>" + elev + "</georss:elev>");
+				out.println("<category label=\"Age\" term=\"" + age + "\"/>");
+				out.println("<category label=\"Magnitude\" term=\"Magnitude " + (int)mag + "\"/>");
+				out.println("</entry>");
+			}
+			out.println("</feed>");
+		} finally {
+			out.close();
+		}
+	}
+
+	/*
+	 * The quakes of writeAtomFeed(file, count, seed) in the layout of the
+	 * USGS GeoJSON summary feed, with all the properties USGS writes.
+	 */
+	public static void writeGeoJsonFeed(File file, int count, long seed) throws IOException
+	{
+		Random random = new Random(seed);
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		try {
+			out.println("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":" + (1620000000000L + count * 60000L)
+					+ ",\"url\":\"https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/2.5_week.geojson\","
+					+ "\"title\":\"USGS Magnitude 2.5+ Earthquakes, Synthetic\",\"status\":200,\"api\":\"1.10.3\",\"count\":" + count + "},"
+					+ "\"features\":[");
+			for(int i = 0; i < count; i++)
+			{
+				float lat = random.nextFloat() * 170 - 85;
+				float lon = random.nextFloat() * 360 - 180;
+				float mag = (float)Math.min(9, 2.5 - Math.log10(1 - random.nextDouble()));
+				int elev = -(int)(random.nextFloat() * 600000);
+				String place = random.nextInt(200) + " km SSE of Somewhere, Someland";
+				long time = 1620000000000L + i * 60000L;
+				out.printf(Locale.ROOT, "%s{\"type\":\"Feature\",\"properties\":{\"mag\":%.2f,\"place\":\"%s\",\"time\":%d,"
+						+ "\"updated\":%d,\"tz\":null,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/synth%d\","
+						+ "\"detail\":\"https://earthquake.usgs.gov/earthquakes/feed/v1.0/detail/synth%d.geojson\",\"felt\":null,"
+						+ "\"cdi\":null,\"mmi\":null,\"alert\":null,\"status\":\"reviewed\",\"tsunami\":0,\"sig\":%d,"
+						+ "\"net\":\"us\",\"code\":\"synth%d\",\"ids\":\",ussynth%d,\",\"sources\":\",us,\","
+						+ "\"types\":\",origin,phase-data,\",\"nst\":null,\"dmin\":1.2,\"rms\":0.8,\"gap\":60,"
+						+ "\"magType\":\"mb\",\"type\":\"earthquake\",\"title\":\"M %.1f - %s\"},"
+						+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%.4f,%.4f,%.2f]},\"id\":\"ussynth%d\"}%n",
+						i == 0 ? "" : ",", mag, place, time, time + 600000L, i, i, (int)(mag * 100), i, i, mag, place, lon, lat, -elev / 1000f, i);
+			}
+			out.println("],\"bbox\":[-180,-85,0,180,85,600]}");
+		} finally {
+			out.close();
+		}
+	}
+
+	//the quakes of writeAtomFeed(file, count, seed) in the layout of the USGS CSV summary feed
+	public static void writeCsvFeed(File file, int count, long seed) throws IOException
+	{
+		Random random = new Random(seed);
+		PrintWriter out = new PrintWriter(file, "UTF-8");
+		try {
+			out.println("time,latitude,longitude,depth,mag,magType,nst,gap,dmin,rms,net,id,updated,place,type,"
+					+ "horizontalError,depthError,magError,magNst,status,locationSource,magSource");
+			for(int i = 0; i < count; i++)
+			{
+				float lat = random.nextFloat() * 170 - 85;
+				float lon = random.nextFloat() * 360 - 180;
+				float mag = (float)Math.min(9, 2.5 - Math.log10(1 - random.nextDouble()));
+				int elev = -(int)(random.nextFloat() * 600000);
+				String place = random.nextInt(200) + " km SSE of Somewhere, Someland";
+				Instant time = Instant.ofEpochMilli(1620000000000L + i * 60000L);
+				out.printf(Locale.ROOT, "%s,%.4f,%.4f,%.2f,%.2f,mb,,60,1.2,0.8,us,ussynth%d,%s,\"%s\",earthquake,"
+						+ "7.5,1.9,0.07,60,reviewed,us,us%n", time, lat, lon, -elev / 1000f, mag, i, time.plusSeconds(600), place);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	//milliseconds between two System.nanoTime() readings
+	public static double millis(long start, long end)
+	{
+		return (end - start) / 1e6;
+	}
+}
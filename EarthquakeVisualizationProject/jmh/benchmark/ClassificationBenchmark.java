@@ -0,0 +1,104 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+import spatial.CountryIndex;
+import spatial.QuakeClassifier;
+
+/*
+ * Scaling of QuakeClassifier from 1 to N threads on a synthetic catalog,
+ * each thread count on its own ForkJoinPool. Every run is checked against
+ * a sequential loop so the parallel result is known to be identical.
+ *
+ * gradle benchmark -Pbenchmark=ClassificationBenchmark -PbenchmarkArgs="[events] [maxThreads]"
+ */
+public class ClassificationBenchmark {
+
+	private static final int RUNS = 7;
+
+	public static void main(String[] args) throws Exception
+	{
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int cores = Runtime.getRuntime().availableProcessors();
+		int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : cores;
+
+		CountryIndex index = new CountryIndex(BenchmarkData.loadCountryMarkers());
+		List<Location> locations = BenchmarkData.randomLocations(events, 21);
+
+		//what a sequential isLand loop gives
+		String[] expected = new String[events];
+		for(int i = 0; i < events; i++)
+		{
+			expected[i] = index.findCountry(locations.get(i));
+		}
+		System.out.println(events + " events, " + cores + " cores available");
+
+		//powers of two, plus the core count itself
+		List<Integer> threadCounts = new ArrayList<Integer>();
+		for(int threads = 1; threads <= maxThreads; threads *= 2)
+		{
+			threadCounts.add(threads);
+		}
+		if(cores <= maxThreads && !threadCounts.contains(cores))
+		{
+			threadCounts.add(cores);
+		}
+
+		double base = 0;
+		for(int threads : threadCounts)
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			QuakeClassifier classifier = new QuakeClassifier(index, pool);
+			double[] millis = new double[RUNS];
+			int mismatches = 0;
+			for(int run = -2; run < RUNS; run++)
+			{
+				List<PointFeature> quakes = features(locations);
+				long start = System.nanoTime();
+				classifier.classify(quakes);
+				long end = System.nanoTime();
+				if(run >= 0)
+				{
+					millis[run] = BenchmarkData.millis(start, end);
+				}
+				for(int i = 0; i < events; i++)
+				{
+					Object country = quakes.get(i).getProperty("country");
+					if(expected[i] == null ? country != null : !expected[i].equals(country))
+					{
+						mismatches++;
+					}
+				}
+			}
+			pool.shutdown();
+
+			Arrays.sort(millis);
+			double median = millis[RUNS / 2];
+			if(threads == 1)
+			{
+				base = median;
+			}
+			System.out.printf("%2d threads: %7.1f ms  %5.2fx  %6.0f quakes/ms  mismatches %d%n",
+					threads, median, base / median, events / median, mismatches);
+		}
+	}
+
+	//fresh unclassified features for every run
+	private static List<PointFeature> features(List<Location> locations)
+	{
+		List<PointFeature> quakes = new ArrayList<PointFeature>(locations.size());
+		for(Location location : locations)
+		{
+			PointFeature quake = new PointFeature(location);
+			quake.putProperty("magnitude", 5.0f);
+			quakes.add(quake);
+		}
+		return quakes;
+	}
+}
@@ -0,0 +1,268 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import catalog.QuakeCatalog;
+import earthquakeVisualization.CityMarker;
+import earthquakeVisualization.CommonMarker;
+import earthquakeVisualization.EarthquakeMarker;
+import earthquakeVisualization.HoverGrid;
+import earthquakeVisualization.ImpactIndex;
+import earthquakeVisualization.LandQuakeMarker;
+import earthquakeVisualization.MarkerVisibility;
+
+/*
+ * Time per click for the threat circle checks, a linear scan against the
+ * ImpactIndex lookup, with the affected sets compared for equality.
+ * Then the whole click handler of EarthquakeCityMap: finding the clicked
+ * marker, looking up the markers it affects and selecting them, with
+ * isInside on every projected marker against the HoverGrid query. The
+ * map is modelled headless as in HoverBenchmark, a 1000x650 window on
+ * the world at zoom level 2. Last, what a feed update costs the index:
+ * adding and removing quakes one at a time against building it again.
+ *
+ * gradle benchmark -Pbenchmark=ClickQueryBenchmark -PbenchmarkArgs="[cities] [quakes]"
+ */
+public class ClickQueryBenchmark {
+
+	private static final int CLICKS = 200;
+	private static final int WIDTH = 1000;
+	private static final int HEIGHT = 650;
+
+	public static void main(String[] args)
+	{
+		int numCities = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		int numQuakes = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+
+		List<Marker> cities = new ArrayList<Marker>();
+		for(Location location : BenchmarkData.randomLocations(numCities, 1))
+		{
+			cities.add(new CityMarker(location));
+		}
+		QuakeCatalog catalog = new QuakeCatalog();
+		List<Marker> quakes = new ArrayList<Marker>();
+		Random random = new Random(2);
+		for(int i = 0; i < numQuakes; i++)
+		{
+			int row = catalog.add(BenchmarkData.randomQuake(random, i));
+			EarthquakeMarker quake = new LandQuakeMarker(catalog, row);
+			quakes.add(quake);
+		}
+
+		long start = System.nanoTime();
+		ImpactIndex index = new ImpactIndex(cities, quakes);
+		System.out.printf("cities: %d, quakes: %d, index build: %.1f ms, %d pairs%n",
+				numCities, numQuakes, BenchmarkData.millis(start, System.nanoTime()), index.getPairCount());
+
+		//quake click: cities inside the clicked quake's threat circle
+		long linear = 0, indexed = 0;
+		int mismatches = 0;
+		long found = 0;
+		for(int c = 0; c < CLICKS; c++)
+		{
+			EarthquakeMarker clicked = (EarthquakeMarker)quakes.get(random.nextInt(quakes.size()));
+			Location at = clicked.getLocation();
+
+			start = System.nanoTime();
+			Set<Marker> expected = new HashSet<Marker>();
+			for(Marker city : cities)
+			{
+				if(!(city.getDistanceTo(at) > clicked.threatCircle()))
+				{
+					expected.add(city);
+				}
+			}
+			linear += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Set<Marker> actual = new HashSet<Marker>(index.citiesAffectedBy(clicked));
+			indexed += System.nanoTime() - start;
+
+			mismatches += expected.equals(actual) ? 0 : 1;
+			found += actual.size();
+		}
+		print("quake click", linear, indexed, mismatches, found);
+
+		//city click: quakes whose threat circle contains the clicked city
+		linear = 0;
+		indexed = 0;
+		mismatches = 0;
+		found = 0;
+		for(int c = 0; c < CLICKS; c++)
+		{
+			Marker clicked = cities.get(random.nextInt(cities.size()));
+			Location at = clicked.getLocation();
+
+			start = System.nanoTime();
+			Set<Marker> expected = new HashSet<Marker>();
+			for(Marker m : quakes)
+			{
+				EarthquakeMarker quake = (EarthquakeMarker)m;
+				if(!(quake.getDistanceTo(at) > quake.threatCircle()))
+				{
+					expected.add(quake);
+				}
+			}
+			linear += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			Set<Marker> actual = new HashSet<Marker>(index.quakesAffecting(clicked));
+			indexed += System.nanoTime() - start;
+
+			mismatches += expected.equals(actual) ? 0 : 1;
+			found += actual.size();
+		}
+		print("city click", linear, indexed, mismatches, found);
+
+		wholeClick(cities, catalog, quakes, index, random);
+
+		//a feed update: the oldest quakes leave, as many new ones arrive
+		int changed = Math.max(1, numQuakes / 100);
+		start = System.nanoTime();
+		for(int i = 0; i < changed; i++)
+		{
+			index.remove((EarthquakeMarker)quakes.get(i));
+			EarthquakeMarker quake = new LandQuakeMarker(catalog, catalog.add(BenchmarkData.randomQuake(random, numQuakes + i)));
+			quakes.set(i, quake);
+			index.add(quake);
+		}
+		double incremental = BenchmarkData.millis(start, System.nanoTime());
+		start = System.nanoTime();
+		ImpactIndex rebuilt = new ImpactIndex(cities, quakes);
+		double rebuild = BenchmarkData.millis(start, System.nanoTime());
+		System.out.printf("update of %d quakes: incremental %.1f ms, rebuild %.1f ms, pairs %d / %d%n",
+				changed, incremental, rebuild, index.getPairCount(), rebuilt.getPairCount());
+	}
+
+	/*
+	 * The click handler from mouse position to selection. Clicks go to
+	 * the position of a random city or quake in the window, or anywhere
+	 * in the window.
+	 */
+	private static void wholeClick(List<Marker> cities, QuakeCatalog catalog, List<Marker> quakes,
+			ImpactIndex index, Random random)
+	{
+		final MarkerVisibility visibility = new MarkerVisibility(cities, catalog, quakes);
+		List<Marker> markers = new ArrayList<Marker>(cities);
+		markers.addAll(quakes);
+		long start = System.nanoTime();
+		float[] xs = new float[markers.size()];
+		float[] ys = new float[markers.size()];
+		for(int i = 0; i < xs.length; i++)
+		{
+			float[] position = project(markers.get(i).getLocation());
+			xs[i] = position[0];
+			ys[i] = position[1];
+		}
+		HoverGrid grid = new HoverGrid(markers);
+		grid.build(xs, ys, WIDTH, HEIGHT);
+		double build = BenchmarkData.millis(start, System.nanoTime());
+		HoverGrid.Filter onMap = new HoverGrid.Filter() {
+			public boolean accepts(CommonMarker marker)
+			{
+				return visibility.isVisible(marker);
+			}
+		};
+
+		long[] linear = new long[CLICKS];
+		long[] indexed = new long[CLICKS];
+		int mismatches = 0;
+		int hits = 0;
+		for(int c = 0; c < CLICKS; c++)
+		{
+			float[] at = { random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT };
+			while(c % 3 != 2)
+			{
+				float[] position = project(markers.get(random.nextInt(markers.size())).getLocation());
+				if(position[0] >= 0 && position[0] < WIDTH && position[1] >= 0 && position[1] < HEIGHT)
+				{
+					at = position;
+					break;
+				}
+			}
+
+			//the old handler: every city, then every quake, projected and tested
+			start = System.nanoTime();
+			int expected = -1;
+			for(int i = 0; i < markers.size() && expected < 0; i++)
+			{
+				CommonMarker marker = (CommonMarker)markers.get(i);
+				float[] position = project(marker.getLocation());
+				if(visibility.isVisible(marker) && marker.isInside(at[0], at[1], position[0], position[1]))
+				{
+					expected = i;
+				}
+			}
+			select(visibility, index, expected < 0 ? null : markers.get(expected));
+			linear[c] = System.nanoTime() - start;
+			visibility.clearSelection();
+
+			start = System.nanoTime();
+			int actual = grid.query(at[0], at[1], onMap);
+			select(visibility, index, actual < 0 ? null : markers.get(actual));
+			indexed[c] = System.nanoTime() - start;
+			visibility.clearSelection();
+
+			mismatches += expected == actual ? 0 : 1;
+			hits += actual < 0 ? 0 : 1;
+		}
+		System.out.printf("whole click  grid build %.1f ms, %d of %d clicks hit a marker, mismatches %d%n",
+				build, hits, CLICKS, mismatches);
+		System.out.printf("  linear  mean %8.3f ms  max %8.3f ms%n", mean(linear), max(linear));
+		System.out.printf("  grid    mean %8.3f ms  max %8.3f ms  (frame budget %.1f ms)%n",
+				mean(indexed), max(indexed), 1000 / 60.0);
+	}
+
+	//what checkMarkersForClick does with the marker it found
+	private static void select(MarkerVisibility visibility, ImpactIndex index, Marker clicked)
+	{
+		if(clicked instanceof EarthquakeMarker)
+		{
+			EarthquakeMarker quake = (EarthquakeMarker)clicked;
+			visibility.selectQuake(quake, index.citiesAffectedBy(quake));
+		}
+		else if(clicked != null)
+		{
+			visibility.selectCity(clicked, index.quakesAffecting(clicked));
+		}
+	}
+
+	//zoom level 2 centred in the window
+	private static float[] project(Location location)
+	{
+		return ClusterBenchmark.mercator(location, 1024, WIDTH / 2 - 512, HEIGHT / 2 - 512);
+	}
+
+	private static double mean(long[] nanos)
+	{
+		long total = 0;
+		for(long n : nanos)
+		{
+			total += n;
+		}
+		return total / 1e6 / nanos.length;
+	}
+
+	private static double max(long[] nanos)
+	{
+		long max = 0;
+		for(long n : nanos)
+		{
+			max = Math.max(max, n);
+		}
+		return max / 1e6;
+	}
+
+	private static void print(String name, long linear, long indexed, int mismatches, long found)
+	{
+		System.out.printf("%-12s linear %.3f ms/click  index %.3f ms/click  avg matches %.1f  mismatches %d%n",
+				name, linear / 1e6 / CLICKS, indexed / 1e6 / CLICKS, (double)found / CLICKS, mismatches);
+	}
+}
@@ -0,0 +1,105 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import earthquakeVisualization.CommonMarker;
+import earthquakeVisualization.EarthquakeMarker;
+import earthquakeVisualization.MarkerBatch;
+import earthquakeVisualization.MarkerScene;
+
+/*
+ * What BatchedMarkerManager hands to the GPU as the catalog grows from a
+ * week to a year of quakes, plus 100 cities: the MarkerScene of its
+ * rebuild on the 700x550 map of EarthquakeCityMap, at zoom level 2 (a
+ * 1024px wide Web Mercator world) and at zoom level 6 where clustering
+ * is off.
+ *
+ * The vertex count is what every frame draws; the rebuild time is paid
+ * only on zoom, marker changes and long pans.
+ *
+ * gradle benchmark -Pbenchmark=ClusterBenchmark
+ */
+public class ClusterBenchmark {
+
+	private static final int[] COUNTS = { 2000, 10000, 30000, 100000, 300000 };
+	private static final float WIDTH = 700;
+	private static final float HEIGHT = 550;
+	private static final float MARGIN = 200;
+	private static final float CELL = 40;
+
+	public static void main(String[] args)
+	{
+		System.out.println("zoom 2, clustered:");
+		for(int count : COUNTS)
+		{
+			run(count, 2, true);
+		}
+		System.out.println("zoom 6, markers only:");
+		for(int count : COUNTS)
+		{
+			run(count, 6, false);
+		}
+	}
+
+	private static void run(int count, int zoom, boolean cluster)
+	{
+		//the city table does not grow with the catalog, keep 100 cities
+		List<Marker> markers = new ArrayList<Marker>();
+		int cities = 0;
+		for(Marker marker : MarkerRenderBenchmark.markers(count, 9))
+		{
+			if(marker instanceof EarthquakeMarker || cities++ < 100)
+			{
+				markers.add(marker);
+			}
+		}
+		float world = 256 * (1 << zoom);
+		MarkerScene scene = new MarkerScene(CELL);
+		MarkerBatch batch = null;
+		double[] millis = new double[9];
+		int vertices = 0;
+		int shapes = 0;
+		for(int run = -3; run < millis.length; run++)
+		{
+			long start = System.nanoTime();
+			//the world is centred on the map like after zoomToLevel
+			float originX = WIDTH / 2 - world / 2;
+			float originY = HEIGHT / 2 - world / 2;
+			scene.reset(originX, originY, -MARGIN, -MARGIN, WIDTH + MARGIN, HEIGHT + MARGIN, cluster);
+			for(Marker marker : markers)
+			{
+				float[] xy = mercator(marker.getLocation(), world, originX, originY);
+				scene.add((CommonMarker)marker, xy[0], xy[1]);
+			}
+			batch = scene.batch();
+			vertices = 0;
+			for(MarkerBatch.Tessellated part : batch.tessellate())
+			{
+				vertices += part.getVertexCount();
+			}
+			shapes = batch.getShapeCount();
+			if(run >= 0)
+			{
+				millis[run] = BenchmarkData.millis(start, System.nanoTime());
+			}
+		}
+		Arrays.sort(millis);
+		System.out.printf("%7d markers: %6d shapes (%4d clusters), %8d vertices per frame, rebuild %6.1f ms%n",
+				count, shapes, scene.getClusters().getClusterCount(), vertices, millis[millis.length / 2]);
+	}
+
+	//Web Mercator position in a world of the given width whose top left corner is at (originX, originY)
+	static float[] mercator(Location location, float world, float originX, float originY)
+	{
+		double lat = Math.toRadians(location.getLat());
+		return new float[] {
+			originX + (location.getLon() + 180) / 360 * world,
+			originY + (float)((1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * world)
+		};
+	}
+}
@@ -0,0 +1,131 @@
+package benchmark;
+
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.AbstractShapeMarker;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.MultiMarker;
+
+import spatial.CountryIndex;
+
+/*
+ * Compares CountryIndex against the linear scan EarthquakeCityMap.isLand
+ * used to do, with the polygons exact and simplified by a range of
+ * tolerances. Every answer is checked against the scan: how often land and
+ * ocean are swapped and how often the country differs, for points spread
+ * evenly over the map and for points within half a degree of a border,
+ * where simplification changes answers and where many quakes are.
+ *
+ * Run from the project directory:
+ * gradle benchmark -Pbenchmark=CountryIndexBenchmark -PbenchmarkArgs="[points] [tolerances...]"
+ */
+public class CountryIndexBenchmark {
+
+	public static void main(String[] args) throws Exception
+	{
+		int numPoints = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		float[] tolerances = { 0, 0.01f, 0.02f, 0.05f, 0.1f, 0.25f };
+		if(args.length > 1)
+		{
+			tolerances = new float[args.length - 1];
+			for(int i = 1; i < args.length; i++)
+			{
+				tolerances[i - 1] = Float.parseFloat(args[i]);
+			}
+		}
+
+		List<Marker> countries = BenchmarkData.loadCountryMarkers();
+		List<Location> spread = BenchmarkData.randomLocations(numPoints, 42);
+		List<Location> coastal = BenchmarkData.nearBorders(new CountryIndex(countries), numPoints, 43);
+
+		String[] spreadExpected = new String[numPoints];
+		String[] coastalExpected = new String[numPoints];
+		long start = System.nanoTime();
+		for(int i = 0; i < numPoints; i++)
+		{
+			spreadExpected[i] = findCountryLinear(countries, spread.get(i));
+		}
+		double linearTime = BenchmarkData.millis(start, System.nanoTime());
+		for(int i = 0; i < numPoints; i++)
+		{
+			coastalExpected[i] = findCountryLinear(countries, coastal.get(i));
+		}
+		System.out.printf("%d points, linear scan %.2f us/point%n", numPoints, linearTime * 1000 / numPoints);
+		System.out.printf("%9s %8s %8s %8s %9s %8s %20s %20s%n", "tolerance", "vertices", "slabs", "build ms",
+				"us/point", "speedup", "spread land/country", "coastal land/country");
+
+		for(float tolerance : tolerances)
+		{
+			start = System.nanoTime();
+			CountryIndex index = new CountryIndex(countries, tolerance);
+			double build = BenchmarkData.millis(start, System.nanoTime());
+
+			//warm up, then the best of five runs
+			double best = Double.MAX_VALUE;
+			String[] found = new String[numPoints];
+			for(int run = 0; run < 7; run++)
+			{
+				start = System.nanoTime();
+				for(int i = 0; i < numPoints; i++)
+				{
+					found[i] = index.findCountry(spread.get(i));
+				}
+				if(run >= 2)
+				{
+					best = Math.min(best, BenchmarkData.millis(start, System.nanoTime()));
+				}
+			}
+			String spreadErrors = errors(spreadExpected, found);
+			for(int i = 0; i < numPoints; i++)
+			{
+				found[i] = index.findCountry(coastal.get(i));
+			}
+			System.out.printf("%9.2f %8d %8d %8.1f %9.3f %7.0fx %20s %20s%n", tolerance, index.getVertexCount(),
+					index.getSlabEntryCount(), build, best * 1000 / numPoints, linearTime / best,
+					spreadErrors, errors(coastalExpected, found));
+		}
+	}
+
+	//share of answers that swap land and ocean / name another country
+	private static String errors(String[] expected, String[] found)
+	{
+		int land = 0;
+		int country = 0;
+		for(int i = 0; i < expected.length; i++)
+		{
+			if((expected[i] == null) != (found[i] == null))
+			{
+				land++;
+			}
+			else if(expected[i] != null && !expected[i].equals(found[i]))
+			{
+				country++;
+			}
+		}
+		return String.format("%.3f%% / %.3f%%", 100.0 * land / expected.length, 100.0 * country / expected.length);
+	}
+
+	//the original isLand/isInCountry loop
+	static String findCountryLinear(List<Marker> countries, Location location)
+	{
+		for(Marker country : countries)
+		{
+			if(country.getClass() == MultiMarker.class)
+			{
+				for(Marker marker : ((MultiMarker)country).getMarkers())
+				{
+					if(((AbstractShapeMarker)marker).isInsideByLocation(location))
+					{
+						return country.getStringProperty("name");
+					}
+				}
+			}
+			else if(((AbstractShapeMarker)country).isInsideByLocation(location))
+			{
+				return country.getStringProperty("name");
+			}
+		}
+		return null;
+	}
+}
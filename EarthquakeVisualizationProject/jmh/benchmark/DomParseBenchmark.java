@@ -0,0 +1,62 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import processing.data.XML;
+
+import parsing.ParseFeed;
+
+/*
+ * ParseFeed.parseEarthquake on the Atom feed of PipelineBenchmark, the
+ * DOM parser the sketch started with. Only up to 100k quakes: the tree
+ * of a million does not fit in the heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class DomParseBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int size;
+
+	private File atomFeed;
+
+	@Setup
+	public void prepare() throws IOException
+	{
+		atomFeed = File.createTempFile("pipeline", ".atom");
+		BenchmarkData.writeAtomFeed(atomFeed, size, 7);
+	}
+
+	@TearDown
+	public void deleteFeed()
+	{
+		atomFeed.delete();
+	}
+
+	@Benchmark
+	public List<PointFeature> parseDom() throws Exception
+	{
+		return ParseFeed.parseEarthquake(new XML(atomFeed));
+	}
+}
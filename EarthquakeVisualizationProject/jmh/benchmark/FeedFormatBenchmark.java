@@ -0,0 +1,113 @@
+package benchmark;
+
+import java.io.File;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+import parsing.ParseFeed;
+import parsing.QuakeSource;
+
+/*
+ * Parse throughput of the three USGS feed formats, the same synthetic
+ * quakes written as GeoRSS/Atom, GeoJSON and CSV and streamed through
+ * ParseFeed.openQuakes, which tells the format from the file. Also
+ * checks that the formats agree on the quakes: the Atom feed only has
+ * the magnitude rounded to one decimal in the title and the depth in
+ * whole meters.
+ *
+ * gradle benchmark -Pbenchmark=FeedFormatBenchmark -PbenchmarkArgs="[entries]"
+ */
+public class FeedFormatBenchmark {
+
+	public static void main(String[] args) throws Exception
+	{
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+		File atom = File.createTempFile("quakes", ".atom");
+		File geoJson = File.createTempFile("quakes", ".geojson");
+		File csv = File.createTempFile("quakes", ".csv");
+		atom.deleteOnExit();
+		geoJson.deleteOnExit();
+		csv.deleteOnExit();
+		BenchmarkData.writeAtomFeed(atom, entries, 7);
+		BenchmarkData.writeGeoJsonFeed(geoJson, entries, 7);
+		BenchmarkData.writeCsvFeed(csv, entries, 7);
+
+		run("atom", atom, entries);
+		run("geojson", geoJson, entries);
+		run("csv", csv, entries);
+		compare(atom, geoJson, csv);
+	}
+
+	private static void run(String name, File feed, int entries) throws Exception
+	{
+		double best = Double.MAX_VALUE;
+		int quakes = 0;
+		//the first pass loads classes and warms up the parser
+		for(int run = 0; run < 4; run++)
+		{
+			long start = System.nanoTime();
+			quakes = 0;
+			QuakeSource source = ParseFeed.openQuakes(feed.getPath());
+			try {
+				while(source.hasNext())
+				{
+					source.next();
+					quakes++;
+				}
+			} finally {
+				source.close();
+			}
+			if(run > 0)
+			{
+				best = Math.min(best, BenchmarkData.millis(start, System.nanoTime()));
+			}
+		}
+		System.out.printf("%-8s %d quakes  %6.1f MB  %6.0f ms  %7.0f entries/s  %5.1f MB/s%n", name, quakes,
+				feed.length() / 1e6, best, entries / best * 1000, feed.length() / 1e3 / best);
+	}
+
+	//largest differences of magnitude, depth and time between the formats, quake by quake
+	private static void compare(File atom, File geoJson, File csv) throws Exception
+	{
+		QuakeSource a = ParseFeed.openQuakes(atom.getPath());
+		QuakeSource g = ParseFeed.openQuakes(geoJson.getPath());
+		QuakeSource c = ParseFeed.openQuakes(csv.getPath());
+		double atomMag = 0;
+		double atomDepth = 0;
+		long atomTime = 0;
+		double csvMag = 0;
+		double csvDepth = 0;
+		long csvTime = 0;
+		try {
+			while(g.hasNext())
+			{
+				PointFeature exact = g.next();
+				PointFeature fromAtom = a.next();
+				PointFeature fromCsv = c.next();
+				atomMag = Math.max(atomMag, Math.abs(magnitude(fromAtom) - magnitude(exact)));
+				atomDepth = Math.max(atomDepth, Math.abs(depth(fromAtom) - depth(exact)));
+				atomTime = Math.max(atomTime, Math.abs((Long)fromAtom.getProperty("time") - (Long)exact.getProperty("time")));
+				csvMag = Math.max(csvMag, Math.abs(magnitude(fromCsv) - magnitude(exact)));
+				csvDepth = Math.max(csvDepth, Math.abs(depth(fromCsv) - depth(exact)));
+				csvTime = Math.max(csvTime, Math.abs((Long)fromCsv.getProperty("time") - (Long)exact.getProperty("time")));
+			}
+		} finally {
+			a.close();
+			g.close();
+			c.close();
+		}
+		System.out.printf("max difference to GeoJSON: atom magnitude %.3f, depth %.4f km, time %d ms; csv magnitude %.3f, depth %.4f km, time %d ms%n",
+				atomMag, atomDepth, atomTime, csvMag, csvDepth, csvTime);
+	}
+
+	private static float magnitude(PointFeature quake)
+	{
+		return (Float)quake.getProperty("magnitude");
+	}
+
+	private static float depth(PointFeature quake)
+	{
+		return (Float)quake.getProperty("depth");
+	}
+}
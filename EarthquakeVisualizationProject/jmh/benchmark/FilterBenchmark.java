@@ -0,0 +1,217 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import catalog.QuakeCatalog;
+import earthquakeVisualization.CityMarker;
+import earthquakeVisualization.EarthquakeMarker;
+import earthquakeVisualization.LandQuakeMarker;
+import earthquakeVisualization.MarkerVisibility;
+import earthquakeVisualization.OceanQuakeMarker;
+import earthquakeVisualization.QuakeFilter;
+
+/*
+ * Toggling filters and click selections on a large catalog: setHidden on
+ * every marker with the test evaluated through the marker getters, as the
+ * click handlers did, against QuakeFilter and MarkerVisibility bitsets.
+ * Also the walk over the shown markers a shape rebuild starts with,
+ * every marker's hidden flag against the visible bits.
+ *
+ * gradle benchmark -Pbenchmark=FilterBenchmark -PbenchmarkArgs="[quakes]"
+ */
+public class FilterBenchmark {
+
+	private static final int RUNS = 7;
+	private static final int CITIES = 1000;
+
+	public static void main(String[] args)
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		Random random = new Random(13);
+		QuakeCatalog catalog = new QuakeCatalog();
+		List<Marker> quakes = new ArrayList<Marker>(count);
+		for(int i = 0; i < count; i++)
+		{
+			int row = catalog.add(BenchmarkData.randomQuake(random, i));
+			quakes.add(catalog.isOnLand(row) ? new LandQuakeMarker(catalog, row) : new OceanQuakeMarker(catalog, row));
+		}
+		List<Marker> cities = new ArrayList<Marker>();
+		for(int i = 0; i < CITIES; i++)
+		{
+			cities.add(new CityMarker(BenchmarkData.randomLocations(1, i).get(0)));
+		}
+		final MarkerVisibility visibility = new MarkerVisibility(cities, catalog, quakes);
+		final QuakeFilter filter = visibility.getFilter();
+		visibility.update();
+		System.out.printf("%d quakes, %d cities%n", count, CITIES);
+
+		//each toggle is set and taken back, so every run changes the visible set
+		final String country = "Country 17";
+		compare("magnitude 5+", quakes, new Toggle() {
+			public boolean passes(EarthquakeMarker quake)
+			{
+				return quake.getMagnitude() >= 5;
+			}
+			public void set(boolean on)
+			{
+				filter.setMagnitudeRange(on ? 5 : Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+			}
+		}, visibility);
+		compare("deep only", quakes, new Toggle() {
+			public boolean passes(EarthquakeMarker quake)
+			{
+				return quake.getDepth() >= EarthquakeMarker.THRESHOLD_DEEP;
+			}
+			public void set(boolean on)
+			{
+				filter.setDepthClass(QuakeFilter.SHALLOW, !on);
+				filter.setDepthClass(QuakeFilter.INTERMEDIATE, !on);
+			}
+		}, visibility);
+		compare("ocean only", quakes, new Toggle() {
+			public boolean passes(EarthquakeMarker quake)
+			{
+				return !quake.isOnLand();
+			}
+			public void set(boolean on)
+			{
+				filter.setSurface(!on, true);
+			}
+		}, visibility);
+		compare("one country", quakes, new Toggle() {
+			public boolean passes(EarthquakeMarker quake)
+			{
+				return quake instanceof LandQuakeMarker && country.equals(((LandQuakeMarker)quake).getCountry());
+			}
+			public void set(boolean on)
+			{
+				filter.setCountries(on ? Collections.singleton(country) : null);
+			}
+		}, visibility);
+
+		//a city click and the click that takes it back
+		final Marker city = cities.get(0);
+		final List<EarthquakeMarker> affecting = new ArrayList<EarthquakeMarker>();
+		for(int i = 0; i < 50; i++)
+		{
+			affecting.add((EarthquakeMarker)quakes.get(random.nextInt(count)));
+		}
+		double sweep = Double.MAX_VALUE;
+		double bits = Double.MAX_VALUE;
+		for(int run = 0; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			for(Marker other : cities)
+			{
+				other.setHidden(other != city);
+			}
+			for(Marker quake : quakes)
+			{
+				quake.setHidden(true);
+			}
+			for(EarthquakeMarker quake : affecting)
+			{
+				quake.setHidden(false);
+			}
+			for(Marker other : cities)
+			{
+				other.setHidden(false);
+			}
+			for(Marker quake : quakes)
+			{
+				quake.setHidden(false);
+			}
+			sweep = Math.min(sweep, BenchmarkData.millis(start, System.nanoTime()));
+
+			start = System.nanoTime();
+			visibility.selectCity(city, affecting);
+			visibility.update();
+			visibility.clearSelection();
+			visibility.update();
+			bits = Math.min(bits, BenchmarkData.millis(start, System.nanoTime()));
+		}
+		System.out.printf("%-14s setHidden sweeps %7.2f ms, bitsets %6.2f ms%n", "city click", sweep, bits);
+
+		//the walk over the shown quakes, with magnitude 5+ shown
+		filter.setMagnitudeRange(5, Float.POSITIVE_INFINITY);
+		visibility.update();
+		for(Marker quake : quakes)
+		{
+			quake.setHidden(((EarthquakeMarker)quake).getMagnitude() < 5);
+		}
+		sweep = Double.MAX_VALUE;
+		bits = Double.MAX_VALUE;
+		int shown = 0;
+		for(int run = 0; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			shown = 0;
+			for(Marker quake : quakes)
+			{
+				if(!quake.isHidden())
+				{
+					shown += quake.getLocation() != null ? 1 : 0;
+				}
+			}
+			sweep = Math.min(sweep, BenchmarkData.millis(start, System.nanoTime()));
+
+			start = System.nanoTime();
+			int visible = 0;
+			BitSet rows = visibility.getVisibleQuakes();
+			for(int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1))
+			{
+				visible += visibility.getQuake(row).getLocation() != null ? 1 : 0;
+			}
+			bits = Math.min(bits, BenchmarkData.millis(start, System.nanoTime()));
+			if(visible != shown)
+			{
+				throw new IllegalStateException(visible + " visible but " + shown + " shown");
+			}
+		}
+		System.out.printf("%-14s hidden flags %11.2f ms, visible bits %2.2f ms (%d of %d shown)%n",
+				"rebuild walk", sweep, bits, shown, count);
+	}
+
+	//a filter as a marker test for the sweep and as a QuakeFilter change
+	private interface Toggle
+	{
+		boolean passes(EarthquakeMarker quake);
+		void set(boolean on);
+	}
+
+	private static void compare(String name, List<Marker> quakes, Toggle toggle, MarkerVisibility visibility)
+	{
+		double sweep = Double.MAX_VALUE;
+		double bits = Double.MAX_VALUE;
+		int changed = 0;
+		for(int run = 0; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			for(Marker quake : quakes)
+			{
+				quake.setHidden(!toggle.passes((EarthquakeMarker)quake));
+			}
+			for(Marker quake : quakes)
+			{
+				quake.setHidden(false);
+			}
+			sweep = Math.min(sweep, BenchmarkData.millis(start, System.nanoTime()));
+
+			start = System.nanoTime();
+			toggle.set(true);
+			changed = visibility.update();
+			toggle.set(false);
+			visibility.update();
+			bits = Math.min(bits, BenchmarkData.millis(start, System.nanoTime()));
+		}
+		System.out.printf("%-14s setHidden sweeps %7.2f ms, bitsets %6.2f ms, %d markers change%n",
+				name, sweep, bits, changed);
+	}
+}
@@ -0,0 +1,124 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import de.fhpotsdam.unfolding.core.Coordinate;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.providers.AbstractMapProvider;
+import de.fhpotsdam.unfolding.providers.Microsoft;
+
+import earthquakeVisualization.CityMarker;
+import earthquakeVisualization.HoverGrid;
+
+/*
+ * Hover latency with HoverGrid against the old loop, which projected
+ * every marker and called isInside on each mouse event.
+ *
+ * An UnfoldingMap needs a running sketch, so the old loop is modelled
+ * headless with the map provider's Mercator projection plus the same
+ * isInside test, at zoom level 2 in a 1000x650 window.
+ *
+ * gradle benchmark -Pbenchmark=HoverBenchmark
+ */
+public class HoverBenchmark {
+
+	private static final int WIDTH = 1000;
+	private static final int HEIGHT = 650;
+	private static final int HOVERS = 2000;
+
+	private static int sink;
+
+	public static void main(String[] args)
+	{
+		AbstractMapProvider provider = new Microsoft.HybridProvider();
+		for(int count : new int[] { 10000, 100000 })
+		{
+			run(provider, count);
+		}
+	}
+
+	private static void run(AbstractMapProvider provider, int count)
+	{
+		List<CityMarker> markers = new ArrayList<CityMarker>();
+		for(Location location : BenchmarkData.randomLocations(count, count))
+		{
+			markers.add(new CityMarker(location));
+		}
+
+		long start = System.nanoTime();
+		float[] xs = new float[count];
+		float[] ys = new float[count];
+		for(int i = 0; i < count; i++)
+		{
+			float[] position = project(provider, markers.get(i).getLocation());
+			xs[i] = position[0];
+			ys[i] = position[1];
+		}
+		HoverGrid grid = new HoverGrid(markers);
+		grid.build(xs, ys, WIDTH, HEIGHT);
+		double buildMillis = BenchmarkData.millis(start, System.nanoTime());
+
+		Random random = new Random(3);
+		long[] linear = new long[HOVERS];
+		long[] indexed = new long[HOVERS];
+		int mismatches = 0;
+		for(int h = 0; h < HOVERS; h++)
+		{
+			float mouseX = random.nextFloat() * WIDTH;
+			float mouseY = random.nextFloat() * HEIGHT;
+
+			start = System.nanoTime();
+			int expected = -1;
+			for(int i = 0; i < count; i++)
+			{
+				float[] position = project(provider, markers.get(i).getLocation());
+				if(markers.get(i).isInside(mouseX, mouseY, position[0], position[1]))
+				{
+					expected = i;
+					break;
+				}
+			}
+			linear[h] = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int actual = grid.query(mouseX, mouseY);
+			indexed[h] = System.nanoTime() - start;
+
+			mismatches += expected == actual ? 0 : 1;
+			sink += actual;
+		}
+
+		System.out.printf("%d markers  grid build %.1f ms  mismatches %d%n", count, buildMillis, mismatches);
+		System.out.printf("  linear  mean %8.1f us  p99 %8.1f us%n", mean(linear), percentile(linear, 0.99));
+		System.out.printf("  grid    mean %8.1f us  p99 %8.1f us%n", mean(indexed), percentile(indexed, 0.99));
+	}
+
+	//zoom level 2 Mercator projection centred in the window
+	private static float[] project(AbstractMapProvider provider, Location location)
+	{
+		Coordinate coordinate = provider.locationCoordinate(location).zoomTo(2);
+		float x = coordinate.column * 256 - 4 * 256 / 2 + WIDTH / 2;
+		float y = coordinate.row * 256 - 4 * 256 / 2 + HEIGHT / 2;
+		return new float[] { x, y };
+	}
+
+	private static double mean(long[] nanos)
+	{
+		long total = 0;
+		for(long n : nanos)
+		{
+			total += n;
+		}
+		return total / 1e3 / nanos.length;
+	}
+
+	private static double percentile(long[] nanos, double p)
+	{
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		return sorted[(int)(p * (sorted.length - 1))] / 1e3;
+	}
+}
@@ -0,0 +1,222 @@
+package benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Random;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PFont;
+import processing.core.PGraphics;
+import processing.core.PGraphicsJava2D;
+import processing.core.PImage;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import earthquakeVisualization.BatchedMarkerManager;
+import earthquakeVisualization.CommonMarker;
+import earthquakeVisualization.LayerCompositor;
+import earthquakeVisualization.MapKey;
+
+/*
+ * CPU time of the animation thread per idle frame (nothing moves, no
+ * mouse) with the map and key drawn every frame against LayerCompositor,
+ * in an OPENGL sketch laid out like EarthquakeCityMap with 1000 markers.
+ * Each mode first runs WARMUP_FRAMES so the tiles have loaded.
+ *
+ * Needs a display and OpenGL:
+ * gradle benchmark -Pbenchmark=IdleFrameBenchmark
+ *
+ * Without a display the same frames are composed with the Java2D renderer
+ * offscreen: tile images and markers drawn into a map buffer plus the key
+ * every frame, against copying the cached map buffer and key layer:
+ * gradle benchmark -Pbenchmark=IdleFrameBenchmark -PbenchmarkArgs="headless"
+ */
+public class IdleFrameBenchmark extends PApplet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int MARKERS = 1000;
+	private static final String[] MODES = { "immediate", "layered" };
+	private static final int WARMUP_FRAMES = 300;
+	private static final int FRAMES = 300;
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private UnfoldingMap map;
+	private BatchedMarkerManager markerManager;
+	private LayerCompositor compositor;
+	private MapKey key;
+
+	private int run = 0;
+	private int frame = 0;
+	private long cpuStart;
+	private int mapDrawsStart;
+
+	public static void main(String[] args)
+	{
+		if(args.length > 0 && args[0].equals("headless"))
+		{
+			headless();
+			return;
+		}
+		PApplet.main(IdleFrameBenchmark.class.getName());
+	}
+
+	public void setup()
+	{
+		size(1000, 650, OPENGL);
+		map = new UnfoldingMap(this, 250, 50, 700, 550);
+		map.zoomToLevel(2);
+		markerManager = new BatchedMarkerManager();
+		map.addMarkerManager(markerManager);
+		markerManager.addMarkers(MarkerRenderBenchmark.markers(MARKERS, 3));
+		PFont font = createFont("Gabriola", 20);
+		textFont(font);
+		key = new MapKey(font);
+		compositor = new LayerCompositor(this, map, markerManager);
+		compositor.addOverlay(49, 49, MapKey.SIZE_X, MapKey.SIZE_Y, key);
+	}
+
+	public void draw()
+	{
+		if(frame == WARMUP_FRAMES)
+		{
+			cpuStart = THREADS.getCurrentThreadCpuTime();
+			mapDrawsStart = compositor.getMapDrawCount();
+		}
+
+		background(0);
+		if(MODES[run].equals("layered"))
+		{
+			compositor.draw();
+		}
+		else
+		{
+			map.draw();
+			pushMatrix();
+			translate(49, 49);
+			key.paint(g);
+			popMatrix();
+		}
+
+		frame++;
+		if(frame == WARMUP_FRAMES + FRAMES)
+		{
+			double millis = BenchmarkData.millis(cpuStart, THREADS.getCurrentThreadCpuTime()) / FRAMES;
+			String draws = MODES[run].equals("layered")
+					? String.format("  map drawn in %d of %d frames", compositor.getMapDrawCount() - mapDrawsStart, FRAMES) : "";
+			System.out.printf("%-9s CPU per idle frame %6.3f ms%s%n", MODES[run], millis, draws);
+			run++;
+			frame = 0;
+			if(run == MODES.length)
+			{
+				exit();
+			}
+		}
+	}
+
+	//the same frames composed offscreen with Java2D
+	private static void headless()
+	{
+		int width = 1000;
+		int height = 650;
+		PGraphics screen = java2D(width, height);
+		PGraphics mapLayer = java2D(700, 550);
+		MapKey key = new MapKey(bitmapFont(20));
+		PGraphics keyLayer = java2D(MapKey.SIZE_X, MapKey.SIZE_Y);
+		keyLayer.beginDraw();
+		key.paint(keyLayer);
+		keyLayer.endDraw();
+
+		//a 700x550 map at zoom level 2 shows parts of 12 tiles
+		Random random = new Random(5);
+		PImage[] tiles = new PImage[12];
+		for(int t = 0; t < tiles.length; t++)
+		{
+			tiles[t] = new PImage(256, 256, PConstants.RGB);
+			for(int i = 0; i < tiles[t].pixels.length; i++)
+			{
+				tiles[t].pixels[i] = 0xFF000000 | random.nextInt(0xFFFFFF);
+			}
+		}
+		List<Marker> markers = MarkerRenderBenchmark.markers(MARKERS, 3);
+
+		for(String mode : MODES)
+		{
+			boolean layered = mode.equals("layered");
+			double millis = 0;
+			for(int frame = -WARMUP_FRAMES; frame < FRAMES; frame++)
+			{
+				long start = THREADS.getCurrentThreadCpuTime();
+				screen.beginDraw();
+				screen.background(0);
+				if(!layered)
+				{
+					//what the map display redoes every frame
+					mapLayer.beginDraw();
+					for(int t = 0; t < tiles.length; t++)
+					{
+						mapLayer.image(tiles[t], (t % 4) * 256 - 162, (t / 4) * 256 - 109);
+					}
+					for(Marker marker : markers)
+					{
+						Location location = marker.getLocation();
+						float x = (location.getLon() + 180) / 360 * 700;
+						float y = (90 - location.getLat()) / 180 * 550;
+						((CommonMarker)marker).drawMarker(mapLayer, x, y);
+					}
+					mapLayer.endDraw();
+				}
+				screen.image(mapLayer, 250, 50);
+				if(layered)
+				{
+					screen.image(keyLayer, 49, 49);
+				}
+				else
+				{
+					screen.pushMatrix();
+					screen.translate(49, 49);
+					key.paint(screen);
+					screen.popMatrix();
+				}
+				screen.endDraw();
+				if(frame >= 0)
+				{
+					millis += BenchmarkData.millis(start, THREADS.getCurrentThreadCpuTime());
+				}
+			}
+			System.out.printf("%-9s CPU per idle frame %6.3f ms (Java2D, offscreen)%n", mode, millis / FRAMES);
+		}
+	}
+
+	private static PGraphics java2D(int width, int height)
+	{
+		PGraphics pg = new PGraphicsJava2D();
+		pg.setPrimary(false);
+		pg.setSize(width, height);
+		return pg;
+	}
+
+	//Java2D needs a PApplet to measure native fonts, a font read back from its .vlw form has none
+	private static PFont bitmapFont(int size)
+	{
+		try
+		{
+			PFont font = new PFont(new java.awt.Font("SansSerif", java.awt.Font.PLAIN, size), true, PFont.CHARSET);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			font.save(out);
+			return new PFont(new ByteArrayInputStream(out.toByteArray()));
+		}
+		catch(IOException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+}
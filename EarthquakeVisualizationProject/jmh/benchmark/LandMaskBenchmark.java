@@ -0,0 +1,151 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+import spatial.CountryIndex;
+import spatial.LandMask;
+import spatial.QuakeClassifier;
+
+/*
+ * Lookups through CountryIndex with and without a LandMask of several
+ * resolutions, for points spread evenly over the map and for points
+ * within half a degree of a border, where the mask helps least. Every
+ * answer is checked against the index without a mask. Then classifies the
+ * spread points as quakes with QuakeClassifier, with the exact index and
+ * with the mask the map builds.
+ *
+ * gradle benchmark -Pbenchmark=LandMaskBenchmark -PbenchmarkArgs="[points] [cells per degree...]"
+ */
+public class LandMaskBenchmark {
+
+	private static final int RUNS = 5;
+
+	public static void main(String[] args) throws Exception
+	{
+		int numPoints = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		int[] resolutions = { 4, 10, 20, 40 };
+		if(args.length > 1)
+		{
+			resolutions = new int[args.length - 1];
+			for(int i = 1; i < args.length; i++)
+			{
+				resolutions[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		CountryIndex index = new CountryIndex(BenchmarkData.loadCountryMarkers());
+		List<Location> spread = BenchmarkData.randomLocations(numPoints, 42);
+		List<Location> coastal = BenchmarkData.nearBorders(index, numPoints / 5, 43);
+		int[] spreadExpected = lookup(index, spread);
+		int[] coastalExpected = lookup(index, coastal);
+
+		System.out.printf("%d spread and %d coastal points%n", spread.size(), coastal.size());
+		System.out.printf("%-12s %9s %9s %8s %10s %8s %11s %8s %10s%n", "mask", "build ms", "size KB", "border",
+				"spread us", "speedup", "coastal us", "speedup", "mismatches");
+		double spreadExact = time(index, spread);
+		double coastalExact = time(index, coastal);
+		System.out.printf("%-12s %9s %9s %8s %10.3f %8s %11.3f %8s %10s%n", "none", "", "", "",
+				spreadExact * 1000 / spread.size(), "", coastalExact * 1000 / coastal.size(), "", "");
+
+		LandMask mapMask = null;
+		for(int cellsPerDegree : resolutions)
+		{
+			index.setLandMask(null);
+			long start = System.nanoTime();
+			LandMask mask = LandMask.build(index, cellsPerDegree);
+			double build = BenchmarkData.millis(start, System.nanoTime());
+			index.setLandMask(mask);
+			if(cellsPerDegree == 20)
+			{
+				mapMask = mask;
+			}
+
+			int mismatches = mismatches(spreadExpected, lookup(index, spread))
+					+ mismatches(coastalExpected, lookup(index, coastal));
+			double spreadTime = time(index, spread);
+			double coastalTime = time(index, coastal);
+			System.out.printf("%-12s %9.0f %9d %7.1f%% %10.3f %7.1fx %11.3f %7.1fx %10d%n",
+					String.format("%.3f deg", 1.0 / cellsPerDegree), build, mask.getSizeInBytes() >> 10,
+					mask.getBorderShare() * 100, spreadTime * 1000 / spread.size(), spreadExact / spreadTime,
+					coastalTime * 1000 / coastal.size(), coastalExact / coastalTime, mismatches);
+		}
+
+		//the whole classification step, as setup and the feed poller run it
+		index.setLandMask(null);
+		double exact = classify(index, spread);
+		System.out.printf("QuakeClassifier, %d quakes: exact %.0f ms (%.0f quakes/ms)", spread.size(), exact, spread.size() / exact);
+		if(mapMask != null)
+		{
+			index.setLandMask(mapMask);
+			double masked = classify(index, spread);
+			System.out.printf(", 0.05 deg mask %.0f ms (%.0f quakes/ms), %.1fx", masked, spread.size() / masked, exact / masked);
+		}
+		System.out.println();
+	}
+
+	private static int[] lookup(CountryIndex index, List<Location> points)
+	{
+		int[] countries = new int[points.size()];
+		for(int i = 0; i < countries.length; i++)
+		{
+			countries[i] = index.findCountryIndex(points.get(i).x, points.get(i).y);
+		}
+		return countries;
+	}
+
+	private static int mismatches(int[] expected, int[] found)
+	{
+		int count = 0;
+		for(int i = 0; i < expected.length; i++)
+		{
+			if(expected[i] != found[i])
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	//best of RUNS after two warm up runs, in ms
+	private static double time(CountryIndex index, List<Location> points)
+	{
+		double best = Double.MAX_VALUE;
+		long sink = 0;
+		for(int run = -2; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			for(int i = 0; i < points.size(); i++)
+			{
+				sink += index.findCountryIndex(points.get(i).x, points.get(i).y);
+			}
+			best = Math.min(best, BenchmarkData.millis(start, System.nanoTime()));
+		}
+		if(sink == 42)
+		{
+			System.out.print("");
+		}
+		return best;
+	}
+
+	private static double classify(CountryIndex index, List<Location> points)
+	{
+		QuakeClassifier classifier = new QuakeClassifier(index);
+		double best = Double.MAX_VALUE;
+		for(int run = -2; run < RUNS; run++)
+		{
+			List<PointFeature> quakes = new ArrayList<PointFeature>(points.size());
+			for(Location location : points)
+			{
+				quakes.add(new PointFeature(location));
+			}
+			long start = System.nanoTime();
+			classifier.classify(quakes);
+			best = Math.min(best, BenchmarkData.millis(start, System.nanoTime()));
+		}
+		return best;
+	}
+}
@@ -0,0 +1,358 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import catalog.QuakeCatalog;
+import earthquakeVisualization.CityMarker;
+import earthquakeVisualization.EarthquakeMarker;
+import earthquakeVisualization.ImpactIndex;
+import earthquakeVisualization.LandQuakeMarker;
+import earthquakeVisualization.MarkerModel;
+import earthquakeVisualization.MarkerVisibility;
+import earthquakeVisualization.OceanQuakeMarker;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/*
+ * Frame times with MarkerModel: loader threads publish a generation every
+ * few milliseconds, each adding, updating and retiring quakes, while a
+ * render loop plays EarthquakeCityMap.draw() at 60 frames a second. Every
+ * frame switches to the latest generation the way the map does, updating
+ * a MarkerVisibility and an ImpactIndex from the changes, and reads every
+ * visible quake; that is the frame work timed against the 16.7 ms budget.
+ * MarkerModelTest checks that the frames see whole generations.
+ *
+ * For comparison the same loaders then change one shared ArrayList and
+ * QuakeCatalog in place, as the map would without generations, while the
+ * render loop iterates them.
+ *
+ * gradle benchmark -Pbenchmark=MarkerModelBenchmark -PbenchmarkArgs="[seconds] [quakes] [loaders] [loader pause ms]"
+ */
+public class MarkerModelBenchmark {
+
+	private static final long FRAME_NANOS = 1000000000L / 60;
+	//changes per published generation
+	private static final int ADDS = 40;
+	private static final int UPDATES = 20;
+	private static final int REMOVES = 40;
+
+	private static List<Marker> cities;
+	private static final AtomicBoolean running = new AtomicBoolean();
+	private static final AtomicLong published = new AtomicLong();
+	private static final AtomicLong retries = new AtomicLong();
+	private static final AtomicLong nextQuake = new AtomicLong();
+	private static int pauseMillis;
+
+	public static void main(String[] args) throws Exception
+	{
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int quakes = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+		int loaders = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+		pauseMillis = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+		Metrics.setEnabled(true);
+
+		cities = new ArrayList<Marker>();
+		for(Feature city : BenchmarkData.loadFeatures(BenchmarkData.CITY_FILE))
+		{
+			cities.add(new CityMarker(city));
+		}
+		System.out.printf("%d quakes, %d cities, %d loaders pausing %d ms, %d s per run, %d cores%n",
+				quakes, cities.size(), loaders, pauseMillis, seconds, Runtime.getRuntime().availableProcessors());
+		generations(seconds, quakes, loaders);
+		shared(seconds, quakes, loaders);
+	}
+
+	private static void generations(int seconds, int quakes, int loaders) throws Exception
+	{
+		MarkerModel.Builder first = MarkerModel.builder(cities, new QuakeCatalog());
+		Random random = new Random(1);
+		for(int i = 0; i < quakes; i++)
+		{
+			first.addQuake(quake(random, nextQuake.getAndIncrement()));
+		}
+		final AtomicReference<MarkerModel> model = new AtomicReference<MarkerModel>(first.build());
+
+		running.set(true);
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < loaders; t++)
+		{
+			final long seed = t;
+			Thread loader = new Thread("loader-" + t) {
+				public void run()
+				{
+					Random random = new Random(seed);
+					while(running.get())
+					{
+						//the retry loop of EarthquakeCityMap.publish
+						while(true)
+						{
+							MarkerModel current = model.get();
+							MarkerModel.Builder next = current.edit();
+							List<Marker> old = current.getQuakes();
+							for(int i = 0; i < REMOVES && !old.isEmpty(); i++)
+							{
+								next.removeQuake(old.get(random.nextInt(old.size())).getId());
+							}
+							for(int i = 0; i < UPDATES && !old.isEmpty(); i++)
+							{
+								String id = old.get(random.nextInt(old.size())).getId();
+								if(next.containsQuake(id))
+								{
+									next.addQuake(quake(random, Long.parseLong(id.substring(1))));
+								}
+							}
+							for(int i = 0; i < ADDS; i++)
+							{
+								next.addQuake(quake(random, nextQuake.getAndIncrement()));
+							}
+							if(model.compareAndSet(current, next.build()))
+							{
+								published.incrementAndGet();
+								break;
+							}
+							retries.incrementAndGet();
+						}
+						pause();
+					}
+				}
+			};
+			loader.setDaemon(true);
+			threads.add(loader);
+		}
+
+		//the state draw() keeps for the shown generation
+		MarkerModel shown = model.get();
+		MarkerVisibility visibility = new MarkerVisibility(shown.getCities(), shown.getCatalog(), shown.getQuakes());
+		ImpactIndex impacts = new ImpactIndex(shown.getCities(), shown.getQuakes());
+		LatencyHistogram frames = Metrics.histogram("benchmark.generations.frame");
+		LatencyHistogram switches = Metrics.histogram("benchmark.generations.switch");
+		long seen = 0;
+		long compactions = 0;
+		long visited = 0;
+		double sink = 0;
+		long overBudget = 0;
+		published.set(0);
+		retries.set(0);
+		for(Thread loader : threads)
+		{
+			loader.start();
+		}
+
+		long end = System.nanoTime() + seconds * 1000000000L;
+		long frameStart = System.nanoTime();
+		while(frameStart < end)
+		{
+			MarkerModel latest = model.get();
+			if(latest != shown)
+			{
+				long switchStart = System.nanoTime();
+				MarkerModel.Changes changes = latest.changesSince(shown);
+				if(changes.isRenumbered())
+				{
+					impacts = new ImpactIndex(latest.getCities(), latest.getQuakes());
+					visibility.reset(latest.getCatalog(), latest.getQuakes());
+					compactions++;
+				}
+				else
+				{
+					for(EarthquakeMarker marker : changes.getRemoved())
+					{
+						impacts.remove(marker);
+						visibility.removeQuake(marker);
+					}
+					visibility.setCatalog(latest.getCatalog());
+					for(EarthquakeMarker marker : changes.getAdded())
+					{
+						impacts.add(marker);
+						visibility.addQuake(marker);
+					}
+				}
+				shown = latest;
+				shown.forgetOlder();
+				seen++;
+				switches.record(System.nanoTime() - switchStart);
+			}
+
+			//what drawing reads of every shown quake
+			visibility.update();
+			BitSet visible = visibility.getVisibleQuakes();
+			for(int row = visible.nextSetBit(0); row >= 0; row = visible.nextSetBit(row + 1))
+			{
+				EarthquakeMarker marker = visibility.getQuake(row);
+				sink += marker.getMagnitude() + marker.getTime();
+				visited++;
+			}
+			long work = System.nanoTime() - frameStart;
+			frames.record(work);
+			if(work > FRAME_NANOS)
+			{
+				overBudget++;
+			}
+			frameStart = nextFrame(frameStart);
+		}
+		running.set(false);
+		for(Thread loader : threads)
+		{
+			loader.join();
+		}
+
+		LatencyHistogram.Snapshot frame = frames.snapshot();
+		LatencyHistogram.Snapshot change = switches.snapshot();
+		System.out.printf("generations: %d frames, frame work p50/p99/max %s/%s/%s ms, %d over budget,"
+				+ " %d generations published, %d seen, %d retries, switch p50/p99/max %s/%s/%s ms,"
+				+ " %d compactions seen, %d quakes read, %d quakes and %d rows at the end%n",
+				frame.getCount(), Metrics.millis(frame.getPercentile(50)), Metrics.millis(frame.getPercentile(99)),
+				Metrics.millis(frame.getMax()), overBudget, published.get(), seen, retries.get(),
+				Metrics.millis(change.getPercentile(50)), Metrics.millis(change.getPercentile(99)), Metrics.millis(change.getMax()),
+				compactions, visited + (sink == 42 ? 1 : 0), shown.getQuakes().size(), shown.getCatalog().size());
+	}
+
+	//the same loaders and frames on one shared list and catalog, without generations
+	private static void shared(int seconds, int quakes, int loaders) throws Exception
+	{
+		final QuakeCatalog catalog = new QuakeCatalog();
+		final List<Marker> markers = new ArrayList<Marker>();
+		Random random = new Random(1);
+		for(int i = 0; i < quakes; i++)
+		{
+			markers.add(marker(catalog, quake(random, nextQuake.getAndIncrement())));
+		}
+
+		running.set(true);
+		published.set(0);
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < loaders; t++)
+		{
+			final long seed = t;
+			Thread loader = new Thread("loader-" + t) {
+				public void run()
+				{
+					Random random = new Random(seed);
+					while(running.get())
+					{
+						try
+						{
+							for(int i = 0; i < REMOVES && !markers.isEmpty(); i++)
+							{
+								markers.remove(random.nextInt(markers.size()));
+							}
+							for(int i = 0; i < ADDS; i++)
+							{
+								markers.add(marker(catalog, quake(random, nextQuake.getAndIncrement())));
+							}
+							published.incrementAndGet();
+						}
+						catch(RuntimeException e)
+						{
+							//the loaders race with each other too, keep going
+						}
+						pause();
+					}
+				}
+			};
+			loader.setDaemon(true);
+			threads.add(loader);
+			loader.start();
+		}
+
+		LatencyHistogram frames = Metrics.histogram("benchmark.shared.frame");
+		long errors = 0;
+		long visited = 0;
+		long concurrentModifications = 0;
+		long end = System.nanoTime() + seconds * 1000000000L;
+		long frameStart = System.nanoTime();
+		while(frameStart < end)
+		{
+			try
+			{
+				for(Marker quake : markers)
+				{
+					EarthquakeMarker marker = (EarthquakeMarker)quake;
+					if(marker == null || !ownValues(marker))
+					{
+						errors++;
+					}
+					visited++;
+				}
+			}
+			catch(ConcurrentModificationException e)
+			{
+				concurrentModifications++;
+			}
+			catch(RuntimeException e)
+			{
+				errors++;
+			}
+			frames.record(System.nanoTime() - frameStart);
+			frameStart = nextFrame(frameStart);
+		}
+		running.set(false);
+		for(Thread loader : threads)
+		{
+			loader.join();
+		}
+
+		LatencyHistogram.Snapshot frame = frames.snapshot();
+		System.out.printf("shared list: %d frames, %d changes, %d quakes read,"
+				+ " %d frames broken off by ConcurrentModificationException, %d errors%n",
+				frame.getCount(), published.get(), visited, concurrentModifications, errors);
+	}
+
+	//sleeps until the next frame is due and returns its start
+	private static long nextFrame(long frameStart) throws InterruptedException
+	{
+		long wait = FRAME_NANOS - (System.nanoTime() - frameStart);
+		if(wait > 0)
+		{
+			Thread.sleep(wait / 1000000, (int)(wait % 1000000));
+		}
+		return System.nanoTime();
+	}
+
+	private static void pause()
+	{
+		try
+		{
+			Thread.sleep(pauseMillis);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//quake i, an update of it gets the same id and title with other values
+	private static PointFeature quake(Random random, long i)
+	{
+		PointFeature quake = BenchmarkData.randomQuake(random, (int)i);
+		quake.setId("q" + i);
+		return quake;
+	}
+
+	private static EarthquakeMarker marker(QuakeCatalog catalog, PointFeature quake)
+	{
+		int row = catalog.add(quake);
+		EarthquakeMarker marker = catalog.isOnLand(row) ? new LandQuakeMarker(catalog, row) : new OceanQuakeMarker(catalog, row);
+		marker.setId(quake.getId());
+		return marker;
+	}
+
+	//the marker reads a complete row of its own quake
+	private static boolean ownValues(EarthquakeMarker marker)
+	{
+		String title = marker.getTitle();
+		return title != null && title.endsWith(" of Place " + marker.getId().substring(1))
+				&& marker.getMagnitude() >= 2.5f && marker.getTime() > 0;
+	}
+}
@@ -0,0 +1,206 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import processing.core.PApplet;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import catalog.QuakeCatalog;
+import earthquakeVisualization.BatchedMarkerManager;
+import earthquakeVisualization.CityMarker;
+import earthquakeVisualization.CommonMarker;
+import earthquakeVisualization.LandQuakeMarker;
+import earthquakeVisualization.MarkerBatch;
+import earthquakeVisualization.OceanQuakeMarker;
+
+/*
+ * Frame time of the default per-marker drawing against BatchedMarkerManager
+ * at 1k, 10k and 100k markers, in an OPENGL sketch like EarthquakeCityMap.
+ * The map pans a little every frame and zooms every ZOOM_EVERY frames, so
+ * the batched runs include translated frames and rebuilds. One marker in
+ * twenty is a city, the rest are land and ocean quakes.
+ *
+ * Needs a display and OpenGL:
+ * gradle benchmark -Pbenchmark=MarkerRenderBenchmark
+ *
+ * Without a display only the CPU cost of a rebuild can be measured:
+ * gradle benchmark -Pbenchmark=MarkerRenderBenchmark -PbenchmarkArgs="headless"
+ */
+public class MarkerRenderBenchmark extends PApplet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int[] COUNTS = { 1000, 10000, 100000 };
+	private static final String[] MODES = { "immediate", "batched" };
+	private static final int WARMUP_FRAMES = 30;
+	private static final int FRAMES = 300;
+	private static final int ZOOM_EVERY = 100;
+
+	private UnfoldingMap map;
+	private BatchedMarkerManager batched;
+
+	private int run = 0;
+	private int frame = 0;
+	private long lastFrame;
+	private double[] frameMillis = new double[FRAMES];
+
+	public static void main(String[] args)
+	{
+		if(args.length > 0 && args[0].equals("headless"))
+		{
+			headless();
+			return;
+		}
+		PApplet.main(MarkerRenderBenchmark.class.getName());
+	}
+
+	public void setup()
+	{
+		size(1000, 650, OPENGL);
+		frameRate(1000);
+		map = new UnfoldingMap(this, 0, 0, width, height);
+		map.zoomToLevel(2);
+		startRun();
+	}
+
+	public void draw()
+	{
+		long now = System.nanoTime();
+		if(frame >= WARMUP_FRAMES)
+		{
+			frameMillis[frame - WARMUP_FRAMES] = BenchmarkData.millis(lastFrame, now);
+		}
+		lastFrame = now;
+
+		background(0);
+		map.draw();
+
+		//keep the viewport moving like a user panning around
+		map.pan(width / 2, height / 2, width / 2 + 2, height / 2);
+		if(frame > 0 && frame % ZOOM_EVERY == 0)
+		{
+			if((frame / ZOOM_EVERY) % 2 == 1)
+			{
+				map.zoomLevelIn();
+			}
+			else
+			{
+				map.zoomLevelOut();
+			}
+		}
+
+		frame++;
+		if(frame == WARMUP_FRAMES + FRAMES)
+		{
+			report();
+			run++;
+			if(run == COUNTS.length * MODES.length)
+			{
+				exit();
+				return;
+			}
+			startRun();
+		}
+	}
+
+	private void startRun()
+	{
+		map.getDefaultMarkerManager().clearMarkers();
+		if(batched != null)
+		{
+			map.removeMarkerManager(batched);
+			batched = null;
+		}
+		map.zoomToLevel(2);
+
+		List<Marker> markers = markers(COUNTS[run / MODES.length], 3);
+		if(MODES[run % MODES.length].equals("batched"))
+		{
+			batched = new BatchedMarkerManager();
+			map.addMarkerManager(batched);
+			batched.addMarkers(markers);
+		}
+		else
+		{
+			map.addMarkers(markers);
+		}
+		frame = 0;
+	}
+
+	private void report()
+	{
+		double[] sorted = frameMillis.clone();
+		Arrays.sort(sorted);
+		double mean = 0;
+		for(double millis : frameMillis)
+		{
+			mean += millis / FRAMES;
+		}
+		String mode = MODES[run % MODES.length];
+		String rebuilds = batched == null ? ""
+				: String.format("  rebuilds %d, last %.1f ms", batched.getBuildCount(), batched.getLastBuildMillis());
+		System.out.printf("%-9s %6d markers: mean %6.2f ms (%5.0f fps)  p95 %6.2f ms%s%n",
+				mode, COUNTS[run / MODES.length], mean, 1000 / mean, sorted[FRAMES * 95 / 100], rebuilds);
+	}
+
+	static List<Marker> markers(int count, long seed)
+	{
+		Random random = new Random(seed);
+		QuakeCatalog catalog = new QuakeCatalog();
+		List<Marker> markers = new ArrayList<Marker>(count);
+		for(int i = 0; i < count; i++)
+		{
+			if(i % 20 == 0)
+			{
+				markers.add(new CityMarker(new Location(random.nextFloat() * 170 - 85, random.nextFloat() * 360 - 180)));
+				continue;
+			}
+			int row = catalog.add(BenchmarkData.randomQuake(random, i));
+			markers.add(catalog.isOnLand(row) ? new LandQuakeMarker(catalog, row) : new OceanQuakeMarker(catalog, row));
+		}
+		return markers;
+	}
+
+	//collects and tessellates the markers like a rebuild, without a renderer
+	private static void headless()
+	{
+		for(int count : COUNTS)
+		{
+			List<Marker> markers = markers(count, 3);
+			MarkerBatch batch = new MarkerBatch();
+			double[] millis = new double[21];
+			int vertices = 0;
+			for(int run = -5; run < millis.length; run++)
+			{
+				long start = System.nanoTime();
+				batch.clear();
+				for(Marker marker : markers)
+				{
+					//plain equirectangular positions on a 1000x650 screen
+					Location location = marker.getLocation();
+					float x = (location.getLon() + 180) / 360 * 1000;
+					float y = (90 - location.getLat()) / 180 * 650;
+					((CommonMarker)marker).batchMarker(batch, x, y);
+				}
+				vertices = 0;
+				for(MarkerBatch.Tessellated part : batch.tessellate())
+				{
+					vertices += part.getVertexCount();
+				}
+				if(run >= 0)
+				{
+					millis[run] = BenchmarkData.millis(start, System.nanoTime());
+				}
+			}
+			Arrays.sort(millis);
+			System.out.printf("%6d markers: collect + tessellate %6.2f ms, %d vertices%n",
+					count, millis[millis.length / 2], vertices);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/*
+ * What instrumentation costs: a loop of small units of work bare, with a
+ * histogram start/stop and a counter increment around every unit while
+ * metrics are disabled, and the same while they are enabled. Also checks
+ * the histogram percentiles against the exact ones of the same values.
+ *
+ * gradle benchmark -Pbenchmark=MetricsBenchmark -PbenchmarkArgs="[operations]"
+ */
+public class MetricsBenchmark {
+
+	private static final int RUNS = 7;
+
+	private static final LatencyHistogram TIME = Metrics.histogram("benchmark.work");
+	private static final Counter COUNT = Metrics.counter("benchmark.work");
+
+	private static long sink;
+
+	public static void main(String[] args)
+	{
+		int operations = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+
+		double bare = Double.MAX_VALUE;
+		double disabled = Double.MAX_VALUE;
+		double enabled = Double.MAX_VALUE;
+		for(int run = 0; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			bare(operations);
+			bare = Math.min(bare, BenchmarkData.millis(start, System.nanoTime()));
+
+			Metrics.setEnabled(false);
+			start = System.nanoTime();
+			instrumented(operations);
+			disabled = Math.min(disabled, BenchmarkData.millis(start, System.nanoTime()));
+
+			Metrics.setEnabled(true);
+			start = System.nanoTime();
+			instrumented(operations);
+			enabled = Math.min(enabled, BenchmarkData.millis(start, System.nanoTime()));
+		}
+		System.out.printf("%d operations: bare %.1f ms, metrics disabled %.1f ms (%.2f ns/op more),"
+				+ " enabled %.1f ms (%.1f ns/op more)%n", operations, bare, disabled,
+				(disabled - bare) * 1e6 / operations, enabled, (enabled - bare) * 1e6 / operations);
+
+		//log-normal durations around a millisecond, like frame times
+		Random random = new Random(3);
+		long[] values = new long[1000000];
+		LatencyHistogram histogram = Metrics.histogram("benchmark.accuracy");
+		LatencyHistogram.Snapshot before = histogram.snapshot();
+		for(int i = 0; i < values.length; i++)
+		{
+			values[i] = (long)(1e6 * Math.exp(random.nextGaussian()));
+			histogram.record(values[i]);
+		}
+		LatencyHistogram.Snapshot recorded = histogram.snapshot().minus(before);
+		Arrays.sort(values);
+		for(double percent : new double[] { 50, 90, 99, 99.9 })
+		{
+			long exact = values[(int)Math.ceil(percent / 100 * values.length) - 1];
+			long estimate = recorded.getPercentile(percent);
+			System.out.printf("p%-5s exact %9d ns, histogram %9d ns, error %+.2f%%%n", percent, exact, estimate,
+					(estimate - exact) * 100.0 / exact);
+		}
+		System.out.printf("max    exact %9d ns, histogram %9d ns%n", values[values.length - 1], recorded.getMax());
+		System.out.println(sink == 42 ? "" : Metrics.format(new Metrics.Interval().next()));
+	}
+
+	private static void bare(int operations)
+	{
+		long value = sink;
+		for(int i = 0; i < operations; i++)
+		{
+			value = work(value);
+		}
+		sink = value;
+	}
+
+	private static void instrumented(int operations)
+	{
+		long value = sink;
+		for(int i = 0; i < operations; i++)
+		{
+			long start = TIME.start();
+			value = work(value);
+			COUNT.increment();
+			TIME.stop(start);
+		}
+		sink = value;
+	}
+
+	//a few nanoseconds of arithmetic the JIT cannot drop
+	private static long work(long value)
+	{
+		value ^= value << 13;
+		value ^= value >>> 7;
+		return value ^ (value << 17) + 1;
+	}
+}
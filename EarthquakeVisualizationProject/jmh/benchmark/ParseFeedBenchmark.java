@@ -0,0 +1,101 @@
+package benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import processing.data.XML;
+
+import parsing.ParseFeed;
+
+/*
+ * Compares the DOM based ParseFeed.parseEarthquake with the streaming
+ * ParseFeed.parseEarthquakeStream on a synthetic feed, reporting
+ * throughput and peak heap for both.
+ *
+ * Peak heap is most meaningful with one mode per JVM:
+ * gradle benchmark -Pbenchmark=ParseFeedBenchmark -PbenchmarkArgs="[entries] [dom|stream|both]"
+ */
+public class ParseFeedBenchmark {
+
+	public static void main(String[] args) throws Exception
+	{
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		String mode = args.length > 1 ? args[1] : "both";
+
+		File feed = File.createTempFile("quakes", ".atom");
+		feed.deleteOnExit();
+		BenchmarkData.writeAtomFeed(feed, entries, 7);
+		System.out.printf("feed: %d entries, %.1f MB%n", entries, feed.length() / 1e6);
+
+		if(!mode.equals("stream"))
+		{
+			run("dom", feed, entries);
+		}
+		if(!mode.equals("dom"))
+		{
+			run("stream", feed, entries);
+		}
+	}
+
+	private static void run(String mode, File feed, int entries) throws Exception
+	{
+		//one untimed pass to load classes and warm up the parser
+		parse(mode, feed);
+
+		System.gc();
+		resetPeakHeap();
+		long baseline = usedHeap();
+
+		long start = System.nanoTime();
+		List<PointFeature> quakes = parse(mode, feed);
+		long time = System.nanoTime() - start;
+
+		long peak = peakHeap() - baseline;
+		double seconds = time / 1e9;
+		System.out.printf("%-6s  %d quakes  %.0f ms  %.0f entries/s  %.1f MB/s  peak heap +%.1f MB%n",
+				mode, quakes.size(), time / 1e6, entries / seconds, feed.length() / 1e6 / seconds, peak / 1e6);
+	}
+
+	private static List<PointFeature> parse(String mode, File feed) throws Exception
+	{
+		if(mode.equals("dom"))
+		{
+			//the same document PApplet.loadXML builds
+			return ParseFeed.parseEarthquake(new XML(feed));
+		}
+		return ParseFeed.parseEarthquakeStream(feed.getPath());
+	}
+
+	private static void resetPeakHeap()
+	{
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if(pool.getType() == MemoryType.HEAP)
+			{
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long peakHeap()
+	{
+		long peak = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if(pool.getType() == MemoryType.HEAP)
+			{
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static long usedHeap()
+	{
+		return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+	}
+}
@@ -0,0 +1,186 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import catalog.QuakeCatalog;
+import earthquakeVisualization.CommonMarker;
+import earthquakeVisualization.EarthquakeMarker;
+import earthquakeVisualization.LandQuakeMarker;
+import earthquakeVisualization.MarkerBatch;
+import earthquakeVisualization.MarkerScene;
+import earthquakeVisualization.OceanQuakeMarker;
+import parsing.ParseFeed;
+import report.ReportTool;
+import spatial.QuakeClassifier;
+
+/*
+ * Every stage of the feed -> map pipeline on its own, at each catalog
+ * size, so it shows which stage grows fastest with the feed:
+ *
+ *   parseAtom      streaming Atom reader
+ *   parseGeoJson   streaming GeoJSON reader
+ *   parseCsv       streaming CSV reader
+ *   classify       QuakeClassifier, the land/ocean and country lookup
+ *   markers        QuakeCatalog rows and their quake markers
+ *   sort           Collections.sort of the markers with EarthquakeMarker.compareTo
+ *   batch          MarkerScene and MarkerBatch for the whole world at zoom 2
+ *
+ * The DOM parser is DomParseBenchmark, a recorded feed RecordedFeedBenchmark.
+ * Inputs are made once per size and are not measured: synthetic feeds
+ * written in the three formats with BenchmarkData, and the features and
+ * markers they parse to. Run through gradle jmh, which adds the gc
+ * profiler for the allocation per operation (gc.alloc.rate.norm) and
+ * whose jmhCheck task compares a run with a saved baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class PipelineBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	public int size;
+
+	private File atomFeed;
+	private File geoJsonFeed;
+	private File csvFeed;
+	private List<PointFeature> features;
+	private QuakeClassifier classifier;
+	private List<Marker> markers;
+
+	@Setup
+	public void prepare() throws IOException
+	{
+		classifier = new QuakeClassifier(ReportTool.loadCountries(BenchmarkData.COUNTRY_FILE));
+		atomFeed = File.createTempFile("pipeline", ".atom");
+		geoJsonFeed = File.createTempFile("pipeline", ".geojson");
+		csvFeed = File.createTempFile("pipeline", ".csv");
+		BenchmarkData.writeAtomFeed(atomFeed, size, 7);
+		BenchmarkData.writeGeoJsonFeed(geoJsonFeed, size, 7);
+		BenchmarkData.writeCsvFeed(csvFeed, size, 7);
+
+		//unclassified quakes as the parsers hand them out
+		Random random = new Random(size);
+		features = new ArrayList<PointFeature>(size);
+		for(int i = 0; i < size; i++)
+		{
+			PointFeature quake = BenchmarkData.randomQuake(random, i);
+			quake.getProperties().remove("country");
+			features.add(quake);
+		}
+		classifier.classify(features);
+		markers = createMarkers(features);
+	}
+
+	@TearDown
+	public void deleteFeeds()
+	{
+		atomFeed.delete();
+		geoJsonFeed.delete();
+		csvFeed.delete();
+	}
+
+	@Benchmark
+	public List<PointFeature> parseAtom() throws IOException
+	{
+		return ParseFeed.parseEarthquakeStream(atomFeed.getPath());
+	}
+
+	@Benchmark
+	public List<PointFeature> parseGeoJson() throws IOException
+	{
+		return ParseFeed.parseEarthquakeStream(geoJsonFeed.getPath());
+	}
+
+	@Benchmark
+	public List<PointFeature> parseCsv() throws IOException
+	{
+		return ParseFeed.parseEarthquakeStream(csvFeed.getPath());
+	}
+
+	@Benchmark
+	public List<PointFeature> classify()
+	{
+		classifier.classify(features);
+		return features;
+	}
+
+	@Benchmark
+	public List<Marker> markers()
+	{
+		return createMarkers(features);
+	}
+
+	@Benchmark
+	public List<Marker> sort()
+	{
+		//sorts a copy so every call starts from feed order
+		List<Marker> sorted = new ArrayList<Marker>(markers);
+		Collections.sort(sorted, new Comparator<Marker>() {
+			public int compare(Marker a, Marker b)
+			{
+				return ((EarthquakeMarker)a).compareTo((EarthquakeMarker)b);
+			}
+		});
+		return sorted;
+	}
+
+	@Benchmark
+	public int batch()
+	{
+		//a 1024px world on the 700x550 map of EarthquakeCityMap, clustered
+		float world = 1024;
+		float originX = 350 - world / 2;
+		float originY = 275 - world / 2;
+		MarkerScene scene = new MarkerScene(40);
+		scene.reset(originX, originY, -200, -200, 900, 750, true);
+		for(Marker marker : markers)
+		{
+			float[] xy = ClusterBenchmark.mercator(marker.getLocation(), world, originX, originY);
+			scene.add((CommonMarker)marker, xy[0], xy[1]);
+		}
+		int vertices = 0;
+		for(MarkerBatch.Tessellated part : scene.batch().tessellate())
+		{
+			vertices += part.getVertexCount();
+		}
+		return vertices;
+	}
+
+	private static List<Marker> createMarkers(List<PointFeature> quakes)
+	{
+		QuakeCatalog catalog = new QuakeCatalog();
+		List<Marker> created = new ArrayList<Marker>(quakes.size());
+		for(PointFeature quake : quakes)
+		{
+			int row = catalog.add(quake);
+			created.add(catalog.isOnLand(row) ? new LandQuakeMarker(catalog, row) : new OceanQuakeMarker(catalog, row));
+		}
+		return created;
+	}
+}
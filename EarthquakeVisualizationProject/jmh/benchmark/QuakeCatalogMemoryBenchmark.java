@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.SimplePointMarker;
+
+import catalog.QuakeCatalog;
+import earthquakeVisualization.EarthquakeMarker;
+import earthquakeVisualization.LandQuakeMarker;
+import earthquakeVisualization.OceanQuakeMarker;
+
+/*
+ * Retained heap of a synthetic catalog held three ways:
+ * the old object graph (a PointFeature with its property map plus a marker
+ * sharing that map per quake), the QuakeCatalog columns alone, and the
+ * catalog with a view marker for every row.
+ *
+ * java -Xmx3g -cp bin:lib/* benchmark.QuakeCatalogMemoryBenchmark [events]
+ */
+public class QuakeCatalogMemoryBenchmark {
+
+	public static void main(String[] args)
+	{
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+		long base = settledHeap();
+		List<Marker> graph = new ArrayList<Marker>(events);
+		Random random = new Random(5);
+		for(int i = 0; i < events; i++)
+		{
+			PointFeature quake = BenchmarkData.randomQuake(random, i);
+			quake.putProperty("radius", 2*(Float)quake.getProperty("magnitude"));
+			graph.add(new SimplePointMarker(quake.getLocation(), quake.getProperties()));
+		}
+		long graphBytes = settledHeap() - base;
+		report("object graph", events, graphBytes, graphBytes);
+		graph = null;
+
+		base = settledHeap();
+		QuakeCatalog catalog = new QuakeCatalog();
+		random = new Random(5);
+		for(int i = 0; i < events; i++)
+		{
+			catalog.add(BenchmarkData.randomQuake(random, i));
+		}
+		catalog.trimToSize();
+		long catalogBytes = settledHeap() - base;
+		report("catalog", events, catalogBytes, graphBytes);
+
+		List<EarthquakeMarker> views = new ArrayList<EarthquakeMarker>(events);
+		for(int row = 0; row < catalog.size(); row++)
+		{
+			views.add(catalog.isOnLand(row) ? new LandQuakeMarker(catalog, row) : new OceanQuakeMarker(catalog, row));
+		}
+		long viewBytes = settledHeap() - base;
+		report("catalog + views", views.size(), viewBytes, graphBytes);
+	}
+
+	private static void report(String name, int events, long bytes, long graphBytes)
+	{
+		System.out.printf("%-16s %d events  %.1f MB  %.0f bytes/event  %.0f%% of object graph%n",
+				name, events, bytes / 1e6, (double)bytes / events, 100.0 * bytes / graphBytes);
+	}
+
+	private static long settledHeap()
+	{
+		for(int i = 0; i < 4; i++)
+		{
+			System.gc();
+		}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
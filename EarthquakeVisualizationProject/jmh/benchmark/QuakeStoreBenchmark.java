@@ -0,0 +1,131 @@
+package benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+import catalog.QuakeStore;
+import parsing.ParseFeed;
+
+/*
+ * Fills a QuakeStore with a year of synthetic quakes, one a minute, in
+ * batches the size of a feed poll, then upserts a batch that is already
+ * stored, and times the queries the map makes: the history window for the
+ * whole world and for a region, with and without a magnitude threshold.
+ * Every query is also answered by scanning all quakes in memory, which
+ * is what the map would have to do without the indexes, after parsing
+ * them from a feed file, which is timed once for the same number of
+ * quakes in CSV, the fastest feed format.
+ *
+ * gradle benchmark -Pbenchmark=QuakeStoreBenchmark -PbenchmarkArgs="[quakes] [batch size]"
+ */
+public class QuakeStoreBenchmark {
+
+	private static final int RUNS = 15;
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+
+	public static void main(String[] args) throws Exception
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+		Random random = new Random(17);
+		List<PointFeature> quakes = new ArrayList<PointFeature>(count);
+		for(int i = 0; i < count; i++)
+		{
+			PointFeature quake = BenchmarkData.randomQuake(random, i);
+			quake.setId("bq" + i);
+			quakes.add(quake);
+		}
+		long last = ((Long)quakes.get(count - 1).getProperty("time"));
+
+		File dir = Files.createTempDirectory("quake-store").toFile();
+		File file = new File(dir, "quakes.sqlite");
+		QuakeStore store = new QuakeStore(file);
+		try
+		{
+			long start = System.nanoTime();
+			for(int from = 0; from < count; from += batchSize)
+			{
+				store.upsert(quakes.subList(from, Math.min(count, from + batchSize)));
+			}
+			double millis = BenchmarkData.millis(start, System.nanoTime());
+			System.out.printf("insert %d quakes in batches of %d: %.0f ms, %.0f quakes/s, %d MB on disk%n",
+					count, batchSize, millis, count / millis * 1000, (file.length() + new File(file.getPath() + "-wal").length()) >> 20);
+
+			List<PointFeature> again = quakes.subList(count - batchSize, count);
+			start = System.nanoTime();
+			int added = store.upsert(again);
+			millis = BenchmarkData.millis(start, System.nanoTime());
+			System.out.printf("upsert %d stored quakes: %.1f ms, %.0f quakes/s, %d added%n",
+					again.size(), millis, again.size() / millis * 1000, added);
+			store.analyze();
+
+			System.out.printf("%-36s %8s %10s %10s%n", "query", "quakes", "store ms", "scan ms");
+			query(store, quakes, "M5+ world, last 90 days", 5, last - 90 * DAY, last, -90, -180, 90, 180);
+			query(store, quakes, "M2.5+ world, last 7 days", 2.5f, last - 7 * DAY, last, -90, -180, 90, 180);
+			query(store, quakes, "M5+ Japan box, last 90 days", 5, last - 90 * DAY, last, 30, 128, 46, 146);
+			query(store, quakes, "all Japan box, last 90 days", 0, last - 90 * DAY, last, 30, 128, 46, 146);
+			query(store, quakes, "all Pacific box over the date line", 0, last - 365 * DAY, last, -20, 170, 10, -170);
+			query(store, quakes, "M7+ world, all time", 7, 0, Long.MAX_VALUE, -90, -180, 90, 180);
+
+			File feed = new File(dir, "history.csv");
+			BenchmarkData.writeCsvFeed(feed, count, 17);
+			start = System.nanoTime();
+			int parsed = ParseFeed.parseEarthquakeStream(feed.getPath()).size();
+			System.out.printf("parsing the %d quakes from a CSV feed instead: %.0f ms%n", parsed,
+					BenchmarkData.millis(start, System.nanoTime()));
+		}
+		finally
+		{
+			store.close();
+			for(File each : dir.listFiles())
+			{
+				each.delete();
+			}
+			dir.delete();
+		}
+	}
+
+	private static void query(QuakeStore store, List<PointFeature> quakes, String name, float minMagnitude,
+			long from, long to, float south, float west, float north, float east) throws Exception
+	{
+		double best = Double.MAX_VALUE;
+		int found = 0;
+		for(int run = 0; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			found = store.query(minMagnitude, from, to, south, west, north, east).size();
+			best = Math.min(best, BenchmarkData.millis(start, System.nanoTime()));
+		}
+		double scan = Double.MAX_VALUE;
+		int scanned = 0;
+		for(int run = 0; run < RUNS; run++)
+		{
+			long start = System.nanoTime();
+			scanned = 0;
+			for(PointFeature quake : quakes)
+			{
+				float lat = quake.getLocation().getLat();
+				float lon = quake.getLocation().getLon();
+				long time = (Long)quake.getProperty("time");
+				boolean inLon = west <= east ? lon >= west && lon <= east : lon >= west || lon <= east;
+				if((Float)quake.getProperty("magnitude") >= minMagnitude && time >= from && time <= to
+						&& lat >= south && lat <= north && inLon)
+				{
+					scanned++;
+				}
+			}
+			scan = Math.min(scan, BenchmarkData.millis(start, System.nanoTime()));
+		}
+		if(found != scanned)
+		{
+			throw new IllegalStateException(name + ": store found " + found + ", scan " + scanned);
+		}
+		System.out.printf("%-36s %8d %10.2f %10.2f%n", name, found, best, scan);
+	}
+}
@@ -0,0 +1,54 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+import parsing.ParseFeed;
+
+/*
+ * Streams a recorded feed in any of the three formats, at its own size.
+ * By default the feed the map downloaded last; another one is given with
+ * -PjmhArgs="-p feed=recorded.geojson".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordedFeedBenchmark {
+
+	@Param({ "cache/earthquake.usgs.gov_earthquakes_feed_v1.0_summary_2.5_week.atom" })
+	public String feed;
+
+	@Setup
+	public void checkFeed() throws IOException
+	{
+		if(!new File(feed).isFile())
+		{
+			throw new IOException("No recorded feed at " + feed);
+		}
+	}
+
+	@Benchmark
+	public List<PointFeature> parseRecorded() throws IOException
+	{
+		return ParseFeed.parseEarthquakeStream(feed);
+	}
+}
@@ -0,0 +1,147 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import catalog.QuakeCatalog;
+import catalog.Timeline;
+import earthquakeVisualization.EarthquakeMarker;
+import earthquakeVisualization.LandQuakeMarker;
+import earthquakeVisualization.MarkerBatch;
+import earthquakeVisualization.MarkerScene;
+import earthquakeVisualization.OceanQuakeMarker;
+
+/*
+ * The CPU side of one replay of the whole catalog in REPLAY_SECONDS at 60
+ * frames per second, on the 700x550 map of EarthquakeCityMap: every frame
+ * scanning all quakes for the ones up to the replay time and placing them
+ * again, against the Timeline and MarkerScene of BatchedMarkerManager,
+ * which only place the quakes the frame added before batching.
+ *
+ * The GPU upload of the batch is the same for both and is left out.
+ *
+ * gradle benchmark -Pbenchmark=ReplayBenchmark -PbenchmarkArgs="[quakes] [frames]"
+ */
+public class ReplayBenchmark {
+
+	private static final float WIDTH = 700;
+	private static final float HEIGHT = 550;
+	private static final float MARGIN = 200;
+	private static final float CELL = 40;
+
+	public static void main(String[] args)
+	{
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 150000;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 3600;
+
+		Random random = new Random(5);
+		QuakeCatalog catalog = new QuakeCatalog();
+		List<EarthquakeMarker> quakes = new ArrayList<EarthquakeMarker>(count);
+		long[] times = new long[count];
+		for(int i = 0; i < count; i++)
+		{
+			int row = catalog.add(BenchmarkData.randomQuake(random, i));
+			quakes.add(catalog.isOnLand(row) ? new LandQuakeMarker(catalog, row) : new OceanQuakeMarker(catalog, row));
+			times[i] = catalog.getTime(row);
+		}
+		long start = System.nanoTime();
+		Timeline<EarthquakeMarker> timeline = new Timeline<EarthquakeMarker>(quakes, times);
+		System.out.printf("%d quakes over %.0f days, timeline built in %.1f ms, %d frames%n", count,
+				(timeline.getEnd() - timeline.getStart()) / 86400000.0, BenchmarkData.millis(start, System.nanoTime()), frames);
+
+		for(int zoom : new int[] { 2, 6 })
+		{
+			System.out.println("zoom " + zoom + (zoom < 5 ? ", clustered:" : ", markers only:"));
+			report("scan and rebuild", rescan(quakes, timeline, frames, zoom));
+			report("timeline append", append(timeline, frames, zoom));
+		}
+	}
+
+	//every frame: all quakes checked against the window, the visible ones placed and batched
+	private static double[] rescan(List<EarthquakeMarker> quakes, Timeline<EarthquakeMarker> timeline, int frames, int zoom)
+	{
+		float world = 256 * (1 << zoom);
+		float originX = WIDTH / 2 - world / 2;
+		float originY = HEIGHT / 2 - world / 2;
+		MarkerScene scene = new MarkerScene(CELL);
+		double[] millis = new double[frames];
+		for(int frame = 0; frame < frames; frame++)
+		{
+			long now = replayTime(timeline, frame, frames);
+			long start = System.nanoTime();
+			scene.reset(originX, originY, -MARGIN, -MARGIN, WIDTH + MARGIN, HEIGHT + MARGIN, zoom < 5);
+			scene.setNow(now);
+			for(EarthquakeMarker quake : quakes)
+			{
+				if(quake.getTime() <= now)
+				{
+					float[] xy = ClusterBenchmark.mercator(quake.getLocation(), world, originX, originY);
+					scene.add(quake, xy[0], xy[1]);
+				}
+			}
+			tessellate(scene.batch());
+			millis[frame] = BenchmarkData.millis(start, System.nanoTime());
+		}
+		return millis;
+	}
+
+	//every frame: the quakes since the last frame found by binary search, placed and the scene batched
+	private static double[] append(Timeline<EarthquakeMarker> timeline, int frames, int zoom)
+	{
+		float world = 256 * (1 << zoom);
+		float originX = WIDTH / 2 - world / 2;
+		float originY = HEIGHT / 2 - world / 2;
+		MarkerScene scene = new MarkerScene(CELL);
+		scene.reset(originX, originY, -MARGIN, -MARGIN, WIDTH + MARGIN, HEIGHT + MARGIN, zoom < 5);
+		int built = 0;
+		double[] millis = new double[frames];
+		for(int frame = 0; frame < frames; frame++)
+		{
+			long now = replayTime(timeline, frame, frames);
+			long start = System.nanoTime();
+			int to = timeline.indexAfter(now);
+			for(int i = built; i < to; i++)
+			{
+				EarthquakeMarker quake = timeline.get(i);
+				float[] xy = ClusterBenchmark.mercator(quake.getLocation(), world, originX, originY);
+				scene.add(quake, xy[0], xy[1]);
+			}
+			built = to;
+			scene.setNow(now);
+			tessellate(scene.batch());
+			millis[frame] = BenchmarkData.millis(start, System.nanoTime());
+		}
+		return millis;
+	}
+
+	//replay time of a frame, the last frame shows the whole catalog
+	private static long replayTime(Timeline<EarthquakeMarker> timeline, int frame, int frames)
+	{
+		return timeline.getStart() + (timeline.getEnd() - timeline.getStart()) * (frame + 1) / frames;
+	}
+
+	private static int tessellate(MarkerBatch batch)
+	{
+		int vertices = 0;
+		for(MarkerBatch.Tessellated part : batch.tessellate())
+		{
+			vertices += part.getVertexCount();
+		}
+		return vertices;
+	}
+
+	private static void report(String name, double[] millis)
+	{
+		double total = 0;
+		for(double frame : millis)
+		{
+			total += frame;
+		}
+		double[] sorted = millis.clone();
+		Arrays.sort(sorted);
+		System.out.printf("  %-16s mean %6.2f ms, p99 %6.2f ms, max %6.2f ms per frame%n", name,
+				total / millis.length, sorted[(int)(sorted.length * 0.99)], sorted[sorted.length - 1]);
+	}
+}
@@ -0,0 +1,114 @@
+package benchmark;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import catalog.QuakeCatalog;
+import report.QuakeReport;
+import report.ReportTool;
+import spatial.QuakeClassifier;
+
+/*
+ * The old printQuakes/sortAndPrint (a scan of all quakes per country and a
+ * full sort for the top 6) against one QuakeReport pass over the same
+ * classified catalog, then ReportTool end to end on a synthetic feed:
+ * streaming parse, classification on all cores and the report.
+ *
+ * gradle benchmark -Pbenchmark=ReportBenchmark -PbenchmarkArgs="[feed entries]"
+ */
+public class ReportBenchmark {
+
+	private static final int[] COUNTS = { 10000, 100000, 1000000 };
+	private static final int COUNTRIES = 178;
+	private static final int TOP = 6;
+
+	public static void main(String[] args) throws Exception
+	{
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+		for(int count : COUNTS)
+		{
+			Random random = new Random(11);
+			QuakeCatalog catalog = new QuakeCatalog();
+			for(int i = 0; i < count; i++)
+			{
+				catalog.add(BenchmarkData.randomQuake(random, i));
+			}
+			double before = Double.MAX_VALUE;
+			double after = Double.MAX_VALUE;
+			for(int run = 0; run < 3; run++)
+			{
+				before = Math.min(before, oldReport(catalog));
+				long start = System.nanoTime();
+				QuakeReport report = new QuakeReport(TOP);
+				for(int row = 0; row < catalog.size(); row++)
+				{
+					report.add(catalog, row);
+				}
+				report.writeCsv(new StringWriter());
+				after = Math.min(after, BenchmarkData.millis(start, System.nanoTime()));
+			}
+			System.out.printf("%8d quakes: country scan + sort %9.1f ms, one pass %7.1f ms%n", count, before, after);
+		}
+
+		File feed = File.createTempFile("quakes", ".atom");
+		feed.deleteOnExit();
+		BenchmarkData.writeAtomFeed(feed, entries, 7);
+		QuakeClassifier classifier = new QuakeClassifier(ReportTool.loadCountries(BenchmarkData.COUNTRY_FILE));
+		long start = System.nanoTime();
+		QuakeReport report = new QuakeReport(10);
+		ReportTool.read(feed.getPath(), classifier, report);
+		report.writeJson(new StringWriter());
+		double seconds = BenchmarkData.millis(start, System.nanoTime()) / 1000;
+		System.out.printf("ReportTool: %d entries (%.0f MB) in %.1f s, %.0f quakes/s, %d land, %d ocean%n",
+				report.getQuakeCount(), feed.length() / 1e6, seconds, report.getQuakeCount() / seconds,
+				report.getLandCount(), report.getOceanCount());
+	}
+
+	//printQuakes and sortAndPrint(TOP) as they were, on catalog rows
+	private static double oldReport(final QuakeCatalog catalog)
+	{
+		long start = System.nanoTime();
+		int ocean = catalog.size();
+		int printed = 0;
+		for(int country = 0; country < COUNTRIES; country++)
+		{
+			String countryName = "Country " + country;
+			int quakes = 0;
+			for(int row = 0; row < catalog.size(); row++)
+			{
+				if(catalog.isOnLand(row) && countryName.equals(catalog.getCountry(row)))
+				{
+					quakes++;
+				}
+			}
+			ocean -= quakes;
+			printed += quakes > 0 ? 1 : 0;
+		}
+		List<Integer> rows = new ArrayList<Integer>();
+		for(int row = 0; row < catalog.size(); row++)
+		{
+			rows.add(row);
+		}
+		Collections.sort(rows, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
+			{
+				return Float.compare(catalog.getMagnitude(b), catalog.getMagnitude(a));
+			}
+		});
+		for(int i = 0; i < Math.min(TOP, rows.size()); i++)
+		{
+			printed += catalog.getTitle(rows.get(i)).length() > 0 ? 1 : 0;
+		}
+		if(printed + ocean < 0)
+		{
+			System.out.println();
+		}
+		return BenchmarkData.millis(start, System.nanoTime());
+	}
+}
@@ -0,0 +1,227 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.MapUtils;
+
+import catalog.GeoSnapshot;
+import catalog.QuakeCatalog;
+import earthquakeVisualization.CityMarker;
+import earthquakeVisualization.EarthquakeMarker;
+import earthquakeVisualization.LandQuakeMarker;
+import earthquakeVisualization.OceanQuakeMarker;
+import parsing.FeedPoller;
+import parsing.ParseFeed;
+import spatial.CountryIndex;
+import spatial.LandMask;
+
+/*
+ * Time until the data for the first frame is ready, loading the way
+ * EarthquakeCityMap.setup() does from JSON and the feed, and from a
+ * GeoSnapshot. Every start runs in a fresh JVM and is measured from JVM
+ * start, so class loading and JIT warm-up are included like in a real
+ * cold start. Window and GL setup are the same for both and not included.
+ * It also checks the snapshot gives the same countries, cities and quakes.
+ *
+ * gradle benchmark -Pbenchmark=SnapshotBenchmark -PbenchmarkArgs="[quakes] [runs]"
+ */
+public class SnapshotBenchmark {
+
+	public static void main(String[] args) throws Exception
+	{
+		if(args.length > 0 && (args[0].equals("json") || args[0].equals("snapshot")))
+		{
+			child(args[0], new File(args[1]), new File(args[2]));
+			return;
+		}
+		int quakes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		File dir = Files.createTempDirectory("snapshot-bench").toFile();
+		File feed = new File(dir, "feed.atom");
+		File snapshot = new File(dir, "geodata.snapshot");
+		BenchmarkData.writeAtomFeed(feed, quakes, 3);
+
+		verify(feed, snapshot);
+		System.out.printf("feed: %d quakes, snapshot: %.1f KB%n", quakes, snapshot.length() / 1e3);
+
+		double[] json = new double[runs];
+		double[] snap = new double[runs];
+		for(int i = 0; i < runs; i++)
+		{
+			json[i] = spawn("json", feed, snapshot);
+			snap[i] = spawn("snapshot", feed, snapshot);
+		}
+		report("json", json);
+		report("snapshot", snap);
+	}
+
+	//one cold start, prints the milliseconds since JVM start
+	private static void child(String mode, File feed, File snapshot) throws Exception
+	{
+		Loaded loaded = mode.equals("json") ? loadFromJSON(feed) : loadFromSnapshot(snapshot);
+		long uptime = ManagementFactory.getRuntimeMXBean().getUptime();
+		if(loaded == null || loaded.quakeMarkers.isEmpty())
+		{
+			throw new IllegalStateException("nothing loaded");
+		}
+		System.out.println(uptime);
+	}
+
+	private static double spawn(String mode, File feed, File snapshot) throws Exception
+	{
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				SnapshotBenchmark.class.getName(), mode, feed.getPath(), snapshot.getPath())
+				.redirectErrorStream(true).start();
+		BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+		String line;
+		String last = null;
+		while((line = out.readLine()) != null)
+		{
+			last = line;
+		}
+		if(process.waitFor() != 0)
+		{
+			throw new IllegalStateException(mode + " start failed: " + last);
+		}
+		return Double.parseDouble(last);
+	}
+
+	//what setup() has before the first frame
+	private static class Loaded
+	{
+		CountryIndex countryIndex;
+		List<Marker> cityMarkers = new ArrayList<Marker>();
+		QuakeCatalog catalog;
+		List<EarthquakeMarker> quakeMarkers = new ArrayList<EarthquakeMarker>();
+	}
+
+	private static Loaded loadFromJSON(File feed) throws Exception
+	{
+		Loaded loaded = new Loaded();
+		List<Marker> countryMarkers = MapUtils.createSimpleMarkers(BenchmarkData.loadFeatures(BenchmarkData.COUNTRY_FILE));
+		loaded.countryIndex = new CountryIndex(countryMarkers);
+		loaded.countryIndex.setLandMask(LandMask.build(loaded.countryIndex, 20));
+		for(Feature city : BenchmarkData.loadFeatures(BenchmarkData.CITY_FILE))
+		{
+			loaded.cityMarkers.add(new CityMarker(city));
+		}
+		loaded.catalog = new QuakeCatalog();
+		for(PointFeature quake : ParseFeed.parseEarthquakeStream(feed.getPath()))
+		{
+			String country = loaded.countryIndex.findCountry(quake.getLocation());
+			if(country != null)
+			{
+				quake.addProperty("country", country);
+			}
+			int row = loaded.catalog.add(quake);
+			addMarker(loaded, row, FeedPoller.keyOf(quake));
+		}
+		return loaded;
+	}
+
+	private static Loaded loadFromSnapshot(File file) throws Exception
+	{
+		GeoSnapshot snapshot = GeoSnapshot.load(file, sourceChecksum());
+		if(snapshot == null)
+		{
+			return null;
+		}
+		Loaded loaded = new Loaded();
+		loaded.countryIndex = snapshot.getCountryIndex();
+		for(Feature city : snapshot.getCities())
+		{
+			loaded.cityMarkers.add(new CityMarker(city));
+		}
+		loaded.catalog = snapshot.getQuakes();
+		String[] ids = snapshot.getQuakeIds();
+		for(int row = 0; row < ids.length; row++)
+		{
+			addMarker(loaded, row, ids[row]);
+		}
+		return loaded;
+	}
+
+	private static void addMarker(Loaded loaded, int row, String id)
+	{
+		EarthquakeMarker marker = loaded.catalog.isOnLand(row)
+				? new LandQuakeMarker(loaded.catalog, row) : new OceanQuakeMarker(loaded.catalog, row);
+		marker.setId(id);
+		loaded.quakeMarkers.add(marker);
+	}
+
+	private static long sourceChecksum() throws Exception
+	{
+		return GeoSnapshot.checksum(new File(BenchmarkData.COUNTRY_FILE), new File(BenchmarkData.CITY_FILE));
+	}
+
+	//writes the snapshot from the JSON load and compares both loads
+	private static void verify(File feed, File file) throws Exception
+	{
+		Loaded json = loadFromJSON(feed);
+		int[] rows = new int[json.quakeMarkers.size()];
+		String[] ids = new String[rows.length];
+		for(int i = 0; i < rows.length; i++)
+		{
+			rows[i] = json.quakeMarkers.get(i).getRow();
+			ids[i] = json.quakeMarkers.get(i).getId();
+		}
+		GeoSnapshot.write(file, sourceChecksum(), json.countryIndex, json.cityMarkers, json.catalog, rows, ids);
+		Loaded snap = loadFromSnapshot(file);
+
+		int mismatches = 0;
+		for(Location point : BenchmarkData.randomLocations(100000, 11))
+		{
+			if(json.countryIndex.findCountryIndex(point.x, point.y) != snap.countryIndex.findCountryIndex(point.x, point.y))
+			{
+				mismatches++;
+			}
+		}
+		for(int i = 0; i < json.cityMarkers.size(); i++)
+		{
+			Marker a = json.cityMarkers.get(i);
+			Marker b = snap.cityMarkers.get(i);
+			if(!a.getLocation().equals(b.getLocation()) || !a.getProperties().equals(b.getProperties()))
+			{
+				mismatches++;
+			}
+		}
+		for(int i = 0; i < json.quakeMarkers.size(); i++)
+		{
+			EarthquakeMarker a = json.quakeMarkers.get(i);
+			EarthquakeMarker b = snap.quakeMarkers.get(i);
+			if(!a.getId().equals(b.getId()) || !a.getProperties().equals(b.getProperties())
+					|| !a.getLocation().equals(b.getLocation()))
+			{
+				mismatches++;
+			}
+		}
+		System.out.println("snapshot vs JSON mismatches: " + mismatches);
+
+		//a stale checksum must not load
+		if(GeoSnapshot.load(file, sourceChecksum() + 1) != null)
+		{
+			throw new IllegalStateException("stale snapshot was accepted");
+		}
+	}
+
+	private static void report(String label, double[] millis)
+	{
+		double[] sorted = millis.clone();
+		Arrays.sort(sorted);
+		System.out.printf("%-9s median %6.0f ms  (min %.0f, max %.0f)%n",
+				label, sorted[sorted.length / 2], sorted[0], sorted[sorted.length - 1]);
+	}
+}
@@ -0,0 +1,221 @@
+package benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.fhpotsdam.unfolding.core.Coordinate;
+import de.fhpotsdam.unfolding.providers.Microsoft;
+import processing.core.PImage;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import tiles.CachingTileProvider;
+import tiles.MBTilesStore;
+
+/*
+ * A pan and zoom session over a local stand-in of the tile server, which
+ * answers every tile after a fixed delay like a distant server. Each view
+ * is a 4 by 3 tile window as the 700x550 map shows; the tiles the map has
+ * not loaded yet in the session are loaded by four threads like
+ * Unfolding's tile loaders, then the user waits before the next pan.
+ * Reports how long the views took to fill, the tile latency, the hit
+ * rate and what the server saw, for:
+ *   cold          empty cache, no prefetch: every tile waits for the server
+ *   cold+prefetch empty cache with prefetching during the pauses
+ *   restart       a new provider on the same MBTiles file
+ *   offline       the same with the server gone
+ *
+ * gradle benchmark -Pbenchmark=TileCacheBenchmark -PbenchmarkArgs="[server delay ms] [pause ms]"
+ */
+public class TileCacheBenchmark {
+
+	private static final int LOADERS = 4;
+	private static final int VIEW_COLUMNS = 4;
+	private static final int VIEW_ROWS = 3;
+
+	private static byte[] tile;
+	private static int delayMillis;
+	private static final AtomicInteger served = new AtomicInteger();
+
+	public static void main(String[] args) throws Exception
+	{
+		delayMillis = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		int pauseMillis = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		Metrics.setEnabled(true);
+
+		//a noisy 256px JPEG, about the size of a satellite tile
+		BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+		java.util.Random random = new java.util.Random(5);
+		for(int y = 0; y < 256; y++)
+		{
+			for(int x = 0; x < 256; x++)
+			{
+				image.setRGB(x, y, (x * 40 + y * 3) << 8 | random.nextInt(64));
+			}
+		}
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", encoded);
+		tile = encoded.toByteArray();
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new TileHandler());
+		server.setExecutor(Executors.newFixedThreadPool(8));
+		server.start();
+		final String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		Microsoft.MicrosoftProvider stub = new Microsoft.MicrosoftProvider() {
+			public String[] getTileUrls(Coordinate coordinate)
+			{
+				return new String[] { base + (int)coordinate.zoom + "/" + (int)coordinate.column + "/" + (int)coordinate.row + ".jpg" };
+			}
+		};
+		List<List<Coordinate>> session = session();
+		System.out.printf("%d views, %d byte tiles, server delay %d ms, %d ms between pans%n",
+				session.size(), tile.length, delayMillis, pauseMillis);
+		System.out.printf("%-14s %22s %22s %9s %8s %10s %8s%n", "", "view fill p50/p99/max", "tile p50/p99/max",
+				"hit rate", "server", "prefetched", "blank");
+
+		File dir = Files.createTempDirectory("tiles").toFile();
+		File noPrefetch = new File(dir, "cold.mbtiles");
+		File cache = new File(dir, "tiles.mbtiles");
+		run("cold", stub, noPrefetch, false, session, pauseMillis);
+		run("cold+prefetch", stub, cache, true, session, pauseMillis);
+		run("restart", stub, cache, true, session, pauseMillis);
+		server.stop(0);
+		run("offline", stub, cache, true, session, pauseMillis);
+		for(File file : dir.listFiles())
+		{
+			file.delete();
+		}
+		dir.delete();
+		System.exit(0);
+	}
+
+	//pans east and south at zoom 4, zooms in and pans back west
+	private static List<List<Coordinate>> session()
+	{
+		List<List<Coordinate>> views = new ArrayList<List<Coordinate>>();
+		int column = 3;
+		int row = 4;
+		for(int i = 0; i < 8; i++)
+		{
+			views.add(view(4, column++, row));
+		}
+		for(int i = 0; i < 4; i++)
+		{
+			views.add(view(4, column, row++));
+		}
+		column = column * 2 + 1;
+		row = row * 2 + 1;
+		for(int i = 0; i < 8; i++)
+		{
+			views.add(view(5, column--, row));
+		}
+		return views;
+	}
+
+	private static List<Coordinate> view(int zoom, int column, int row)
+	{
+		List<Coordinate> tiles = new ArrayList<Coordinate>();
+		for(int y = 0; y < VIEW_ROWS; y++)
+		{
+			for(int x = 0; x < VIEW_COLUMNS; x++)
+			{
+				tiles.add(new Coordinate(row + y, column + x, zoom));
+			}
+		}
+		return tiles;
+	}
+
+	private static void run(String name, Microsoft.MicrosoftProvider server, File file, boolean prefetch,
+			List<List<Coordinate>> session, int pauseMillis) throws Exception
+	{
+		final CachingTileProvider provider = new CachingTileProvider(server, new MBTilesStore(file, "benchmark", "jpg"), 64L << 20);
+		provider.setPrefetchEnabled(prefetch);
+		final LatencyHistogram tiles = Metrics.histogram("benchmark." + name + ".tile");
+		LatencyHistogram views = Metrics.histogram("benchmark." + name + ".view");
+		ExecutorService loaders = Executors.newFixedThreadPool(LOADERS);
+		final AtomicInteger blank = new AtomicInteger();
+		int before = served.get();
+		//tiles the map already has, it keeps them for the session
+		Set<Coordinate> loaded = new HashSet<Coordinate>();
+		for(List<Coordinate> view : session)
+		{
+			long start = System.nanoTime();
+			List<Future<?>> pending = new ArrayList<Future<?>>();
+			for(final Coordinate coordinate : view)
+			{
+				if(loaded.add(coordinate))
+				{
+					pending.add(loaders.submit(new Callable<Void>() {
+						public Void call()
+						{
+							long tileStart = System.nanoTime();
+							PImage image = provider.getTile(coordinate);
+							tiles.record(System.nanoTime() - tileStart);
+							if(image == null)
+							{
+								blank.incrementAndGet();
+							}
+							return null;
+						}
+					}));
+				}
+			}
+			for(Future<?> future : pending)
+			{
+				future.get();
+			}
+			views.record(System.nanoTime() - start);
+			Thread.sleep(pauseMillis);
+		}
+		loaders.shutdown();
+		LatencyHistogram.Snapshot view = views.snapshot();
+		LatencyHistogram.Snapshot latency = tiles.snapshot();
+		System.out.printf("%-14s %22s %22s %8.0f%% %8d %10d %8d%n", name,
+				Metrics.millis(view.getPercentile(50)) + "/" + Metrics.millis(view.getPercentile(99)) + "/" + Metrics.millis(view.getMax()),
+				Metrics.millis(latency.getPercentile(50)) + "/" + Metrics.millis(latency.getPercentile(99)) + "/" + Metrics.millis(latency.getMax()),
+				provider.getHitRate() * 100, served.get() - before, provider.getPrefetched(), blank.get());
+		provider.close();
+	}
+
+	private static class TileHandler implements HttpHandler
+	{
+		public void handle(HttpExchange exchange) throws IOException
+		{
+			served.incrementAndGet();
+			try
+			{
+				Thread.sleep(delayMillis);
+			}
+			catch(InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+			exchange.sendResponseHeaders(200, tile.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(tile);
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,459 @@
+package catalog;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import spatial.CountryIndex;
+import spatial.LandMask;
+
+/*
+ * Binary snapshot of everything setup() derives from the JSON files and the feed:
+ * the country polygons, the city table and the last classified quakes.
+ *
+ * Polygon vertices are stored as two flat float arrays with part offsets,
+ * quakes column by column like QuakeCatalog, so loading is a few bulk
+ * reads from one read of the file instead of JSON parsing, marker creation
+ * and point-in-polygon tests. The land mask of the countries is stored
+ * with them, so it is only rasterized on the first start. The header holds a checksum of the source
+ * JSON files; a snapshot written from other sources, an older format or a
+ * damaged file is ignored and the caller rebuilds from the JSON.
+ *
+ * Layout (big endian):
+ * 	header: magic, version, source checksum, body length, body CRC32
+ * 	countries: names, part owners, part offsets, lats, lons
+ * 	land mask: cells per degree (0 for none), block codes, block cells, cells
+ * 	cities: location and string properties
+ * 	quakes: float/long columns, then id, title, country and age per row
+ */
+public class GeoSnapshot {
+
+	private static final int MAGIC = 0x45515331; //"EQS1"
+	private static final int VERSION = 3;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 8;
+
+	private final CountryIndex countryIndex;
+	private final List<PointFeature> cities;
+	private final QuakeCatalog quakes;
+	private final String[] quakeIds;
+
+	private GeoSnapshot(CountryIndex countryIndex, List<PointFeature> cities,
+			QuakeCatalog quakes, String[] quakeIds)
+	{
+		this.countryIndex = countryIndex;
+		this.cities = cities;
+		this.quakes = quakes;
+		this.quakeIds = quakeIds;
+	}
+
+	public CountryIndex getCountryIndex()
+	{
+		return countryIndex;
+	}
+
+	//city features with the properties of the city JSON file
+	public List<PointFeature> getCities()
+	{
+		return cities;
+	}
+
+	//classified quakes, row i has the feed id getQuakeIds()[i]
+	public QuakeCatalog getQuakes()
+	{
+		return quakes;
+	}
+
+	public String[] getQuakeIds()
+	{
+		return quakeIds;
+	}
+
+	/*
+	 * Checksum of the source files a snapshot is built from.
+	 * Any change to their content gives a different value.
+	 */
+	public static long checksum(File... sources) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		long length = 0;
+		for(File source : sources)
+		{
+			byte[] bytes = Files.readAllBytes(source.toPath());
+			crc.update(bytes);
+			length += bytes.length;
+		}
+		return (length << 32) ^ crc.getValue();
+	}
+
+	/*
+	 * Reads a snapshot. Returns null if the file does not exist, was built
+	 * from other sources or is damaged.
+	 *
+	 * The file is read into the heap rather than mapped: every column is
+	 * copied into arrays anyway, and a live mapping would keep Windows from
+	 * replacing the file when the snapshot is written again.
+	 */
+	public static GeoSnapshot load(File file, long sourceChecksum) throws IOException
+	{
+		if(!file.isFile())
+		{
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+		if(buffer.remaining() < HEADER_SIZE)
+		{
+			return null;
+		}
+		try
+		{
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != sourceChecksum)
+			{
+				return null;
+			}
+			int bodyLength = buffer.getInt();
+			long bodyCrc = buffer.getLong();
+			if(bodyLength != buffer.remaining())
+			{
+				System.err.println("Ignoring truncated snapshot " + file);
+				return null;
+			}
+			CRC32 crc = new CRC32();
+			crc.update(buffer.duplicate());
+			if(crc.getValue() != bodyCrc)
+			{
+				System.err.println("Ignoring damaged snapshot " + file);
+				return null;
+			}
+			return read(buffer);
+		}
+		catch(BufferUnderflowException e)
+		{
+			System.err.println("Ignoring damaged snapshot " + file);
+			return null;
+		}
+	}
+
+	/*
+	 * Writes a snapshot, replacing the file only once it is complete.
+	 *
+	 * @param cities - city markers, their properties are stored as strings
+	 * @param quakeRows - catalog rows of the quakes to store, in marker order
+	 * @param quakeIds - feed id of every stored row
+	 */
+	public static void write(File file, long sourceChecksum, CountryIndex countries,
+			List<Marker> cities, QuakeCatalog catalog, int[] quakeRows, String[] quakeIds) throws IOException
+	{
+		File dir = file.getAbsoluteFile().getParentFile();
+		if(dir != null && !dir.exists() && !dir.mkdirs())
+		{
+			throw new IOException("Could not create snapshot directory " + dir);
+		}
+
+		//the body is built in memory first so the header can carry its CRC
+		ByteArrayOutputStream body = new ByteArrayOutputStream(1 << 20);
+		DataOutputStream out = new DataOutputStream(body);
+		writeCountries(out, countries);
+		writeLandMask(out, countries.getLandMask());
+		writeCities(out, cities);
+		writeQuakes(out, catalog, quakeRows, quakeIds);
+		out.flush();
+		CRC32 crc = new CRC32();
+		crc.update(body.toByteArray());
+
+		File temp = File.createTempFile(file.getName(), ".part", dir);
+		try
+		{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024));
+			try
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(sourceChecksum);
+				out.writeInt(body.size());
+				out.writeLong(crc.getValue());
+				body.writeTo(out);
+			}
+			finally
+			{
+				out.close();
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally
+		{
+			temp.delete();
+		}
+	}
+
+	private static void writeCountries(DataOutputStream out, CountryIndex countries) throws IOException
+	{
+		out.writeInt(countries.getCountryCount());
+		for(int c = 0; c < countries.getCountryCount(); c++)
+		{
+			writeString(out, countries.getCountryName(c));
+		}
+
+		int numParts = countries.getPartCount();
+		out.writeInt(numParts);
+		int coords = 0;
+		for(int p = 0; p < numParts; p++)
+		{
+			out.writeInt(countries.getPartCountry(p));
+		}
+		for(int p = 0; p < numParts; p++)
+		{
+			out.writeInt(coords);
+			coords += countries.getPartLats(p).length;
+		}
+		out.writeInt(coords);
+		for(int p = 0; p < numParts; p++)
+		{
+			for(float lat : countries.getPartLats(p))
+			{
+				out.writeFloat(lat);
+			}
+		}
+		for(int p = 0; p < numParts; p++)
+		{
+			for(float lon : countries.getPartLons(p))
+			{
+				out.writeFloat(lon);
+			}
+		}
+	}
+
+	private static void writeLandMask(DataOutputStream out, LandMask mask) throws IOException
+	{
+		if(mask == null)
+		{
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(mask.getCellsPerDegree());
+		for(short code : mask.getBlockCodes())
+		{
+			out.writeShort(code);
+		}
+		for(int cells : mask.getBlockCells())
+		{
+			out.writeInt(cells);
+		}
+		out.writeInt(mask.getCells().length);
+		for(short code : mask.getCells())
+		{
+			out.writeShort(code);
+		}
+	}
+
+	private static void writeCities(DataOutputStream out, List<Marker> cities) throws IOException
+	{
+		out.writeInt(cities.size());
+		for(Marker city : cities)
+		{
+			Location location = city.getLocation();
+			out.writeFloat(location.getLat());
+			out.writeFloat(location.getLon());
+
+			HashMap<String, Object> properties = city.getProperties();
+			int count = 0;
+			for(Object value : properties.values())
+			{
+				if(value != null)
+				{
+					count++;
+				}
+			}
+			out.writeInt(count);
+			for(Map.Entry<String, Object> property : properties.entrySet())
+			{
+				if(property.getValue() != null)
+				{
+					writeString(out, property.getKey());
+					writeString(out, property.getValue().toString());
+				}
+			}
+		}
+	}
+
+	private static void writeQuakes(DataOutputStream out, QuakeCatalog catalog,
+			int[] rows, String[] ids) throws IOException
+	{
+		out.writeInt(rows.length);
+		for(int row : rows)
+		{
+			out.writeFloat(catalog.getLat(row));
+		}
+		for(int row : rows)
+		{
+			out.writeFloat(catalog.getLon(row));
+		}
+		for(int row : rows)
+		{
+			out.writeFloat(catalog.getMagnitude(row));
+		}
+		for(int row : rows)
+		{
+			out.writeFloat(catalog.getDepth(row));
+		}
+		for(int row : rows)
+		{
+			out.writeLong(catalog.getTime(row));
+		}
+		for(int row : rows)
+		{
+			out.writeLong(catalog.getUpdated(row));
+		}
+		for(int i = 0; i < rows.length; i++)
+		{
+			writeString(out, ids[i]);
+			writeString(out, catalog.getTitle(rows[i]));
+			writeString(out, catalog.getCountry(rows[i]));
+			writeString(out, catalog.getAge(rows[i]));
+		}
+	}
+
+	private static GeoSnapshot read(ByteBuffer in)
+	{
+		//countries
+		String[] names = new String[in.getInt()];
+		for(int c = 0; c < names.length; c++)
+		{
+			names[c] = readString(in);
+		}
+		int numParts = in.getInt();
+		int[] partCountry = new int[numParts];
+		int[] offsets = new int[numParts + 1];
+		in.asIntBuffer().get(partCountry);
+		in.position(in.position() + 4 * numParts);
+		in.asIntBuffer().get(offsets);
+		in.position(in.position() + 4 * (numParts + 1));
+		float[] lats = new float[offsets[numParts]];
+		float[] lons = new float[offsets[numParts]];
+		in.asFloatBuffer().get(lats);
+		in.position(in.position() + 4 * lats.length);
+		in.asFloatBuffer().get(lons);
+		in.position(in.position() + 4 * lons.length);
+
+		float[][] partLats = new float[numParts][];
+		float[][] partLons = new float[numParts][];
+		for(int p = 0; p < numParts; p++)
+		{
+			partLats[p] = Arrays.copyOfRange(lats, offsets[p], offsets[p + 1]);
+			partLons[p] = Arrays.copyOfRange(lons, offsets[p], offsets[p + 1]);
+		}
+		CountryIndex countryIndex = new CountryIndex(names, partLats, partLons, partCountry);
+
+		//land mask
+		int cellsPerDegree = in.getInt();
+		if(cellsPerDegree > 0)
+		{
+			short[] blockCodes = new short[180 * 360];
+			int[] blockCells = new int[blockCodes.length];
+			in.asShortBuffer().get(blockCodes);
+			in.position(in.position() + 2 * blockCodes.length);
+			in.asIntBuffer().get(blockCells);
+			in.position(in.position() + 4 * blockCells.length);
+			short[] cells = new short[in.getInt()];
+			in.asShortBuffer().get(cells);
+			in.position(in.position() + 2 * cells.length);
+			countryIndex.setLandMask(new LandMask(cellsPerDegree, blockCodes, blockCells, cells));
+		}
+
+		//cities
+		int numCities = in.getInt();
+		List<PointFeature> cities = new ArrayList<PointFeature>(numCities);
+		for(int i = 0; i < numCities; i++)
+		{
+			float lat = in.getFloat();
+			float lon = in.getFloat();
+			PointFeature city = new PointFeature(new Location(lat, lon));
+			int numProperties = in.getInt();
+			for(int j = 0; j < numProperties; j++)
+			{
+				String key = readString(in);
+				city.putProperty(key, readString(in));
+			}
+			cities.add(city);
+		}
+
+		//quakes
+		int numQuakes = in.getInt();
+		float[] quakeLat = new float[numQuakes];
+		float[] quakeLon = new float[numQuakes];
+		float[] magnitude = new float[numQuakes];
+		float[] depth = new float[numQuakes];
+		long[] time = new long[numQuakes];
+		long[] updated = new long[numQuakes];
+		for(float[] column : new float[][] { quakeLat, quakeLon, magnitude, depth })
+		{
+			in.asFloatBuffer().get(column);
+			in.position(in.position() + 4 * numQuakes);
+		}
+		for(long[] column : new long[][] { time, updated })
+		{
+			in.asLongBuffer().get(column);
+			in.position(in.position() + 8 * numQuakes);
+		}
+
+		QuakeCatalog quakes = new QuakeCatalog();
+		String[] ids = new String[numQuakes];
+		for(int i = 0; i < numQuakes; i++)
+		{
+			ids[i] = readString(in);
+			String title = readString(in);
+			String country = readString(in);
+			String age = readString(in);
+			quakes.add(quakeLat[i], quakeLon[i], magnitude[i], depth[i], time[i], updated[i], title, country, age);
+		}
+		quakes.trimToSize();
+
+		return new GeoSnapshot(countryIndex, cities, quakes, ids);
+	}
+
+	//length prefixed UTF-8, -1 for null
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		if(value == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer in)
+	{
+		int length = in.getInt();
+		if(length < 0)
+		{
+			return null;
+		}
+		if(length > in.remaining())
+		{
+			throw new BufferUnderflowException();
+		}
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,356 @@
+package catalog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/*
+ * Column store for parsed earthquakes.
+ *
+ * Instead of one PointFeature with a HashMap of boxed properties per quake,
+ * every attribute lives in its own primitive array and a quake is just a
+ * row index. Countries and age categories are interned into string tables
+ * so repeated values are stored once, and titles, which are unique per
+ * quake, are packed as UTF-8 into a single byte array. EarthquakeMarker
+ * reads its data straight from these columns.
+ */
+public class QuakeCatalog {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	//age category the markers cross out
+	public static final String PAST_DAY = "Past Day";
+
+	private int size = 0;
+
+	private float[] lat = new float[INITIAL_CAPACITY];
+	private float[] lon = new float[INITIAL_CAPACITY];
+	private float[] magnitude = new float[INITIAL_CAPACITY];
+	private float[] depth = new float[INITIAL_CAPACITY];
+	private long[] time = new long[INITIAL_CAPACITY];
+	//time of the last update, the version FeedPoller compares
+	private long[] updated = new long[INITIAL_CAPACITY];
+
+	//indices into the string tables, -1 when missing
+	private int[] country = new int[INITIAL_CAPACITY];
+	private int[] age = new int[INITIAL_CAPACITY];
+
+	private final StringTable countries = new StringTable();
+	private final StringTable ages = new StringTable();
+	private int pastDayAge = -1;
+
+	//row i's title is titleBytes[titleStart[i] .. titleStart[i+1])
+	private byte[] titleBytes = new byte[INITIAL_CAPACITY * 32];
+	private int[] titleStart = new int[INITIAL_CAPACITY + 1];
+	private int titleEnd = 0;
+	private boolean[] hasTitle = new boolean[INITIAL_CAPACITY];
+
+	//rows of the column arrays written so far, shared with the copies that
+	//share the arrays: only the copy that moves it on may append in place
+	private AtomicInteger columnsEnd = new AtomicInteger();
+
+	/*
+	 * Appends a parsed quake and returns its row.
+	 * Reads the properties set by ParseFeed, plus "country" if the
+	 * quake has already been classified as a land quake. Quakes without
+	 * "updated" were last updated at their time.
+	 */
+	public int add(PointFeature feature)
+	{
+		HashMap<String, Object> properties = feature.getProperties();
+		Object timeProperty = properties.get("time");
+		Object updatedProperty = properties.get("updated");
+		long time = timeProperty == null ? 0 : Long.parseLong(timeProperty.toString());
+		return add(feature.getLocation().getLat(), feature.getLocation().getLon(),
+				Float.parseFloat(properties.get("magnitude").toString()),
+				Float.parseFloat(properties.get("depth").toString()),
+				time, updatedProperty == null ? time : Long.parseLong(updatedProperty.toString()),
+				(String)properties.get("title"),
+				(String)properties.get("country"),
+				(String)properties.get("age"));
+	}
+
+	public int add(float lat, float lon, float magnitude, float depth, long time, long updated,
+			String title, String country, String age)
+	{
+		claimRow();
+		int row = size++;
+		this.lat[row] = lat;
+		this.lon[row] = lon;
+		this.magnitude[row] = magnitude;
+		this.depth[row] = depth;
+		this.time[row] = time;
+		this.updated[row] = updated;
+		this.country[row] = countries.intern(country);
+		this.age[row] = ages.intern(age);
+		if(pastDayAge < 0 && PAST_DAY.equals(age))
+		{
+			pastDayAge = this.age[row];
+		}
+		addTitle(row, title);
+		return row;
+	}
+
+	//appends a row of another catalog and returns its row here
+	public int add(QuakeCatalog from, int row)
+	{
+		return add(from.lat[row], from.lon[row], from.magnitude[row], from.depth[row], from.time[row], from.updated[row],
+				from.getTitle(row), from.getCountry(row), from.getAge(row));
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public float getLat(int row)
+	{
+		return lat[row];
+	}
+
+	public float getLon(int row)
+	{
+		return lon[row];
+	}
+
+	public Location getLocation(int row)
+	{
+		return new Location(lat[row], lon[row]);
+	}
+
+	public float getMagnitude(int row)
+	{
+		return magnitude[row];
+	}
+
+	public float getDepth(int row)
+	{
+		return depth[row];
+	}
+
+	public long getTime(int row)
+	{
+		return time[row];
+	}
+
+	public long getUpdated(int row)
+	{
+		return updated[row];
+	}
+
+	public String getTitle(int row)
+	{
+		if(!hasTitle[row])
+		{
+			return null;
+		}
+		int start = titleStart[row];
+		return new String(titleBytes, start, titleStart[row + 1] - start, StandardCharsets.UTF_8);
+	}
+
+	//country name for land quakes, null for ocean quakes
+	public String getCountry(int row)
+	{
+		return countries.get(country[row]);
+	}
+
+	//interned country of a row, -1 for ocean quakes
+	public int getCountryId(int row)
+	{
+		return country[row];
+	}
+
+	//number of distinct countries, ids are 0 .. getCountryCount()-1
+	public int getCountryCount()
+	{
+		return countries.size();
+	}
+
+	public String getCountryName(int countryId)
+	{
+		return countries.get(countryId);
+	}
+
+	public boolean isOnLand(int row)
+	{
+		return country[row] >= 0;
+	}
+
+	public String getAge(int row)
+	{
+		return ages.get(age[row]);
+	}
+
+	public boolean isPastDay(int row)
+	{
+		return age[row] >= 0 && age[row] == pastDayAge;
+	}
+
+	/*
+	 * Rebuilds the property map ParseFeed would have produced for a row,
+	 * for code that still wants the map (tooltips, printing).
+	 */
+	public HashMap<String, Object> getProperties(int row)
+	{
+		HashMap<String, Object> properties = new HashMap<String, Object>();
+		if(hasTitle[row])
+		{
+			properties.put("title", getTitle(row));
+		}
+		properties.put("magnitude", magnitude[row]);
+		properties.put("depth", depth[row]);
+		properties.put("radius", 2*magnitude[row]);
+		if(time[row] != 0)
+		{
+			properties.put("time", time[row]);
+		}
+		if(updated[row] != 0)
+		{
+			properties.put("updated", updated[row]);
+		}
+		if(age[row] >= 0)
+		{
+			properties.put("age", getAge(row));
+		}
+		if(country[row] >= 0)
+		{
+			properties.put("country", getCountry(row));
+		}
+		return properties;
+	}
+
+	/*
+	 * A catalog with the same rows, row numbers and country ids, which can
+	 * be appended to while this one is still read on other threads, as
+	 * long as this one is not appended to any more (see MarkerModel).
+	 *
+	 * The copy shares the column arrays: its rows go past the end of the
+	 * rows any reader reads, so the first copy to add a row appends in
+	 * place and only a second copy of the same catalog that adds rows, or
+	 * one that runs out of room, copies the columns. Markers of older
+	 * copies therefore keep no column arrays alive that the latest copy
+	 * does not use itself.
+	 */
+	public QuakeCatalog copy()
+	{
+		QuakeCatalog copy = new QuakeCatalog();
+		copy.size = size;
+		copy.lat = lat;
+		copy.lon = lon;
+		copy.magnitude = magnitude;
+		copy.depth = depth;
+		copy.time = time;
+		copy.updated = updated;
+		copy.country = country;
+		copy.age = age;
+		copy.countries.addAll(countries);
+		copy.ages.addAll(ages);
+		copy.pastDayAge = pastDayAge;
+		copy.titleBytes = titleBytes;
+		copy.titleStart = titleStart;
+		copy.titleEnd = titleEnd;
+		copy.hasTitle = hasTitle;
+		copy.columnsEnd = columnsEnd;
+		return copy;
+	}
+
+	//trims the columns to the number of rows
+	public void trimToSize()
+	{
+		resize(size);
+		titleBytes = Arrays.copyOf(titleBytes, titleEnd);
+	}
+
+	private void addTitle(int row, String title)
+	{
+		hasTitle[row] = title != null;
+		if(title != null)
+		{
+			byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+			if(titleEnd + bytes.length > titleBytes.length)
+			{
+				titleBytes = Arrays.copyOf(titleBytes, Math.max(titleBytes.length * 2, titleEnd + bytes.length));
+			}
+			System.arraycopy(bytes, 0, titleBytes, titleEnd, bytes.length);
+			titleEnd += bytes.length;
+		}
+		titleStart[row + 1] = titleEnd;
+	}
+
+	//makes room for the next row in columns no other copy writes to
+	private void claimRow()
+	{
+		if(size < lat.length && columnsEnd.compareAndSet(size, size + 1))
+		{
+			return;
+		}
+		//full, or another copy appended to the shared columns first
+		resize(size < lat.length ? lat.length : Math.max(INITIAL_CAPACITY, lat.length * 2));
+		titleBytes = Arrays.copyOf(titleBytes, Math.max(titleBytes.length, titleEnd));
+		columnsEnd.set(size + 1);
+	}
+
+	private void resize(int capacity)
+	{
+		lat = Arrays.copyOf(lat, capacity);
+		lon = Arrays.copyOf(lon, capacity);
+		magnitude = Arrays.copyOf(magnitude, capacity);
+		depth = Arrays.copyOf(depth, capacity);
+		time = Arrays.copyOf(time, capacity);
+		updated = Arrays.copyOf(updated, capacity);
+		titleStart = Arrays.copyOf(titleStart, capacity + 1);
+		hasTitle = Arrays.copyOf(hasTitle, capacity);
+		country = Arrays.copyOf(country, capacity);
+		age = Arrays.copyOf(age, capacity);
+		//the new columns are not shared yet
+		columnsEnd = new AtomicInteger(size);
+	}
+
+	//stores every distinct string once and hands out ids
+	private static class StringTable
+	{
+		private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		private final List<String> values = new ArrayList<String>();
+
+		int intern(String value)
+		{
+			if(value == null)
+			{
+				return -1;
+			}
+			Integer id = ids.get(value);
+			if(id == null)
+			{
+				id = values.size();
+				ids.put(value, id);
+				values.add(value);
+			}
+			return id;
+		}
+
+		//interns the values of another table in order, so they keep their ids
+		void addAll(StringTable other)
+		{
+			for(String value : other.values)
+			{
+				intern(value);
+			}
+		}
+
+		String get(int id)
+		{
+			return id < 0 ? null : values.get(id);
+		}
+
+		int size()
+		{
+			return values.size();
+		}
+	}
+}
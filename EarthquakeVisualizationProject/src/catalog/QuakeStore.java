@@ -0,0 +1,336 @@
+package catalog;
+
+import java.io.Closeable;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import parsing.FeedPoller;
+import parsing.ParseFeed;
+
+/*
+ * Every quake the feed ever reported, in a SQLite file, so the map can
+ * show months of history although the feed only covers the last week.
+ *
+ * One row per feed id with the classified quake: location, magnitude,
+ * depth, time, the updated time the feed poller compares, title and
+ * country. There are indexes on time and on magnitude, and the locations
+ * are in an R*Tree (the rtree module of SQLite) keyed by the row id, so
+ * a query for a region only reads the quakes inside its box.
+ *
+ * Quakes are upserted in one transaction per call: an insert which is
+ * ignored if the id is stored, the common case of a new quake, and then
+ * an update of the stored row. SQLite's INSERT OR REPLACE would give the
+ * quake a new row id and leave its R*Tree entry behind, and the bundled
+ * SQLite 3.7.2 has no ON CONFLICT DO UPDATE.
+ *
+ * One connection is shared by all threads and every call is synchronized
+ * on the store.
+ */
+public class QuakeStore implements Closeable {
+
+	//rows per transaction of a large upsert, so the journal stays small
+	private static final int BATCH_SIZE = 10000;
+	//rows counted per index to pick the narrower one, see narrowerIndex
+	private static final int PROBE_LIMIT = 20000;
+
+	private static final LatencyHistogram UPSERT_TIME = Metrics.histogram("store.upsert");
+	private static final LatencyHistogram QUERY_TIME = Metrics.histogram("store.query");
+
+	private final Connection connection;
+	private final PreparedStatement update;
+	private final PreparedStatement insert;
+	private final PreparedStatement insertBox;
+	private final PreparedStatement updateBox;
+
+	public QuakeStore(File file) throws SQLException
+	{
+		try
+		{
+			Class.forName("org.sqlite.JDBC");
+		}
+		catch(ClassNotFoundException e)
+		{
+			throw new SQLException("sqlite-jdbc is not on the class path", e);
+		}
+		File dir = file.getAbsoluteFile().getParentFile();
+		if(dir != null)
+		{
+			dir.mkdirs();
+		}
+		connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+		Statement statement = connection.createStatement();
+		try
+		{
+			statement.execute("PRAGMA journal_mode=WAL");
+			statement.execute("PRAGMA synchronous=NORMAL");
+			statement.execute("PRAGMA cache_size=20000");
+			statement.execute("CREATE TABLE IF NOT EXISTS quakes (id TEXT NOT NULL UNIQUE, time INTEGER,"
+					+ " updated INTEGER, magnitude REAL, depth REAL, lat REAL, lon REAL, title TEXT, country TEXT)");
+			statement.execute("CREATE INDEX IF NOT EXISTS quakes_time ON quakes (time)");
+			statement.execute("CREATE INDEX IF NOT EXISTS quakes_magnitude ON quakes (magnitude)");
+			//the bundled SQLite 3.7.2 has no IF NOT EXISTS for virtual tables
+			ResultSet box = statement.executeQuery("SELECT 1 FROM sqlite_master WHERE name = 'quakes_box'");
+			boolean exists = box.next();
+			box.close();
+			if(!exists)
+			{
+				statement.execute("CREATE VIRTUAL TABLE quakes_box USING rtree(id, min_lat, max_lat, min_lon, max_lon)");
+			}
+		}
+		finally
+		{
+			statement.close();
+		}
+		update = connection.prepareStatement("UPDATE quakes SET time = ?, updated = ?, magnitude = ?, depth = ?,"
+				+ " lat = ?, lon = ?, title = ?, country = ? WHERE id = ?");
+		insert = connection.prepareStatement("INSERT OR IGNORE INTO quakes (time, updated, magnitude, depth, lat, lon, title, country, id)"
+				+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+		insertBox = connection.prepareStatement("INSERT INTO quakes_box VALUES (last_insert_rowid(), ?, ?, ?, ?)");
+		updateBox = connection.prepareStatement("UPDATE quakes_box SET min_lat = ?, max_lat = ?, min_lon = ?, max_lon = ?"
+				+ " WHERE id = (SELECT rowid FROM quakes WHERE id = ?)");
+	}
+
+	/*
+	 * Adds the quakes or replaces the stored ones with the same feed id
+	 * (see FeedPoller.keyOf). They should be classified already, so the
+	 * store keeps their country. Returns the number of new quakes.
+	 */
+	public synchronized int upsert(List<PointFeature> quakes) throws SQLException
+	{
+		long start = UPSERT_TIME.start();
+		int added = 0;
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try
+		{
+			for(int i = 0; i < quakes.size(); i++)
+			{
+				PointFeature quake = quakes.get(i);
+				String id = FeedPoller.keyOf(quake);
+				bind(insert, quake, id);
+				PreparedStatement box = insertBox;
+				if(insert.executeUpdate() == 1)
+				{
+					added++;
+				}
+				else
+				{
+					bind(update, quake, id);
+					update.executeUpdate();
+					box = updateBox;
+					box.setString(5, id);
+				}
+				float lat = quake.getLocation().getLat();
+				float lon = quake.getLocation().getLon();
+				box.setDouble(1, lat);
+				box.setDouble(2, lat);
+				box.setDouble(3, lon);
+				box.setDouble(4, lon);
+				box.executeUpdate();
+				if((i + 1) % BATCH_SIZE == 0)
+				{
+					connection.commit();
+				}
+			}
+			connection.commit();
+		}
+		catch(SQLException e)
+		{
+			connection.rollback();
+			throw e;
+		}
+		finally
+		{
+			connection.setAutoCommit(autoCommit);
+		}
+		UPSERT_TIME.stop(start);
+		return added;
+	}
+
+	/*
+	 * The quakes of at least minMagnitude that happened from..to (epoch
+	 * milliseconds, inclusive) inside the box, oldest first, as features
+	 * with the properties ParseFeed and QuakeClassifier set. A box with
+	 * west > east crosses the date line. The age is worked out against
+	 * the current time, so quakes older than a month have none.
+	 */
+	public synchronized List<PointFeature> query(float minMagnitude, long from, long to,
+			float south, float west, float north, float east) throws SQLException
+	{
+		long start = QUERY_TIME.start();
+		boolean world = south <= -90 && north >= 90 && west <= -180 && east >= 180;
+		String sql = "SELECT q.id, q.time, q.updated, q.magnitude, q.depth, q.lat, q.lon, q.title, q.country FROM quakes q";
+		if(!world)
+		{
+			//the R*Tree finds the rows in the box first, the planner of 3.7.2 would probe it per
+			//row; the unary + keeps it from using an index on the other columns instead
+			sql += " WHERE q.rowid IN (SELECT id FROM quakes_box WHERE min_lat >= ? AND max_lat <= ?"
+					+ (west <= east ? " AND min_lon >= ? AND max_lon <= ?" : " AND (min_lon >= ? OR max_lon <= ?)")
+					+ ") AND +q.magnitude >= ? AND +q.time BETWEEN ? AND ?";
+		}
+		else
+		{
+			sql += " INDEXED BY " + narrowerIndex(minMagnitude, from, to)
+					+ " WHERE q.magnitude >= ? AND q.time BETWEEN ? AND ?";
+		}
+		sql += " ORDER BY q.time";
+
+		PreparedStatement statement = connection.prepareStatement(sql);
+		List<PointFeature> quakes = new ArrayList<PointFeature>();
+		try
+		{
+			int parameter = 1;
+			if(!world)
+			{
+				statement.setDouble(parameter++, south);
+				statement.setDouble(parameter++, north);
+				statement.setDouble(parameter++, west);
+				statement.setDouble(parameter++, east);
+			}
+			statement.setDouble(parameter++, minMagnitude);
+			statement.setLong(parameter++, from);
+			statement.setLong(parameter, to);
+			ResultSet result = statement.executeQuery();
+			long now = System.currentTimeMillis();
+			while(result.next())
+			{
+				quakes.add(toFeature(result, now));
+			}
+			result.close();
+		}
+		finally
+		{
+			statement.close();
+		}
+		QUERY_TIME.stop(start);
+		return quakes;
+	}
+
+	/*
+	 * The index with fewer rows in its range. The SQLite of sqlite-jdbc
+	 * 3.7.2 keeps no histograms, so its planner cannot tell "M5+" from
+	 * "the last 90 days"; counting up to PROBE_LIMIT rows of each range is
+	 * cheap and picks the right one when the ranges differ a lot.
+	 */
+	private String narrowerIndex(float minMagnitude, long from, long to) throws SQLException
+	{
+		PreparedStatement probe = connection.prepareStatement("SELECT"
+				+ " (SELECT COUNT(*) FROM (SELECT 1 FROM quakes INDEXED BY quakes_magnitude WHERE magnitude >= ? LIMIT ?)),"
+				+ " (SELECT COUNT(*) FROM (SELECT 1 FROM quakes INDEXED BY quakes_time WHERE time BETWEEN ? AND ? LIMIT ?))");
+		try
+		{
+			probe.setDouble(1, minMagnitude);
+			probe.setInt(2, PROBE_LIMIT);
+			probe.setLong(3, from);
+			probe.setLong(4, to);
+			probe.setInt(5, PROBE_LIMIT);
+			ResultSet result = probe.executeQuery();
+			result.next();
+			String index = result.getInt(1) < result.getInt(2) ? "quakes_magnitude" : "quakes_time";
+			result.close();
+			return index;
+		}
+		finally
+		{
+			probe.close();
+		}
+	}
+
+	public synchronized int size() throws SQLException
+	{
+		Statement statement = connection.createStatement();
+		try
+		{
+			ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM quakes");
+			return result.next() ? result.getInt(1) : 0;
+		}
+		finally
+		{
+			statement.close();
+		}
+	}
+
+	//updates the statistics the query planner picks indexes by, after large imports
+	public synchronized void analyze() throws SQLException
+	{
+		Statement statement = connection.createStatement();
+		try
+		{
+			statement.execute("ANALYZE");
+		}
+		finally
+		{
+			statement.close();
+		}
+	}
+
+	public synchronized void close()
+	{
+		try
+		{
+			connection.close();
+		}
+		catch(SQLException e)
+		{
+			System.err.println("Could not close the quake store: " + e);
+		}
+	}
+
+	//the parameters of update and insert, which list the columns in the same order
+	private static void bind(PreparedStatement statement, PointFeature quake, String id) throws SQLException
+	{
+		long time = longProperty(quake, "time");
+		Object updated = quake.getProperty("updated");
+		statement.setLong(1, time);
+		//the version FeedPoller compares, updated if the feed has it
+		statement.setLong(2, updated == null ? time : Long.parseLong(updated.toString()));
+		statement.setDouble(3, Float.parseFloat(quake.getProperty("magnitude").toString()));
+		statement.setDouble(4, Float.parseFloat(quake.getProperty("depth").toString()));
+		statement.setDouble(5, quake.getLocation().getLat());
+		statement.setDouble(6, quake.getLocation().getLon());
+		statement.setString(7, quake.getStringProperty("title"));
+		statement.setString(8, quake.getStringProperty("country"));
+		statement.setString(9, id);
+	}
+
+	private static long longProperty(PointFeature quake, String name)
+	{
+		Object value = quake.getProperty(name);
+		return value == null ? 0 : Long.parseLong(value.toString());
+	}
+
+	private static PointFeature toFeature(ResultSet result, long now) throws SQLException
+	{
+		PointFeature quake = new PointFeature(new Location(result.getFloat(6), result.getFloat(7)));
+		quake.setId(result.getString(1));
+		long time = result.getLong(2);
+		quake.putProperty("time", time);
+		quake.putProperty("updated", result.getLong(3));
+		quake.putProperty("magnitude", result.getFloat(4));
+		quake.putProperty("depth", result.getFloat(5));
+		quake.putProperty("title", result.getString(8));
+		String country = result.getString(9);
+		if(country != null)
+		{
+			quake.putProperty("country", country);
+		}
+		String age = ParseFeed.ageOf(time, now);
+		if(age != null)
+		{
+			quake.putProperty("age", age);
+		}
+		return quake;
+	}
+}
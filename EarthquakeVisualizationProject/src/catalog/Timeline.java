@@ -0,0 +1,126 @@
+package catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+ * Items sorted by time, for finding everything in a time slice.
+ *
+ * The times are kept in one sorted long array, so the items of any slice
+ * [from, to] are the index range indexOf(from) .. indexAfter(to), found
+ * with two binary searches instead of a scan over all items. Items with
+ * the same time keep the order they were given in.
+ *
+ * A Timeline does not change; build a new one when the items do.
+ */
+public class Timeline<T> {
+
+	private final long[] times;
+	private final List<T> items;
+
+	//times[i] is the time of items.get(i)
+	public Timeline(List<T> items, long[] times)
+	{
+		if(items.size() != times.length)
+		{
+			throw new IllegalArgumentException(items.size() + " items but " + times.length + " times");
+		}
+		Integer[] order = new Integer[times.length];
+		for(int i = 0; i < order.length; i++)
+		{
+			order[i] = i;
+		}
+		//feeds are already in (reverse) time order, which the merge sort finds in linear time
+		final long[] unsorted = times;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
+			{
+				return Long.compare(unsorted[a], unsorted[b]);
+			}
+		});
+		this.times = new long[times.length];
+		List<T> sorted = new ArrayList<T>(times.length);
+		for(int i = 0; i < order.length; i++)
+		{
+			this.times[i] = unsorted[order[i]];
+			sorted.add(items.get(order[i]));
+		}
+		this.items = Collections.unmodifiableList(sorted);
+	}
+
+	public int size()
+	{
+		return times.length;
+	}
+
+	public T get(int index)
+	{
+		return items.get(index);
+	}
+
+	public long getTime(int index)
+	{
+		return times[index];
+	}
+
+	//all items, earliest first
+	public List<T> getItems()
+	{
+		return items;
+	}
+
+	//time of the first item, 0 when empty
+	public long getStart()
+	{
+		return times.length == 0 ? 0 : times[0];
+	}
+
+	//time of the last item, 0 when empty
+	public long getEnd()
+	{
+		return times.length == 0 ? 0 : times[times.length - 1];
+	}
+
+	//index of the first item at or after time, size() if there is none
+	public int indexOf(long time)
+	{
+		int low = 0;
+		int high = times.length;
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if(times[middle] < time)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	//index of the first item after time, size() if there is none
+	public int indexAfter(long time)
+	{
+		int low = 0;
+		int high = times.length;
+		while(low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if(times[middle] <= time)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+}
@@ -0,0 +1,459 @@
+package earthquakeVisualization;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import processing.core.PConstants;
+import processing.core.PGraphics;
+import processing.core.PShape;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.MarkerManager;
+
+import catalog.Timeline;
+
+/*
+ * Marker manager that draws its markers as one retained PShape.
+ *
+ * The default manager calls draw on every marker every frame, which for
+ * our markers is a pushStyle, a fill and an ellipse/rect/triangle each:
+ * thousands of small draw calls. Here the visible CommonMarkers add their
+ * shapes to a MarkerBatch, which groups them by shape and colour into one
+ * PShape, and every frame draws that shape.
+ *
+ * Only markers inside the map area plus a margin are batched. Below
+ * DECLUSTER_ZOOM_LEVEL quakes are merged per screen cell by QuakeClusters,
+ * so the shape never holds more than a screen full of glyphs however many
+ * quakes there are; zooming in splits the clusters back into markers.
+ *
+ * The shape is rebuilt when markers are added or removed, when invalidate()
+ * is called after hiding or showing markers, when the zoom changes and
+ * when a pan has moved the map further than the margin. Smaller pans move
+ * all markers by the same amount, so they are drawn as a translation of the
+ * existing shape. Markers that are not CommonMarkers are drawn one by one
+ * as before. Titles are not drawn here: the hovered marker changes with
+ * every mouse move, LayerCompositor draws its title on top of the map.
+ *
+ * With a MarkerVisibility (setVisibility) the hidden flags are not used:
+ * the cities and quakes come from its visible bitsets and the shape is
+ * rebuilt only when its update reports that some marker changed. All
+ * CommonMarkers of the manager have to be known to the visibility.
+ *
+ * With a time window (setTimeWindow) only the quakes of a Timeline inside
+ * the window are shown; the other quake markers of the manager are left
+ * out. The window's quakes are an index range of the timeline found by
+ * binary search. When only the end of the window moves forward, as in a
+ * replay, just the quakes that entered it are placed and added to the
+ * existing MarkerScene, so a frame costs the new quakes plus the markers
+ * on screen rather than the whole window.
+ *
+ * The manager knows the position of every marker in its list, so adding
+ * or removing one does not search the list; a removed marker's place is
+ * taken by the last one, so the list does not keep the order markers
+ * were added in.
+ *
+ * Needs a renderer with retained shapes (OPENGL/P2D/P3D).
+ */
+public class BatchedMarkerManager extends MarkerManager<Marker> {
+
+	//projected like in ViewportWatcher to detect pan and zoom
+	private static final Location REFERENCE_A = new Location(0, 0);
+	private static final Location REFERENCE_B = new Location(45, 90);
+
+	//larger changes of the distance between the references count as zoom
+	private static final float SCALE_TOLERANCE = 0.01f;
+
+	//markers this far outside the map area are batched too, so small pans need no rebuild
+	private static final float MARGIN = 200;
+
+	//quakes are clustered per cell of this size below the zoom level
+	private static final float CLUSTER_CELL = 40;
+	private static final int DECLUSTER_ZOOM_LEVEL = 6;
+
+	private final MarkerScene scene = new MarkerScene(CLUSTER_CELL);
+	private MarkerVisibility visibility;
+	private final List<Marker> unbatched = new ArrayList<Marker>();
+	//position of each marker in markers
+	private final Map<Marker, Integer> slots = new IdentityHashMap<Marker, Integer>();
+	private PShape shape;
+	private boolean dirty = true;
+
+	//position of the references when the shape was built
+	private float builtAx;
+	private float builtAy;
+	private float builtBx;
+	private float builtBy;
+
+	//the past day crosses of the live map count back from this, see setNow
+	private long now = Long.MIN_VALUE;
+
+	//quakes shown while a time window is set
+	private Timeline<EarthquakeMarker> timeline;
+	private long windowFrom;
+	private long windowTo;
+	private boolean windowChanged = false;
+	//timeline range in the scene
+	private Timeline<EarthquakeMarker> builtTimeline;
+	private int builtFrom;
+	private int builtTo;
+
+	private int batchedCount = 0;
+	private int buildCount = 0;
+	private int appendCount = 0;
+	private double lastBuildMillis = 0;
+
+	//the marker set or their hidden flags changed
+	public void invalidate()
+	{
+		dirty = true;
+	}
+
+	//true until the next draw has rebuilt the shape for a changed marker set or window
+	public boolean isDirty()
+	{
+		if(visibility != null && visibility.update() > 0)
+		{
+			dirty = true;
+		}
+		return dirty || windowChanged;
+	}
+
+	/*
+	 * Quakes within a day before now get the past day cross on the live
+	 * map; Long.MIN_VALUE goes back to the age category of the feed. The
+	 * end of a time window takes its place while one is set.
+	 */
+	public void setNow(long now)
+	{
+		if(now != this.now)
+		{
+			this.now = now;
+			dirty = true;
+		}
+	}
+
+	//takes the shown markers from the visibility instead of their hidden flags, null to go back
+	public void setVisibility(MarkerVisibility visibility)
+	{
+		this.visibility = visibility;
+		dirty = true;
+	}
+
+	/*
+	 * Shows only the quakes of the timeline from..to, both inclusive.
+	 * Quake markers of this manager that are not in the timeline are
+	 * not shown while the window is set.
+	 */
+	public void setTimeWindow(Timeline<EarthquakeMarker> timeline, long from, long to)
+	{
+		if(timeline != this.timeline || from != windowFrom || to != windowTo)
+		{
+			this.timeline = timeline;
+			windowFrom = from;
+			windowTo = to;
+			windowChanged = true;
+		}
+	}
+
+	//shows all markers again
+	public void clearTimeWindow()
+	{
+		if(timeline != null)
+		{
+			timeline = null;
+			dirty = true;
+		}
+	}
+
+	//false for hidden or filtered markers and quakes outside the time window
+	public boolean isShown(Marker marker)
+	{
+		boolean shown = visibility != null ? visibility.isVisible(marker) : !marker.isHidden();
+		return shown && isInWindow(marker);
+	}
+
+	//false for quakes outside the time window
+	public boolean isInWindow(Marker marker)
+	{
+		if(timeline == null || !(marker instanceof EarthquakeMarker))
+		{
+			return true;
+		}
+		long time = ((EarthquakeMarker)marker).getTime();
+		return time >= windowFrom && time <= windowTo;
+	}
+
+	//takes a copy of the markers, null for none
+	public void setMarkers(List<Marker> markers)
+	{
+		clearMarkers();
+		if(markers != null)
+		{
+			addMarkers(markers);
+		}
+	}
+
+	public boolean addMarker(Marker marker)
+	{
+		if(markers == null)
+		{
+			markers = new ArrayList<Marker>();
+		}
+		if(slots.containsKey(marker))
+		{
+			return false;
+		}
+		slots.put(marker, markers.size());
+		markers.add(marker);
+		dirty = true;
+		return true;
+	}
+
+	public void addMarkers(List<Marker> markers)
+	{
+		for(Marker marker : markers)
+		{
+			addMarker(marker);
+		}
+	}
+
+	//the last marker of the list takes the removed one's place
+	public boolean removeMarker(Marker marker)
+	{
+		Integer slot = slots.remove(marker);
+		if(slot == null)
+		{
+			return false;
+		}
+		Marker last = markers.remove(markers.size() - 1);
+		if(last != marker)
+		{
+			markers.set(slot, last);
+			slots.put(last, slot);
+		}
+		dirty = true;
+		return true;
+	}
+
+	public void clearMarkers()
+	{
+		markers = new ArrayList<Marker>();
+		slots.clear();
+		dirty = true;
+	}
+
+	public void draw()
+	{
+		if(!bEnableDrawing || map == null)
+		{
+			return;
+		}
+		PGraphics pg = map.mapDisplay.getOuterPG();
+		if(visibility != null && visibility.update() > 0)
+		{
+			dirty = true;
+		}
+		float[] a = map.mapDisplay.getObjectFromLocation(REFERENCE_A);
+		float ax = a[0];
+		float ay = a[1];
+		float[] b = map.mapDisplay.getObjectFromLocation(REFERENCE_B);
+		float bx = b[0];
+		float by = b[1];
+
+		boolean zoomed = Math.abs((bx - ax) - (builtBx - builtAx)) > SCALE_TOLERANCE
+				|| Math.abs((by - ay) - (builtBy - builtAy)) > SCALE_TOLERANCE;
+		//cells at the edge of the margin may be missing quakes, keep them off the map
+		boolean panned = Math.abs(ax - builtAx) > MARGIN - CLUSTER_CELL
+				|| Math.abs(ay - builtAy) > MARGIN - CLUSTER_CELL;
+		if(shape == null || dirty || zoomed || panned
+				|| (windowChanged && !appendToWindow(pg, ax - builtAx, ay - builtAy)))
+		{
+			builtAx = ax;
+			builtAy = ay;
+			builtBx = bx;
+			builtBy = by;
+			build(pg);
+		}
+
+		float dx = ax - builtAx;
+		float dy = ay - builtAy;
+		pg.pushMatrix();
+		pg.translate(dx, dy);
+		pg.shape(shape);
+		drawClusterSizes(pg, dx, dy);
+		pg.popMatrix();
+
+		for(Marker marker : unbatched)
+		{
+			marker.draw(map);
+		}
+	}
+
+	//quake counts on the cluster glyphs inside the map area
+	private void drawClusterSizes(PGraphics pg, float dx, float dy)
+	{
+		QuakeClusters clusters = scene.getClusters();
+		if(clusters.getClusterCount() == 0)
+		{
+			return;
+		}
+		pg.pushStyle();
+		pg.fill(0);
+		pg.textSize(10);
+		pg.textAlign(PConstants.CENTER, PConstants.CENTER);
+		float width = map.mapDisplay.getWidth();
+		float height = map.mapDisplay.getHeight();
+		for(int i = 0; i < clusters.getClusterCount(); i++)
+		{
+			float x = clusters.getClusterX(i);
+			float y = clusters.getClusterY(i);
+			if(x + dx >= 0 && x + dx <= width && y + dy >= 0 && y + dy <= height)
+			{
+				pg.text(clusters.getClusterSize(i), x, y);
+			}
+		}
+		pg.popStyle();
+	}
+
+	//number of times the shape was rebuilt from all markers
+	public int getBuildCount()
+	{
+		return buildCount;
+	}
+
+	//number of times quakes entering the time window were added to the shape
+	public int getAppendCount()
+	{
+		return appendCount;
+	}
+
+	public double getLastBuildMillis()
+	{
+		return lastBuildMillis;
+	}
+
+	//number of quake glyphs and markers in the current shape
+	public int getBatchedCount()
+	{
+		return batchedCount;
+	}
+
+	private void build(PGraphics pg)
+	{
+		long start = System.nanoTime();
+		unbatched.clear();
+		boolean cluster = map.getZoomLevel() < DECLUSTER_ZOOM_LEVEL;
+		scene.reset(builtAx, builtAy, -MARGIN, -MARGIN,
+				map.mapDisplay.getWidth() + MARGIN, map.mapDisplay.getHeight() + MARGIN, cluster);
+		scene.setNow(timeline == null ? now : windowTo);
+		for(Marker marker : markers)
+		{
+			if(!(marker instanceof CommonMarker))
+			{
+				unbatched.add(marker);
+				continue;
+			}
+			//with a window the quakes come from the timeline
+			if(visibility != null || marker.isHidden() || (timeline != null && marker instanceof EarthquakeMarker))
+			{
+				continue;
+			}
+			place((CommonMarker)marker, 0, 0);
+		}
+		if(visibility != null)
+		{
+			placeVisible();
+		}
+		builtTimeline = timeline;
+		if(timeline != null)
+		{
+			builtFrom = timeline.indexOf(windowFrom);
+			builtTo = builtFrom;
+			addWindowQuakes(0, 0);
+		}
+		rebatch(pg);
+		dirty = false;
+		windowChanged = false;
+		buildCount++;
+		lastBuildMillis = (System.nanoTime() - start) / 1e6;
+	}
+
+	/*
+	 * Adds the quakes that entered the window since the last build to the
+	 * scene, (dx, dy) being the pan since then. Returns false when the
+	 * window did not just grow at its end and a full build is needed.
+	 */
+	private boolean appendToWindow(PGraphics pg, float dx, float dy)
+	{
+		if(timeline == null || timeline != builtTimeline
+				|| timeline.indexOf(windowFrom) != builtFrom || timeline.indexAfter(windowTo) < builtTo)
+		{
+			return false;
+		}
+		long start = System.nanoTime();
+		addWindowQuakes(dx, dy);
+		//the past day crosses follow the end of the window
+		scene.setNow(windowTo);
+		rebatch(pg);
+		windowChanged = false;
+		appendCount++;
+		lastBuildMillis = (System.nanoTime() - start) / 1e6;
+		return true;
+	}
+
+	//places the timeline quakes from builtTo up to the end of the window
+	private void addWindowQuakes(float dx, float dy)
+	{
+		int to = timeline.indexAfter(windowTo);
+		for(int i = builtTo; i < to; i++)
+		{
+			EarthquakeMarker quake = timeline.get(i);
+			if(visibility != null ? visibility.isVisible(quake) : !quake.isHidden())
+			{
+				place(quake, dx, dy);
+			}
+		}
+		builtTo = Math.max(builtTo, to);
+	}
+
+	//the visible cities, then the visible quakes unless they come from the timeline
+	private void placeVisible()
+	{
+		BitSet cities = visibility.getVisibleCities();
+		for(int i = cities.nextSetBit(0); i >= 0; i = cities.nextSetBit(i + 1))
+		{
+			Marker city = visibility.getCity(i);
+			if(city instanceof CommonMarker)
+			{
+				place((CommonMarker)city, 0, 0);
+			}
+		}
+		if(timeline != null)
+		{
+			return;
+		}
+		BitSet quakes = visibility.getVisibleQuakes();
+		for(int row = quakes.nextSetBit(0); row >= 0; row = quakes.nextSetBit(row + 1))
+		{
+			place(visibility.getQuake(row), 0, 0);
+		}
+	}
+
+	private void rebatch(PGraphics pg)
+	{
+		MarkerBatch batch = scene.batch();
+		batchedCount = batch.getShapeCount();
+		shape = batch.build(pg);
+	}
+
+	//projects a marker and adds it at its position when the shape was built
+	private void place(CommonMarker marker, float dx, float dy)
+	{
+		float[] xy = map.mapDisplay.getObjectFromLocation(marker.getLocation());
+		scene.add(marker, xy[0] - dx, xy[1] - dy);
+	}
+}
@@ -12,6 +12,9 @@ public class CityMarker extends CommonMarker {
 	//size of city marker
 	public static int TRI_SIZE = 5;
 	
+	//colour of city marker
+	public static final int CITY_COLOR = 0xFFFF00FF;
+	
 	public CityMarker(Location location)
 	{
 		super(location);
@@ -31,13 +34,19 @@ public class CityMarker extends CommonMarker {
 		pg.pushStyle();
 		
 		//drawing our own marker for city
-		pg.fill(255, 0, 255);
+		pg.fill(CITY_COLOR);
 		pg.triangle(x, y-TRI_SIZE, x-TRI_SIZE, y+TRI_SIZE, x+TRI_SIZE, y+TRI_SIZE);
 		
 		//restore previous drawing style
 		pg.popStyle();
 	}
 	
+	//same triangle as drawMarker, drawn with all other cities
+	public void batchMarker(MarkerBatch batch, float x, float y)
+	{
+		batch.triangle(CITY_COLOR, x, y-TRI_SIZE, x-TRI_SIZE, y+TRI_SIZE, x+TRI_SIZE, y+TRI_SIZE);
+	}
+	
 	//show title of city if this marker is selected
 	//i.e. mouse is over the marker
 	public void showTitle(PGraphics pg, float x, float y)
@@ -36,6 +36,8 @@ public abstract class CommonMarker extends SimplePointMarker {
 	
 	//to draw different markers (city or earthquake)
 	public abstract void drawMarker(PGraphics pg, float x, float y);
+	//to add the same shapes as drawMarker to a batch drawn by BatchedMarkerManager
+	public abstract void batchMarker(MarkerBatch batch, float x, float y);
 	//to show title of markers
 	public abstract void showTitle(PGraphics pg, float x, float y);
 	
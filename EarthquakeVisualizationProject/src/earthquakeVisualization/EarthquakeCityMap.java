@@ -1,8 +1,18 @@
 package earthquakeVisualization;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.sql.SQLException;
+import java.time.Instant;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.JMException;
 
 import processing.core.*;
 
@@ -14,32 +24,153 @@ import de.fhpotsdam.unfolding.utils.MapUtils;
 import de.fhpotsdam.unfolding.data.Feature;
 import de.fhpotsdam.unfolding.data.GeoJSONReader;
 import de.fhpotsdam.unfolding.data.PointFeature;
-import de.fhpotsdam.unfolding.geo.Location;
-import de.fhpotsdam.unfolding.marker.MultiMarker;
-import de.fhpotsdam.unfolding.marker.AbstractShapeMarker;
 
-import parsing.ParseFeed;
+import catalog.GeoSnapshot;
+import catalog.QuakeCatalog;
+import catalog.QuakeStore;
+import catalog.Timeline;
+import metrics.Gauge;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+import parsing.FeedFetcher;
+import parsing.FeedPoller;
+import parsing.QuakeSource;
+import report.QuakeReport;
+import spatial.CountryIndex;
+import spatial.LandMask;
+import spatial.QuakeClassifier;
+import tiles.CachingTileProvider;
+import tiles.MBTilesStore;
 
 public class EarthquakeCityMap extends PApplet {
 	
-	//earthquake feed
+	private static final long serialVersionUID = 1L;
+
+	//earthquake feed, USGS has the same summary as 2.5_week.geojson and 2.5_week.csv
+	//which carry the exact magnitude, depth and time as numbers
 	private String earthquakeURL = "https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/2.5_week.atom";
+	//format of the feed, null to tell it from the first character of the feed
+	private QuakeSource.Format earthquakeFormat = QuakeSource.Format.ATOM;
+	//how often the feed is checked for new or changed quakes
+	private static final long FEED_POLL_SECONDS = 5 * 60;
+	//downloaded feeds are cached here so unchanged feeds are not fetched again
+	//and the last copy can be used offline
+	private String feedCacheDir = "cache";
 	//files containing city and country names and info
 	private String cityFile = "city-data.json";
 	private String countryFile = "countries.geo.json";
+	//how far in degrees the simplified country borders used for land tests
+	//may be from the file's; countries.geo.json is coarse enough that
+	//simplifying barely speeds the tests up, detailed files gain more
+	private float countryTolerance = 0;
+	//resolution of the land mask that answers most land tests without
+	//polygons, 20 cells per degree is 0.05 degrees; 0 for exact tests only
+	private int landMaskCellsPerDegree = 20;
+	//binary copy of the parsed countries, cities and classified quakes
+	//for a fast start, rebuilt whenever the JSON files change
+	private String snapshotFile = "geodata.snapshot";
+	//every quake the feed reports is kept in this SQLite file in the cache
+	//directory, so the map shows more than the week the feed covers: setup
+	//loads the quakes of at least historyMinMagnitude from the last
+	//historyDays inside historyBox (south, west, north, east), and quakes
+	//older than historyDays leave the map as the sketch runs
+	private String quakeStoreFile = "quakes.sqlite";
+	private int historyDays = 90;
+	private float historyMinMagnitude = 2.5f;
+	private float[] historyBox = { -90, -180, 90, 180 };
+	//map tiles are kept in this MBTiles file in the cache directory, so a
+	//pan does not wait for tiles seen before and the map works offline
+	private String tileCacheFile = "tiles.mbtiles";
+	private static final long TILE_MEMORY_BYTES = 64L << 20;
 	
 	//the map
 	private UnfoldingMap map;
 	private AbstractMapProvider provider;
+	//null if the tile cache could not be opened
+	private CachingTileProvider tileProvider;
+	
+	//index over the country polygons for land/ocean lookups
+	private CountryIndex countryIndex;
+	//adds the country property to land quakes, in parallel
+	private QuakeClassifier quakeClassifier;
+	
+	//the city and earthquake markers with the catalog behind them, as
+	//immutable generations: the feed poller builds the next one on its
+	//thread and swaps it in, draw() switches to it at the start of a frame
+	private final AtomicReference<MarkerModel> model = new AtomicReference<MarkerModel>();
+	//the generation this frame and the event handlers work on, and that
+	//the marker manager, the visibility and the indexes were updated for;
+	//only used on the animation thread
+	private MarkerModel shown;
+	
+	//the quake history, null if it could not be opened
+	private QuakeStore quakeStore;
+	
+	//background feed polling, publishes a new generation of markers for every change
+	private FeedPoller feedPoller;
+	//polls the past day crosses were last measured after, see updatePastDay
+	private long pastDayPolls = -1;
+	
+	//cities inside each quake's threat circle and the other way round,
+	//kept up to date as quakes come and go so clicks only look them up
+	private ImpactIndex impactIndex;
+	
+	//shown markers as bitsets, clicks select and keys filter
+	//keys: m raises the minimum magnitude, d picks a depth class, l land or
+	//ocean, c the country of the hovered land quake, x clears the filters
+	private MarkerVisibility visibility;
+	private static final float[] MIN_MAGNITUDES = { Float.NEGATIVE_INFINITY, 4, 5, 6 };
+	private int minMagnitudeStep = 0;
+	private int depthStep = 0;
+	private int surfaceStep = 0;
+	
+	//screen-space grid for hover and click hit-testing
+	private HoverGrid hoverGrid;
+	//filtered quakes and those the replay has not reached are not on the map
+	private final HoverGrid.Filter onMap = new HoverGrid.Filter() {
+		public boolean accepts(CommonMarker marker)
+		{
+			return markerManager.isShown(marker);
+		}
+	};
 	
-	//Markers for each city
-	private List<Marker> cityMarkers;
+	//draws all city and quake markers as one retained shape
+	private BatchedMarkerManager markerManager;
 	
-	//Markers for each country
-	private List<Marker> countryMarkers;
+	//draws the map, the key and the hover title from cached layers
+	private LayerCompositor compositor;
 	
-	//Markers for each earthquake
-	private List<Marker> quakeMarkers;
+	//replay mode: quakes appear in time order while the clock runs
+	//keys: r replays all quakes, 1-7 the last days, space pauses,
+	//+ and - change the speed, left and right arrows scrub
+	private static final int REPLAY_SECONDS = 60;
+	private ReplayClock replay;
+	//quake markers sorted by time, rebuilt when the quakes change
+	private Timeline<EarthquakeMarker> timeline;
+	private int lastFrameMillis;
+	
+	//stage and frame timings and marker counts, readable over JMX as
+	//Metrics.MBEAN_NAME and logged every METRICS_LOG_SECONDS
+	//key i shows them below the key, repainted once a second
+	private boolean metricsEnabled = true;
+	private static final long METRICS_LOG_SECONDS = 60;
+	private static final LatencyHistogram SETUP_TIME = Metrics.histogram("app.setup");
+	private static final LatencyHistogram DRAW_TIME = Metrics.histogram("frame.draw");
+	private static final LatencyHistogram MOVE_TIME = Metrics.histogram("input.mouseMoved");
+	private static final LatencyHistogram CLICK_TIME = Metrics.histogram("input.mouseClicked");
+	private LayerCompositor.Overlay metricsLayer;
+	private int metricsPainted;
+	//sampled by draw() so the gauges never touch the markers from another thread
+	private volatile int drawnMarkers;
+	private volatile int hiddenMarkers;
+	private volatile int hoveredMarkers;
+	
+	//checksum of the JSON files the snapshot has to match
+	private long sourceChecksum = -1;
+	//quakes changed since the snapshot was written
+	private boolean snapshotStale = false;
+	//where setup() got its data from, reported with the first frame
+	private String startupSource;
 	
 	//for event handling
 	private CommonMarker lastSelected;
@@ -49,409 +180,812 @@ public class EarthquakeCityMap extends PApplet {
 	{
 		//initializing canvas
 		size(1000, 650, OPENGL);
+		Metrics.setEnabled(metricsEnabled);
+		long setupStart = SETUP_TIME.start();
 		
 		//setting up map
-		provider = new Microsoft.HybridProvider();
+		provider = cacheTiles(new Microsoft.HybridProvider());
 		map = new UnfoldingMap(this, 250, 50, 700, 550, provider);
 		
 		MapUtils.createDefaultEventDispatcher(this, map);
 		map.setZoomRange(1.5f,  10);
 		map.zoomToLevel(2);
 		
-		//load country features and markers
-		List<Feature> countries = GeoJSONReader.loadData(this, countryFile);
-		countryMarkers = MapUtils.createSimpleMarkers(countries);
+		FeedFetcher fetcher = new FeedFetcher(earthquakeURL, new File(sketchPath(feedCacheDir)));
+		feedPoller = new FeedPoller(fetcher, earthquakeFormat, FEED_POLL_SECONDS);
+		quakeStore = openQuakeStore();
 		
-		//load city data
-		List<Feature> cities = GeoJSONReader.loadData(this, cityFile);
-		cityMarkers = new ArrayList<Marker>();
-		for(Feature city : cities)
+		//use the snapshot if it was built from the current JSON files
+		GeoSnapshot snapshot = loadSnapshot();
+		MarkerModel.Builder markers;
+		if(snapshot != null)
 		{
-			cityMarkers.add(new CityMarker(city));
-		}
-		
-		//load earthquake data
-		List<PointFeature> earthquakes = ParseFeed.parseEarthquake(this, earthquakeURL);
-		quakeMarkers = new ArrayList<Marker>();
-		for(PointFeature feature : earthquakes)
-		{
-			//check if land quake
-			if(isLand(feature))
+			countryIndex = snapshot.getCountryIndex();
+			quakeClassifier = new QuakeClassifier(countryIndex);
+			List<Marker> cityMarkers = new ArrayList<Marker>();
+			for(Feature city : snapshot.getCities())
 			{
-				quakeMarkers.add(new LandQuakeMarker(feature));
+				cityMarkers.add(new CityMarker(city));
 			}
-			//ocean quake
-			else
+			
+			//the quakes of the last run are shown at once and the first
+			//poll only reports what changed in the feed since then
+			QuakeCatalog catalog = snapshot.getQuakes();
+			markers = MarkerModel.builder(cityMarkers, catalog);
+			//quakes which have left the history window since then are not
+			String[] ids = snapshot.getQuakeIds();
+			Map<String, Long> known = new HashMap<String, Long>();
+			long historyStart = historyStart(System.currentTimeMillis());
+			for(int row = 0; row < ids.length; row++)
 			{
-				quakeMarkers.add(new OceanQuakeMarker(feature));
+				if(catalog.getTime(row) >= historyStart)
+				{
+					markers.addQuake(row, ids[row]);
+					known.put(ids[row], catalog.getUpdated(row));
+				}
 			}
+			feedPoller.prime(known);
+			startupSource = "snapshot";
+		}
+		else
+		{
+			markers = loadFromJSON();
+			startupSource = "JSON";
+		}
+		loadHistory(markers);
+		shown = markers.build();
+		model.set(shown);
+		if(snapshot == null)
+		{
+			saveSnapshot();
 		}
 		
+		impactIndex = new ImpactIndex(shown.getCities(), shown.getQuakes());
+		visibility = new MarkerVisibility(shown.getCities(), shown.getCatalog(), shown.getQuakes());
+		buildHoverGrid();
+		
 		/*
-		 * to print the countries with number of earthquakes in them
-		 * uncomment the line below
-		 * */
-		//printQuakes();
-		/*
-		 * to sort earthquakes with respect to their magnitudes in decreasing order
-		 * and printing them in console the number of earthquakes which are displayed is the
-		 * parameter here so it will display top 6
+		 * to print the countries with number of earthquakes in them, the
+		 * earthquakes with the largest magnitudes (the parameter, so top 6),
+		 * the depth classes and the number of ocean quakes uncomment the
+		 * line below; report.ReportTool prints the same report for any feed
+		 * without opening the map
 		 * */
-		//sortAndPrint(6);
+		//printReport(6);
 		
 		//add markers to map
-		//country markers are not added to map they are used for their geometric properties
-		map.addMarkers(cityMarkers);
-		map.addMarkers(quakeMarkers);
+		//they are drawn in batches instead of one draw call per marker
+		markerManager = new BatchedMarkerManager();
+		markerManager.setVisibility(visibility);
+		map.addMarkerManager(markerManager);
+		markerManager.addMarkers(shown.getCities());
+		markerManager.addMarkers(shown.getQuakes());
+		
+		//keep the quakes up to date while the sketch runs
+		//after a snapshot start the first poll runs at once
+		feedPoller.start(new FeedPoller.Listener() {
+			public void feedChanged(FeedPoller.Delta delta)
+			{
+				//classify and build the markers on the poller thread,
+				//draw() only has to put them on the map
+				quakeClassifier.classify(delta.getAdded());
+				quakeClassifier.classify(delta.getUpdated());
+				storeQuakes(delta.getAdded());
+				storeQuakes(delta.getUpdated());
+				publish(delta);
+			}
+		}, snapshot != null ? 0 : FEED_POLL_SECONDS);
 		
 		//to set a desired font style
 		PFont myFont = createFont("Gabriola", 20);
 		textFont(myFont);
+		
+		//the map is only redrawn when it changed and the key is painted once
+		compositor = new LayerCompositor(this, map, markerManager);
+		compositor.addOverlay(49, 49, MapKey.SIZE_X, MapKey.SIZE_Y, new MapKey(myFont));
+		
+		if(metricsEnabled)
+		{
+			startMetrics();
+		}
+		SETUP_TIME.stop(setupStart);
+	}
+	
+	//puts the tile cache in front of the tile server, or returns the server if it cannot be opened
+	private AbstractMapProvider cacheTiles(AbstractMapProvider server)
+	{
+		try
+		{
+			MBTilesStore store = new MBTilesStore(new File(sketchPath(feedCacheDir), tileCacheFile), "Microsoft hybrid", "jpg");
+			tileProvider = new CachingTileProvider(server, store, TILE_MEMORY_BYTES);
+			return tileProvider;
+		}
+		catch(SQLException e)
+		{
+			println("Could not open the tile cache, tiles are not kept: " + e);
+			return server;
+		}
+	}
+	
+	//registers the gauges, the JMX bean, the log and the hidden overlay
+	private void startMetrics()
+	{
+		Metrics.gauge("frame.rate", new Gauge() {
+			public double value()
+			{
+				return Math.round(frameRate * 10) / 10.0;
+			}
+		});
+		Metrics.gauge("markers.drawn", new Gauge() {
+			public double value()
+			{
+				return drawnMarkers;
+			}
+		});
+		Metrics.gauge("markers.hidden", new Gauge() {
+			public double value()
+			{
+				return hiddenMarkers;
+			}
+		});
+		Metrics.gauge("markers.hovered", new Gauge() {
+			public double value()
+			{
+				return hoveredMarkers;
+			}
+		});
+		Metrics.gauge("feed.polls", new Gauge() {
+			public double value()
+			{
+				return feedPoller.getPollCount();
+			}
+		});
+		Metrics.gauge("feed.failures", new Gauge() {
+			public double value()
+			{
+				return feedPoller.getFailureCount();
+			}
+		});
+		if(tileProvider != null)
+		{
+			Metrics.gauge("tiles.hitRate", new Gauge() {
+				public double value()
+				{
+					return Math.round(tileProvider.getHitRate() * 1000) / 1000.0;
+				}
+			});
+			Metrics.gauge("tiles.prefetched", new Gauge() {
+				public double value()
+				{
+					return tileProvider.getPrefetched();
+				}
+			});
+		}
+		try
+		{
+			Metrics.registerMBean();
+		}
+		catch(JMException e)
+		{
+			println("Could not register the metrics with JMX: " + e);
+		}
+		Metrics.startLog(METRICS_LOG_SECONDS);
+		metricsLayer = compositor.addOverlay(9, 415, MetricsOverlay.SIZE_X, MetricsOverlay.SIZE_Y, new MetricsOverlay(null));
+		metricsLayer.setVisible(false);
 	}
 	
 	public void draw()
 	{
+		long start = DRAW_TIME.start();
+		if(frameCount == 1)
+		{
+			println("First frame after " + millis() + " ms, data loaded from " + startupSource);
+		}
+		showLatestModel();
+		updatePastDay();
+		if(replay != null)
+		{
+			replay.advance(millis() - lastFrameMillis);
+			markerManager.setTimeWindow(getTimeline(), replay.getStart(), replay.getTime());
+		}
+		lastFrameMillis = millis();
 		background(0);
-		map.draw();
-		addKey();
+		compositor.draw();
+		if(replay != null)
+		{
+			drawReplayClock();
+		}
+		if(visibility.getFilter().isActive())
+		{
+			drawFilters();
+		}
+		if(Metrics.isEnabled())
+		{
+			sampleMetrics();
+		}
+		DRAW_TIME.stop(start);
 	}
 	
-	//to draw the key
-	private void addKey()
+	//the marker gauges, and the overlay content once a second
+	private void sampleMetrics()
 	{
-		//save previous drawing style
-		pushStyle();
-		
-		fill(255, 250, 240);
-		textSize(18);
-		textAlign(LEFT, CENTER);
-		
-		int originX = 50;
-		int originY = 50;
-		
-		int width = 150;
-		int height = 350;
-		
-		int lineSpace = 30;
-		
-		rect(originX, originY, width, height);
-		int xbase = originX + 30;
-		int ybase = originY + 30;
-		
-		fill(0);
-		text("Earthquake Key", xbase, ybase);
-		ybase += lineSpace;
-		
-		fill(255, 0, 255);
-		triangle(xbase, ybase,
-				xbase-CityMarker.TRI_SIZE, ybase+ 2*CityMarker.TRI_SIZE,
-				xbase+CityMarker.TRI_SIZE, ybase+ 2*CityMarker.TRI_SIZE);
-		
-		fill(0);
-		textAlign(LEFT, CENTER);
-		text("City Marker", xbase+15, ybase);
-		ybase += lineSpace;
-		
-		fill(255, 255, 255);
-		ellipseMode(CORNER);
-		ellipse(xbase-6, ybase, 12, 12);
-		
-		fill(0);
-		text("Land Quake", xbase+15, ybase);
-		ybase += lineSpace;
-		
-		fill(255, 255, 255);
-		rect(xbase-6, ybase, 12 ,12);
-		
-		fill(0);
-		text("Ocean Quake", xbase+15, ybase);
-		ybase += lineSpace;
-		
-		text("Size ~ Magnitude", xbase, ybase);
-		ybase += lineSpace;
-		
-		fill(255, 255, 0);
-		ellipseMode(CORNER);
-		ellipse(xbase-6, ybase, 12, 12);
-		
-		fill(0);
-		text("Shallow", xbase+15, ybase);
-		ybase += lineSpace;
-		
-		fill(0, 0, 255);
-		ellipseMode(CORNER);
-		ellipse(xbase-6, ybase, 12, 12);
-		
-		fill(0);
-		text("Intermediate", xbase+15, ybase);
-		ybase += lineSpace;
-		
-		fill(255, 0, 0);
-		ellipseMode(CORNER);
-		ellipse(xbase-6, ybase, 12, 12);
-		
-		fill(0);
-		text("Deep", xbase+15, ybase);
-		ybase += lineSpace;
-		
-		fill(255);
-		ellipseMode(CORNER);
-		ellipse(xbase-6, ybase, 12, 12);
-		
-		strokeWeight(2);
-		stroke(0);
-		line(xbase-6, ybase, xbase+6, ybase+12);
-		line(xbase-6, ybase+12, xbase+6, ybase);
-		
-		fill(0);
-		text("Past Day", xbase+15, ybase);
-		
-		//restore previous drawing style
-		popStyle();
+		drawnMarkers = markerManager.getBatchedCount();
+		hiddenMarkers = shown.getCities().size() + shown.getQuakes().size()
+				- visibility.getVisibleCities().cardinality() - visibility.getVisibleQuakes().cardinality();
+		hoveredMarkers = lastSelected != null ? 1 : 0;
+		if(metricsLayer != null && metricsLayer.isVisible() && millis() - metricsPainted >= 1000)
+		{
+			metricsLayer.invalidate();
+			metricsPainted = millis();
+		}
 	}
 	
-	//check if quake occurred on land
-	private boolean isLand(PointFeature earthquake)
+	public void keyPressed()
 	{
-		for(Marker country : countryMarkers)
+		if(key == 'r')
 		{
-			if(isInCountry(earthquake, country))
+			if(replay == null)
+			{
+				startReplay(getTimeline().getStart());
+			}
+			else
 			{
-				return true;
+				replay = null;
+				markerManager.clearTimeWindow();
 			}
 		}
-		return false;
-	}
-	
-	//to check if a quake occurred in a country
-	//this will also add country property to the properties of earthquake
-	//where the earthquake occurred
-	private boolean isInCountry(PointFeature earthquake, Marker country)
-	{
-		//getting location earthquake
-		Location checkLoc = earthquake.getLocation();
-		
-		//some countries are represented by MultiMarker
-		//looping over the SimplePolygonMarkers which make up the MultiMarker
-		if(country.getClass() == MultiMarker.class)
+		else if(key >= '1' && key <= '7')
 		{
-			//looping over markers making the MultiMarker
-			for(Marker marker : ((MultiMarker)country).getMarkers())
+			startReplay(getTimeline().getEnd() - (key - '0') * 24 * 60 * 60 * 1000L);
+		}
+		else if(key == 'm' || key == 'd' || key == 'l' || key == 'c' || key == 'x')
+		{
+			changeFilter(key);
+		}
+		else if(key == 'i')
+		{
+			if(metricsLayer != null)
 			{
-				//checking if inside
-				if(((AbstractShapeMarker)marker).isInsideByLocation(checkLoc))
-				{
-					earthquake.addProperty("country", country.getProperty("name"));
-					//return if found inside one
-					return true;
-				}
+				metricsLayer.setVisible(!metricsLayer.isVisible());
+				metricsLayer.invalidate();
 			}
 		}
-		//check if inside a country represented by SimplePolygonMarker
-		else if(((AbstractShapeMarker)country).isInsideByLocation(checkLoc))
+		else if(replay == null)
+		{
+			return;
+		}
+		else if(key == ' ')
+		{
+			replay.togglePause();
+		}
+		else if(key == '+' || key == '=')
 		{
-			earthquake.addProperty("country", country.getProperty("name"));
-			return true;
+			replay.setSpeed(replay.getSpeed() * 2);
+		}
+		else if(key == '-')
+		{
+			replay.setSpeed(replay.getSpeed() / 2);
+		}
+		else if(key == CODED && (keyCode == LEFT || keyCode == RIGHT))
+		{
+			long step = (replay.getEnd() - replay.getStart()) / 50;
+			replay.scrub(keyCode == LEFT ? -step : step);
 		}
-		return false;
 	}
 	
-	//prints the country with number of earthquakes in it
-	private void printQuakes()
+	//the filter keys, the map picks the change up from the visibility on the next frame
+	private void changeFilter(char key)
 	{
-		int  totalWaterQuakes = quakeMarkers.size();
-		for(Marker country : countryMarkers)
+		QuakeFilter filter = visibility.getFilter();
+		if(key == 'm')
+		{
+			minMagnitudeStep = (minMagnitudeStep + 1) % MIN_MAGNITUDES.length;
+			filter.setMagnitudeRange(MIN_MAGNITUDES[minMagnitudeStep], Float.POSITIVE_INFINITY);
+		}
+		else if(key == 'd')
 		{
-			String countryName = country.getStringProperty("name");
-			int numOfQuakes = 0;
-			for(Marker marker : quakeMarkers)
+			//all, then shallow, intermediate and deep alone
+			depthStep = (depthStep + 1) % 4;
+			for(int depthClass = 0; depthClass < 3; depthClass++)
 			{
-				EarthquakeMarker eqMarker = (EarthquakeMarker)marker;
-				if(eqMarker.isOnLand())
-				{
-					if(countryName.equals(eqMarker.getProperty("country").toString()))
-					{
-						numOfQuakes++;
-					}
-				}
+				filter.setDepthClass(depthClass, depthStep == 0 || depthStep - 1 == depthClass);
+			}
+		}
+		else if(key == 'l')
+		{
+			//all, land, ocean
+			surfaceStep = (surfaceStep + 1) % 3;
+			filter.setSurface(surfaceStep != 2, surfaceStep != 1);
+		}
+		else if(key == 'c')
+		{
+			if(filter.getCountries() != null)
+			{
+				filter.setCountries(null);
 			}
-			if(numOfQuakes > 0)
+			else if(lastSelected instanceof LandQuakeMarker)
 			{
-				totalWaterQuakes -= numOfQuakes;
-				System.out.println(countryName + " : " + numOfQuakes);
+				filter.setCountries(Collections.singleton(((LandQuakeMarker)lastSelected).getCountry()));
 			}
 		}
-		System.out.println("OCEAN QUAKES : " + totalWaterQuakes);
+		else
+		{
+			filter.clear();
+			minMagnitudeStep = 0;
+			depthStep = 0;
+			surfaceStep = 0;
+		}
 	}
 	
-	//sort earthquakes with respect to their magnitude in descending order
-	//and print the top numToPrint earthquakes
-	private void sortAndPrint(int numToPrint)
+	//the active filters and how many quakes pass, below the map
+	private void drawFilters()
 	{
-		List<EarthquakeMarker> quakes = new ArrayList<EarthquakeMarker>();
-		for(Marker marker : quakeMarkers)
+		QuakeFilter filter = visibility.getFilter();
+		String label = "Filter:";
+		if(minMagnitudeStep > 0)
 		{
-			quakes.add((EarthquakeMarker)marker);
+			label += "  M " + nf(MIN_MAGNITUDES[minMagnitudeStep], 0, 0) + "+";
 		}
-		Collections.sort(quakes);
-		Object[] arr = quakes.toArray();
-		if(numToPrint > arr.length)
+		if(depthStep > 0)
 		{
-			for(Object obj : arr)
-			{
-				System.out.println(obj);
-			}
+			label += "  " + new String[] { "shallow", "intermediate", "deep" }[depthStep - 1];
 		}
-		else
+		if(surfaceStep > 0)
 		{
-			for(int i=0; i<numToPrint; i++)
-			{
-				System.out.println(arr[i]);
-			}
+			label += surfaceStep == 1 ? "  land" : "  ocean";
 		}
+		if(filter.getCountries() != null)
+		{
+			label += "  " + join(filter.getCountries().toArray(new String[0]), ", ");
+		}
+		label += "   " + visibility.getVisibleQuakeCount() + " quakes";
+		pushStyle();
+		fill(255);
+		textSize(16);
+		textAlign(LEFT, TOP);
+		text(label, 250, 610);
+		popStyle();
 	}
 	
-	//automatically called when mouse is moved
-	public void mouseMoved()
+	//replays the quakes from start to the latest in REPLAY_SECONDS
+	private void startReplay(long start)
 	{
-		//clear  the selection
-		if(lastSelected != null)
+		long end = getTimeline().getEnd();
+		replay = new ReplayClock(start, end, (end - start) / (double)REPLAY_SECONDS);
+	}
+	
+	//the time shown and the speed, above the map
+	private void drawReplayClock()
+	{
+		String time = Instant.ofEpochMilli(replay.getTime()).toString();
+		String label = "Replay " + time.substring(0, 16).replace('T', ' ') + " UTC   "
+				+ nf((float)(replay.getSpeed() / 3600000), 0, 1) + " h/s"
+				+ (replay.isPaused() ? "   paused" : "");
+		pushStyle();
+		fill(255);
+		textSize(16);
+		textAlign(LEFT, BOTTOM);
+		text(label, 250, 45);
+		popStyle();
+	}
+	
+	//sorted on first use after the quakes changed
+	private Timeline<EarthquakeMarker> getTimeline()
+	{
+		if(timeline == null)
 		{
-			lastSelected.setSelected(false);
-			lastSelected = null;
+			List<EarthquakeMarker> quakes = new ArrayList<EarthquakeMarker>(shown.getQuakes().size());
+			long[] times = new long[shown.getQuakes().size()];
+			for(Marker marker : shown.getQuakes())
+			{
+				EarthquakeMarker quake = (EarthquakeMarker)marker;
+				times[quakes.size()] = quake.getTime();
+				quakes.add(quake);
+			}
+			timeline = new Timeline<EarthquakeMarker>(quakes, times);
 		}
-		selectMarkerIfHover(cityMarkers);
-		selectMarkerIfHover(quakeMarkers);
+		return timeline;
 	}
 	
-	//check if there is marker selected
-	private void selectMarkerIfHover(List<Marker> markers)
+	public void dispose()
 	{
-		if(lastSelected != null)
+		if(feedPoller != null)
 		{
-			return;
+			feedPoller.stop();
+		}
+		Metrics.stopLog();
+		if(quakeStore != null)
+		{
+			quakeStore.close();
 		}
-		for(Marker m : markers)
+		if(tileProvider != null)
+		{
+			tileProvider.close();
+		}
+		if(snapshotStale)
+		{
+			saveSnapshot();
+		}
+		super.dispose();
+	}
+	
+	/*
+	 * Applies a feed change to a new generation of the markers and swaps it
+	 * in. Runs on the poller thread; if another loader published first, the
+	 * change is applied again on top of its generation.
+	 */
+	private void publish(FeedPoller.Delta delta)
+	{
+		while(true)
 		{
-			CommonMarker marker = (CommonMarker)m;
-			if(marker.isInside(map, mouseX, mouseY))
+			MarkerModel current = model.get();
+			MarkerModel.Builder next = current.edit();
+			//with a store, quakes which left the weekly feed stay as history
+			//until they are older than the history window
+			if(quakeStore == null)
+			{
+				for(String id : delta.getRemoved())
+				{
+					next.removeQuake(id);
+				}
+			}
+			else
+			{
+				next.removeQuakesBefore(historyStart(System.currentTimeMillis()));
+			}
+			//an updated quake replaces the marker with its id
+			for(PointFeature feature : delta.getUpdated())
+			{
+				next.addQuake(feature);
+			}
+			for(PointFeature feature : delta.getAdded())
+			{
+				next.addQuake(feature);
+			}
+			if(model.compareAndSet(current, next.build()))
 			{
-				lastSelected = marker;
-				marker.setSelected(true);
 				return;
 			}
 		}
 	}
 	
-	/* The event handler for mouse clicks
-	 * It will display an earthquake and its threat circle of cities
-	 * Or if a city is clicked, it will display all the earthquakes 
-	 * where the city is in the threat circle
+	/*
+	 * Measures the past day crosses from the clock again after every poll,
+	 * changed, unchanged or failed. The feed's age category is only right when the feed
+	 * is parsed: a quake moves to "Past Week" without being updated, and a
+	 * snapshot would bring back an age from the last run.
 	 */
-	public void mouseClicked()
+	private void updatePastDay()
 	{
+		long polls = feedPoller.getPollCount() + feedPoller.getFailureCount();
+		if(polls != pastDayPolls)
+		{
+			pastDayPolls = polls;
+			markerManager.setNow(System.currentTimeMillis());
+		}
+	}
+	
+	//switch to the latest published generation of markers
+	//only the quakes that were added, updated or retired are touched,
+	//unless the catalog was compacted in between
+	private void showLatestModel()
+	{
+		MarkerModel latest = model.get();
+		if(latest == shown)
+		{
+			return;
+		}
+		MarkerModel.Changes changes = latest.changesSince(shown);
+		
+		//markers are about to change, drop any hover or click state
 		if(lastClicked != null)
 		{
 			unhideMarkers();
 			lastClicked.setClicked(false);
 			lastClicked = null;
 		}
+		if(lastSelected != null)
+		{
+			lastSelected.setSelected(false);
+			lastSelected = null;
+			compositor.setHoverMarker(null);
+		}
+		
+		if(changes.isRenumbered())
+		{
+			//the catalog was compacted, every quake has a new marker
+			List<Marker> markers = new ArrayList<Marker>(latest.getCities());
+			markers.addAll(latest.getQuakes());
+			markerManager.setMarkers(markers);
+			impactIndex = new ImpactIndex(latest.getCities(), latest.getQuakes());
+			visibility.reset(latest.getCatalog(), latest.getQuakes());
+			shown = latest;
+			buildHoverGrid();
+		}
 		else
 		{
-			checkCitiesForClick();
-			if(lastClicked == null)
+			//the manager rebuilds its shape only if a marker was added or removed
+			for(EarthquakeMarker marker : changes.getRemoved())
+			{
+				markerManager.removeMarker(marker);
+				impactIndex.remove(marker);
+				visibility.removeQuake(marker);
+				hoverGrid.remove(marker);
+			}
+			visibility.setCatalog(latest.getCatalog());
+			for(EarthquakeMarker marker : changes.getAdded())
 			{
-				checkEarthquakesForClick();
+				impactIndex.add(marker);
+				visibility.addQuake(marker);
+				markerManager.addMarker(marker);
+				hoverGrid.add(marker);
 			}
+			shown = latest;
 		}
+		//later changes are taken from this generation on, let the older ones go
+		shown.forgetOlder();
+		
+		if(changes.isRenumbered() || !changes.isEmpty())
+		{
+			timeline = null;
+		}
+		snapshotStale = true;
 	}
 	
-	//to check if a city marker was clicked on
-	//and respond appropriately
-	private void checkCitiesForClick()
+	//parse the country and city JSON files and poll the feed once
+	private MarkerModel.Builder loadFromJSON()
 	{
-		if(lastClicked != null)
+		//load country features and markers
+		//country markers are not added to map they are used for their geometric properties
+		List<Feature> countries = GeoJSONReader.loadData(this, countryFile);
+		List<Marker> countryMarkers = MapUtils.createSimpleMarkers(countries);
+		countryIndex = new CountryIndex(countryMarkers, countryTolerance);
+		if(landMaskCellsPerDegree > 0)
 		{
-			return;
+			countryIndex.setLandMask(LandMask.build(countryIndex, landMaskCellsPerDegree));
 		}
-		//loop over all city markers to see if one of them is clicked
-		for(Marker marker : cityMarkers)
+		quakeClassifier = new QuakeClassifier(countryIndex);
+		
+		//load city data
+		List<Feature> cities = GeoJSONReader.loadData(this, cityFile);
+		List<Marker> cityMarkers = new ArrayList<Marker>();
+		for(Feature city : cities)
 		{
-			if(!marker.isHidden() && marker.isInside(map, mouseX, mouseY))
+			cityMarkers.add(new CityMarker(city));
+		}
+		MarkerModel.Builder markers = MarkerModel.builder(cityMarkers, new QuakeCatalog());
+		
+		//load earthquake data
+		//the first poll reports every quake in the feed as added
+		//land or ocean is decided for all quakes at once on all cores,
+		//then the markers are created in feed order
+		try
+		{
+			List<PointFeature> quakes = feedPoller.poll().getAdded();
+			quakeClassifier.classify(quakes);
+			storeQuakes(quakes);
+			for(PointFeature feature : quakes)
 			{
-				lastClicked = (CommonMarker)marker;
-				
-				//hide all other city markers
-				for(Marker mhide : cityMarkers)
-				{
-					if(mhide != lastClicked)
-					{
-						mhide.setHidden(true);
-					}
-				}
-				
-				//hide those earthquake markers which does not affect the city
-				for(Marker mhide : quakeMarkers)
-				{
-					EarthquakeMarker quakeMarker = (EarthquakeMarker)mhide;
-					if(quakeMarker.getDistanceTo(marker.getLocation()) > quakeMarker.threatCircle())
-					{
-						quakeMarker.setHidden(true);
-					}
-				}
-				return;
+				markers.addQuake(feature);
 			}
 		}
+		catch(IOException e)
+		{
+			println("Could not load earthquake feed: " + e);
+		}
+		return markers;
 	}
 	
-	//check if an earthquake marker was clicked on
-	private void checkEarthquakesForClick()
+	//returns null if the store cannot be opened, the map then shows only the feed
+	private QuakeStore openQuakeStore()
 	{
-		if(lastClicked != null)
+		try
+		{
+			return new QuakeStore(new File(sketchPath(feedCacheDir), quakeStoreFile));
+		}
+		catch(SQLException e)
+		{
+			println("Could not open the quake store, no history is kept: " + e);
+			return null;
+		}
+	}
+	
+	//adds classified quakes to the history, called on the poller thread too
+	private void storeQuakes(List<PointFeature> quakes)
+	{
+		if(quakeStore == null || quakes.isEmpty())
 		{
 			return;
 		}
-		//loop over all earthquake markers to see if one of them was clicked
-		for(Marker m : quakeMarkers)
+		try
 		{
-			EarthquakeMarker marker = (EarthquakeMarker)m;
-			if(!marker.isHidden() && marker.isInside(map, mouseX, mouseY))
+			quakeStore.upsert(quakes);
+		}
+		catch(SQLException e)
+		{
+			println("Could not store quakes: " + e);
+		}
+	}
+	
+	//markers for the stored quakes of the history window which are not on the map yet
+	private void loadHistory(MarkerModel.Builder markers)
+	{
+		if(quakeStore == null)
+		{
+			return;
+		}
+		try
+		{
+			List<PointFeature> quakes = quakeStore.query(historyMinMagnitude, historyStart(System.currentTimeMillis()),
+					Long.MAX_VALUE, historyBox[0], historyBox[1], historyBox[2], historyBox[3]);
+			for(PointFeature feature : quakes)
 			{
-				lastClicked = marker;
-				
-				//hide all other earthquake markers
-				for(Marker mhide : quakeMarkers)
+				if(!markers.containsQuake(FeedPoller.keyOf(feature)))
 				{
-					if(mhide != lastClicked)
-					{
-						mhide.setHidden(true);
-					}
+					markers.addQuake(feature);
 				}
-				
-				//hide cities which are not affected by this earthquake
-				for(Marker mhide : cityMarkers)
-				{
-					if(mhide.getDistanceTo(marker.getLocation()) > marker.threatCircle())
-					{
-						mhide.setHidden(true);
-					}
-				}
-				return;
 			}
 		}
+		catch(SQLException e)
+		{
+			println("Could not load the quake history: " + e);
+		}
 	}
 	
-	//unhide all markers
-	private void unhideMarkers()
+	//origin time of the oldest quakes kept on the map
+	private long historyStart(long now)
 	{
-		for(Marker city : cityMarkers)
+		return now - historyDays * 24L * 60 * 60 * 1000;
+	}
+	
+	//returns null if there is no snapshot or it does not match the JSON files
+	private GeoSnapshot loadSnapshot()
+	{
+		try
 		{
-			city.setHidden(false);
+			//the snapshot stores the simplified countries and their land mask
+			sourceChecksum = GeoSnapshot.checksum(new File(dataPath(countryFile)), new File(dataPath(cityFile)))
+					^ Float.floatToIntBits(countryTolerance) ^ (long)landMaskCellsPerDegree << 40;
+			return GeoSnapshot.load(new File(sketchPath(feedCacheDir), snapshotFile), sourceChecksum);
 		}
-		
-		for(Marker quake : quakeMarkers)
+		catch(IOException e)
 		{
-			quake.setHidden(false);
+			println("Could not read snapshot: " + e);
+			return null;
 		}
 	}
+	
+	//store the countries, cities and current quakes for the next start
+	//reads the latest generation, so it is safe from any thread
+	private void saveSnapshot()
+	{
+		MarkerModel markers = model.get();
+		if(sourceChecksum == -1 || markers == null)
+		{
+			return;
+		}
+		int[] rows = new int[markers.getQuakes().size()];
+		String[] ids = new String[rows.length];
+		for(int i = 0; i < rows.length; i++)
+		{
+			EarthquakeMarker marker = (EarthquakeMarker)markers.getQuakes().get(i);
+			rows[i] = marker.getRow();
+			ids[i] = marker.getId();
+		}
+		try
+		{
+			GeoSnapshot.write(new File(sketchPath(feedCacheDir), snapshotFile), sourceChecksum,
+					countryIndex, markers.getCities(), markers.getCatalog(), rows, ids);
+			snapshotStale = false;
+		}
+		catch(IOException e)
+		{
+			println("Could not write snapshot: " + e);
+		}
+	}
+	
+	//cities first so they win over quakes like in the original hover loop
+	private void buildHoverGrid()
+	{
+		List<Marker> markers = new ArrayList<Marker>(shown.getCities());
+		markers.addAll(shown.getQuakes());
+		hoverGrid = new HoverGrid(markers);
+	}
+	
+	//prints the countries with number of earthquakes in them, the numToPrint
+	//strongest earthquakes, the depth classes and the land/ocean split as CSV
+	private void printReport(int numToPrint)
+	{
+		QuakeReport report = new QuakeReport(numToPrint);
+		for(Marker marker : shown.getQuakes())
+		{
+			EarthquakeMarker quake = (EarthquakeMarker)marker;
+			report.add(quake.getCatalog(), quake.getRow());
+		}
+		try
+		{
+			report.writeCsv(new OutputStreamWriter(System.out));
+		}
+		catch(IOException e)
+		{
+			System.out.println("Could not print the report: " + e.getMessage());
+		}
+	}
+	
+	//automatically called when mouse is moved
+	public void mouseMoved()
+	{
+		long start = MOVE_TIME.start();
+		//clear  the selection
+		if(lastSelected != null)
+		{
+			lastSelected.setSelected(false);
+			lastSelected = null;
+		}
+		selectMarkerIfHover();
+		MOVE_TIME.stop(start);
+	}
+	
+	//check if there is marker selected
+	//only the markers in the grid cells around the mouse are tested
+	private void selectMarkerIfHover()
+	{
+		CommonMarker marker = hoverGrid.find(map, mouseX, mouseY, width, height, onMap);
+		if(marker != null)
+		{
+			lastSelected = marker;
+			marker.setSelected(true);
+		}
+		compositor.setHoverMarker(marker);
+	}
+	
+	/* The event handler for mouse clicks
+	 * It will display an earthquake and its threat circle of cities
+	 * Or if a city is clicked, it will display all the earthquakes 
+	 * where the city is in the threat circle
+	 */
+	public void mouseClicked()
+	{
+		long start = CLICK_TIME.start();
+		if(lastClicked != null)
+		{
+			unhideMarkers();
+			lastClicked.setClicked(false);
+			lastClicked = null;
+		}
+		else
+		{
+			checkMarkersForClick();
+		}
+		//the marker manager picks the new selection up from the visibility
+		CLICK_TIME.stop(start);
+	}
+	
+	//the city or earthquake marker on the map under the mouse, cities first
+	//like the markers of the grid, then respond appropriately
+	private void checkMarkersForClick()
+	{
+		CommonMarker marker = hoverGrid.find(map, mouseX, mouseY, width, height, onMap);
+		if(marker instanceof EarthquakeMarker)
+		{
+			EarthquakeMarker quake = (EarthquakeMarker)marker;
+			lastClicked = quake;
+			
+			//show only this earthquake and the cities inside its threat circle
+			visibility.selectQuake(quake, impactIndex.citiesAffectedBy(quake));
+		}
+		else if(marker != null)
+		{
+			lastClicked = marker;
+			
+			//show only this city and the earthquakes which affect it
+			visibility.selectCity(marker, impactIndex.quakesAffecting(marker));
+		}
+	}
+	
+	//show all markers the filters let through
+	private void unhideMarkers()
+	{
+		visibility.clearSelection();
+	}
 }
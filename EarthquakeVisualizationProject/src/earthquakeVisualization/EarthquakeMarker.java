@@ -3,7 +3,7 @@ package earthquakeVisualization;
 import processing.core.PConstants;
 import processing.core.PGraphics;
 
-import de.fhpotsdam.unfolding.data.PointFeature;
+import catalog.QuakeCatalog;
 
 public abstract class EarthquakeMarker extends CommonMarker implements Comparable<EarthquakeMarker> {
 	
@@ -14,6 +14,14 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	//the radius of earthquake marker
 	protected float radius;
 	
+	//the marker is a view over one row of the catalog
+	//so hot paths read primitive columns instead of parsing properties
+	protected final QuakeCatalog catalog;
+	protected final int row;
+	
+	//threatCircle() is constant for a given magnitude
+	private final double threatCircle;
+	
 	//constant for distance
 	public static final float kmPerMiles = 1.6f;
 	
@@ -25,19 +33,27 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	public static final float THRESHOLD_INTERMEDIATE = 70;
 	public static final float THRESHOLD_DEEP = 300;
 	
+	//colours for earthquake's depth
+	public static final int COLOR_SHALLOW = 0xFFFFFF00;
+	public static final int COLOR_INTERMEDIATE = 0xFF0000FF;
+	public static final int COLOR_DEEP = 0xFFFF0000;
+	
 	//to draw different earthquakes (land or ocean)
 	public abstract void drawEarthquake(PGraphics pg, float x, float y);
+	//to add the same shape as drawEarthquake to a batch
+	public abstract void batchEarthquake(MarkerBatch batch, int fill, float x, float y);
 	
-	public EarthquakeMarker(PointFeature feature)
+	public EarthquakeMarker(QuakeCatalog catalog, int row)
 	{
-		super(feature.getLocation());
+		super(catalog.getLocation(row));
+		this.catalog = catalog;
+		this.row = row;
 		
-		//add a radius property and then set the properties
-		java.util.HashMap<String, Object> properties = feature.getProperties();
-		float magnitude = Float.parseFloat(properties.get("magnitude").toString());
-		properties.put("radius", 2*magnitude);
-		setProperties(properties);
-		this.radius = 1.75f*getMagnitude();
+		float magnitude = catalog.getMagnitude(row);
+		this.radius = 1.75f*magnitude;
+		
+		double miles = 20.0f * Math.pow(1.8, 2*magnitude - 5);
+		threatCircle = miles * kmPerMiles;
 	}
 	
 	public void drawMarker(PGraphics pg, float x, float y)
@@ -52,8 +68,7 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 		drawEarthquake(pg, x, y);
 		
 		//add x over the markers which occurred within past day
-		String age = getStringProperty("age");
-		if("Past Day".equals(age))
+		if(catalog.isPastDay(row))
 		{
 			pg.strokeWeight(2);
 			int buffer = 2;
@@ -65,6 +80,23 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 		pg.popStyle();
 	}
 	
+	//same shapes as drawMarker, drawn together with the other markers
+	public void batchMarker(MarkerBatch batch, float x, float y)
+	{
+		batchMarker(batch, x, y, catalog.isPastDay(row));
+	}
+	
+	//with the past day cross decided by the caller, e.g. from a replay clock
+	public void batchMarker(MarkerBatch batch, float x, float y, boolean pastDay)
+	{
+		batchEarthquake(batch, getFillColor(), x, y);
+		if(pastDay)
+		{
+			int buffer = 2;
+			batch.cross(x, y, radius+buffer);
+		}
+	}
+	
 	//show title of earthquake if this marker is selected
 	//i.e. mouse is over the marker
 	public void showTitle(PGraphics pg, float x, float y)
@@ -90,27 +122,35 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	//to get distance upto which this earthquake can affect things
 	public double threatCircle()
 	{
-		double miles = 20.0f * Math.pow(1.8, 2*getMagnitude() - 5);
-		double km = miles * kmPerMiles;
-		return km;
+		return threatCircle;
 	}
 	
 	//determine colour of the marker
 	private void colorDetermine(PGraphics pg)
 	{
-		float depth = getDepth();
-		
+		pg.fill(getFillColor());
+	}
+	
+	//colour of the marker according to depth
+	public int getFillColor()
+	{
+		return depthColor(catalog.getDepth(row));
+	}
+	
+	//colour for a depth: shallow, intermediate or deep
+	public static int depthColor(float depth)
+	{
 		if(depth < THRESHOLD_INTERMEDIATE)
 		{
-			pg.fill(255, 255, 0);
+			return COLOR_SHALLOW;
 		}
 		else if(depth < THRESHOLD_DEEP)
 		{
-			pg.fill(0, 0, 255);
+			return COLOR_INTERMEDIATE;
 		}
 		else
 		{
-			pg.fill(255, 0, 0);
+			return COLOR_DEEP;
 		}
 	}
 	
@@ -120,11 +160,12 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	//but we want descending order so we reversed it
 	public int compareTo(EarthquakeMarker marker)
 	{
-		if(getMagnitude() < marker.getMagnitude())
+		float magnitude = getMagnitude();
+		if(magnitude < marker.getMagnitude())
 		{
 			return 1;
 		}
-		else if(getMagnitude() == marker.getMagnitude())
+		else if(magnitude == marker.getMagnitude())
 		{
 			return 0;
 		}
@@ -137,20 +178,53 @@ public abstract class EarthquakeMarker extends CommonMarker implements Comparabl
 	
 	//getters for earthquake properties
 	public float getMagnitude() {
-		return Float.parseFloat(getProperty("magnitude").toString());
+		return catalog.getMagnitude(row);
 	}
 	
 	public float getDepth() {
-		return Float.parseFloat(getProperty("depth").toString());	
+		return catalog.getDepth(row);
+	}
+	
+	//epoch milliseconds of the feed entry, 0 if the feed had none
+	public long getTime() {
+		return catalog.getTime(row);
+	}
+	
+	public boolean isPastDay() {
+		return catalog.isPastDay(row);
 	}
 	
 	public String getTitle() {
-		return (String) getProperty("title");	
-		
+		return catalog.getTitle(row);
 	}
 	
 	public float getRadius() {
-		return Float.parseFloat(getProperty("radius").toString());
+		return 2*getMagnitude();
+	}
+	
+	public QuakeCatalog getCatalog() {
+		return catalog;
+	}
+	
+	public int getRow() {
+		return row;
+	}
+	
+	//the property map is only built when something asks for it
+	public java.util.HashMap<String, Object> getProperties() {
+		if(properties == null) {
+			properties = catalog.getProperties(row);
+		}
+		return properties;
+	}
+	
+	public Object getProperty(String key) {
+		return getProperties().get(key);
+	}
+	
+	public String getStringProperty(String key) {
+		Object value = getProperty(key);
+		return value instanceof String ? (String) value : null;
 	}
 	
 	public boolean isOnLand()
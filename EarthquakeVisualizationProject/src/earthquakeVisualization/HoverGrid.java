@@ -0,0 +1,355 @@
+package earthquakeVisualization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/*
+ * Screen-space bucket grid for hover and click hit-testing.
+ *
+ * The screen positions of all markers are projected once and bucketed into
+ * square cells as wide as the hit radius. A hover only tests the markers in
+ * the 3x3 cells around the mouse. The grid is rebuilt lazily when the
+ * viewport moves (see ViewportWatcher) or the marker list is replaced.
+ *
+ * Markers added and removed one by one (add, remove) do not rebuild it:
+ * an added marker is projected on its own and tested after the grid's
+ * markers, a removed one is skipped. Once there are more than
+ * MAX_PENDING of them they are folded into the list and the next find
+ * projects everything like after a pan, so a feed update costs the
+ * quakes that changed rather than all of them.
+ *
+ * The first marker in list order that is hit wins, the same as looping
+ * over the list with isInside. A Filter leaves out markers that are not
+ * on the map, so they do not hide the markers under them.
+ *
+ * The latency of a hover is the input.mouseMoved metric of
+ * EarthquakeCityMap; the rebuilds are timed here as hover.rebuild.
+ */
+public class HoverGrid {
+
+	private static final LatencyHistogram REBUILD_TIME = Metrics.histogram("hover.rebuild");
+
+	//SimplePointMarker's default radius, used by isInside for all our markers
+	public static final float HIT_RADIUS = 10;
+
+	//added and removed markers are folded into the grid beyond this many
+	private static final int MAX_PENDING = 1024;
+
+	private final List<CommonMarker> markers = new ArrayList<CommonMarker>();
+	private final ViewportWatcher viewport = new ViewportWatcher();
+
+	//projected positions of the markers, in list order
+	private float[] screenX = new float[0];
+	private float[] screenY = new float[0];
+
+	//cell c holds cellItems[cellStart[c] .. cellStart[c+1]), ascending
+	private int[] cellStart = new int[1];
+	private int[] cellItems = new int[0];
+	private int cols;
+	private int rows;
+	private float width;
+	private float height;
+
+	//markers added since the grid was built, after all of the grid's in
+	//hit order, and their positions up to projectedAdded
+	private final List<CommonMarker> added = new ArrayList<CommonMarker>();
+	private float[] addedX = new float[16];
+	private float[] addedY = new float[16];
+	private int projectedAdded = 0;
+	//grid markers removed since it was built
+	private final Set<CommonMarker> removed = Collections.newSetFromMap(new IdentityHashMap<CommonMarker, Boolean>());
+
+	//the markers a query may return
+	public interface Filter
+	{
+		boolean accepts(CommonMarker marker);
+	}
+
+	public HoverGrid(List<? extends Marker> markers)
+	{
+		setMarkers(markers);
+	}
+
+	public void setMarkers(List<? extends Marker> markers)
+	{
+		this.markers.clear();
+		for(Marker marker : markers)
+		{
+			this.markers.add((CommonMarker)marker);
+		}
+		added.clear();
+		projectedAdded = 0;
+		removed.clear();
+		viewport.reset();
+	}
+
+	//adds a marker after all others, it is projected on the next find
+	public void add(Marker marker)
+	{
+		CommonMarker common = (CommonMarker)marker;
+		if(!removed.remove(common))
+		{
+			added.add(common);
+			foldIfFull();
+		}
+	}
+
+	/*
+	 * Adds a marker at a screen position after all others. For callers
+	 * that project the markers themselves, see build; they have to build
+	 * again once more than MAX_PENDING markers were added and removed.
+	 */
+	public void add(Marker marker, float x, float y)
+	{
+		add(marker);
+		if(projectedAdded == added.size() - 1 && added.get(projectedAdded) == marker)
+		{
+			setAddedPosition(projectedAdded++, x, y);
+		}
+	}
+
+	public void remove(Marker marker)
+	{
+		int index = added.indexOf(marker);
+		if(index < 0)
+		{
+			removed.add((CommonMarker)marker);
+			foldIfFull();
+			return;
+		}
+		added.remove(index);
+		if(index < projectedAdded)
+		{
+			projectedAdded--;
+			System.arraycopy(addedX, index + 1, addedX, index, projectedAdded - index);
+			System.arraycopy(addedY, index + 1, addedY, index, projectedAdded - index);
+		}
+	}
+
+	//number of markers that can be hit
+	public int size()
+	{
+		return markers.size() - removed.size() + added.size();
+	}
+
+	//the marker of a query result
+	public CommonMarker getMarker(int index)
+	{
+		return index < markers.size() ? markers.get(index) : added.get(index - markers.size());
+	}
+
+	/*
+	 * Returns the first marker under the mouse, or null.
+	 * width and height are the size of the sketch window.
+	 */
+	public CommonMarker find(UnfoldingMap map, float mouseX, float mouseY, float width, float height)
+	{
+		return find(map, mouseX, mouseY, width, height, null);
+	}
+
+	//the first marker under the mouse the filter accepts, any marker for a null filter
+	public CommonMarker find(UnfoldingMap map, float mouseX, float mouseY, float width, float height, Filter filter)
+	{
+		if(viewport.changed(map) || width != this.width || height != this.height)
+		{
+			long start = REBUILD_TIME.start();
+			fold();
+			project(map);
+			build(screenX, screenY, width, height);
+			REBUILD_TIME.stop(start);
+		}
+		for(; projectedAdded < added.size(); projectedAdded++)
+		{
+			ScreenPosition position = added.get(projectedAdded).getScreenPosition(map);
+			setAddedPosition(projectedAdded, position.x, position.y);
+		}
+
+		int hit = query(mouseX, mouseY, filter);
+		return hit < 0 ? null : getMarker(hit);
+	}
+
+	private void foldIfFull()
+	{
+		if(added.size() + removed.size() > MAX_PENDING)
+		{
+			fold();
+			viewport.reset();
+		}
+	}
+
+	//puts the added markers into the list and drops the removed ones, in hit order
+	private void fold()
+	{
+		if(added.isEmpty() && removed.isEmpty())
+		{
+			return;
+		}
+		List<CommonMarker> folded = new ArrayList<CommonMarker>(size());
+		for(CommonMarker marker : markers)
+		{
+			if(!removed.contains(marker))
+			{
+				folded.add(marker);
+			}
+		}
+		folded.addAll(added);
+		markers.clear();
+		markers.addAll(folded);
+		added.clear();
+		projectedAdded = 0;
+		removed.clear();
+	}
+
+	private void setAddedPosition(int index, float x, float y)
+	{
+		if(index == addedX.length)
+		{
+			addedX = Arrays.copyOf(addedX, index * 2);
+			addedY = Arrays.copyOf(addedY, index * 2);
+		}
+		addedX[index] = x;
+		addedY[index] = y;
+	}
+
+	private void project(UnfoldingMap map)
+	{
+		int n = markers.size();
+		if(screenX.length != n)
+		{
+			screenX = new float[n];
+			screenY = new float[n];
+		}
+		for(int i = 0; i < n; i++)
+		{
+			ScreenPosition position = markers.get(i).getScreenPosition(map);
+			screenX[i] = position.x;
+			screenY[i] = position.y;
+		}
+	}
+
+	/*
+	 * Buckets positions into cells with a counting sort.
+	 * Positions that cannot be hit from inside the window are left out.
+	 * Public for callers that project the markers themselves; the
+	 * positions are those of the markers the grid was made with.
+	 */
+	public void build(float[] xs, float[] ys, float width, float height)
+	{
+		screenX = xs;
+		screenY = ys;
+		this.width = width;
+		this.height = height;
+		cols = (int)Math.ceil(width / HIT_RADIUS) + 2;
+		rows = (int)Math.ceil(height / HIT_RADIUS) + 2;
+		int n = xs.length;
+
+		int[] cellOf = new int[n];
+		cellStart = new int[cols * rows + 1];
+		for(int i = 0; i < n; i++)
+		{
+			int cx = cellX(xs[i]);
+			int cy = cellY(ys[i]);
+			if(cx < 0 || cy < 0 || cx >= cols || cy >= rows)
+			{
+				cellOf[i] = -1;
+				continue;
+			}
+			cellOf[i] = cy * cols + cx;
+			cellStart[cellOf[i] + 1]++;
+		}
+		for(int c = 0; c < cols * rows; c++)
+		{
+			cellStart[c + 1] += cellStart[c];
+		}
+		cellItems = new int[cellStart[cols * rows]];
+		int[] fill = new int[cols * rows];
+		for(int i = 0; i < n; i++)
+		{
+			if(cellOf[i] >= 0)
+			{
+				cellItems[cellStart[cellOf[i]] + fill[cellOf[i]]++] = i;
+			}
+		}
+	}
+
+	//index of the first marker hit at the point, or -1
+	public int query(float x, float y)
+	{
+		return query(x, y, null);
+	}
+
+	/*
+	 * Index of the first marker hit at the point the filter accepts, or
+	 * -1; see getMarker. Markers added since the grid was built come after
+	 * the grid's and are only found once they have a position.
+	 */
+	public int query(float x, float y, Filter filter)
+	{
+		int best = Integer.MAX_VALUE;
+		int cx = cellX(x);
+		int cy = cellY(y);
+		for(int row = Math.max(0, cy - 1); row <= Math.min(rows - 1, cy + 1); row++)
+		{
+			for(int col = Math.max(0, cx - 1); col <= Math.min(cols - 1, cx + 1); col++)
+			{
+				int cell = row * cols + col;
+				for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++)
+				{
+					int i = cellItems[k];
+					//items are ascending, nothing later in this cell can beat best
+					if(i >= best)
+					{
+						break;
+					}
+					if(isHit(i, x, y) && (filter == null || filter.accepts(markers.get(i)))
+							&& (removed.isEmpty() || !removed.contains(markers.get(i))))
+					{
+						best = i;
+						break;
+					}
+				}
+			}
+		}
+		if(best != Integer.MAX_VALUE)
+		{
+			return best;
+		}
+		for(int j = 0; j < projectedAdded; j++)
+		{
+			CommonMarker marker = added.get(j);
+			if(marker.isInside(x, y, addedX[j], addedY[j]) && (filter == null || filter.accepts(marker)))
+			{
+				return markers.size() + j;
+			}
+		}
+		return -1;
+	}
+
+	//the same test isInside(map, x, y) does, with the cached position
+	private boolean isHit(int i, float x, float y)
+	{
+		return markers.get(i).isInside(x, y, screenX[i], screenY[i]);
+	}
+
+	//cells are shifted by one so there is a border row and column
+	//for markers just outside the window
+	private int cellX(float x)
+	{
+		return (int)Math.floor(x / HIT_RADIUS) + 1;
+	}
+
+	private int cellY(float y)
+	{
+		return (int)Math.floor(y / HIT_RADIUS) + 1;
+	}
+}
@@ -0,0 +1,128 @@
+package earthquakeVisualization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import spatial.SphereIndex;
+
+/*
+ * Which cities are inside which quake's threat circle, in both directions.
+ *
+ * The pairs are worked out once per quake when it is added: a SphereIndex
+ * over the cities gives the candidates within the threat circle and the
+ * exact distance test of the click handlers decides. Every quake keeps the
+ * list of cities it affects and every city the list of quakes affecting
+ * it, so a click only looks a list up. Quakes are added and removed one at
+ * a time as the feed changes; the cities are fixed.
+ */
+public class ImpactIndex {
+
+	private final SphereIndex<Marker> cityIndex;
+
+	//only quakes and cities with at least one pair have an entry
+	private final Map<EarthquakeMarker, List<Marker>> citiesByQuake = new IdentityHashMap<EarthquakeMarker, List<Marker>>();
+	private final Map<Marker, List<EarthquakeMarker>> quakesByCity = new IdentityHashMap<Marker, List<EarthquakeMarker>>();
+
+	private int quakeCount = 0;
+	private long pairCount = 0;
+
+	public ImpactIndex(List<Marker> cities, List<Marker> quakes)
+	{
+		cityIndex = new SphereIndex<Marker>(cities);
+		for(Marker quake : quakes)
+		{
+			add((EarthquakeMarker)quake);
+		}
+	}
+
+	//finds the cities in the quake's threat circle and links them both ways
+	public void add(EarthquakeMarker quake)
+	{
+		List<Marker> cities = new ArrayList<Marker>();
+		for(Marker city : cityIndex.candidates(quake.getLocation(), quake.threatCircle()))
+		{
+			//written so NaN counts as inside, like the original click handlers
+			if(!(city.getDistanceTo(quake.getLocation()) > quake.threatCircle()))
+			{
+				cities.add(city);
+			}
+		}
+		quakeCount++;
+		if(cities.isEmpty())
+		{
+			return;
+		}
+		citiesByQuake.put(quake, cities);
+		for(Marker city : cities)
+		{
+			List<EarthquakeMarker> quakes = quakesByCity.get(city);
+			if(quakes == null)
+			{
+				quakes = new ArrayList<EarthquakeMarker>();
+				quakesByCity.put(city, quakes);
+			}
+			quakes.add(quake);
+		}
+		pairCount += cities.size();
+	}
+
+	//unlinks a quake which was added before
+	public void remove(EarthquakeMarker quake)
+	{
+		quakeCount--;
+		List<Marker> cities = citiesByQuake.remove(quake);
+		if(cities == null)
+		{
+			return;
+		}
+		for(Marker city : cities)
+		{
+			List<EarthquakeMarker> quakes = quakesByCity.get(city);
+			//markers do not override equals, look the quake up by identity
+			for(int i = 0; i < quakes.size(); i++)
+			{
+				if(quakes.get(i) == quake)
+				{
+					quakes.set(i, quakes.get(quakes.size() - 1));
+					quakes.remove(quakes.size() - 1);
+					break;
+				}
+			}
+			if(quakes.isEmpty())
+			{
+				quakesByCity.remove(city);
+			}
+		}
+		pairCount -= cities.size();
+	}
+
+	//cities inside the quake's threat circle, in no particular order
+	public List<Marker> citiesAffectedBy(EarthquakeMarker quake)
+	{
+		List<Marker> cities = citiesByQuake.get(quake);
+		return cities == null ? Collections.<Marker>emptyList() : Collections.unmodifiableList(cities);
+	}
+
+	//quakes whose threat circle contains the city, in no particular order
+	public List<EarthquakeMarker> quakesAffecting(Marker city)
+	{
+		List<EarthquakeMarker> quakes = quakesByCity.get(city);
+		return quakes == null ? Collections.<EarthquakeMarker>emptyList() : Collections.unmodifiableList(quakes);
+	}
+
+	public int getQuakeCount()
+	{
+		return quakeCount;
+	}
+
+	//number of city/quake pairs
+	public long getPairCount()
+	{
+		return pairCount;
+	}
+}
@@ -2,13 +2,13 @@ package earthquakeVisualization;
 
 import processing.core.PGraphics;
 
-import de.fhpotsdam.unfolding.data.PointFeature;
+import catalog.QuakeCatalog;
 
 public class LandQuakeMarker extends EarthquakeMarker {
 	
-	public LandQuakeMarker(PointFeature quake)
+	public LandQuakeMarker(QuakeCatalog catalog, int row)
 	{
-		super(quake);
+		super(catalog, row);
 		isOnLand = true;
 	}
 	
@@ -19,10 +19,15 @@ public class LandQuakeMarker extends EarthquakeMarker {
 		pg.ellipse(x, y, 2*radius, 2*radius);
 	}
 	
+	public void batchEarthquake(MarkerBatch batch, int fill, float x, float y)
+	{
+		batch.ellipse(fill, x, y, radius);
+	}
+	
 	
 	//get country the earthquake is in
 	public String getCountry()
 	{
-		return getProperty("country").toString();
+		return catalog.getCountry(row);
 	}
 }
@@ -0,0 +1,205 @@
+package earthquakeVisualization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import processing.core.PApplet;
+import processing.core.PConstants;
+import processing.core.PGraphics;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.mapdisplay.OpenGLMapDisplay;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+
+/*
+ * Composes a frame from cached layers so an idle frame is a few blits.
+ *
+ * Map layer: with the OpenGL renderer the map display renders tiles and
+ * markers into an offscreen buffer (its outer PG) and then copies that to
+ * the screen. The buffer keeps its content, so map.draw() is only called
+ * when something in it can have changed and otherwise the buffer is copied
+ * again. It is redrawn when
+ *  - the viewport moved (pan, zoom) or tweening is on, as a tween only
+ *    advances inside map.draw(),
+ *  - the marker manager has to rebuild (markers added, removed, hidden),
+ *  - invalidateMap() was called,
+ *  - tiles are still loading, and at least every TILE_REFRESH_MILLIS
+ *    because the loader only updates its done flag when a tile arrives,
+ *    so a flag left over from earlier tiles can hide newly requested ones.
+ * With other renderers the display draws straight to the screen and the
+ * map is drawn every frame as before.
+ *
+ * Overlays: fixed size buffers painted once by a Painter and again only
+ * after their invalidate(), copied to their position every frame while
+ * they are visible.
+ *
+ * The hover tooltip changes with every mouse move, so it is not cached
+ * but drawn on top of all layers.
+ */
+public class LayerCompositor {
+
+	//an idle map is still redrawn this often to show late tiles
+	private static final int TILE_REFRESH_MILLIS = 1000;
+
+	//paints the content of a cached layer
+	public interface Painter
+	{
+		void paint(PGraphics pg);
+	}
+
+	private final PApplet p;
+	private final UnfoldingMap map;
+	private final BatchedMarkerManager markerManager;
+	private final boolean cacheMap;
+	private final ViewportWatcher viewport = new ViewportWatcher();
+	private final List<Overlay> overlays = new ArrayList<Overlay>();
+
+	private boolean mapDirty = true;
+	private int lastMapDraw;
+	private CommonMarker hover;
+
+	private int frames = 0;
+	private int mapDraws = 0;
+
+	public LayerCompositor(PApplet p, UnfoldingMap map, BatchedMarkerManager markerManager)
+	{
+		this.p = p;
+		this.map = map;
+		this.markerManager = markerManager;
+		cacheMap = map.mapDisplay instanceof OpenGLMapDisplay;
+	}
+
+	//a layer at (x, y) of the screen, painted on the first draw
+	public Overlay addOverlay(int x, int y, int width, int height, Painter painter)
+	{
+		Overlay overlay = new Overlay(x, y, width, height, painter);
+		overlays.add(overlay);
+		return overlay;
+	}
+
+	//something the map layer shows changed outside the marker manager
+	public void invalidateMap()
+	{
+		mapDirty = true;
+	}
+
+	//marker whose title is shown on top, null for none
+	public void setHoverMarker(CommonMarker marker)
+	{
+		hover = marker;
+	}
+
+	public void draw()
+	{
+		frames++;
+		drawMap();
+		for(Overlay overlay : overlays)
+		{
+			overlay.draw();
+		}
+		if(hover != null && hover.isSelected() && !hover.isHidden())
+		{
+			ScreenPosition position = map.getScreenPosition(hover.getLocation());
+			hover.showTitle(p.g, position.x, position.y);
+		}
+	}
+
+	private void drawMap()
+	{
+		if(!cacheMap)
+		{
+			map.draw();
+			mapDraws++;
+			return;
+		}
+		boolean moved = viewport.changed(map) || map.isTweening();
+		boolean stale = p.millis() - lastMapDraw > TILE_REFRESH_MILLIS;
+		if(mapDirty || moved || stale || markerManager.isDirty() || !map.allTilesLoaded())
+		{
+			map.draw();
+			mapDirty = false;
+			lastMapDraw = p.millis();
+			mapDraws++;
+			return;
+		}
+		//the same copy the display makes at the end of map.draw()
+		p.pushStyle();
+		p.image(map.mapDisplay.getOuterPG(), map.mapDisplay.offsetX, map.mapDisplay.offsetY);
+		p.popStyle();
+	}
+
+	//frames drawn so far
+	public int getFrameCount()
+	{
+		return frames;
+	}
+
+	//frames in which the map was drawn instead of copied
+	public int getMapDrawCount()
+	{
+		return mapDraws;
+	}
+
+	//a cached layer in front of the map
+	public class Overlay
+	{
+		private final int x;
+		private final int y;
+		private final int width;
+		private final int height;
+		private final Painter painter;
+		private PGraphics buffer;
+		private boolean dirty = true;
+		private boolean visible = true;
+
+		private Overlay(int x, int y, int width, int height, Painter painter)
+		{
+			this.x = x;
+			this.y = y;
+			this.width = width;
+			this.height = height;
+			this.painter = painter;
+		}
+
+		//the content changed, paint it again on the next draw
+		public void invalidate()
+		{
+			dirty = true;
+		}
+
+		//a hidden overlay is neither painted nor copied
+		public void setVisible(boolean visible)
+		{
+			this.visible = visible;
+		}
+
+		public boolean isVisible()
+		{
+			return visible;
+		}
+
+		private void draw()
+		{
+			if(!visible)
+			{
+				return;
+			}
+			if(buffer == null)
+			{
+				//same kind of renderer as the screen so the copy stays on the GPU
+				buffer = p.createGraphics(width, height, p.g.isGL() ? PConstants.P2D : PConstants.JAVA2D);
+			}
+			if(dirty)
+			{
+				buffer.beginDraw();
+				buffer.clear();
+				painter.paint(buffer);
+				buffer.endDraw();
+				dirty = false;
+			}
+			p.pushStyle();
+			p.image(buffer, x, y);
+			p.popStyle();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package earthquakeVisualization;
+
+import processing.core.PConstants;
+import processing.core.PFont;
+import processing.core.PGraphics;
+
+/*
+ * The legend next to the map.
+ *
+ * It never changes, so EarthquakeCityMap paints it once into a cached
+ * layer of LayerCompositor instead of issuing its calls every frame.
+ * The box is drawn one pixel in from the top left corner so its outline
+ * fits into a layer of SIZE_X by SIZE_Y.
+ */
+public class MapKey implements LayerCompositor.Painter {
+
+	public static final int WIDTH = 150;
+	public static final int HEIGHT = 350;
+	//size of a layer holding the key and its outline
+	public static final int SIZE_X = WIDTH + 2;
+	public static final int SIZE_Y = HEIGHT + 2;
+
+	private final PFont font;
+
+	//font of the key, null to keep the font of the target
+	public MapKey(PFont font)
+	{
+		this.font = font;
+	}
+
+	//to draw the key
+	public void paint(PGraphics pg)
+	{
+		//save previous drawing style
+		pg.pushStyle();
+
+		if(font != null)
+		{
+			pg.textFont(font);
+		}
+		pg.fill(255, 250, 240);
+		pg.textSize(18);
+		pg.textAlign(PConstants.LEFT, PConstants.CENTER);
+
+		int originX = 1;
+		int originY = 1;
+
+		int lineSpace = 30;
+
+		pg.rect(originX, originY, WIDTH, HEIGHT);
+		int xbase = originX + 30;
+		int ybase = originY + 30;
+
+		pg.fill(0);
+		pg.text("Earthquake Key", xbase, ybase);
+		ybase += lineSpace;
+
+		pg.fill(255, 0, 255);
+		pg.triangle(xbase, ybase,
+				xbase-CityMarker.TRI_SIZE, ybase+ 2*CityMarker.TRI_SIZE,
+				xbase+CityMarker.TRI_SIZE, ybase+ 2*CityMarker.TRI_SIZE);
+
+		pg.fill(0);
+		pg.textAlign(PConstants.LEFT, PConstants.CENTER);
+		pg.text("City Marker", xbase+15, ybase);
+		ybase += lineSpace;
+
+		pg.fill(255, 255, 255);
+		pg.ellipseMode(PConstants.CORNER);
+		pg.ellipse(xbase-6, ybase, 12, 12);
+
+		pg.fill(0);
+		pg.text("Land Quake", xbase+15, ybase);
+		ybase += lineSpace;
+
+		pg.fill(255, 255, 255);
+		pg.rect(xbase-6, ybase, 12 ,12);
+
+		pg.fill(0);
+		pg.text("Ocean Quake", xbase+15, ybase);
+		ybase += lineSpace;
+
+		pg.text("Size ~ Magnitude", xbase, ybase);
+		ybase += lineSpace;
+
+		pg.fill(255, 255, 0);
+		pg.ellipseMode(PConstants.CORNER);
+		pg.ellipse(xbase-6, ybase, 12, 12);
+
+		pg.fill(0);
+		pg.text("Shallow", xbase+15, ybase);
+		ybase += lineSpace;
+
+		pg.fill(0, 0, 255);
+		pg.ellipseMode(PConstants.CORNER);
+		pg.ellipse(xbase-6, ybase, 12, 12);
+
+		pg.fill(0);
+		pg.text("Intermediate", xbase+15, ybase);
+		ybase += lineSpace;
+
+		pg.fill(255, 0, 0);
+		pg.ellipseMode(PConstants.CORNER);
+		pg.ellipse(xbase-6, ybase, 12, 12);
+
+		pg.fill(0);
+		pg.text("Deep", xbase+15, ybase);
+		ybase += lineSpace;
+
+		pg.fill(255);
+		pg.ellipseMode(PConstants.CORNER);
+		pg.ellipse(xbase-6, ybase, 12, 12);
+
+		pg.strokeWeight(2);
+		pg.stroke(0);
+		pg.line(xbase-6, ybase, xbase+6, ybase+12);
+		pg.line(xbase-6, ybase+12, xbase+6, ybase);
+
+		pg.fill(0);
+		pg.text("Past Day", xbase+15, ybase);
+
+		//restore previous drawing style
+		pg.popStyle();
+	}
+}
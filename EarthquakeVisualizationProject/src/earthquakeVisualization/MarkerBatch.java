@@ -0,0 +1,406 @@
+package earthquakeVisualization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import processing.core.PConstants;
+import processing.core.PGraphics;
+import processing.core.PShape;
+import processing.data.FloatList;
+import processing.data.IntList;
+
+/*
+ * Collects the shapes of many markers so they can be drawn as a few
+ * retained PShapes instead of one immediate-mode call per marker.
+ *
+ * Markers add their ellipses, rectangles and triangles with a fill colour
+ * (CommonMarker.batchMarker). Shapes are grouped by kind and colour in the
+ * order the groups first appear, and every shape gets a 1px black outline
+ * like the default style of the immediate-mode markers. Past-day crosses
+ * are collected separately and drawn on top with a 2px stroke, and
+ * cluster glyphs (a white ring around a coloured disc) go above those.
+ *
+ * tessellate() turns the shapes into triangles and line segments without
+ * needing a renderer, build() wraps those in PShapes for the OpenGL renderer.
+ */
+public class MarkerBatch {
+
+	private static final int ELLIPSE = 0;
+	private static final int RECT = 1;
+	private static final int TRIANGLE = 2;
+
+	//ellipses get more segments when they are bigger
+	private static final int MIN_SEGMENTS = 8;
+	private static final int MAX_SEGMENTS = 32;
+	private static final float[][] COS = new float[MAX_SEGMENTS + 1][];
+	private static final float[][] SIN = new float[MAX_SEGMENTS + 1][];
+
+	static
+	{
+		for(int n = MIN_SEGMENTS; n <= MAX_SEGMENTS; n++)
+		{
+			COS[n] = new float[n + 1];
+			SIN[n] = new float[n + 1];
+			for(int i = 0; i <= n; i++)
+			{
+				COS[n][i] = (float)Math.cos(2 * Math.PI * i / n);
+				SIN[n][i] = (float)Math.sin(2 * Math.PI * i / n);
+			}
+		}
+	}
+
+	//key: kind in the high bits, colour in the low 32 bits
+	private final Map<Long, Group> groups = new LinkedHashMap<Long, Group>();
+
+	//x, y, half size of every past-day cross
+	private final FloatList crosses = new FloatList();
+
+	//x, y, radius, ring width and disc colour of every cluster glyph
+	private final FloatList clusters = new FloatList();
+	private final IntList clusterFills = new IntList();
+
+	private int shapeCount = 0;
+
+	//ellipse centred on (x, y) with the given radius
+	public void ellipse(int fill, float x, float y, float radius)
+	{
+		FloatList params = group(ELLIPSE, fill).params;
+		params.append(x);
+		params.append(y);
+		params.append(radius);
+		shapeCount++;
+	}
+
+	//rectangle with its top left corner at (x, y)
+	public void rect(int fill, float x, float y, float w, float h)
+	{
+		FloatList params = group(RECT, fill).params;
+		params.append(x);
+		params.append(y);
+		params.append(w);
+		params.append(h);
+		shapeCount++;
+	}
+
+	public void triangle(int fill, float x1, float y1, float x2, float y2, float x3, float y3)
+	{
+		FloatList params = group(TRIANGLE, fill).params;
+		params.append(x1);
+		params.append(y1);
+		params.append(x2);
+		params.append(y2);
+		params.append(x3);
+		params.append(y3);
+		shapeCount++;
+	}
+
+	//an X through (x, y) reaching half in every direction
+	public void cross(float x, float y, float half)
+	{
+		crosses.append(x);
+		crosses.append(y);
+		crosses.append(half);
+	}
+
+	/*
+	 * A glyph standing for several markers: a disc of the given colour
+	 * and radius inside a white ring of the given width.
+	 */
+	public void cluster(int fill, float x, float y, float radius, float ring)
+	{
+		clusters.append(x);
+		clusters.append(y);
+		clusters.append(radius);
+		clusters.append(ring);
+		clusterFills.append(fill);
+		shapeCount++;
+	}
+
+	public int getShapeCount()
+	{
+		return shapeCount;
+	}
+
+	public void clear()
+	{
+		groups.clear();
+		crosses.clear();
+		clusters.clear();
+		clusterFills.clear();
+		shapeCount = 0;
+	}
+
+	/*
+	 * Turns the collected shapes into triangles and line segments,
+	 * one Tessellated per group, in drawing order. Crosses and clusters
+	 * come last.
+	 */
+	public List<Tessellated> tessellate()
+	{
+		List<Tessellated> result = new ArrayList<Tessellated>();
+		for(Group group : groups.values())
+		{
+			result.add(group.tessellate());
+		}
+		if(crosses.size() > 0)
+		{
+			Tessellated cross = new Tessellated(0, 2);
+			cross.lines = new float[crosses.size() / 3 * 8];
+			int l = 0;
+			for(int i = 0; i < crosses.size(); i += 3)
+			{
+				float x = crosses.get(i);
+				float y = crosses.get(i + 1);
+				float h = crosses.get(i + 2);
+				l = putPair(cross.lines, l, x - h, y - h, x + h, y + h);
+				l = putPair(cross.lines, l, x - h, y + h, x + h, y - h);
+			}
+			result.add(cross);
+		}
+		if(clusters.size() > 0)
+		{
+			result.add(tessellateClusters());
+		}
+		return result;
+	}
+
+	//one retained shape holding every group, for the OpenGL renderers
+	public PShape build(PGraphics pg)
+	{
+		PShape root = pg.createShape(PConstants.GROUP);
+		for(Tessellated part : tessellate())
+		{
+			if(part.triangles != null && part.triangles.length > 0)
+			{
+				PShape fill = pg.createShape();
+				fill.beginShape(PConstants.TRIANGLES);
+				fill.noStroke();
+				fill.fill(part.fill);
+				for(int i = 0; i < part.triangles.length; i += 2)
+				{
+					if(part.colors != null)
+					{
+						fill.fill(part.colors[i / 2]);
+					}
+					fill.vertex(part.triangles[i], part.triangles[i + 1]);
+				}
+				fill.endShape();
+				root.addChild(fill);
+			}
+			if(part.lines.length > 0)
+			{
+				PShape outline = pg.createShape();
+				outline.beginShape(PConstants.LINES);
+				outline.noFill();
+				outline.stroke(0);
+				outline.strokeWeight(part.strokeWeight);
+				for(int i = 0; i < part.lines.length; i += 2)
+				{
+					outline.vertex(part.lines[i], part.lines[i + 1]);
+				}
+				outline.endShape();
+				root.addChild(outline);
+			}
+		}
+		return root;
+	}
+
+	//ring and disc as two fans per glyph, coloured per vertex
+	private Tessellated tessellateClusters()
+	{
+		Tessellated out = new Tessellated(0xFFFFFFFF, 1);
+		int triangles = 0;
+		int outline = 0;
+		for(int i = 0; i < clusters.size(); i += 4)
+		{
+			float r = clusters.get(i + 2);
+			float outer = r + clusters.get(i + 3);
+			triangles += segments(outer) + segments(r);
+			outline += segments(outer);
+		}
+		out.triangles = new float[triangles * 6];
+		out.colors = new int[triangles * 3];
+		out.lines = new float[outline * 4];
+		int t = 0;
+		int l = 0;
+		for(int i = 0; i < clusters.size(); i += 4)
+		{
+			float x = clusters.get(i);
+			float y = clusters.get(i + 1);
+			float r = clusters.get(i + 2);
+			float outer = r + clusters.get(i + 3);
+			int fill = clusterFills.get(i / 4);
+
+			int start = t;
+			t = fan(out.triangles, t, x, y, outer);
+			Arrays.fill(out.colors, start / 2, t / 2, 0xFFFFFFFF);
+			start = t;
+			t = fan(out.triangles, t, x, y, r);
+			Arrays.fill(out.colors, start / 2, t / 2, fill);
+			l = circle(out.lines, l, x, y, outer);
+		}
+		return out;
+	}
+
+	//triangles of a disc around (x, y)
+	private static int fan(float[] out, int at, float x, float y, float r)
+	{
+		int n = segments(r);
+		for(int s = 0; s < n; s++)
+		{
+			at = putPair(out, at, x, y, x + r * COS[n][s], y + r * SIN[n][s]);
+			out[at++] = x + r * COS[n][s + 1];
+			out[at++] = y + r * SIN[n][s + 1];
+		}
+		return at;
+	}
+
+	//outline segments of a circle around (x, y)
+	private static int circle(float[] out, int at, float x, float y, float r)
+	{
+		int n = segments(r);
+		for(int s = 0; s < n; s++)
+		{
+			at = putPair(out, at, x + r * COS[n][s], y + r * SIN[n][s],
+					x + r * COS[n][s + 1], y + r * SIN[n][s + 1]);
+		}
+		return at;
+	}
+
+	private Group group(int kind, int fill)
+	{
+		Long key = ((long)kind << 32) | (fill & 0xFFFFFFFFL);
+		Group group = groups.get(key);
+		if(group == null)
+		{
+			group = new Group(kind, fill);
+			groups.put(key, group);
+		}
+		return group;
+	}
+
+	//writes two vertices and returns the next free position
+	private static int putPair(float[] out, int at, float x1, float y1, float x2, float y2)
+	{
+		out[at++] = x1;
+		out[at++] = y1;
+		out[at++] = x2;
+		out[at++] = y2;
+		return at;
+	}
+
+	private static int segments(float radius)
+	{
+		return Math.max(MIN_SEGMENTS, Math.min(MAX_SEGMENTS, (int)Math.ceil(2 * radius)));
+	}
+
+	//vertex data of one group as x, y pairs
+	public static class Tessellated
+	{
+		//fill colour, ARGB
+		public final int fill;
+		public final float strokeWeight;
+		//three vertices per triangle, null when the part has no fill
+		public float[] triangles;
+		//colour of every triangle vertex, null when all use fill
+		public int[] colors;
+		//two vertices per outline segment
+		public float[] lines;
+
+		Tessellated(int fill, float strokeWeight)
+		{
+			this.fill = fill;
+			this.strokeWeight = strokeWeight;
+		}
+
+		public int getVertexCount()
+		{
+			return ((triangles == null ? 0 : triangles.length) + lines.length) / 2;
+		}
+	}
+
+	//shapes of one kind and colour, stored as their parameters
+	private static class Group
+	{
+		final int kind;
+		final int fill;
+		final FloatList params = new FloatList();
+
+		Group(int kind, int fill)
+		{
+			this.kind = kind;
+			this.fill = fill;
+		}
+
+		Tessellated tessellate()
+		{
+			Tessellated out = new Tessellated(fill, 1);
+			if(kind == ELLIPSE)
+			{
+				int vertices = 0;
+				for(int i = 0; i < params.size(); i += 3)
+				{
+					vertices += segments(params.get(i + 2));
+				}
+				out.triangles = new float[vertices * 6];
+				out.lines = new float[vertices * 4];
+				int t = 0;
+				int l = 0;
+				for(int i = 0; i < params.size(); i += 3)
+				{
+					float x = params.get(i);
+					float y = params.get(i + 1);
+					float r = params.get(i + 2);
+					t = fan(out.triangles, t, x, y, r);
+					l = circle(out.lines, l, x, y, r);
+				}
+			}
+			else if(kind == RECT)
+			{
+				int count = params.size() / 4;
+				out.triangles = new float[count * 12];
+				out.lines = new float[count * 16];
+				int t = 0;
+				int l = 0;
+				for(int i = 0; i < params.size(); i += 4)
+				{
+					float x1 = params.get(i);
+					float y1 = params.get(i + 1);
+					float x2 = x1 + params.get(i + 2);
+					float y2 = y1 + params.get(i + 3);
+					t = putPair(out.triangles, t, x1, y1, x2, y1);
+					t = putPair(out.triangles, t, x2, y2, x1, y1);
+					t = putPair(out.triangles, t, x2, y2, x1, y2);
+					l = putPair(out.lines, l, x1, y1, x2, y1);
+					l = putPair(out.lines, l, x2, y1, x2, y2);
+					l = putPair(out.lines, l, x2, y2, x1, y2);
+					l = putPair(out.lines, l, x1, y2, x1, y1);
+				}
+			}
+			else
+			{
+				int count = params.size() / 6;
+				out.triangles = new float[count * 6];
+				out.lines = new float[count * 12];
+				int l = 0;
+				for(int i = 0; i < params.size(); i += 6)
+				{
+					for(int v = 0; v < 6; v++)
+					{
+						out.triangles[i + v] = params.get(i + v);
+					}
+					float x1 = params.get(i), y1 = params.get(i + 1);
+					float x2 = params.get(i + 2), y2 = params.get(i + 3);
+					float x3 = params.get(i + 4), y3 = params.get(i + 5);
+					l = putPair(out.lines, l, x1, y1, x2, y2);
+					l = putPair(out.lines, l, x2, y2, x3, y3);
+					l = putPair(out.lines, l, x3, y3, x1, y1);
+				}
+			}
+			return out;
+		}
+	}
+}
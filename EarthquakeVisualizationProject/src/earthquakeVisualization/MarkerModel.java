@@ -0,0 +1,404 @@
+package earthquakeVisualization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import catalog.QuakeCatalog;
+import parsing.FeedPoller;
+
+/*
+ * One generation of the markers on the map: the city markers, the quake
+ * markers with their catalog, and the quakes by feed id.
+ *
+ * A generation never changes once it is built. Loaders build the next one
+ * off the animation thread with edit() and EarthquakeCityMap publishes it
+ * by swapping one AtomicReference; draw() and the event handlers work on
+ * the generation the frame started with, so they never see half of an
+ * update and never wait for a lock.
+ *
+ * The catalog of a generation is not written again either: edit() copies
+ * it and the builder appends to the copy. Rows keep their numbers in the
+ * copy, so the markers of a generation stay valid in all later ones.
+ * An updated or retired quake leaves its row behind, so once those dead
+ * rows outnumber the quakes, build() compacts: the quakes are copied to a
+ * new catalog and get new markers for their new rows (see Changes).
+ *
+ * The quake list and the id lookup are a PersistentList and PersistentMap
+ * the next generation shares with this one, so edit() copies nothing and
+ * a generation costs the quakes that changed. Every generation keeps the
+ * markers it added and removed and a link to the one it was edited from,
+ * which is how changesSince finds the changes; forgetOlder() cuts the link
+ * once the older generations are no longer needed.
+ */
+public class MarkerModel {
+
+	//dead catalog rows are left alone up to this many
+	private static final int MIN_DEAD_ROWS = 4096;
+
+	private final long generation;
+	//the generation whose build last compacted the catalog
+	private final long compacted;
+	private final List<Marker> cities;
+	private final QuakeCatalog catalog;
+	private final PersistentList<Marker> quakes;
+	//position of each quake in the list by feed id
+	private final PersistentMap<String, Integer> positions;
+
+	//the generation this one was edited from, null for the first or once forgotten
+	private volatile MarkerModel older;
+	//the changes from that generation to this one
+	private final List<EarthquakeMarker> added;
+	private final List<EarthquakeMarker> removed;
+
+	private MarkerModel(Builder builder)
+	{
+		generation = builder.generation;
+		compacted = builder.compacted;
+		cities = builder.cities;
+		catalog = builder.catalog;
+		quakes = builder.quakes;
+		positions = builder.positions;
+		older = builder.older;
+		added = new ArrayList<EarthquakeMarker>(builder.added);
+		removed = builder.removed;
+	}
+
+	/*
+	 * Starts the first generation. The builder appends to the catalog, so
+	 * nothing else may use it until the generation is built.
+	 *
+	 * @param cities - city markers, the same in every generation
+	 */
+	public static Builder builder(List<Marker> cities, QuakeCatalog catalog)
+	{
+		return new Builder(null, 0, 0, Collections.unmodifiableList(new ArrayList<Marker>(cities)), catalog,
+				PersistentList.<Marker>empty(), PersistentMap.<String, Integer>empty());
+	}
+
+	//the next generation, starting with the markers of this one
+	public Builder edit()
+	{
+		return new Builder(this, generation + 1, compacted, cities, catalog.copy(), quakes, positions);
+	}
+
+	//counts up from 0 with every edit
+	public long getGeneration()
+	{
+		return generation;
+	}
+
+	public List<Marker> getCities()
+	{
+		return cities;
+	}
+
+	public QuakeCatalog getCatalog()
+	{
+		return catalog;
+	}
+
+	/*
+	 * Unmodifiable. New quakes join at the end and a removed quake's place
+	 * is taken by the last one, so the order is not the order they came in.
+	 */
+	public List<Marker> getQuakes()
+	{
+		return quakes;
+	}
+
+	public EarthquakeMarker getQuake(String id)
+	{
+		Integer position = positions.get(id);
+		return position == null ? null : (EarthquakeMarker)quakes.get(position);
+	}
+
+	/*
+	 * The quake markers added and removed since an older generation, which
+	 * need not be the one this was edited from. A quake the feed updated
+	 * has a new marker and shows up in both lists.
+	 *
+	 * Following the links back to the older generation, the changes of the
+	 * generations in between are put together, so this costs the changes
+	 * rather than the quakes. If the older generation cannot be reached
+	 * that way, because it is not an ancestor or the link was forgotten,
+	 * both quake lists are compared.
+	 */
+	public Changes changesSince(MarkerModel older)
+	{
+		if(compacted != older.compacted)
+		{
+			Changes changes = compare(older);
+			changes.renumbered = true;
+			return changes;
+		}
+		List<MarkerModel> between = new ArrayList<MarkerModel>();
+		for(MarkerModel model = this; model != older; model = model.older)
+		{
+			if(model == null || model.generation <= older.generation)
+			{
+				return compare(older);
+			}
+			between.add(model);
+		}
+
+		//oldest first, a marker added and removed again on the way is no change
+		Set<EarthquakeMarker> added = new LinkedHashSet<EarthquakeMarker>();
+		Changes changes = new Changes();
+		for(int i = between.size() - 1; i >= 0; i--)
+		{
+			MarkerModel model = between.get(i);
+			for(EarthquakeMarker marker : model.removed)
+			{
+				if(!added.remove(marker))
+				{
+					changes.removed.add(marker);
+				}
+			}
+			added.addAll(model.added);
+		}
+		changes.added.addAll(added);
+		return changes;
+	}
+
+	/*
+	 * Drops the link to the generation this was edited from, so the older
+	 * generations and their markers can be collected. changesSince with
+	 * one of them then compares the whole lists. The map calls it on the
+	 * generation it has switched to.
+	 */
+	public void forgetOlder()
+	{
+		older = null;
+	}
+
+	private Changes compare(MarkerModel older)
+	{
+		Set<Marker> olderQuakes = Collections.newSetFromMap(new IdentityHashMap<Marker, Boolean>());
+		olderQuakes.addAll(older.quakes);
+		Changes changes = new Changes();
+		for(Marker quake : quakes)
+		{
+			if(!olderQuakes.remove(quake))
+			{
+				changes.added.add((EarthquakeMarker)quake);
+			}
+		}
+		for(Marker quake : olderQuakes)
+		{
+			changes.removed.add((EarthquakeMarker)quake);
+		}
+		return changes;
+	}
+
+	public static class Changes
+	{
+		private final List<EarthquakeMarker> added = new ArrayList<EarthquakeMarker>();
+		private final List<EarthquakeMarker> removed = new ArrayList<EarthquakeMarker>();
+		private boolean renumbered = false;
+
+		public List<EarthquakeMarker> getAdded()
+		{
+			return added;
+		}
+
+		public List<EarthquakeMarker> getRemoved()
+		{
+			return removed;
+		}
+
+		public boolean isEmpty()
+		{
+			return added.isEmpty() && removed.isEmpty();
+		}
+
+		/*
+		 * True when the catalog was compacted in between: every quake has
+		 * a new marker and row, and anything indexed by the old rows has to
+		 * start over from the quakes of the new generation.
+		 */
+		public boolean isRenumbered()
+		{
+			return renumbered;
+		}
+	}
+
+	/*
+	 * Collects the changes of the next generation on one thread. Nothing
+	 * it touches is visible to other threads until build() is published.
+	 */
+	public static class Builder
+	{
+		private final MarkerModel older;
+		private final long generation;
+		private long compacted;
+		private final List<Marker> cities;
+		private QuakeCatalog catalog;
+		private PersistentList<Marker> quakes;
+		private PersistentMap<String, Integer> positions;
+		//markers added and removed by this builder, a marker removed again leaves added
+		private final Set<EarthquakeMarker> added = new LinkedHashSet<EarthquakeMarker>();
+		private final List<EarthquakeMarker> removed = new ArrayList<EarthquakeMarker>();
+		private boolean built = false;
+
+		private Builder(MarkerModel older, long generation, long compacted, List<Marker> cities, QuakeCatalog catalog,
+				PersistentList<Marker> quakes, PersistentMap<String, Integer> positions)
+		{
+			this.older = older;
+			this.generation = generation;
+			this.compacted = compacted;
+			this.cities = cities;
+			this.catalog = catalog;
+			this.quakes = quakes;
+			this.positions = positions;
+		}
+
+		/*
+		 * Adds a quake which has already been classified, replacing the
+		 * marker with the same feed id (see FeedPoller.keyOf).
+		 */
+		public EarthquakeMarker addQuake(PointFeature feature)
+		{
+			checkOpen();
+			return addQuake(catalog.add(feature), FeedPoller.keyOf(feature));
+		}
+
+		//the marker for a row already in the catalog
+		public EarthquakeMarker addQuake(int row, String id)
+		{
+			checkOpen();
+			removeQuake(id);
+			EarthquakeMarker marker = newMarker(row, id);
+			positions = positions.plus(id, quakes.size());
+			quakes = quakes.plus(marker);
+			added.add(marker);
+			return marker;
+		}
+
+		/*
+		 * Retires the marker of a quake, its catalog row stays until the
+		 * catalog is compacted. The last marker of the list moves into its place.
+		 */
+		public EarthquakeMarker removeQuake(String id)
+		{
+			checkOpen();
+			Integer position = positions.get(id);
+			if(position == null)
+			{
+				return null;
+			}
+			EarthquakeMarker marker = (EarthquakeMarker)quakes.get(position);
+			Marker last = quakes.get(quakes.size() - 1);
+			positions = positions.minus(id);
+			if(last != marker)
+			{
+				quakes = quakes.with(position, last);
+				positions = positions.plus(last.getId(), position);
+			}
+			quakes = quakes.minusLast();
+			if(!added.remove(marker))
+			{
+				removed.add(marker);
+			}
+			return marker;
+		}
+
+		/*
+		 * Retires the quakes whose origin time is before the given time
+		 * and returns how many. Looks at every quake, so it is meant for
+		 * once per feed change rather than once per quake.
+		 */
+		public int removeQuakesBefore(long time)
+		{
+			checkOpen();
+			List<String> expired = new ArrayList<String>();
+			for(Marker quake : quakes)
+			{
+				if(catalog.getTime(((EarthquakeMarker)quake).getRow()) < time)
+				{
+					expired.add(quake.getId());
+				}
+			}
+			for(String id : expired)
+			{
+				removeQuake(id);
+			}
+			return expired.size();
+		}
+
+		public boolean containsQuake(String id)
+		{
+			return positions.containsKey(id);
+		}
+
+		public QuakeCatalog getCatalog()
+		{
+			return catalog;
+		}
+
+		//the builder cannot be used afterwards
+		public MarkerModel build()
+		{
+			checkOpen();
+			if(catalog.size() - quakes.size() > Math.max(quakes.size(), MIN_DEAD_ROWS))
+			{
+				compact();
+			}
+			built = true;
+			return new MarkerModel(this);
+		}
+
+		/*
+		 * Copies the quakes to a new catalog without the dead rows and
+		 * makes their markers again, in the same list positions. The
+		 * changes are not recorded: changesSince sees the new compacted
+		 * generation and compares the lists.
+		 */
+		private void compact()
+		{
+			QuakeCatalog old = catalog;
+			catalog = new QuakeCatalog();
+			PersistentList<Marker> markers = PersistentList.empty();
+			for(Marker quake : quakes)
+			{
+				EarthquakeMarker marker = (EarthquakeMarker)quake;
+				markers = markers.plus(newMarker(catalog.add(old, marker.getRow()), marker.getId()));
+			}
+			quakes = markers;
+			compacted = generation;
+			added.clear();
+			removed.clear();
+		}
+
+		private EarthquakeMarker newMarker(int row, String id)
+		{
+			EarthquakeMarker marker;
+			//check if land quake
+			if(catalog.isOnLand(row))
+			{
+				marker = new LandQuakeMarker(catalog, row);
+			}
+			//ocean quake
+			else
+			{
+				marker = new OceanQuakeMarker(catalog, row);
+			}
+			marker.setId(id);
+			return marker;
+		}
+
+		private void checkOpen()
+		{
+			if(built)
+			{
+				throw new IllegalStateException("generation " + generation + " is already built");
+			}
+		}
+	}
+}
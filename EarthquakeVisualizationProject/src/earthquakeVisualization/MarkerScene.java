@@ -0,0 +1,116 @@
+package earthquakeVisualization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import processing.data.FloatList;
+
+/*
+ * The markers of one BatchedMarkerManager build, placed on the map canvas.
+ *
+ * Markers are added with their canvas position. Those outside the cull
+ * area are dropped, quakes go into QuakeClusters when clustering is on
+ * and everything else is kept with its position. batch() turns what was
+ * placed into a MarkerBatch, so more markers can be added after a batch
+ * (a replay moving forward) without placing the earlier ones again.
+ *
+ * Positions are in the canvas coordinates of the reset() call; the
+ * manager subtracts any pan since then before adding.
+ */
+public class MarkerScene {
+
+	private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+	private final QuakeClusters clusters;
+	private final MarkerBatch batch = new MarkerBatch();
+
+	private float left;
+	private float top;
+	private float right;
+	private float bottom;
+	private boolean cluster;
+
+	//quakes after this time get the past day cross, MIN_VALUE to use the feed's age
+	private long pastDaySince = Long.MIN_VALUE;
+
+	//markers drawn on their own, with their positions
+	private final List<CommonMarker> placed = new ArrayList<CommonMarker>();
+	private final FloatList placedX = new FloatList();
+	private final FloatList placedY = new FloatList();
+
+	public MarkerScene(float clusterCellSize)
+	{
+		clusters = new QuakeClusters(clusterCellSize);
+	}
+
+	/*
+	 * Drops all markers. From now on markers outside left..right and
+	 * top..bottom are culled, and quakes are clustered in cells counted
+	 * from (originX, originY) if cluster is true.
+	 */
+	public void reset(float originX, float originY, float left, float top, float right, float bottom, boolean cluster)
+	{
+		this.left = left;
+		this.top = top;
+		this.right = right;
+		this.bottom = bottom;
+		this.cluster = cluster;
+		clusters.reset(originX, originY);
+		placed.clear();
+		placedX.clear();
+		placedY.clear();
+	}
+
+	/*
+	 * Quakes get the past day cross when their time is within a day before
+	 * now. Long.MIN_VALUE goes back to the age category of the feed.
+	 */
+	public void setNow(long now)
+	{
+		pastDaySince = now == Long.MIN_VALUE ? Long.MIN_VALUE : now - DAY_MILLIS;
+	}
+
+	//adds a marker at (x, y) unless it is outside the cull area
+	public void add(CommonMarker marker, float x, float y)
+	{
+		if(x < left || x > right || y < top || y > bottom)
+		{
+			return;
+		}
+		if(cluster && marker instanceof EarthquakeMarker)
+		{
+			clusters.add((EarthquakeMarker)marker, x, y);
+			return;
+		}
+		placed.add(marker);
+		placedX.append(x);
+		placedY.append(y);
+	}
+
+	//the batch of everything added since reset, cluster glyphs on top
+	public MarkerBatch batch()
+	{
+		batch.clear();
+		for(int i = 0; i < placed.size(); i++)
+		{
+			CommonMarker marker = placed.get(i);
+			if(pastDaySince != Long.MIN_VALUE && marker instanceof EarthquakeMarker)
+			{
+				EarthquakeMarker quake = (EarthquakeMarker)marker;
+				quake.batchMarker(batch, placedX.get(i), placedY.get(i), quake.getTime() > pastDaySince);
+			}
+			else
+			{
+				marker.batchMarker(batch, placedX.get(i), placedY.get(i));
+			}
+		}
+		clusters.batch(batch, pastDaySince);
+		return batch;
+	}
+
+	//glyphs and counts of the last batch
+	public QuakeClusters getClusters()
+	{
+		return clusters;
+	}
+}
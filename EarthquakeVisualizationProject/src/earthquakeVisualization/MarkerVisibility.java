@@ -0,0 +1,288 @@
+package earthquakeVisualization;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import catalog.QuakeCatalog;
+
+/*
+ * Which city and quake markers are shown, as bitsets instead of the
+ * hidden flags of every marker.
+ *
+ * Quakes are identified by their catalog row, cities by their index in
+ * the city list. The visible quakes are the quakes that have a marker,
+ * AND the rows passing the QuakeFilter, AND the click selection if
+ * there is one; the visible cities are all cities or the selection.
+ * Selecting or filtering only replaces a bitset. The new visible sets
+ * are worked out with word-wise operations on the next read, counting how
+ * many markers changed; update() hands that count to BatchedMarkerManager,
+ * which rebuilds its shape only when something did change, and it walks
+ * just the visible bits.
+ */
+public class MarkerVisibility {
+
+	private QuakeCatalog catalog;
+	private final QuakeFilter filter;
+
+	private final List<Marker> cities;
+	private final Map<Marker, Integer> cityIndex = new IdentityHashMap<Marker, Integer>();
+
+	//marker of each catalog row, rows of retired quakes stay in the catalog until it is compacted but are not here
+	private EarthquakeMarker[] quakesByRow = new EarthquakeMarker[64];
+	private final BitSet liveQuakes = new BitSet();
+
+	//null when nothing is selected
+	private BitSet selectedQuakes;
+	private BitSet selectedCities;
+
+	private final BitSet visibleQuakes = new BitSet();
+	private final BitSet visibleCities = new BitSet();
+	private boolean stale = true;
+	private int filterModCount = -1;
+	private int filterRows = -1;
+	//markers changed since the last update, see update
+	private int pendingChanges = 0;
+	private int lastChangeCount = 0;
+
+	public MarkerVisibility(List<Marker> cities, QuakeCatalog catalog, List<Marker> quakes)
+	{
+		this.catalog = catalog;
+		this.filter = new QuakeFilter(catalog);
+		this.cities = cities;
+		for(int i = 0; i < cities.size(); i++)
+		{
+			cityIndex.put(cities.get(i), i);
+		}
+		for(Marker quake : quakes)
+		{
+			addQuake((EarthquakeMarker)quake);
+		}
+	}
+
+	//a later copy of the catalog with more rows, see QuakeFilter.setCatalog
+	public void setCatalog(QuakeCatalog catalog)
+	{
+		this.catalog = catalog;
+		filter.setCatalog(catalog);
+	}
+
+	/*
+	 * Starts over with a catalog whose rows were renumbered and the
+	 * quakes on the map, see MarkerModel.Changes.isRenumbered. The filter
+	 * settings are kept, the selection is cleared.
+	 */
+	public void reset(QuakeCatalog catalog, List<Marker> quakes)
+	{
+		this.catalog = catalog;
+		filter.reset(catalog);
+		quakesByRow = new EarthquakeMarker[Math.max(64, catalog.size())];
+		liveQuakes.clear();
+		selectedQuakes = null;
+		selectedCities = null;
+		for(Marker quake : quakes)
+		{
+			addQuake((EarthquakeMarker)quake);
+		}
+		stale = true;
+	}
+
+	//a quake marker of the catalog that is now on the map
+	public void addQuake(EarthquakeMarker quake)
+	{
+		int row = quake.getRow();
+		if(row >= quakesByRow.length)
+		{
+			quakesByRow = Arrays.copyOf(quakesByRow, Math.max(row + 1, quakesByRow.length * 2));
+		}
+		quakesByRow[row] = quake;
+		liveQuakes.set(row);
+		stale = true;
+	}
+
+	public void removeQuake(EarthquakeMarker quake)
+	{
+		int row = quake.getRow();
+		if(quakesByRow[row] == quake)
+		{
+			quakesByRow[row] = null;
+			liveQuakes.clear(row);
+			stale = true;
+		}
+	}
+
+	//the filters applied to the quakes, changes take effect on the next update
+	public QuakeFilter getFilter()
+	{
+		return filter;
+	}
+
+	//shows only a clicked city and the quakes affecting it
+	public void selectCity(Marker city, Collection<EarthquakeMarker> quakes)
+	{
+		select(city, quakes);
+	}
+
+	//shows only a clicked quake and the cities inside its threat circle
+	public void selectQuake(EarthquakeMarker quake, Collection<? extends Marker> cities)
+	{
+		select(quake, cities);
+	}
+
+	//shows all markers the filter lets through again
+	public void clearSelection()
+	{
+		if(selectedQuakes != null || selectedCities != null)
+		{
+			selectedQuakes = null;
+			selectedCities = null;
+			stale = true;
+		}
+	}
+
+	public boolean hasSelection()
+	{
+		return selectedQuakes != null;
+	}
+
+	/*
+	 * Brings the visible sets up to date with the selection, the filter
+	 * and the quakes, and returns the number of markers whose visibility
+	 * changed since the last update. Only the drawing side should call
+	 * this: the getters bring the sets up to date as well but keep the
+	 * changes pending, so a hover between a filter change and the next
+	 * frame does not hide the change from BatchedMarkerManager.
+	 */
+	public int update()
+	{
+		refresh();
+		int changes = pendingChanges;
+		pendingChanges = 0;
+		if(changes > 0)
+		{
+			lastChangeCount = changes;
+		}
+		return changes;
+	}
+
+	//number of markers that changed in the last update that changed anything
+	public int getLastChangeCount()
+	{
+		return lastChangeCount;
+	}
+
+	//false for quakes and cities that are filtered out or not selected
+	public boolean isVisible(Marker marker)
+	{
+		refresh();
+		if(marker instanceof EarthquakeMarker)
+		{
+			int row = ((EarthquakeMarker)marker).getRow();
+			return row < quakesByRow.length && quakesByRow[row] == marker && visibleQuakes.get(row);
+		}
+		Integer index = cityIndex.get(marker);
+		return index == null || visibleCities.get(index);
+	}
+
+	/*
+	 * Catalog rows of the visible quakes, as of the last update. Iterate
+	 * with nextSetBit and look the markers up with getQuake; do not
+	 * modify the set.
+	 */
+	public BitSet getVisibleQuakes()
+	{
+		return visibleQuakes;
+	}
+
+	//indices of the visible cities, as of the last update
+	public BitSet getVisibleCities()
+	{
+		return visibleCities;
+	}
+
+	public EarthquakeMarker getQuake(int row)
+	{
+		return quakesByRow[row];
+	}
+
+	public Marker getCity(int index)
+	{
+		return cities.get(index);
+	}
+
+	public int getVisibleQuakeCount()
+	{
+		refresh();
+		return visibleQuakes.cardinality();
+	}
+
+	//recomputes the visible sets if anything changed, counting the changed markers as pending
+	private void refresh()
+	{
+		if(!stale && filter.getModCount() == filterModCount && catalog.size() == filterRows)
+		{
+			return;
+		}
+		BitSet quakes = (BitSet)liveQuakes.clone();
+		quakes.and(filter.getMatches());
+		if(selectedQuakes != null)
+		{
+			quakes.and(selectedQuakes);
+		}
+		BitSet cities = new BitSet();
+		if(selectedCities != null)
+		{
+			cities.or(selectedCities);
+		}
+		else
+		{
+			cities.set(0, this.cities.size());
+		}
+
+		//the markers that changed are the bits that differ
+		visibleQuakes.xor(quakes);
+		visibleCities.xor(cities);
+		pendingChanges += visibleQuakes.cardinality() + visibleCities.cardinality();
+		visibleQuakes.clear();
+		visibleQuakes.or(quakes);
+		visibleCities.clear();
+		visibleCities.or(cities);
+
+		stale = false;
+		filterModCount = filter.getModCount();
+		filterRows = catalog.size();
+	}
+
+	private void select(Marker clicked, Collection<? extends Marker> shown)
+	{
+		selectedQuakes = new BitSet();
+		selectedCities = new BitSet();
+		mark(clicked);
+		for(Marker marker : shown)
+		{
+			mark(marker);
+		}
+		stale = true;
+	}
+
+	private void mark(Marker marker)
+	{
+		if(marker instanceof EarthquakeMarker)
+		{
+			selectedQuakes.set(((EarthquakeMarker)marker).getRow());
+		}
+		else
+		{
+			Integer index = cityIndex.get(marker);
+			if(index != null)
+			{
+				selectedCities.set(index);
+			}
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package earthquakeVisualization;
+
+import java.util.Map;
+
+import processing.core.PConstants;
+import processing.core.PFont;
+import processing.core.PGraphics;
+
+import metrics.Gauge;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/*
+ * The metrics in a box below the key, as a cached layer of
+ * LayerCompositor that EarthquakeCityMap repaints once a second.
+ *
+ * Every latency is shown as p50/p99/max in milliseconds over the second
+ * since the last paint. Stages that did not run in that second, like
+ * the feed download, show their values since the start instead, marked
+ * with a star. The gauges follow with their current values.
+ */
+public class MetricsOverlay implements LayerCompositor.Painter {
+
+	public static final int SIZE_X = 232;
+	public static final int SIZE_Y = 190;
+
+	private static final int LINE_SPACE = 14;
+
+	private final PFont font;
+	private final Metrics.Interval interval = new Metrics.Interval();
+
+	//font of the text, null to keep the font of the target
+	public MetricsOverlay(PFont font)
+	{
+		this.font = font;
+	}
+
+	public void paint(PGraphics pg)
+	{
+		pg.pushStyle();
+		if(font != null)
+		{
+			pg.textFont(font);
+		}
+		pg.fill(0, 0, 0, 180);
+		pg.noStroke();
+		pg.rect(0, 0, SIZE_X, SIZE_Y);
+		pg.fill(255);
+		pg.textSize(12);
+		pg.textAlign(PConstants.LEFT, PConstants.TOP);
+
+		int y = 4;
+		pg.text("p50/p99/max ms, last second", 6, y);
+		y += LINE_SPACE;
+		Map<String, LatencyHistogram> histograms = Metrics.getHistograms();
+		for(Map.Entry<String, LatencyHistogram.Snapshot> entry : interval.next().entrySet())
+		{
+			LatencyHistogram.Snapshot latency = entry.getValue();
+			String mark = "";
+			if(latency.getCount() == 0)
+			{
+				latency = histograms.get(entry.getKey()).snapshot();
+				mark = "*";
+			}
+			if(latency.getCount() == 0)
+			{
+				continue;
+			}
+			pg.text(entry.getKey() + mark, 6, y);
+			pg.text(Metrics.millis(latency.getPercentile(50)) + "/" + Metrics.millis(latency.getPercentile(99))
+					+ "/" + Metrics.millis(latency.getMax()), 120, y);
+			y += LINE_SPACE;
+		}
+		for(Map.Entry<String, Gauge> entry : Metrics.getGauges().entrySet())
+		{
+			pg.text(entry.getKey(), 6, y);
+			pg.text(Metrics.number(entry.getValue().value()), 120, y);
+			y += LINE_SPACE;
+		}
+		pg.popStyle();
+	}
+}
@@ -2,13 +2,13 @@ package earthquakeVisualization;
 
 import processing.core.PGraphics;
 
-import de.fhpotsdam.unfolding.data.PointFeature;
+import catalog.QuakeCatalog;
 
 public class OceanQuakeMarker extends EarthquakeMarker {
 	
-	public OceanQuakeMarker(PointFeature quake)
+	public OceanQuakeMarker(QuakeCatalog catalog, int row)
 	{
-		super(quake);
+		super(catalog, row);
 		isOnLand = false;
 	}
 	
@@ -18,4 +18,9 @@ public class OceanQuakeMarker extends EarthquakeMarker {
 		//drawing our own marker for ocean quake
 		pg.rect(x-radius, y-radius, 2*radius, 2*radius);
 	}
+	
+	public void batchEarthquake(MarkerBatch batch, int fill, float x, float y)
+	{
+		batch.rect(fill, x-radius, y-radius, 2*radius, 2*radius);
+	}
 }
@@ -0,0 +1,117 @@
+package earthquakeVisualization;
+
+import java.util.AbstractList;
+
+/*
+ * Immutable list which is changed by making a new list: a tree of 32 wide
+ * arrays with the elements in the leaves, indexed by the bits of the index.
+ *
+ * Setting, appending and removing the last element copy only the arrays
+ * on the path to one leaf, a handful for any size, and the new list shares
+ * all other arrays with the old one. MarkerModel keeps the quakes of every
+ * generation in one, so a generation costs the quakes that changed rather
+ * than a copy of all of them. Removing from the middle is left to the
+ * caller: move the last element into the gap and remove the last.
+ */
+class PersistentList<E> extends AbstractList<E> {
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	private static final PersistentList<Object> EMPTY = new PersistentList<Object>(0, BITS, new Object[WIDTH]);
+
+	private final int size;
+	//bits of the index below the root's children, a multiple of BITS
+	private final int shift;
+	private final Object[] root;
+
+	private PersistentList(int size, int shift, Object[] root)
+	{
+		this.size = size;
+		this.shift = shift;
+		this.root = root;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <E> PersistentList<E> empty()
+	{
+		return (PersistentList<E>)EMPTY;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E get(int index)
+	{
+		if(index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		}
+		Object[] node = root;
+		for(int level = shift; level > 0; level -= BITS)
+		{
+			node = (Object[])node[(index >>> level) & MASK];
+		}
+		return (E)node[index & MASK];
+	}
+
+	//this list with the element at index replaced
+	public PersistentList<E> with(int index, E element)
+	{
+		if(index < 0 || index >= size)
+		{
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		}
+		return new PersistentList<E>(size, shift, set(root, shift, index, element));
+	}
+
+	//this list with one more element at the end
+	public PersistentList<E> plus(E element)
+	{
+		//the tree is full, grow it by one level
+		if(size == 1L << (shift + BITS))
+		{
+			Object[] grown = new Object[WIDTH];
+			grown[0] = root;
+			return new PersistentList<E>(size + 1, shift + BITS, set(grown, shift + BITS, size, element));
+		}
+		return new PersistentList<E>(size + 1, shift, set(root, shift, size, element));
+	}
+
+	//this list without its last element
+	public PersistentList<E> minusLast()
+	{
+		if(size == 0)
+		{
+			throw new IndexOutOfBoundsException("the list is empty");
+		}
+		Object[] cleared = set(root, shift, size - 1, null);
+		//the rest fits into the first child, drop a level
+		if(shift > BITS && size - 1 <= 1 << shift)
+		{
+			return new PersistentList<E>(size - 1, shift - BITS, (Object[])cleared[0]);
+		}
+		return new PersistentList<E>(size - 1, shift, cleared);
+	}
+
+	//copies the path to the leaf of index, missing arrays are made on the way
+	private static Object[] set(Object[] node, int level, int index, Object element)
+	{
+		Object[] copy = node.clone();
+		if(level == 0)
+		{
+			copy[index & MASK] = element;
+		}
+		else
+		{
+			int child = (index >>> level) & MASK;
+			Object[] next = (Object[])node[child];
+			copy[child] = set(next == null ? new Object[WIDTH] : next, level - BITS, index, element);
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,247 @@
+package earthquakeVisualization;
+
+/*
+ * Immutable hash map which is changed by making a new map: a trie over the
+ * bits of the key hashes, five bits per level, where each node stores only
+ * the children it has and a bitmap of which ones those are.
+ *
+ * Putting and removing a key copy the nodes on the path to its entry, a
+ * few small arrays for any size, and share all other nodes with the old
+ * map. Keys with the same hash are chained in the entry they share.
+ * Nodes emptied by removals are dropped; a node left with one entry is
+ * kept, it only costs a level on the way to that entry.
+ */
+class PersistentMap<K, V> {
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private static final Node EMPTY_NODE = new Node(0, new Object[0]);
+	private static final PersistentMap<Object, Object> EMPTY = new PersistentMap<Object, Object>(EMPTY_NODE, 0);
+
+	private final Node root;
+	private final int size;
+
+	private PersistentMap(Node root, int size)
+	{
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentMap<K, V> empty()
+	{
+		return (PersistentMap<K, V>)EMPTY;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(Object key)
+	{
+		Entry entry = find(key);
+		return entry == null ? null : (V)entry.value;
+	}
+
+	public boolean containsKey(Object key)
+	{
+		return find(key) != null;
+	}
+
+	//this map with key mapped to value
+	public PersistentMap<K, V> plus(K key, V value)
+	{
+		int hash = hash(key);
+		Node added = put(root, 0, new Entry(hash, key, value, null));
+		return new PersistentMap<K, V>(added, containsKey(key) ? size : size + 1);
+	}
+
+	//this map without key, or this map if it has no such key
+	public PersistentMap<K, V> minus(Object key)
+	{
+		Node removed = remove(root, 0, hash(key), key);
+		if(removed == root)
+		{
+			return this;
+		}
+		return new PersistentMap<K, V>(removed == null ? EMPTY_NODE : removed, size - 1);
+	}
+
+	private Entry find(Object key)
+	{
+		int hash = hash(key);
+		Node node = root;
+		for(int shift = 0; ; shift += BITS)
+		{
+			int bit = bit(hash, shift);
+			if((node.bitmap & bit) == 0)
+			{
+				return null;
+			}
+			Object slot = node.slots[node.index(bit)];
+			if(slot instanceof Entry)
+			{
+				for(Entry entry = (Entry)slot; entry != null; entry = entry.next)
+				{
+					if(entry.hash == hash && entry.key.equals(key))
+					{
+						return entry;
+					}
+				}
+				return null;
+			}
+			node = (Node)slot;
+		}
+	}
+
+	//puts a chain of entries with the same hash below node
+	private static Node put(Node node, int shift, Entry entry)
+	{
+		int bit = bit(entry.hash, shift);
+		int index = node.index(bit);
+		if((node.bitmap & bit) == 0)
+		{
+			return node.inserted(index, bit, entry);
+		}
+		Object slot = node.slots[index];
+		if(slot instanceof Node)
+		{
+			return node.replaced(index, put((Node)slot, shift + BITS, entry));
+		}
+		Entry existing = (Entry)slot;
+		if(existing.hash == entry.hash)
+		{
+			//a single new entry in front of the chain without its key
+			return node.replaced(index, new Entry(entry.hash, entry.key, entry.value, without(existing, entry.key)));
+		}
+		//two hashes meet in one slot, split them up a level further down
+		//distinct hashes differ in some bit, so this ends by the last level
+		Node split = put(put(EMPTY_NODE, shift + BITS, existing), shift + BITS, entry);
+		return node.replaced(index, split);
+	}
+
+	//node without key, the same node if it has no such key, null once empty
+	private static Node remove(Node node, int shift, int hash, Object key)
+	{
+		int bit = bit(hash, shift);
+		if((node.bitmap & bit) == 0)
+		{
+			return node;
+		}
+		int index = node.index(bit);
+		Object slot = node.slots[index];
+		Object replacement;
+		if(slot instanceof Node)
+		{
+			Node child = remove((Node)slot, shift + BITS, hash, key);
+			if(child == slot)
+			{
+				return node;
+			}
+			replacement = child;
+		}
+		else
+		{
+			Entry chain = without((Entry)slot, key);
+			if(chain == slot)
+			{
+				return node;
+			}
+			replacement = chain;
+		}
+		if(replacement != null)
+		{
+			return node.replaced(index, replacement);
+		}
+		return node.bitmap == bit ? null : node.deleted(index, bit);
+	}
+
+	//the chain without key, the same chain if key is not in it
+	private static Entry without(Entry chain, Object key)
+	{
+		if(chain == null)
+		{
+			return null;
+		}
+		if(chain.key.equals(key))
+		{
+			return chain.next;
+		}
+		Entry rest = without(chain.next, key);
+		return rest == chain.next ? chain : new Entry(chain.hash, chain.key, chain.value, rest);
+	}
+
+	private static int hash(Object key)
+	{
+		int hash = key.hashCode();
+		return hash ^ (hash >>> 16);
+	}
+
+	private static int bit(int hash, int shift)
+	{
+		return 1 << ((hash >>> shift) & MASK);
+	}
+
+	//the children in the order of their bits, each a Node or a chain of Entries
+	private static class Node
+	{
+		final int bitmap;
+		final Object[] slots;
+
+		Node(int bitmap, Object[] slots)
+		{
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+		//position of the child for bit among the children there are
+		int index(int bit)
+		{
+			return Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		Node inserted(int index, int bit, Object child)
+		{
+			Object[] copy = new Object[slots.length + 1];
+			System.arraycopy(slots, 0, copy, 0, index);
+			copy[index] = child;
+			System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+			return new Node(bitmap | bit, copy);
+		}
+
+		Node replaced(int index, Object child)
+		{
+			Object[] copy = slots.clone();
+			copy[index] = child;
+			return new Node(bitmap, copy);
+		}
+
+		Node deleted(int index, int bit)
+		{
+			Object[] copy = new Object[slots.length - 1];
+			System.arraycopy(slots, 0, copy, 0, index);
+			System.arraycopy(slots, index + 1, copy, index, copy.length - index);
+			return new Node(bitmap & ~bit, copy);
+		}
+	}
+
+	private static class Entry
+	{
+		final int hash;
+		final Object key;
+		final Object value;
+		//the next entry with the same hash
+		final Entry next;
+
+		Entry(int hash, Object key, Object value, Entry next)
+		{
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+			this.next = next;
+		}
+	}
+}
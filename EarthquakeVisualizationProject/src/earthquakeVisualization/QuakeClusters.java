@@ -0,0 +1,160 @@
+package earthquakeVisualization;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import processing.data.FloatList;
+import processing.data.IntList;
+
+/*
+ * Merges quakes that fall into the same screen cell into one glyph.
+ *
+ * Quakes are added with their position on the map canvas and binned into
+ * square cells. The cells are counted from a fixed map point (the origin)
+ * so they move with the map when it is panned and a quake stays in the
+ * same cell. A cell holding a single quake is drawn as the quake's own
+ * marker; a cell holding more is drawn as one glyph at the centre of its
+ * quakes, sized by the largest magnitude, coloured by the deepest depth
+ * class and with a ring that grows with the number of quakes.
+ */
+public class QuakeClusters {
+
+	private final float cellSize;
+	private float originX;
+	private float originY;
+
+	//cells in the order their first quake was added
+	private final Map<Long, Cell> cells = new LinkedHashMap<Long, Cell>();
+
+	//position and size of every glyph written by the last batch call
+	private final FloatList clusterX = new FloatList();
+	private final FloatList clusterY = new FloatList();
+	private final IntList clusterSize = new IntList();
+
+	public QuakeClusters(float cellSize)
+	{
+		this.cellSize = cellSize;
+	}
+
+	//drops all quakes, cells are counted from (originX, originY) from now on
+	public void reset(float originX, float originY)
+	{
+		this.originX = originX;
+		this.originY = originY;
+		cells.clear();
+		clusterX.clear();
+		clusterY.clear();
+		clusterSize.clear();
+	}
+
+	public void add(EarthquakeMarker quake, float x, float y)
+	{
+		long cx = (long)Math.floor((x - originX) / cellSize);
+		long cy = (long)Math.floor((y - originY) / cellSize);
+		Long key = (cx << 32) ^ (cy & 0xFFFFFFFFL);
+		Cell cell = cells.get(key);
+		if(cell == null)
+		{
+			cell = new Cell(quake, x, y);
+			cells.put(key, cell);
+		}
+		else
+		{
+			cell.add(quake, x, y);
+		}
+	}
+
+	/*
+	 * Adds a marker for every single quake and a glyph for every
+	 * cell with several quakes to the batch.
+	 */
+	public void batch(MarkerBatch batch)
+	{
+		batch(batch, Long.MIN_VALUE);
+	}
+
+	//single quakes after pastDaySince get the past day cross, MIN_VALUE to use the feed's age
+	public void batch(MarkerBatch batch, long pastDaySince)
+	{
+		clusterX.clear();
+		clusterY.clear();
+		clusterSize.clear();
+		for(Cell cell : cells.values())
+		{
+			if(cell.count == 1)
+			{
+				if(pastDaySince == Long.MIN_VALUE)
+				{
+					cell.first.batchMarker(batch, cell.firstX, cell.firstY);
+				}
+				else
+				{
+					cell.first.batchMarker(batch, cell.firstX, cell.firstY, cell.first.getTime() > pastDaySince);
+				}
+				continue;
+			}
+			float x = (float)(cell.sumX / cell.count);
+			float y = (float)(cell.sumY / cell.count);
+			float radius = 1.75f * cell.maxMagnitude;
+			float ring = 2 + 3 * (float)Math.log10(cell.count);
+			batch.cluster(EarthquakeMarker.depthColor(cell.maxDepth), x, y, radius, ring);
+			clusterX.append(x);
+			clusterY.append(y);
+			clusterSize.append(cell.count);
+		}
+	}
+
+	//number of glyphs written by the last batch call
+	public int getClusterCount()
+	{
+		return clusterSize.size();
+	}
+
+	public float getClusterX(int cluster)
+	{
+		return clusterX.get(cluster);
+	}
+
+	public float getClusterY(int cluster)
+	{
+		return clusterY.get(cluster);
+	}
+
+	//number of quakes behind a glyph
+	public int getClusterSize(int cluster)
+	{
+		return clusterSize.get(cluster);
+	}
+
+	private static class Cell
+	{
+		final EarthquakeMarker first;
+		final float firstX;
+		final float firstY;
+		int count = 1;
+		double sumX;
+		double sumY;
+		float maxMagnitude;
+		float maxDepth;
+
+		Cell(EarthquakeMarker quake, float x, float y)
+		{
+			first = quake;
+			firstX = x;
+			firstY = y;
+			sumX = x;
+			sumY = y;
+			maxMagnitude = quake.getMagnitude();
+			maxDepth = quake.getDepth();
+		}
+
+		void add(EarthquakeMarker quake, float x, float y)
+		{
+			count++;
+			sumX += x;
+			sumY += y;
+			maxMagnitude = Math.max(maxMagnitude, quake.getMagnitude());
+			maxDepth = Math.max(maxDepth, quake.getDepth());
+		}
+	}
+}
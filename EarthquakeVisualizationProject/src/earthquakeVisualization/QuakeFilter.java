@@ -0,0 +1,405 @@
+package earthquakeVisualization;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import catalog.QuakeCatalog;
+
+/*
+ * Composable filters over the rows of a QuakeCatalog: a magnitude range,
+ * depth classes, land or ocean, and countries.
+ *
+ * Every criterion keeps the rows it lets through as a BitSet and the
+ * matches are the AND of the active criteria. Changing one criterion scans
+ * only its own column again, the others are reused, and combining them is
+ * a few thousand word-wise ANDs even for a million rows. Depth classes and
+ * land or ocean never change for a row, so those columns are scanned once
+ * into a set per class and a change only ORs the chosen sets together.
+ * Rows the catalog gets later are scanned on the next getMatches without
+ * going over the old ones again.
+ */
+public class QuakeFilter {
+
+	//depth classes, as coloured by EarthquakeMarker.depthColor
+	public static final int SHALLOW = 0;
+	public static final int INTERMEDIATE = 1;
+	public static final int DEEP = 2;
+
+	private QuakeCatalog catalog;
+
+	private final MagnitudeCriterion magnitude = new MagnitudeCriterion();
+	private final DepthCriterion depth = new DepthCriterion();
+	private final SurfaceCriterion surface = new SurfaceCriterion();
+	private final CountryCriterion country = new CountryCriterion();
+	private final Criterion[] criteria = { magnitude, depth, surface, country };
+
+	private final BitSet matches = new BitSet();
+	private int matchedRows = -1;
+	//counts every change of a criterion, see getModCount
+	private int modCount = 0;
+	private int matchedModCount = -1;
+
+	public QuakeFilter(QuakeCatalog catalog)
+	{
+		this.catalog = catalog;
+	}
+
+	/*
+	 * Switches to a later copy of the catalog (see QuakeCatalog.copy).
+	 * Its first rows are the rows already scanned, so only the new ones
+	 * are scanned on the next getMatches.
+	 */
+	public void setCatalog(QuakeCatalog catalog)
+	{
+		this.catalog = catalog;
+	}
+
+	/*
+	 * Switches to a catalog whose rows are not the ones scanned so far,
+	 * like a compacted one (see MarkerModel). All rows are scanned again,
+	 * the criteria stay as they are.
+	 */
+	public void reset(QuakeCatalog catalog)
+	{
+		this.catalog = catalog;
+		for(Criterion criterion : criteria)
+		{
+			criterion.rescan();
+		}
+		matchedRows = -1;
+	}
+
+	//lets quakes from min to max, both inclusive, through
+	public void setMagnitudeRange(float min, float max)
+	{
+		if(min != magnitude.min || max != magnitude.max)
+		{
+			magnitude.min = min;
+			magnitude.max = max;
+			changed(magnitude);
+		}
+	}
+
+	public float getMinMagnitude()
+	{
+		return magnitude.min;
+	}
+
+	public float getMaxMagnitude()
+	{
+		return magnitude.max;
+	}
+
+	//shows or hides a depth class, SHALLOW, INTERMEDIATE or DEEP
+	public void setDepthClass(int depthClass, boolean shown)
+	{
+		if(depth.shown[depthClass] != shown)
+		{
+			depth.shown[depthClass] = shown;
+			changed(depth);
+		}
+	}
+
+	public boolean isDepthClassShown(int depthClass)
+	{
+		return depth.shown[depthClass];
+	}
+
+	public void setSurface(boolean land, boolean ocean)
+	{
+		if(land != surface.shown[0] || ocean != surface.shown[1])
+		{
+			surface.shown[0] = land;
+			surface.shown[1] = ocean;
+			changed(surface);
+		}
+	}
+
+	public boolean isLandShown()
+	{
+		return surface.shown[0];
+	}
+
+	public boolean isOceanShown()
+	{
+		return surface.shown[1];
+	}
+
+	//only land quakes in these countries, null for all quakes
+	public void setCountries(Set<String> countries)
+	{
+		if(countries == null && country.names == null)
+		{
+			return;
+		}
+		country.names = countries == null ? null : new HashSet<String>(countries);
+		changed(country);
+	}
+
+	//null when quakes are not filtered by country
+	public Set<String> getCountries()
+	{
+		return country.names == null ? null : Collections.unmodifiableSet(country.names);
+	}
+
+	//lets every quake through again
+	public void clear()
+	{
+		setMagnitudeRange(Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+		for(int i = 0; i < depth.shown.length; i++)
+		{
+			setDepthClass(i, true);
+		}
+		setSurface(true, true);
+		setCountries(null);
+	}
+
+	public boolean isActive()
+	{
+		for(Criterion criterion : criteria)
+		{
+			if(criterion.isActive())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * The rows of the catalog which pass every criterion. The set is
+	 * owned by the filter and changes with it, do not modify it.
+	 */
+	public BitSet getMatches()
+	{
+		int rows = catalog.size();
+		if(matchedModCount == modCount && matchedRows == rows)
+		{
+			return matches;
+		}
+		matches.clear();
+		matches.set(0, rows);
+		for(Criterion criterion : criteria)
+		{
+			if(criterion.isActive())
+			{
+				matches.and(criterion.update(rows));
+			}
+		}
+		matchedRows = rows;
+		matchedModCount = modCount;
+		return matches;
+	}
+
+	/*
+	 * Changes whenever a criterion changes, so users of getMatches can
+	 * tell whether they are up to date. Growth of the catalog does not
+	 * count, compare its size for that.
+	 */
+	public int getModCount()
+	{
+		return modCount;
+	}
+
+	private void changed(Criterion criterion)
+	{
+		criterion.changed();
+		modCount++;
+	}
+
+	//rows passing one criterion, scanned up to the catalog size of the last update
+	private abstract class Criterion
+	{
+		final BitSet rows = new BitSet();
+		int scanned = 0;
+
+		abstract boolean isActive();
+
+		//sets the bits of the passing rows from..to-1, one tight loop per column
+		abstract void scan(int from, int to);
+
+		//the parameters changed, the rows have to be scanned again
+		void changed()
+		{
+			rescan();
+		}
+
+		//forgets the rows scanned so far
+		void rescan()
+		{
+			rows.clear();
+			scanned = 0;
+		}
+
+		BitSet update(int size)
+		{
+			if(scanned < size)
+			{
+				scan(scanned, size);
+				scanned = size;
+			}
+			return rows;
+		}
+	}
+
+	private class MagnitudeCriterion extends Criterion
+	{
+		float min = Float.NEGATIVE_INFINITY;
+		float max = Float.POSITIVE_INFINITY;
+
+		boolean isActive()
+		{
+			return min != Float.NEGATIVE_INFINITY || max != Float.POSITIVE_INFINITY;
+		}
+
+		void scan(int from, int to)
+		{
+			for(int row = from; row < to; row++)
+			{
+				float value = catalog.getMagnitude(row);
+				if(value >= min && value <= max)
+				{
+					rows.set(row);
+				}
+			}
+		}
+	}
+
+	/*
+	 * A criterion whose rows fall into fixed classes: the classes are
+	 * scanned once and the rows are the union of the shown classes,
+	 * made again only when the shown classes change.
+	 */
+	private abstract class ClassCriterion extends Criterion
+	{
+		final boolean[] shown;
+		final BitSet[] classes;
+		boolean combined = false;
+
+		ClassCriterion(int classCount)
+		{
+			shown = new boolean[classCount];
+			classes = new BitSet[classCount];
+			for(int i = 0; i < classCount; i++)
+			{
+				shown[i] = true;
+				classes[i] = new BitSet();
+			}
+		}
+
+		boolean isActive()
+		{
+			for(boolean classShown : shown)
+			{
+				if(!classShown)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+
+		void changed()
+		{
+			combined = false;
+		}
+
+		void rescan()
+		{
+			super.rescan();
+			for(BitSet rowsOfClass : classes)
+			{
+				rowsOfClass.clear();
+			}
+			combined = false;
+		}
+
+		BitSet update(int size)
+		{
+			if(scanned < size)
+			{
+				scan(scanned, size);
+				scanned = size;
+				combined = false;
+			}
+			if(!combined)
+			{
+				rows.clear();
+				for(int i = 0; i < shown.length; i++)
+				{
+					if(shown[i])
+					{
+						rows.or(classes[i]);
+					}
+				}
+				combined = true;
+			}
+			return rows;
+		}
+	}
+
+	private class DepthCriterion extends ClassCriterion
+	{
+		DepthCriterion()
+		{
+			super(3);
+		}
+
+		void scan(int from, int to)
+		{
+			for(int row = from; row < to; row++)
+			{
+				float value = catalog.getDepth(row);
+				classes[value < EarthquakeMarker.THRESHOLD_INTERMEDIATE ? SHALLOW
+						: value < EarthquakeMarker.THRESHOLD_DEEP ? INTERMEDIATE : DEEP].set(row);
+			}
+		}
+	}
+
+	//class 0 is land, class 1 ocean
+	private class SurfaceCriterion extends ClassCriterion
+	{
+		SurfaceCriterion()
+		{
+			super(2);
+		}
+
+		void scan(int from, int to)
+		{
+			for(int row = from; row < to; row++)
+			{
+				classes[catalog.isOnLand(row) ? 0 : 1].set(row);
+			}
+		}
+	}
+
+	private class CountryCriterion extends Criterion
+	{
+		Set<String> names;
+
+		boolean isActive()
+		{
+			return names != null;
+		}
+
+		void scan(int from, int to)
+		{
+			//compare the interned ids instead of the names
+			boolean[] allowed = new boolean[catalog.getCountryCount()];
+			for(int id = 0; id < allowed.length; id++)
+			{
+				allowed[id] = names.contains(catalog.getCountryName(id));
+			}
+			for(int row = from; row < to; row++)
+			{
+				int id = catalog.getCountryId(row);
+				if(id >= 0 && allowed[id])
+				{
+					rows.set(row);
+				}
+			}
+		}
+	}
+}
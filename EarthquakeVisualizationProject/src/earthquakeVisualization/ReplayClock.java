@@ -0,0 +1,85 @@
+package earthquakeVisualization;
+
+/*
+ * Clock of the replay mode.
+ *
+ * Runs from the start to the end of a time window at a speed given in
+ * milliseconds of replayed time per second of real time, and stops at the
+ * end. EarthquakeCityMap advances it every frame by the time the frame
+ * took and shows the quakes from the start of the window up to it.
+ */
+public class ReplayClock {
+
+	private final long start;
+	private final long end;
+	private double time;
+	private double speed;
+	private boolean paused = false;
+
+	public ReplayClock(long start, long end, double speed)
+	{
+		this.start = start;
+		this.end = Math.max(start, end);
+		this.speed = speed;
+		time = start;
+	}
+
+	//moves the clock on by elapsedMillis of real time, unless paused
+	public void advance(long elapsedMillis)
+	{
+		if(!paused)
+		{
+			time = Math.min(end, time + speed * elapsedMillis / 1000);
+		}
+	}
+
+	//jumps by the given replayed time, forwards or backwards
+	public void scrub(long millis)
+	{
+		time = Math.max(start, Math.min(end, time + millis));
+	}
+
+	//pauses or resumes, resuming at the end starts over
+	public void togglePause()
+	{
+		if(time >= end)
+		{
+			time = start;
+			paused = false;
+			return;
+		}
+		paused = !paused;
+	}
+
+	public void setSpeed(double speed)
+	{
+		this.speed = speed;
+	}
+
+	//replayed milliseconds per second
+	public double getSpeed()
+	{
+		return speed;
+	}
+
+	public long getTime()
+	{
+		return (long)time;
+	}
+
+	public long getStart()
+	{
+		return start;
+	}
+
+	public long getEnd()
+	{
+		return end;
+	}
+
+	//paused by the user or at the end of the window
+	public boolean isPaused()
+	{
+		return paused || time >= end;
+	}
+}
@@ -0,0 +1,42 @@
+package earthquakeVisualization;
+
+import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.utils.ScreenPosition;
+
+/*
+ * Tells whether the map viewport moved since the last check.
+ *
+ * Projects two fixed locations and compares their screen positions with
+ * the previous check: any pan, zoom or rotation moves at least one of them.
+ * That is two projections per check instead of one per marker.
+ */
+public class ViewportWatcher {
+
+	private static final Location REFERENCE_A = new Location(0, 0);
+	private static final Location REFERENCE_B = new Location(45, 90);
+
+	private float ax = Float.NaN;
+	private float ay = Float.NaN;
+	private float bx = Float.NaN;
+	private float by = Float.NaN;
+
+	//true if the viewport differs from the last call
+	public boolean changed(UnfoldingMap map)
+	{
+		ScreenPosition a = map.getScreenPosition(REFERENCE_A);
+		ScreenPosition b = map.getScreenPosition(REFERENCE_B);
+		boolean changed = a.x != ax || a.y != ay || b.x != bx || b.y != by;
+		ax = a.x;
+		ay = a.y;
+		bx = b.x;
+		by = b.y;
+		return changed;
+	}
+
+	//forces the next check to report a change
+	public void reset()
+	{
+		ax = Float.NaN;
+	}
+}
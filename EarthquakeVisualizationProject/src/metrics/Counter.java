@@ -0,0 +1,42 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+//a count of events, only counted while Metrics is enabled
+public class Counter {
+
+	private final String name;
+	private final LongAdder value = new LongAdder();
+
+	//use Metrics.counter to get a registered one
+	Counter(String name)
+	{
+		this.name = name;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public void increment()
+	{
+		if(Metrics.isEnabled())
+		{
+			value.increment();
+		}
+	}
+
+	public void add(long amount)
+	{
+		if(Metrics.isEnabled())
+		{
+			value.add(amount);
+		}
+	}
+
+	public long get()
+	{
+		return value.sum();
+	}
+}
@@ -0,0 +1,11 @@
+package metrics;
+
+/*
+ * A value read when the metrics are reported, such as the number of
+ * markers drawn. Nothing is done while the value is not read, so gauges
+ * cost nothing while Metrics is disabled.
+ */
+public interface Gauge {
+
+	double value();
+}
@@ -0,0 +1,177 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Durations in nanoseconds, counted in log-linear buckets like an
+ * HdrHistogram with two significant digits.
+ *
+ * Values below 128 ns get a bucket each. Above that every power of two
+ * is split into 64 buckets, so a value is kept with its top seven bits
+ * and percentiles are off by less than 1.6% at any magnitude, from a
+ * microsecond mouse handler to a minute-long download. The buckets are
+ * a fixed array of counters: recording is a bit scan and two atomic
+ * increments, with no allocation and no lock, from any thread.
+ *
+ * start() and stop() do nothing while Metrics is disabled.
+ */
+public class LatencyHistogram {
+
+	//bits kept of every value
+	private static final int SUB_BITS = 7;
+	private static final int HALF = 1 << (SUB_BITS - 1);
+	//values of 2^MAX_BIT ns, about 18 minutes, and more are counted as the largest
+	private static final int MAX_BIT = 40;
+	private static final long MAX_VALUE = (1L << MAX_BIT) - 1;
+	private static final int BUCKETS = (MAX_BIT - SUB_BITS + 2) * HALF;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+
+	//use Metrics.histogram to get a registered one
+	LatencyHistogram(String name)
+	{
+		this.name = name;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	//the start time to pass to stop, 0 while metrics are disabled
+	public long start()
+	{
+		return Metrics.isEnabled() ? System.nanoTime() : 0;
+	}
+
+	//records the time since start unless it was taken while disabled
+	public void stop(long start)
+	{
+		if(start != 0)
+		{
+			record(System.nanoTime() - start);
+		}
+	}
+
+	public void record(long nanos)
+	{
+		long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+	}
+
+	//the counts so far, taken bucket by bucket while recording goes on
+	public Snapshot snapshot()
+	{
+		long[] copy = new long[BUCKETS];
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			copy[i] = counts.get(i);
+			total += copy[i];
+		}
+		//count the buckets instead of reading count, so the two agree
+		return new Snapshot(copy, total, sum.get());
+	}
+
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	private static int indexOf(long value)
+	{
+		if(value < 2 * HALF)
+		{
+			return (int)value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+		return shift * HALF + (int)(value >>> shift);
+	}
+
+	//largest value that falls into a bucket
+	private static long highestOf(int index)
+	{
+		if(index < 2 * HALF)
+		{
+			return index;
+		}
+		int shift = index / HALF - 1;
+		long lowest = (long)(index - shift * HALF) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	/*
+	 * The counts of a histogram at one moment. Subtracting an earlier
+	 * snapshot gives the values recorded in between, as the interval
+	 * histograms of HdrHistogram's recorder.
+	 */
+	public static class Snapshot
+	{
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+
+		private Snapshot(long[] counts, long count, long sum)
+		{
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+		}
+
+		//the values recorded since the earlier snapshot of the same histogram
+		public Snapshot minus(Snapshot earlier)
+		{
+			long[] difference = new long[counts.length];
+			for(int i = 0; i < counts.length; i++)
+			{
+				difference[i] = counts[i] - earlier.counts[i];
+			}
+			return new Snapshot(difference, count - earlier.count, sum - earlier.sum);
+		}
+
+		public long getCount()
+		{
+			return count;
+		}
+
+		//exact mean in nanoseconds, 0 if nothing was recorded
+		public double getMean()
+		{
+			return count == 0 ? 0 : (double)sum / count;
+		}
+
+		//the value in nanoseconds that percent of the values are at or below
+		public long getPercentile(double percent)
+		{
+			long rank = Math.max(1, (long)Math.ceil(percent / 100 * count));
+			long seen = 0;
+			for(int i = 0; i < counts.length; i++)
+			{
+				seen += counts[i];
+				if(seen >= rank)
+				{
+					return highestOf(i);
+				}
+			}
+			return 0;
+		}
+
+		public long getMax()
+		{
+			for(int i = counts.length - 1; i >= 0; i--)
+			{
+				if(counts[i] > 0)
+				{
+					return highestOf(i);
+				}
+			}
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/*
+ * The registry of the counters, latency histograms and gauges of the
+ * application, by name.
+ *
+ * Code that measures something gets its metric once, usually into a
+ * static field, and records into it:
+ *
+ *   private static final LatencyHistogram PARSE_TIME = Metrics.histogram("feed.parse");
+ *   long start = PARSE_TIME.start();
+ *   ...
+ *   PARSE_TIME.stop(start);
+ *
+ * Metrics are disabled until setEnabled(true). While disabled, start()
+ * returns 0 without reading the clock and stop(0), increment() and add()
+ * return after one volatile read, so the instrumented code runs at the
+ * same speed; gauges are only evaluated when read.
+ *
+ * The metrics can be read through JMX (registerMBean), printed as one
+ * line every few seconds (startLog) or read in the same way for an
+ * overlay with an Interval.
+ */
+public final class Metrics {
+
+	public static final String MBEAN_NAME = "earthquakeVisualization:type=Metrics";
+
+	private static volatile boolean enabled = false;
+
+	//in registration order, which is the order they are reported in
+	private static final Map<String, Counter> counters = new LinkedHashMap<String, Counter>();
+	private static final Map<String, LatencyHistogram> histograms = new LinkedHashMap<String, LatencyHistogram>();
+	private static final Map<String, Gauge> gauges = new LinkedHashMap<String, Gauge>();
+
+	private static ScheduledExecutorService logExecutor;
+
+	private Metrics()
+	{
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	public static void setEnabled(boolean on)
+	{
+		enabled = on;
+	}
+
+	//the counter of this name, registered on first use
+	public static synchronized Counter counter(String name)
+	{
+		Counter counter = counters.get(name);
+		if(counter == null)
+		{
+			counter = new Counter(name);
+			counters.put(name, counter);
+		}
+		return counter;
+	}
+
+	//the histogram of this name, registered on first use
+	public static synchronized LatencyHistogram histogram(String name)
+	{
+		LatencyHistogram histogram = histograms.get(name);
+		if(histogram == null)
+		{
+			histogram = new LatencyHistogram(name);
+			histograms.put(name, histogram);
+		}
+		return histogram;
+	}
+
+	//registers a gauge, replacing one of the same name
+	public static synchronized void gauge(String name, Gauge gauge)
+	{
+		gauges.put(name, gauge);
+	}
+
+	public static synchronized Map<String, Counter> getCounters()
+	{
+		return new LinkedHashMap<String, Counter>(counters);
+	}
+
+	public static synchronized Map<String, LatencyHistogram> getHistograms()
+	{
+		return new LinkedHashMap<String, LatencyHistogram>(histograms);
+	}
+
+	public static synchronized Map<String, Gauge> getGauges()
+	{
+		return new LinkedHashMap<String, Gauge>(gauges);
+	}
+
+	/*
+	 * Makes the metrics readable in jconsole or any other JMX client as
+	 * attributes of MBEAN_NAME. Registering again replaces the bean.
+	 */
+	public static void registerMBean() throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(MBEAN_NAME);
+		if(server.isRegistered(name))
+		{
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(new MetricsMBean(), name);
+	}
+
+	/*
+	 * Prints one line with the metrics of the last periodSeconds to
+	 * System.out every periodSeconds, on a daemon thread. Nothing is
+	 * printed while disabled.
+	 */
+	public static synchronized void startLog(long periodSeconds)
+	{
+		if(logExecutor != null)
+		{
+			return;
+		}
+		logExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread thread = new Thread(r, "metrics-log");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		final Interval interval = new Interval();
+		logExecutor.scheduleAtFixedRate(new Runnable() {
+			public void run()
+			{
+				Map<String, LatencyHistogram.Snapshot> latencies = interval.next();
+				if(enabled)
+				{
+					System.out.println("Metrics: " + format(latencies));
+				}
+			}
+		}, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	public static synchronized void stopLog()
+	{
+		if(logExecutor != null)
+		{
+			logExecutor.shutdownNow();
+			logExecutor = null;
+		}
+	}
+
+	/*
+	 * One line of the given latencies as p50/p99/max in milliseconds and
+	 * their count, then the counters and the gauges. Latencies without
+	 * values are left out.
+	 */
+	public static String format(Map<String, LatencyHistogram.Snapshot> latencies)
+	{
+		StringBuilder line = new StringBuilder();
+		for(Map.Entry<String, LatencyHistogram.Snapshot> entry : latencies.entrySet())
+		{
+			LatencyHistogram.Snapshot latency = entry.getValue();
+			if(latency.getCount() > 0)
+			{
+				line.append(String.format(Locale.ROOT, "%s %s/%s/%s ms x%d, ", entry.getKey(),
+						millis(latency.getPercentile(50)), millis(latency.getPercentile(99)),
+						millis(latency.getMax()), latency.getCount()));
+			}
+		}
+		for(Counter counter : getCounters().values())
+		{
+			line.append(counter.getName()).append(' ').append(counter.get()).append(", ");
+		}
+		for(Map.Entry<String, Gauge> entry : getGauges().entrySet())
+		{
+			line.append(entry.getKey()).append(' ').append(number(entry.getValue().value())).append(", ");
+		}
+		return line.length() == 0 ? "" : line.substring(0, line.length() - 2);
+	}
+
+	//nanoseconds as milliseconds with three significant digits
+	public static String millis(double nanos)
+	{
+		double millis = nanos / 1e6;
+		return String.format(Locale.ROOT, millis < 10 ? "%.2f" : millis < 100 ? "%.1f" : "%.0f", millis);
+	}
+
+	//whole numbers without a fraction, others with two decimals
+	public static String number(double value)
+	{
+		return value == Math.rint(value) && !Double.isInfinite(value)
+				? Long.toString((long)value) : String.format(Locale.ROOT, "%.2f", value);
+	}
+
+	/*
+	 * Reads the histograms as the values recorded since the previous read,
+	 * so a periodic report shows the latencies of its own period instead
+	 * of everything since the start. Every reader keeps its own Interval.
+	 */
+	public static class Interval
+	{
+		private final Map<String, LatencyHistogram.Snapshot> previous = new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+
+		//interval snapshots of all registered histograms, in registration order
+		public Map<String, LatencyHistogram.Snapshot> next()
+		{
+			Map<String, LatencyHistogram.Snapshot> interval = new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+			for(LatencyHistogram histogram : getHistograms().values())
+			{
+				LatencyHistogram.Snapshot now = histogram.snapshot();
+				LatencyHistogram.Snapshot before = previous.put(histogram.getName(), now);
+				interval.put(histogram.getName(), before == null ? now : now.minus(before));
+			}
+			return interval;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+
+/*
+ * The registry as JMX attributes, worked out on every read so metrics
+ * registered later show up too:
+ *   enabled                     writable, switches recording on and off
+ *   <counter>                   count as a long
+ *   <gauge>                     current value as a double
+ *   <histogram>.count           number of values since the start
+ *   <histogram>.mean|p50|p99|p999|max   in milliseconds since the start
+ */
+class MetricsMBean implements DynamicMBean {
+
+	private static final String ENABLED = "enabled";
+	private static final String[] LATENCIES = { "mean", "p50", "p99", "p999", "max" };
+
+	public Object getAttribute(String attribute) throws AttributeNotFoundException
+	{
+		if(attribute.equals(ENABLED))
+		{
+			return Metrics.isEnabled();
+		}
+		Counter counter = Metrics.getCounters().get(attribute);
+		if(counter != null)
+		{
+			return counter.get();
+		}
+		Gauge gauge = Metrics.getGauges().get(attribute);
+		if(gauge != null)
+		{
+			return gauge.value();
+		}
+		int dot = attribute.lastIndexOf('.');
+		LatencyHistogram histogram = dot < 0 ? null : Metrics.getHistograms().get(attribute.substring(0, dot));
+		if(histogram == null)
+		{
+			throw new AttributeNotFoundException(attribute);
+		}
+		LatencyHistogram.Snapshot latency = histogram.snapshot();
+		String part = attribute.substring(dot + 1);
+		if(part.equals("count"))
+		{
+			return latency.getCount();
+		}
+		if(part.equals("mean"))
+		{
+			return latency.getMean() / 1e6;
+		}
+		if(part.equals("p50"))
+		{
+			return latency.getPercentile(50) / 1e6;
+		}
+		if(part.equals("p99"))
+		{
+			return latency.getPercentile(99) / 1e6;
+		}
+		if(part.equals("p999"))
+		{
+			return latency.getPercentile(99.9) / 1e6;
+		}
+		if(part.equals("max"))
+		{
+			return latency.getMax() / 1e6;
+		}
+		throw new AttributeNotFoundException(attribute);
+	}
+
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException
+	{
+		if(!attribute.getName().equals(ENABLED))
+		{
+			throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+		}
+		if(!(attribute.getValue() instanceof Boolean))
+		{
+			throw new InvalidAttributeValueException(ENABLED + " takes a boolean");
+		}
+		Metrics.setEnabled((Boolean)attribute.getValue());
+	}
+
+	public AttributeList getAttributes(String[] attributes)
+	{
+		AttributeList list = new AttributeList();
+		for(String name : attributes)
+		{
+			try
+			{
+				list.add(new Attribute(name, getAttribute(name)));
+			}
+			catch(AttributeNotFoundException e)
+			{
+				//left out, as the interface asks
+			}
+		}
+		return list;
+	}
+
+	public AttributeList setAttributes(AttributeList attributes)
+	{
+		AttributeList set = new AttributeList();
+		for(Attribute attribute : attributes.asList())
+		{
+			try
+			{
+				setAttribute(attribute);
+				set.add(attribute);
+			}
+			catch(AttributeNotFoundException e)
+			{
+				//left out, as the interface asks
+			}
+			catch(InvalidAttributeValueException e)
+			{
+				//left out, as the interface asks
+			}
+		}
+		return set;
+	}
+
+	public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException
+	{
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	public MBeanInfo getMBeanInfo()
+	{
+		List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+		attributes.add(new MBeanAttributeInfo(ENABLED, "boolean", "whether metrics are recorded", true, true, true));
+		for(String name : Metrics.getCounters().keySet())
+		{
+			attributes.add(new MBeanAttributeInfo(name, "long", "count", true, false, false));
+		}
+		for(String name : Metrics.getGauges().keySet())
+		{
+			attributes.add(new MBeanAttributeInfo(name, "double", "current value", true, false, false));
+		}
+		for(Map.Entry<String, LatencyHistogram> entry : Metrics.getHistograms().entrySet())
+		{
+			attributes.add(new MBeanAttributeInfo(entry.getKey() + ".count", "long",
+					"values recorded", true, false, false));
+			for(String part : LATENCIES)
+			{
+				attributes.add(new MBeanAttributeInfo(entry.getKey() + "." + part, "double",
+						part + " in milliseconds", true, false, false));
+			}
+		}
+		return new MBeanInfo(getClass().getName(), "Counters, latencies and gauges of the earthquake map",
+				attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+	}
+}
@@ -0,0 +1,163 @@
+package parsing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/*
+ * Streaming reader for the USGS CSV summary feed.
+ *
+ * Reads one row at a time. Columns are found by the names in the header
+ * row (time, latitude, longitude, depth, mag, id, updated and place), so
+ * their order and any extra columns do not matter. time and updated are
+ * ISO-8601 timestamps, depth is in km. The CSV feed has no title or age
+ * category: the title is made from mag and place like USGS does, the age
+ * is counted from now.
+ *
+ * Usage is the same as for every QuakeSource.
+ */
+public class CsvQuakeReader implements QuakeSource {
+
+	private final BufferedReader in;
+	private final long now;
+
+	//column of each field, -1 when the feed does not have it
+	private final int time;
+	private final int latitude;
+	private final int longitude;
+	private final int depth;
+	private final int mag;
+	private final int id;
+	private final int updated;
+	private final int place;
+
+	//reused for the fields of each row
+	private final List<String> fields = new ArrayList<String>();
+	private final StringBuilder field = new StringBuilder();
+
+	//the next feature to hand out, read ahead by hasNext
+	private PointFeature next;
+	private boolean finished = false;
+
+	public CsvQuakeReader(InputStream in) throws IOException {
+		this(in, System.currentTimeMillis());
+	}
+
+	//now is used for the age categories
+	public CsvQuakeReader(InputStream in, long now) throws IOException {
+		this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+		this.now = now;
+		String header = this.in.readLine();
+		if (header == null) {
+			header = "";
+		}
+		if (header.startsWith("\uFEFF")) {
+			header = header.substring(1);
+		}
+		split(header);
+		time = fields.indexOf("time");
+		latitude = fields.indexOf("latitude");
+		longitude = fields.indexOf("longitude");
+		depth = fields.indexOf("depth");
+		mag = fields.indexOf("mag");
+		id = fields.indexOf("id");
+		updated = fields.indexOf("updated");
+		place = fields.indexOf("place");
+		if (latitude < 0 || longitude < 0) {
+			throw new IOException("Not an earthquake CSV feed, no latitude and longitude columns: " + header);
+		}
+	}
+
+	public boolean hasNext() throws IOException {
+		while (next == null && !finished) {
+			String row = in.readLine();
+			if (row == null) {
+				finished = true;
+			} else if (!row.isEmpty()) {
+				next = parseRow(row);
+			}
+		}
+		return next != null;
+	}
+
+	public PointFeature next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		PointFeature feature = next;
+		next = null;
+		return feature;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	//returns null for rows without a location, hasNext skips them
+	private PointFeature parseRow(String row) throws IOException {
+		split(row);
+		String latStr = get(latitude);
+		String lonStr = get(longitude);
+		if (latStr == null || lonStr == null) {
+			return null;
+		}
+		try {
+			String magStr = get(mag);
+			String depthStr = get(depth);
+			String timeStr = get(time);
+			String updatedStr = get(updated);
+			float magVal = magStr == null ? 0 : Float.parseFloat(magStr);
+			long timeVal = timeStr == null ? 0 : ParseFeed.parseTime(timeStr);
+			return ParseFeed.newQuake(get(id), Float.parseFloat(latStr), Float.parseFloat(lonStr), magVal,
+					depthStr == null ? 0 : Float.parseFloat(depthStr), timeVal,
+					updatedStr == null ? timeVal : ParseFeed.parseTime(updatedStr),
+					ParseFeed.titleOf(magVal, get(place)), now);
+		} catch (RuntimeException e) {
+			throw new IOException("Malformed earthquake CSV row: " + row, e);
+		}
+	}
+
+	//field of the current row, null if missing or empty
+	private String get(int column) {
+		if (column < 0 || column >= fields.size()) {
+			return null;
+		}
+		String value = fields.get(column);
+		return value.isEmpty() ? null : value;
+	}
+
+	//splits a row at commas outside of double quotes, "" inside quotes is a quote
+	private void split(String row) {
+		fields.clear();
+		field.setLength(0);
+		boolean quoted = false;
+		for (int i = 0; i < row.length(); i++) {
+			char c = row.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < row.length() && row.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+	}
+}
@@ -0,0 +1,226 @@
+package parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+/*
+ * Streaming reader for the USGS GeoRSS/Atom earthquake feed.
+ *
+ * Pulls one entry element at a time with StAX and turns it into a
+ * PointFeature with the same properties ParseFeed.parseEarthquake sets,
+ * without building a tree of the whole document. It does not need a
+ * PApplet so it can be used headless. The GeoJSON and CSV feeds carry
+ * the magnitude and depth as numbers, see GeoJsonQuakeReader and
+ * CsvQuakeReader.
+ *
+ * Usage:
+ * 	EarthquakeFeedReader reader = new EarthquakeFeedReader(in);
+ * 	while(reader.hasNext()) { PointFeature quake = reader.next(); ... }
+ * 	reader.close();
+ */
+public class EarthquakeFeedReader implements QuakeSource {
+
+	private static final XMLInputFactory FACTORY = createFactory();
+
+	private final InputStream in;
+	private final XMLStreamReader xml;
+
+	//the next feature to hand out, read ahead by hasNext
+	private PointFeature next;
+	private boolean finished = false;
+
+	public EarthquakeFeedReader(InputStream in) throws IOException
+	{
+		this.in = in;
+		try {
+			xml = FACTORY.createXMLStreamReader(in);
+		} catch (XMLStreamException e) {
+			throw new IOException("Could not open earthquake feed", e);
+		}
+	}
+
+	public boolean hasNext() throws IOException
+	{
+		if(next == null && !finished)
+		{
+			try {
+				next = readEntry();
+			} catch (XMLStreamException e) {
+				throw new IOException("Malformed earthquake feed", e);
+			}
+			finished = next == null;
+		}
+		return next != null;
+	}
+
+	public PointFeature next() throws IOException
+	{
+		if(!hasNext())
+		{
+			throw new NoSuchElementException();
+		}
+		PointFeature feature = next;
+		next = null;
+		return feature;
+	}
+
+	public void close() throws IOException
+	{
+		try {
+			xml.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/*
+	 * Advances to the next entry with a location and parses it.
+	 * Entries without a georss:point are skipped like in the DOM parser.
+	 * Returns null at the end of the document.
+	 */
+	private PointFeature readEntry() throws XMLStreamException
+	{
+		while(xml.hasNext())
+		{
+			if(xml.next() == XMLStreamConstants.START_ELEMENT && "entry".equals(xml.getLocalName()))
+			{
+				PointFeature point = parseEntry();
+				if(point != null)
+				{
+					return point;
+				}
+			}
+		}
+		return null;
+	}
+
+	//reads the children of the current entry element up to its end tag
+	private PointFeature parseEntry() throws XMLStreamException
+	{
+		String pointStr = null;
+		String titleStr = null;
+		String elevStr = null;
+		String updatedStr = null;
+		String summaryStr = null;
+		String idStr = null;
+		String ageStr = null;
+
+		int depth = 1;
+		while(depth > 0 && xml.hasNext())
+		{
+			int event = xml.next();
+			if(event == XMLStreamConstants.END_ELEMENT)
+			{
+				depth--;
+				continue;
+			}
+			if(event != XMLStreamConstants.START_ELEMENT)
+			{
+				continue;
+			}
+			if(depth > 1)
+			{
+				//nested markup we do not care about
+				depth++;
+				continue;
+			}
+
+			String name = qualifiedName();
+			if("georss:point".equals(name))
+			{
+				pointStr = xml.getElementText();
+			}
+			else if("title".equals(name))
+			{
+				titleStr = xml.getElementText();
+			}
+			else if("id".equals(name))
+			{
+				idStr = xml.getElementText();
+			}
+			else if("updated".equals(name))
+			{
+				updatedStr = xml.getElementText();
+			}
+			else if("summary".equals(name))
+			{
+				summaryStr = xml.getElementText();
+			}
+			else if("georss:elev".equals(name))
+			{
+				elevStr = xml.getElementText();
+			}
+			else if("category".equals(name))
+			{
+				if("Age".equals(xml.getAttributeValue(null, "label")))
+				{
+					ageStr = xml.getAttributeValue(null, "term");
+				}
+				depth++;
+			}
+			else
+			{
+				depth++;
+			}
+		}
+
+		if(pointStr == null)
+		{
+			return null;
+		}
+
+		String[] latLon = pointStr.trim().split(" ");
+		float lat = Float.valueOf(latLon[0]);
+		float lon = Float.valueOf(latLon[1]);
+		PointFeature point = new PointFeature(new Location(lat, lon));
+		if (idStr != null) {
+			point.setId(idStr.trim());
+		}
+
+		// same property rules as ParseFeed.parseEarthquake
+		if (titleStr != null) {
+			point.putProperty("title", titleStr);
+			point.putProperty("magnitude", ParseFeed.parseMagnitude(titleStr));
+		}
+
+		ParseFeed.putTimes(point, updatedStr, summaryStr);
+
+		float elev = elevStr == null ? 0 : Float.parseFloat(elevStr.trim());
+		point.putProperty("depth", ParseFeed.elevationToDepth(elev));
+
+		if (ageStr != null) {
+			point.putProperty("age", ageStr);
+		}
+		return point;
+	}
+
+	//element name as written in the feed, e.g. "georss:point"
+	private String qualifiedName()
+	{
+		String prefix = xml.getPrefix();
+		if(prefix == null || prefix.isEmpty())
+		{
+			return xml.getLocalName();
+		}
+		return prefix + ":" + xml.getLocalName();
+	}
+
+	private static XMLInputFactory createFactory()
+	{
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		return factory;
+	}
+}
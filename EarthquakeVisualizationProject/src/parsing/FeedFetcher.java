@@ -0,0 +1,213 @@
+package parsing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+/*
+ * Downloads a feed into an on-disk cache using conditional requests.
+ *
+ * The cached copy's ETag and Last-Modified are sent back as If-None-Match
+ * and If-Modified-Since, so an unchanged feed costs a 304 and no body.
+ * Bodies are requested gzip-compressed and streamed to disk, then the
+ * parsers read the cached file. When the server cannot be reached the last
+ * cached copy is used, so the app can start offline.
+ *
+ * Sources which are not http(s) URLs are treated as local files and
+ * returned as they are.
+ */
+public class FeedFetcher {
+
+	//what the last fetch did
+	public enum Result { DOWNLOADED, NOT_MODIFIED, OFFLINE, LOCAL }
+
+	private static final int TIMEOUT_MILLIS = 15000;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final String source;
+	private final File cacheFile;
+	private final File metaFile;
+
+	private Result lastResult;
+	private long lastBytes;
+
+	/*
+	 * @param source - URL or file name of the feed
+	 * @param cacheDir - directory for the cached copy, created if needed
+	 */
+	public FeedFetcher(String source, File cacheDir) {
+		this.source = source;
+		String name = source.replaceAll("^[a-z]+://", "").replaceAll("[^A-Za-z0-9._-]", "_");
+		this.cacheFile = new File(cacheDir, name);
+		this.metaFile = new File(cacheDir, name + ".properties");
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	/*
+	 * Makes sure the cache holds the current feed and returns the file to parse.
+	 * Throws only if the server cannot be reached and nothing is cached.
+	 */
+	public synchronized File fetch() throws IOException {
+		lastBytes = 0;
+		if (!source.startsWith("http://") && !source.startsWith("https://")) {
+			lastResult = Result.LOCAL;
+			return new File(source);
+		}
+
+		Properties meta = loadMeta();
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection) new URL(source).openConnection();
+			connection.setConnectTimeout(TIMEOUT_MILLIS);
+			connection.setReadTimeout(TIMEOUT_MILLIS);
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+			if (cacheFile.exists()) {
+				if (meta.getProperty("etag") != null) {
+					connection.setRequestProperty("If-None-Match", meta.getProperty("etag"));
+				}
+				if (meta.getProperty("lastModified") != null) {
+					connection.setRequestProperty("If-Modified-Since", meta.getProperty("lastModified"));
+				}
+			}
+
+			int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cacheFile.exists()) {
+				lastResult = Result.NOT_MODIFIED;
+				return cacheFile;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("HTTP " + status + " for " + source);
+			}
+
+			download(connection);
+			Properties updated = new Properties();
+			if (connection.getHeaderField("ETag") != null) {
+				updated.setProperty("etag", connection.getHeaderField("ETag"));
+			}
+			if (connection.getHeaderField("Last-Modified") != null) {
+				updated.setProperty("lastModified", connection.getHeaderField("Last-Modified"));
+			}
+			saveMeta(updated);
+			lastResult = Result.DOWNLOADED;
+			return cacheFile;
+		} catch (IOException e) {
+			// offline or server error, fall back to the last good copy
+			if (cacheFile.exists()) {
+				System.err.println("Using cached feed, could not fetch " + source + ": " + e);
+				lastResult = Result.OFFLINE;
+				return cacheFile;
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.disconnect();
+			}
+		}
+	}
+
+	public synchronized Result getLastResult() {
+		return lastResult;
+	}
+
+	//bytes received over the network by the last fetch
+	public synchronized long getLastBytes() {
+		return lastBytes;
+	}
+
+	public File getCacheFile() {
+		return cacheFile;
+	}
+
+	//streams the body to a temp file, then swaps it in so a failed
+	//download never replaces a good cached copy
+	private void download(HttpURLConnection connection) throws IOException {
+		File dir = cacheFile.getParentFile();
+		if (dir != null && !dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Could not create cache directory " + dir);
+		}
+		File temp = File.createTempFile(cacheFile.getName(), ".part", dir);
+		try {
+			CountingInputStream body = new CountingInputStream(connection.getInputStream());
+			InputStream in = "gzip".equalsIgnoreCase(connection.getContentEncoding())
+					? new GZIPInputStream(body, BUFFER_SIZE) : body;
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					out.write(buffer, 0, n);
+				}
+			} finally {
+				out.close();
+				in.close();
+			}
+			lastBytes = body.count;
+			Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			temp.delete();
+		}
+	}
+
+	private Properties loadMeta() {
+		Properties meta = new Properties();
+		if (metaFile.exists()) {
+			try {
+				InputStream in = new FileInputStream(metaFile);
+				try {
+					meta.load(in);
+				} finally {
+					in.close();
+				}
+			} catch (IOException e) {
+				// a broken meta file only costs a full download
+			}
+		}
+		return meta;
+	}
+
+	private void saveMeta(Properties meta) throws IOException {
+		OutputStream out = new FileOutputStream(metaFile);
+		try {
+			meta.store(out, source);
+		} finally {
+			out.close();
+		}
+	}
+
+	//counts compressed bytes as they come off the wire
+	private static class CountingInputStream extends java.io.FilterInputStream {
+		long count = 0;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+	}
+}
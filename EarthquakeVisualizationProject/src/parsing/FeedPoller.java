@@ -0,0 +1,256 @@
+package parsing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import metrics.Counter;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/*
+ * Polls the earthquake feed on a schedule and reports only what changed.
+ *
+ * Every poll streams the feed through a QuakeSource and compares each
+ * entry's id and updated time with the previous poll. Entries are
+ * sorted into added, updated (same id, new updated time) and removed (no
+ * longer in the feed); unchanged entries are only counted. Polling runs
+ * on a background thread and the listener is called on that thread.
+ *
+ * Fetching goes through FeedFetcher, so an unchanged feed is answered
+ * with a 304 and not parsed again. The source can be a URL or a local
+ * file, so a file or a local HTTP server can stand in for the USGS feed.
+ */
+public class FeedPoller {
+
+	private static final LatencyHistogram DOWNLOAD_TIME = Metrics.histogram("feed.download");
+	private static final LatencyHistogram PARSE_TIME = Metrics.histogram("feed.parse");
+	private static final Counter DOWNLOADED_BYTES = Metrics.counter("feed.bytes");
+	private static final Counter ADDED = Metrics.counter("feed.added");
+	private static final Counter UPDATED = Metrics.counter("feed.updated");
+	private static final Counter REMOVED = Metrics.counter("feed.removed");
+	private static final Counter SKIPPED = Metrics.counter("feed.skipped");
+
+	//receives the changes of every poll that changed something
+	public interface Listener {
+		void feedChanged(Delta delta);
+	}
+
+	//changes between two polls
+	public static class Delta {
+		private final List<PointFeature> added = new ArrayList<PointFeature>();
+		private final List<PointFeature> updated = new ArrayList<PointFeature>();
+		private final List<String> removed = new ArrayList<String>();
+		private int skipped = 0;
+
+		public List<PointFeature> getAdded() {
+			return added;
+		}
+
+		public List<PointFeature> getUpdated() {
+			return updated;
+		}
+
+		//ids of entries which are no longer in the feed
+		public List<String> getRemoved() {
+			return removed;
+		}
+
+		//entries which were unchanged since the last poll
+		public int getSkipped() {
+			return skipped;
+		}
+
+		public boolean isEmpty() {
+			return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+		}
+
+		public String toString() {
+			return "+" + added.size() + " added, " + updated.size() + " updated, "
+					+ removed.size() + " removed, " + skipped + " unchanged";
+		}
+	}
+
+	private final FeedFetcher fetcher;
+	//null to find the format out from the feed
+	private final QuakeSource.Format format;
+	private final long periodSeconds;
+
+	//id -> updated time of every entry seen in the last successful poll
+	private Map<String, Long> known = new HashMap<String, Long>();
+
+	private ScheduledExecutorService executor;
+
+	//read without the lock, which a poll holds while it downloads
+	private volatile long polls = 0;
+	private volatile long failures = 0;
+	private long totalSkipped = 0;
+
+	public FeedPoller(FeedFetcher fetcher, long periodSeconds) {
+		this(fetcher, null, periodSeconds);
+	}
+
+	//polls a feed in the given format, see ParseFeed.openQuakes
+	public FeedPoller(FeedFetcher fetcher, QuakeSource.Format format, long periodSeconds) {
+		this.fetcher = fetcher;
+		this.format = format;
+		this.periodSeconds = periodSeconds;
+	}
+
+	/*
+	 * Fetches the feed once and returns the changes since the previous poll.
+	 * The first poll reports every entry as added.
+	 */
+	public synchronized Delta poll() throws IOException {
+		Delta delta = new Delta();
+		long start = DOWNLOAD_TIME.start();
+		File file = fetcher.fetch();
+		DOWNLOAD_TIME.stop(start);
+		DOWNLOADED_BYTES.add(fetcher.getLastBytes());
+
+		// the cached copy was already parsed by an earlier poll
+		FeedFetcher.Result result = fetcher.getLastResult();
+		if (polls > 0 && (result == FeedFetcher.Result.NOT_MODIFIED || result == FeedFetcher.Result.OFFLINE)) {
+			delta.skipped = known.size();
+			polls++;
+			totalSkipped += delta.skipped;
+			SKIPPED.add(delta.skipped);
+			return delta;
+		}
+
+		start = PARSE_TIME.start();
+		Map<String, Long> current = new HashMap<String, Long>();
+		QuakeSource reader = ParseFeed.openQuakes(file.getPath(), format);
+		try {
+			while (reader.hasNext()) {
+				PointFeature quake = reader.next();
+				String key = keyOf(quake);
+				if (current.containsKey(key)) {
+					continue;
+				}
+				Long version = versionOf(quake);
+				current.put(key, version);
+				Long previous = known.get(key);
+				if (previous == null) {
+					delta.added.add(quake);
+				} else if (!previous.equals(version)) {
+					delta.updated.add(quake);
+				} else {
+					delta.skipped++;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		PARSE_TIME.stop(start);
+
+		// only a complete poll replaces the known state
+		for (String key : known.keySet()) {
+			if (!current.containsKey(key)) {
+				delta.removed.add(key);
+			}
+		}
+		known = current;
+
+		polls++;
+		totalSkipped += delta.skipped;
+		ADDED.add(delta.added.size());
+		UPDATED.add(delta.updated.size());
+		REMOVED.add(delta.removed.size());
+		SKIPPED.add(delta.skipped);
+		return delta;
+	}
+
+	/*
+	 * Sets the entries the next poll is compared with, e.g. the quakes
+	 * restored from a snapshot, so that poll reports only what changed
+	 * since then instead of every entry as added.
+	 *
+	 * @param known - id (see keyOf) -> updated time in epoch milliseconds
+	 */
+	public synchronized void prime(Map<String, Long> known) {
+		this.known = new HashMap<String, Long>(known);
+	}
+
+	/*
+	 * Starts polling every periodSeconds on a daemon thread.
+	 * Failed polls are logged and the previous state is kept,
+	 * so the next successful poll reports everything that changed meanwhile.
+	 */
+	public synchronized void start(Listener listener) {
+		start(listener, periodSeconds);
+	}
+
+	//same as start(listener) with the first poll after initialDelaySeconds
+	public synchronized void start(final Listener listener, long initialDelaySeconds) {
+		if (executor != null) {
+			return;
+		}
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "feed-poller");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					Delta delta = poll();
+					if (!delta.isEmpty()) {
+						listener.feedChanged(delta);
+					}
+				} catch (Exception e) {
+					synchronized (FeedPoller.this) {
+						failures++;
+					}
+					System.err.println("Feed poll failed: " + e);
+				}
+			}
+		}, initialDelaySeconds, periodSeconds, TimeUnit.SECONDS);
+	}
+
+	public synchronized void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/*
+	 * The time of the last update, "updated" in every feed format;
+	 * "time" for quakes which only have one time.
+	 */
+	private static Long versionOf(PointFeature quake) {
+		Object version = quake.getProperty("updated");
+		if (version == null) {
+			version = quake.getProperty("time");
+		}
+		return version == null ? 0L : (Long) version;
+	}
+
+	//the feed's id, falling back to the title for feeds without ids
+	public static String keyOf(PointFeature quake) {
+		return quake.getId() != null ? quake.getId() : quake.getStringProperty("title");
+	}
+
+	public long getPollCount() {
+		return polls;
+	}
+
+	public long getFailureCount() {
+		return failures;
+	}
+
+	public synchronized long getTotalSkipped() {
+		return totalSkipped;
+	}
+}
@@ -0,0 +1,398 @@
+package parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/*
+ * Streaming reader for the USGS GeoJSON summary feed.
+ *
+ * Scans the FeatureCollection one feature at a time, keeping only the
+ * fields the map uses: the id, properties.mag, .time, .updated, .title
+ * and .place, and geometry.coordinates (longitude, latitude, depth in
+ * km). Everything else is skipped without building objects for it.
+ * The age category comes from metadata.generated, which USGS writes
+ * before the features; without it the ages are counted from now.
+ *
+ * Usage is the same as for every QuakeSource.
+ */
+public class GeoJsonQuakeReader implements QuakeSource {
+
+	private final Reader in;
+	private final char[] buffer = new char[1 << 16];
+	private int position = 0;
+	private int limit = 0;
+
+	//reused for strings and numbers
+	private final StringBuilder text = new StringBuilder();
+
+	//when the feed was generated, the age categories count from here
+	private long generated;
+
+	//the next feature to hand out, read ahead by hasNext
+	private PointFeature next;
+	//true while between the brackets of the features array
+	private boolean inFeatures = false;
+	private boolean finished = false;
+
+	public GeoJsonQuakeReader(InputStream in) throws IOException {
+		this(in, System.currentTimeMillis());
+	}
+
+	//now is used for the age categories if the feed has no metadata.generated
+	public GeoJsonQuakeReader(InputStream in, long now) throws IOException {
+		this.in = new InputStreamReader(in, StandardCharsets.UTF_8);
+		this.generated = now;
+		expect('{');
+		if (!findFeatures()) {
+			finished = true;
+		}
+	}
+
+	public boolean hasNext() throws IOException {
+		while (next == null && !finished) {
+			if (!inFeatures) {
+				//members after the features array, e.g. bbox
+				skipRestOfObject();
+				finished = true;
+				break;
+			}
+			int c = peek();
+			if (c == ',') {
+				read();
+				c = peek();
+			}
+			if (c == ']') {
+				read();
+				inFeatures = false;
+				continue;
+			}
+			next = readFeature();
+		}
+		return next != null;
+	}
+
+	public PointFeature next() throws IOException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		PointFeature feature = next;
+		next = null;
+		return feature;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/*
+	 * Reads the members of the collection up to the features array and
+	 * steps into it. Returns false if the collection has no features.
+	 */
+	private boolean findFeatures() throws IOException {
+		while (true) {
+			int c = peek();
+			if (c == '}') {
+				read();
+				return false;
+			}
+			if (c == ',') {
+				read();
+			}
+			String name = readName();
+			if (name.equals("features")) {
+				expect('[');
+				inFeatures = true;
+				return true;
+			} else if (name.equals("metadata")) {
+				readMetadata();
+			} else {
+				skipValue();
+			}
+		}
+	}
+
+	private void readMetadata() throws IOException {
+		expect('{');
+		while (nextMember()) {
+			if (readName().equals("generated")) {
+				generated = parseLong(readNumber());
+			} else {
+				skipValue();
+			}
+		}
+	}
+
+	/*
+	 * Reads one Feature object. Returns null for features without
+	 * coordinates, hasNext drops them like entries without a georss:point
+	 * in the Atom feed.
+	 */
+	private PointFeature readFeature() throws IOException {
+		String id = null;
+		String title = null;
+		String place = null;
+		float mag = 0;
+		long time = 0;
+		long updated = 0;
+		double[] coordinates = null;
+
+		expect('{');
+		while (nextMember()) {
+			String name = readName();
+			if (name.equals("id")) {
+				id = readStringOrNull();
+			} else if (name.equals("properties")) {
+				expect('{');
+				while (nextMember()) {
+					String property = readName();
+					if (property.equals("mag")) {
+						String value = readNumberOrNull();
+						//USGS leaves mag null for some quakes
+						mag = value == null ? 0 : Float.parseFloat(value);
+					} else if (property.equals("time")) {
+						String value = readNumberOrNull();
+						time = value == null ? 0 : parseLong(value);
+					} else if (property.equals("updated")) {
+						String value = readNumberOrNull();
+						updated = value == null ? 0 : parseLong(value);
+					} else if (property.equals("title")) {
+						title = readStringOrNull();
+					} else if (property.equals("place")) {
+						place = readStringOrNull();
+					} else {
+						skipValue();
+					}
+				}
+			} else if (name.equals("geometry")) {
+				coordinates = readCoordinates();
+			} else {
+				skipValue();
+			}
+		}
+
+		if (coordinates == null) {
+			return null;
+		}
+		return ParseFeed.newQuake(id, (float) coordinates[1], (float) coordinates[0], mag, (float) coordinates[2],
+				time, updated, title != null ? title : ParseFeed.titleOf(mag, place), generated);
+	}
+
+	//the Point coordinates of a geometry object, null for a null or empty geometry
+	private double[] readCoordinates() throws IOException {
+		if (peek() == 'n') {
+			skipValue();
+			return null;
+		}
+		double[] coordinates = null;
+		expect('{');
+		while (nextMember()) {
+			if (readName().equals("coordinates")) {
+				coordinates = new double[3];
+				expect('[');
+				int i = 0;
+				while (peek() != ']') {
+					if (peek() == ',') {
+						read();
+					}
+					String value = readNumberOrNull();
+					if (i < 3 && value != null) {
+						coordinates[i] = Double.parseDouble(value);
+					}
+					i++;
+				}
+				read();
+				if (i < 2) {
+					coordinates = null;
+				}
+			} else {
+				skipValue();
+			}
+		}
+		return coordinates;
+	}
+
+	/*
+	 * Moves to the next member of the object being read. Returns false
+	 * and steps past the closing brace when there is none.
+	 */
+	private boolean nextMember() throws IOException {
+		int c = peek();
+		if (c == ',') {
+			read();
+			c = peek();
+		}
+		if (c == '}') {
+			read();
+			return false;
+		}
+		return true;
+	}
+
+	private void skipRestOfObject() throws IOException {
+		while (nextMember()) {
+			readName();
+			skipValue();
+		}
+	}
+
+	//reads a member name and the colon after it
+	private String readName() throws IOException {
+		String name = readString();
+		expect(':');
+		return name;
+	}
+
+	private String readStringOrNull() throws IOException {
+		if (peek() == '"') {
+			return readString();
+		}
+		skipValue();
+		return null;
+	}
+
+	private String readNumberOrNull() throws IOException {
+		if (peek() == 'n') {
+			skipValue();
+			return null;
+		}
+		return readNumber();
+	}
+
+	private String readString() throws IOException {
+		expect('"');
+		text.setLength(0);
+		while (true) {
+			int c = read();
+			if (c == '"') {
+				return text.toString();
+			}
+			if (c == '\\') {
+				c = read();
+				switch (c) {
+				case 'b': text.append('\b'); break;
+				case 'f': text.append('\f'); break;
+				case 'n': text.append('\n'); break;
+				case 'r': text.append('\r'); break;
+				case 't': text.append('\t'); break;
+				case 'u':
+					int code = 0;
+					for (int i = 0; i < 4; i++) {
+						code = code * 16 + Character.digit(read(), 16);
+					}
+					text.append((char) code);
+					break;
+				default: text.append((char) c);
+				}
+			} else if (c == -1) {
+				throw new IOException("Unterminated string in GeoJSON feed");
+			} else {
+				text.append((char) c);
+			}
+		}
+	}
+
+	private String readNumber() throws IOException {
+		peek();
+		text.setLength(0);
+		while (true) {
+			if (position == limit && !fill()) {
+				break;
+			}
+			char c = buffer[position];
+			if ((c < '0' || c > '9') && c != '-' && c != '+' && c != '.' && c != 'e' && c != 'E') {
+				break;
+			}
+			text.append(c);
+			position++;
+		}
+		if (text.length() == 0) {
+			throw new IOException("Expected a number in GeoJSON feed");
+		}
+		return text.toString();
+	}
+
+	//skips one value of any type, including nested objects and arrays
+	private void skipValue() throws IOException {
+		int c = peek();
+		if (c == '"') {
+			readString();
+		} else if (c == '{' || c == '[') {
+			int depth = 0;
+			do {
+				c = read();
+				if (c == '"') {
+					position--;
+					readString();
+				} else if (c == '{' || c == '[') {
+					depth++;
+				} else if (c == '}' || c == ']') {
+					depth--;
+				} else if (c == -1) {
+					throw new IOException("Unexpected end of GeoJSON feed");
+				}
+			} while (depth > 0);
+		} else if (c == '-' || (c >= '0' && c <= '9')) {
+			readNumber();
+		} else {
+			//true, false or null
+			while (peek() >= 'a' && peek() <= 'z') {
+				read();
+			}
+		}
+	}
+
+	//epoch milliseconds, written as integers by USGS
+	private static long parseLong(String value) {
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return (long) Double.parseDouble(value);
+		}
+	}
+
+	private void expect(char expected) throws IOException {
+		int c = peek();
+		if (c != expected) {
+			throw new IOException("Expected '" + expected + "' in GeoJSON feed but found "
+					+ (c == -1 ? "the end" : "'" + (char) c + "'"));
+		}
+		read();
+	}
+
+	//the next character which is not white space, without consuming it, -1 at the end
+	private int peek() throws IOException {
+		while (true) {
+			if (position == limit && !fill()) {
+				return -1;
+			}
+			char c = buffer[position];
+			if (c != ' ' && c != '\n' && c != '\r' && c != '\t' && c != '\uFEFF') {
+				return c;
+			}
+			position++;
+		}
+	}
+
+	private int read() throws IOException {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position++];
+	}
+
+	private boolean fill() throws IOException {
+		int count = in.read(buffer, 0, buffer.length);
+		if (count <= 0) {
+			return false;
+		}
+		position = 0;
+		limit = count;
+		return true;
+	}
+}
@@ -1,19 +1,33 @@
 package parsing;
 
 
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.time.Instant;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import de.fhpotsdam.unfolding.data.Feature;
 import de.fhpotsdam.unfolding.data.PointFeature;
 import de.fhpotsdam.unfolding.data.ShapeFeature;
 import de.fhpotsdam.unfolding.geo.Location;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
 import processing.core.PApplet;
 import processing.data.XML;
 
 public class ParseFeed {
 
+	// time to turn a whole feed into features, for any of the parse methods
+	private static final LatencyHistogram PARSE_TIME = Metrics.histogram("feed.parse");
 
 	/*
 	 * This method is to parse a GeoRSS feed corresponding to earthquakes around
@@ -23,9 +37,18 @@ public class ParseFeed {
 	 * @param fileName - file name or URL for data source
 	 */
 	public static List<PointFeature> parseEarthquake(PApplet p, String fileName) {
+		return parseEarthquake(p.loadXML(fileName));
+	}
+	
+	/*
+	 * Parses an already loaded GeoRSS feed document.
+	 * 
+	 * @param rss - root of the feed document
+	 */
+	public static List<PointFeature> parseEarthquake(XML rss) {
+		long start = PARSE_TIME.start();
 		List<PointFeature> features = new ArrayList<PointFeature>();
 
-		XML rss = p.loadXML(fileName);
 		// Get all items
 		XML[] itemXML = rss.getChildren("entry");
 		PointFeature point;
@@ -44,22 +67,27 @@ public class ParseFeed {
 					continue;
 				}
 
+				// Sets Atom id if existing
+				String idStr = getStringVal(itemXML[i], "id");
+				if (idStr != null) {
+					point.setId(idStr.trim());
+				}
+
 				// Sets title if existing
 				String titleStr = getStringVal(itemXML[i], "title");
 				if (titleStr != null) {
 					point.putProperty("title", titleStr);
 					// get magnitude from title
-					point.putProperty("magnitude", Float.parseFloat(titleStr.substring(2, 5)));
+					point.putProperty("magnitude", parseMagnitude(titleStr));
 				}
 
+				// Sets origin time and time of the last update if existing
+				putTimes(point, getStringVal(itemXML[i], "updated"), getStringVal(itemXML[i], "summary"));
+
 				// Sets depth(elevation) if existing
-				float depthVal = getFloatVal(itemXML[i], "georss:elev");
-				
-				// NOT SURE ABOUT CHECKING ERR CONDITION BECAUSE 0 COULD BE VALID?
-				// get one decimal place when converting to km
-				int interVal = (int)(depthVal/100);
-				depthVal = (float) interVal/10;
-				point.putProperty("depth", Math.abs((depthVal)));
+				String elevStr = getStringVal(itemXML[i], "georss:elev");
+				float elev = elevStr == null ? 0 : Float.parseFloat(elevStr.trim());
+				point.putProperty("depth", elevationToDepth(elev));
 				
 
 				// Sets age if existing
@@ -75,10 +103,118 @@ public class ParseFeed {
 
 			}
 		
+			PARSE_TIME.stop(start);
 			return features;
 		}
 
 	
+	/*
+	 * Streaming version of parseEarthquake. Entries are pulled one at a time
+	 * from a QuakeSource so no tree of the whole feed is kept in memory,
+	 * and no PApplet is needed so it can run headless. Reads any of the
+	 * QuakeSource formats.
+	 * 
+	 * @param fileName - file name or URL for data source
+	 */
+	public static List<PointFeature> parseEarthquakeStream(String fileName) throws IOException {
+		long start = PARSE_TIME.start();
+		List<PointFeature> features = new ArrayList<PointFeature>();
+		
+		QuakeSource quakes = openQuakes(fileName);
+		try {
+			while (quakes.hasNext()) {
+				features.add(quakes.next());
+			}
+		} finally {
+			quakes.close();
+		}
+		
+		PARSE_TIME.stop(start);
+		return features;
+	}
+	
+	/*
+	 * Opens a file name or URL for reading.
+	 */
+	public static InputStream openFeed(String fileName) throws IOException {
+		if (fileName.contains("://")) {
+			return new BufferedInputStream(new URL(fileName).openStream());
+		}
+		return new BufferedInputStream(new FileInputStream(fileName));
+	}
+	
+	/*
+	 * Opens a feed in any of the QuakeSource formats. Gzipped feeds are
+	 * unpacked, and the format is told from the first character of the
+	 * document: '<' for Atom, '{' for GeoJSON, anything else is CSV.
+	 * 
+	 * @param fileName - file name or URL for data source
+	 */
+	public static QuakeSource openQuakes(String fileName) throws IOException {
+		return openQuakes(fileName, null);
+	}
+	
+	/*
+	 * Opens a feed in the given format, or finds the format out if it is null.
+	 */
+	public static QuakeSource openQuakes(String fileName, QuakeSource.Format format) throws IOException {
+		InputStream in = openFeed(fileName);
+		try {
+			in = unzip(in);
+			if (format == null) {
+				format = detectFormat(in);
+			}
+			switch (format) {
+			case GEOJSON:
+				return new GeoJsonQuakeReader(in);
+			case CSV:
+				return new CsvQuakeReader(in);
+			default:
+				return new EarthquakeFeedReader(in);
+			}
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+	
+	/*
+	 * Wraps a gzipped stream so it reads unpacked, other streams are
+	 * returned as they are. The stream has to support mark.
+	 */
+	private static InputStream unzip(InputStream in) throws IOException {
+		in.mark(2);
+		int first = in.read();
+		int second = in.read();
+		in.reset();
+		if (first == 0x1f && second == 0x8b) {
+			return new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16);
+		}
+		return in;
+	}
+	
+	//peeks at the first character which is not white space or a byte order mark
+	private static QuakeSource.Format detectFormat(InputStream in) throws IOException {
+		in.mark(1024);
+		try {
+			for (int i = 0; i < 1024; i++) {
+				int c = in.read();
+				if (c == '<') {
+					return QuakeSource.Format.ATOM;
+				}
+				if (c == '{') {
+					return QuakeSource.Format.GEOJSON;
+				}
+				if (c == -1 || !(Character.isWhitespace(c) || c == 0xef || c == 0xbb || c == 0xbf)) {
+					break;
+				}
+			}
+			return QuakeSource.Format.CSV;
+		} finally {
+			in.reset();
+		}
+	}
+	
 	/*
 	 * Gets location from georss:point tag
 	 * 
@@ -121,10 +257,165 @@ public class ParseFeed {
 	}
 	
 	/*
-	 * Get float value from child node
+	 * Converts an Atom timestamp such as 2021-05-12T10:10:10.040Z
+	 * to epoch milliseconds. The fixed UTC layout USGS writes is read
+	 * digit by digit, anything else goes through Instant.parse, so an
+	 * impossible date like 2021-02-31 throws a DateTimeParseException.
 	 */
-	private static float getFloatVal(XML itemXML, String tagName) {
-		return Float.parseFloat(getStringVal(itemXML, tagName));
+	static long parseTime(String timeStr) {
+		timeStr = timeStr.trim();
+		int length = timeStr.length();
+		if (length >= 20 && timeStr.charAt(length - 1) == 'Z' && timeStr.charAt(4) == '-' && timeStr.charAt(7) == '-'
+				&& timeStr.charAt(10) == 'T' && timeStr.charAt(13) == ':' && timeStr.charAt(16) == ':') {
+			int year = digits(timeStr, 0, 4);
+			int month = digits(timeStr, 5, 7);
+			int day = digits(timeStr, 8, 10);
+			int hour = digits(timeStr, 11, 13);
+			int minute = digits(timeStr, 14, 16);
+			int second = digits(timeStr, 17, 19);
+			int millis = 0;
+			if (length == 24 && timeStr.charAt(19) == '.') {
+				millis = digits(timeStr, 20, 23);
+			} else if (length != 20) {
+				millis = -1;
+			}
+			if (year >= 1970 && month >= 1 && month <= 12 && day >= 1
+					&& day <= YearMonth.of(year, month).lengthOfMonth() && hour < 24 && minute < 60
+					&& second < 60 && millis >= 0) {
+				long days = LocalDate.of(year, month, day).toEpochDay();
+				return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+			}
+		}
+		return Instant.parse(timeStr).toEpochMilli();
+	}
+	
+	/*
+	 * Gets the origin time from the html summary of an Atom entry, where
+	 * USGS writes it as <dt>Time</dt><dd>2021-05-12 10:10:10 UTC</dd>.
+	 * Returns -1 if the summary has no time.
+	 */
+	static long parseSummaryTime(String summaryStr) {
+		int label = summaryStr.indexOf("<dt>Time</dt>");
+		int start = label < 0 ? -1 : summaryStr.indexOf("<dd>", label);
+		int end = start < 0 ? -1 : summaryStr.indexOf("</dd>", start);
+		if (end < 0) {
+			return -1;
+		}
+		String timeStr = summaryStr.substring(start + 4, end).trim();
+		if (timeStr.endsWith(" UTC")) {
+			timeStr = timeStr.substring(0, timeStr.length() - 4).replace(' ', 'T') + "Z";
+		}
+		try {
+			return parseTime(timeStr);
+		} catch (DateTimeException e) {
+			return -1;
+		}
+	}
+	
+	/*
+	 * Sets "time" and "updated" of an Atom entry from its updated and
+	 * summary elements, either may be null. "time" is the origin time
+	 * from the summary, or the updated time for entries without one.
+	 */
+	static void putTimes(PointFeature point, String updatedStr, String summaryStr) {
+		long time = summaryStr == null ? -1 : parseSummaryTime(summaryStr);
+		if (updatedStr != null) {
+			long updated = parseTime(updatedStr);
+			point.putProperty("updated", updated);
+			if (time < 0) {
+				time = updated;
+			}
+		}
+		if (time >= 0) {
+			point.putProperty("time", time);
+		}
+	}
+	
+	//the decimal number in timeStr[start, end), -1 if it is not all digits
+	private static int digits(String timeStr, int start, int end) {
+		int value = 0;
+		for (int i = start; i < end; i++) {
+			char c = timeStr.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+	
+	/*
+	 * Gets the magnitude from a title such as "M 4.5 - 10 km SSE of Place",
+	 * also "M -0.4 - ..." and "M 10.0 - ...". Titles without a magnitude
+	 * give 0, like a quake too small to show.
+	 */
+	static float parseMagnitude(String titleStr) {
+		int start = titleStr.startsWith("M ") ? 2 : 0;
+		int end = titleStr.indexOf(' ', start);
+		try {
+			return Float.parseFloat(titleStr.substring(start, end < 0 ? titleStr.length() : end));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+	
+	/*
+	 * Converts a georss:elev in meters (negative below the surface)
+	 * to a depth in km.
+	 */
+	static float elevationToDepth(float elev) {
+		return Math.abs(elev) / 1000;
+	}
+	
+	/*
+	 * The Atom feed's age category of a quake at time when the feed was
+	 * generated at now, for the formats which do not carry one and for
+	 * stored quakes. Returns null for quakes older than a month.
+	 */
+	public static String ageOf(long time, long now) {
+		long age = now - time;
+		if (age <= 60 * 60 * 1000L) {
+			return "Past Hour";
+		}
+		if (age <= 24 * 60 * 60 * 1000L) {
+			return "Past Day";
+		}
+		if (age <= 7 * 24 * 60 * 60 * 1000L) {
+			return "Past Week";
+		}
+		if (age <= 30 * 24 * 60 * 60 * 1000L) {
+			return "Past Month";
+		}
+		return null;
+	}
+	
+	/*
+	 * A quake from one of the formats with numeric fields, with the same
+	 * properties as the Atom parsers set: "time" is when the quake
+	 * happened and "updated" the time of the last update.
+	 */
+	static PointFeature newQuake(String id, float lat, float lon, float mag, float depth,
+			long time, long updated, String title, long now) {
+		PointFeature point = new PointFeature(new Location(lat, lon));
+		if (id != null) {
+			point.setId(id);
+		}
+		point.putProperty("title", title);
+		point.putProperty("magnitude", mag);
+		point.putProperty("time", time);
+		point.putProperty("updated", updated);
+		point.putProperty("depth", Math.abs(depth));
+		String age = ageOf(time, now);
+		if (age != null) {
+			point.putProperty("age", age);
+		}
+		return point;
+	}
+	
+	//the title USGS gives a quake, e.g. "M 4.5 - 10 km SSE of Place"
+	static String titleOf(float mag, String place) {
+		String title = "M " + Math.round(mag * 10) / 10f;
+		return place == null || place.isEmpty() ? title : title + " - " + place;
 	}
 	
 
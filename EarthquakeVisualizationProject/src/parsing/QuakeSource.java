@@ -0,0 +1,37 @@
+package parsing;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+/*
+ * A stream of earthquakes read from one of the USGS feed formats.
+ *
+ * Every implementation hands out PointFeatures with the properties
+ * ParseFeed.parseEarthquake sets (title, magnitude, depth in km, time in
+ * epoch milliseconds and age), so everything downstream works the same
+ * whatever the feed format. Quakes are read one at a time, nothing keeps
+ * the whole feed in memory. Open one with ParseFeed.openQuakes.
+ *
+ * Usage:
+ * 	QuakeSource quakes = ParseFeed.openQuakes(fileName);
+ * 	while(quakes.hasNext()) { PointFeature quake = quakes.next(); ... }
+ * 	quakes.close();
+ */
+public interface QuakeSource extends Closeable {
+
+	//the layouts of the USGS summary feeds
+	enum Format {
+		//GeoRSS/Atom, magnitude only in the title and depth in whole meters
+		ATOM,
+		//GeoJSON FeatureCollection, exact numeric fields
+		GEOJSON,
+		//CSV with a header row, exact numeric fields
+		CSV
+	}
+
+	boolean hasNext() throws IOException;
+
+	PointFeature next() throws IOException;
+}
@@ -0,0 +1,359 @@
+package report;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+import catalog.QuakeCatalog;
+import earthquakeVisualization.EarthquakeMarker;
+
+/*
+ * Summary of a quake catalog built in one pass over the quakes.
+ *
+ * Quakes are added one at a time and nothing is kept per quake:
+ *  - quakes per country are counted in a hash map,
+ *  - the topCount strongest quakes are kept in a min-heap of that size,
+ *    so a quake only costs a comparison unless it beats the weakest kept,
+ *  - quakes are counted per depth class (the classes of the marker
+ *    colours) and per land/ocean.
+ * So the cost is linear in the number of quakes and the memory is bounded
+ * by the number of countries and topCount, whatever the catalog size.
+ *
+ * writeCsv and writeJson print the summary.
+ */
+public class QuakeReport {
+
+	//names of the depth classes, in the order of the depth counts
+	public static final String[] DEPTH_CLASSES = { "shallow", "intermediate", "deep" };
+
+	private static final int LAND = 0;
+	private static final int OCEAN = 1;
+
+	private final int topCount;
+
+	private int quakes = 0;
+	//[LAND or OCEAN][depth class]
+	private final int[][] depthCounts = new int[2][DEPTH_CLASSES.length];
+	//int[1] counters, so counting does not box
+	private final Map<String, int[]> countryCounts = new HashMap<String, int[]>();
+	//weakest kept quake at the head
+	private final PriorityQueue<Quake> top;
+
+	public QuakeReport(int topCount)
+	{
+		this.topCount = topCount;
+		top = new PriorityQueue<Quake>(Math.max(1, topCount), new Comparator<Quake>() {
+			public int compare(Quake a, Quake b)
+			{
+				int order = Float.compare(a.magnitude, b.magnitude);
+				//of equally strong quakes the one added first is kept
+				return order != 0 ? order : Long.compare(b.sequence, a.sequence);
+			}
+		});
+	}
+
+	//country is null for ocean quakes
+	public void add(String title, float magnitude, float depth, long time, String country)
+	{
+		int sequence = quakes++;
+		depthCounts[country == null ? OCEAN : LAND][depthClass(depth)]++;
+		if(country != null)
+		{
+			int[] count = countryCounts.get(country);
+			if(count == null)
+			{
+				count = new int[1];
+				countryCounts.put(country, count);
+			}
+			count[0]++;
+		}
+		if(topCount > 0 && (top.size() < topCount || magnitude > top.peek().magnitude))
+		{
+			if(top.size() == topCount)
+			{
+				top.poll();
+			}
+			top.add(new Quake(sequence, title, magnitude, depth, time, country));
+		}
+	}
+
+	public void add(QuakeCatalog catalog, int row)
+	{
+		add(catalog.getTitle(row), catalog.getMagnitude(row), catalog.getDepth(row),
+				catalog.getTime(row), catalog.getCountry(row));
+	}
+
+	//a quake with the properties ParseFeed sets, classified or not
+	public void add(PointFeature quake)
+	{
+		Object time = quake.getProperty("time");
+		add(quake.getStringProperty("title"), number(quake.getProperty("magnitude")),
+				number(quake.getProperty("depth")),
+				time instanceof Number ? ((Number)time).longValue() : time == null ? 0 : Long.parseLong(time.toString()),
+				quake.getStringProperty("country"));
+	}
+
+	public int getQuakeCount()
+	{
+		return quakes;
+	}
+
+	public int getLandCount()
+	{
+		return sum(depthCounts[LAND]);
+	}
+
+	public int getOceanCount()
+	{
+		return sum(depthCounts[OCEAN]);
+	}
+
+	//quakes per depth class, land and ocean together
+	public int[] getDepthCounts()
+	{
+		int[] counts = new int[DEPTH_CLASSES.length];
+		for(int depth = 0; depth < counts.length; depth++)
+		{
+			counts[depth] = depthCounts[LAND][depth] + depthCounts[OCEAN][depth];
+		}
+		return counts;
+	}
+
+	public int[] getLandDepthCounts()
+	{
+		return depthCounts[LAND].clone();
+	}
+
+	public int[] getOceanDepthCounts()
+	{
+		return depthCounts[OCEAN].clone();
+	}
+
+	//countries with quakes, most quakes first, then by name
+	public List<Map.Entry<String, Integer>> getCountryCounts()
+	{
+		List<Map.Entry<String, Integer>> counts = new ArrayList<Map.Entry<String, Integer>>();
+		for(Map.Entry<String, int[]> entry : countryCounts.entrySet())
+		{
+			counts.add(new AbstractMap.SimpleImmutableEntry<String, Integer>(entry.getKey(), entry.getValue()[0]));
+		}
+		Collections.sort(counts, new Comparator<Map.Entry<String, Integer>>() {
+			public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b)
+			{
+				int order = b.getValue().compareTo(a.getValue());
+				return order != 0 ? order : a.getKey().compareTo(b.getKey());
+			}
+		});
+		return counts;
+	}
+
+	//the strongest quakes, strongest first
+	public List<Quake> getTop()
+	{
+		List<Quake> quakes = new ArrayList<Quake>(top);
+		Collections.sort(quakes, Collections.reverseOrder(top.comparator()));
+		return quakes;
+	}
+
+	/*
+	 * Writes the report as CSV tables separated by an empty line:
+	 * totals, depth classes by land/ocean, countries and the top quakes.
+	 * Every table starts with its header row.
+	 */
+	public void writeCsv(Writer out) throws IOException
+	{
+		out.write("quakes,land,ocean\n");
+		out.write(quakes + "," + getLandCount() + "," + getOceanCount() + "\n");
+
+		out.write("\ndepth_class,land,ocean,quakes\n");
+		for(int depth = 0; depth < DEPTH_CLASSES.length; depth++)
+		{
+			out.write(DEPTH_CLASSES[depth] + "," + depthCounts[LAND][depth] + "," + depthCounts[OCEAN][depth]
+					+ "," + (depthCounts[LAND][depth] + depthCounts[OCEAN][depth]) + "\n");
+		}
+
+		out.write("\ncountry,quakes\n");
+		for(Map.Entry<String, Integer> country : getCountryCounts())
+		{
+			out.write(csv(country.getKey()) + "," + country.getValue() + "\n");
+		}
+
+		out.write("\nrank,magnitude,depth,time,country,title\n");
+		int rank = 1;
+		for(Quake quake : getTop())
+		{
+			out.write(rank++ + "," + quake.magnitude + "," + quake.depth + "," + quake.time
+					+ "," + csv(quake.country) + "," + csv(quake.title) + "\n");
+		}
+		out.flush();
+	}
+
+	public void writeJson(Writer out) throws IOException
+	{
+		out.write("{\n");
+		out.write("  \"quakes\": " + quakes + ",\n");
+		out.write("  \"land\": " + getLandCount() + ",\n");
+		out.write("  \"ocean\": " + getOceanCount() + ",\n");
+
+		out.write("  \"depthClasses\": [");
+		for(int depth = 0; depth < DEPTH_CLASSES.length; depth++)
+		{
+			out.write(depth == 0 ? "\n" : ",\n");
+			out.write(String.format(Locale.ROOT, "    {\"depthClass\": %s, \"land\": %d, \"ocean\": %d}",
+					json(DEPTH_CLASSES[depth]), depthCounts[LAND][depth], depthCounts[OCEAN][depth]));
+		}
+		out.write("\n  ],\n");
+
+		out.write("  \"countries\": [");
+		boolean first = true;
+		for(Map.Entry<String, Integer> country : getCountryCounts())
+		{
+			out.write(first ? "\n" : ",\n");
+			out.write("    {\"country\": " + json(country.getKey()) + ", \"quakes\": " + country.getValue() + "}");
+			first = false;
+		}
+		out.write(first ? "],\n" : "\n  ],\n");
+
+		out.write("  \"top\": [");
+		first = true;
+		for(Quake quake : getTop())
+		{
+			out.write(first ? "\n" : ",\n");
+			out.write("    {\"magnitude\": " + quake.magnitude + ", \"depth\": " + quake.depth
+					+ ", \"time\": " + quake.time + ", \"country\": " + json(quake.country)
+					+ ", \"title\": " + json(quake.title) + "}");
+			first = false;
+		}
+		out.write(first ? "]\n" : "\n  ]\n");
+		out.write("}\n");
+		out.flush();
+	}
+
+	private static int depthClass(float depth)
+	{
+		if(depth < EarthquakeMarker.THRESHOLD_INTERMEDIATE)
+		{
+			return 0;
+		}
+		return depth < EarthquakeMarker.THRESHOLD_DEEP ? 1 : 2;
+	}
+
+	//ParseFeed stores Floats, other sources may store strings
+	private static float number(Object value)
+	{
+		return value instanceof Number ? ((Number)value).floatValue() : Float.parseFloat(value.toString());
+	}
+
+	private static int sum(int[] counts)
+	{
+		int sum = 0;
+		for(int count : counts)
+		{
+			sum += count;
+		}
+		return sum;
+	}
+
+	//quoted when it contains a separator, quote or line break
+	private static String csv(String value)
+	{
+		if(value == null)
+		{
+			return "";
+		}
+		if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0)
+		{
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String json(String value)
+	{
+		if(value == null)
+		{
+			return "null";
+		}
+		StringBuilder quoted = new StringBuilder(value.length() + 2);
+		quoted.append('"');
+		for(int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if(c == '"' || c == '\\')
+			{
+				quoted.append('\\').append(c);
+			}
+			else if(c < 0x20)
+			{
+				quoted.append(String.format("\\u%04x", (int)c));
+			}
+			else
+			{
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	//one of the strongest quakes
+	public static class Quake
+	{
+		private final long sequence;
+		private final String title;
+		private final float magnitude;
+		private final float depth;
+		private final long time;
+		private final String country;
+
+		Quake(long sequence, String title, float magnitude, float depth, long time, String country)
+		{
+			this.sequence = sequence;
+			this.title = title;
+			this.magnitude = magnitude;
+			this.depth = depth;
+			this.time = time;
+			this.country = country;
+		}
+
+		public String getTitle()
+		{
+			return title;
+		}
+
+		public float getMagnitude()
+		{
+			return magnitude;
+		}
+
+		public float getDepth()
+		{
+			return depth;
+		}
+
+		public long getTime()
+		{
+			return time;
+		}
+
+		//null for ocean quakes
+		public String getCountry()
+		{
+			return country;
+		}
+
+		public String toString()
+		{
+			return title;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package report;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.data.GeoJSONReader;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.utils.MapUtils;
+
+import parsing.ParseFeed;
+import parsing.QuakeSource;
+import spatial.CountryIndex;
+import spatial.LandMask;
+import spatial.QuakeClassifier;
+
+/*
+ * Command line report over one or more earthquake feeds, without a sketch.
+ *
+ * The feeds are streamed: entries are read BATCH_SIZE at a time, the batch
+ * is classified into land and ocean quakes on all cores and added to a
+ * QuakeReport, so memory does not grow with the size of the catalog.
+ *
+ * java -cp bin:lib/* report.ReportTool [options] feed...
+ *   -format csv|json   output format, csv by default
+ *   -top n             number of strongest quakes to list, 10 by default
+ *   -countries file    country polygons, data/countries.geo.json by default
+ *   -out file          write the report to a file instead of standard output
+ * A feed is a file name or URL of a USGS feed in GeoRSS/Atom, GeoJSON or
+ * CSV, plain or gzipped. Progress and timing go to standard error.
+ */
+public class ReportTool {
+
+	private static final int BATCH_SIZE = 1 << 16;
+
+	public static void main(String[] args)
+	{
+		String format = "csv";
+		int top = 10;
+		String countryFile = "data/countries.geo.json";
+		String outFile = null;
+		List<String> feeds = new ArrayList<String>();
+		try
+		{
+			for(int i = 0; i < args.length; i++)
+			{
+				if(args[i].equals("-format"))
+				{
+					format = args[++i];
+				}
+				else if(args[i].equals("-top"))
+				{
+					top = Integer.parseInt(args[++i]);
+				}
+				else if(args[i].equals("-countries"))
+				{
+					countryFile = args[++i];
+				}
+				else if(args[i].equals("-out"))
+				{
+					outFile = args[++i];
+				}
+				else
+				{
+					feeds.add(args[i]);
+				}
+			}
+		}
+		catch(RuntimeException e)
+		{
+			feeds.clear();
+		}
+		if(feeds.isEmpty() || top < 0 || !(format.equals("csv") || format.equals("json")))
+		{
+			System.err.println("usage: ReportTool [-format csv|json] [-top n] [-countries file] [-out file] feed...");
+			System.exit(2);
+		}
+
+		try
+		{
+			long start = System.nanoTime();
+			QuakeClassifier classifier = new QuakeClassifier(loadCountries(countryFile));
+			QuakeReport report = new QuakeReport(top);
+			for(String feed : feeds)
+			{
+				read(feed, classifier, report);
+			}
+			Writer out = new BufferedWriter(outFile == null
+					? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+					: new OutputStreamWriter(new FileOutputStream(outFile), StandardCharsets.UTF_8));
+			if(format.equals("json"))
+			{
+				report.writeJson(out);
+			}
+			else
+			{
+				report.writeCsv(out);
+			}
+			if(outFile != null)
+			{
+				out.close();
+			}
+			System.err.printf("%d quakes from %d feeds in %.2f s%n",
+					report.getQuakeCount(), feeds.size(), (System.nanoTime() - start) / 1e9);
+		}
+		catch(IOException e)
+		{
+			System.err.println("Report failed: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	//streams the quakes of a feed into the report, classified in batches
+	public static void read(String feed, QuakeClassifier classifier, QuakeReport report) throws IOException
+	{
+		QuakeSource reader = ParseFeed.openQuakes(feed);
+		try
+		{
+			List<PointFeature> batch = new ArrayList<PointFeature>(BATCH_SIZE);
+			while(reader.hasNext())
+			{
+				batch.add(reader.next());
+				if(batch.size() == BATCH_SIZE)
+				{
+					addBatch(batch, classifier, report);
+				}
+			}
+			addBatch(batch, classifier, report);
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	//country polygons from a GeoJSON file, GeoJSONReader only needs the PApplet to read files
+	public static CountryIndex loadCountries(String fileName) throws IOException
+	{
+		String json = new String(Files.readAllBytes(Paths.get(fileName)), StandardCharsets.UTF_8);
+		CountryIndex countries = new CountryIndex(MapUtils.createSimpleMarkers(GeoJSONReader.loadDataFromJSON(null, json)));
+		//pays for itself after a few hundred thousand quakes
+		countries.setLandMask(LandMask.build(countries, 20));
+		return countries;
+	}
+
+	private static void addBatch(List<PointFeature> batch, QuakeClassifier classifier, QuakeReport report)
+	{
+		classifier.classify(batch);
+		for(PointFeature quake : batch)
+		{
+			report.add(quake);
+		}
+		batch.clear();
+	}
+}
@@ -0,0 +1,447 @@
+package spatial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.AbstractShapeMarker;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.MultiMarker;
+
+/*
+ * Lookup index answering "which country contains this location".
+ *
+ * Every polygon part of every country marker gets a bounding box and the
+ * boxes are packed into a Sort-Tile-Recursive (STR) tree once at startup.
+ * A query only runs the exact point-in-polygon test on parts whose box
+ * contains the point, instead of on every country in the list.
+ *
+ * The exact test is the same crossing test as
+ * AbstractShapeMarker.isInsideByLocation, run on the edges of one slab of
+ * the part (see SlabPolygon), and when parts overlap the country that
+ * comes first in the original list wins, so the result is identical to a
+ * linear scan over the country markers.
+ *
+ * The polygons are only used for these tests and never drawn, so they can
+ * be simplified when the index is built (see PolygonSimplifier). A point
+ * further than the tolerance from every border gets the same answer; the
+ * ones closer to a coast may not.
+ *
+ * With a LandMask set, most lookups are answered from the mask and only
+ * points in cells a border passes through take the exact test.
+ */
+public class CountryIndex {
+
+	//number of children per tree node
+	private static final int NODE_CAPACITY = 8;
+
+	//country names, indexed by position in the original list
+	private final String[] names;
+
+	//polygon parts, coordinates stored as x = lat, y = lon like Location
+	private final float[][] partLats;
+	private final float[][] partLons;
+	private final int[] partCountry;
+	private final SlabPolygon[] partSlabs;
+
+	//bounding box of every part
+	private final float[] partMinLat;
+	private final float[] partMaxLat;
+	private final float[] partMinLon;
+	private final float[] partMaxLon;
+
+	//packed tree, level 0 holds part ids, upper levels hold node ids
+	private Node root;
+	private volatile LandMask mask;
+
+	public CountryIndex(List<Marker> countries)
+	{
+		this(countries, 0);
+	}
+
+	/*
+	 * Builds the index from simplified country polygons.
+	 *
+	 * @param tolerance - how far in degrees a simplified border may be
+	 * from the original one, 0 keeps the polygons as they are
+	 */
+	public CountryIndex(List<Marker> countries, float tolerance)
+	{
+		this(new Parts(countries, tolerance));
+	}
+
+	private CountryIndex(Parts parts)
+	{
+		this(parts.names, parts.lats, parts.lons, parts.owners);
+	}
+
+	/*
+	 * Builds the index from polygon parts that were already extracted,
+	 * e.g. read back from a GeoSnapshot. Part p belongs to country
+	 * partCountry[p] and has the vertices (partLats[p][i], partLons[p][i]).
+	 */
+	public CountryIndex(String[] names, float[][] partLats, float[][] partLons, int[] partCountry)
+	{
+		this.names = names;
+		this.partLats = partLats;
+		this.partLons = partLons;
+		this.partCountry = partCountry;
+
+		int numParts = partLats.length;
+		partMinLat = new float[numParts];
+		partMaxLat = new float[numParts];
+		partMinLon = new float[numParts];
+		partMaxLon = new float[numParts];
+		partSlabs = new SlabPolygon[numParts];
+
+		for(int p = 0; p < numParts; p++)
+		{
+			partSlabs[p] = new SlabPolygon(partLats[p], partLons[p]);
+			partMinLat[p] = Float.POSITIVE_INFINITY;
+			partMaxLat[p] = Float.NEGATIVE_INFINITY;
+			partMinLon[p] = Float.POSITIVE_INFINITY;
+			partMaxLon[p] = Float.NEGATIVE_INFINITY;
+			for(int i = 0; i < partLats[p].length; i++)
+			{
+				partMinLat[p] = Math.min(partMinLat[p], partLats[p][i]);
+				partMaxLat[p] = Math.max(partMaxLat[p], partLats[p][i]);
+				partMinLon[p] = Math.min(partMinLon[p], partLons[p][i]);
+				partMaxLon[p] = Math.max(partMaxLon[p], partLons[p][i]);
+			}
+		}
+
+		buildTree();
+	}
+
+	//returns the name of the country containing the location
+	//or null if the location is not inside any country
+	public String findCountry(Location location)
+	{
+		return findCountry(location.x, location.y);
+	}
+
+	public String findCountry(float lat, float lon)
+	{
+		int country = findCountryIndex(lat, lon);
+		return country < 0 ? null : names[country];
+	}
+
+	//returns the position of the containing country in the list
+	//the index was built from, or -1
+	public int findCountryIndex(float lat, float lon)
+	{
+		if(root == null)
+		{
+			return -1;
+		}
+		LandMask mask = this.mask;
+		if(mask != null)
+		{
+			int country = mask.lookup(lat, lon);
+			if(country != LandMask.BORDER)
+			{
+				return country;
+			}
+		}
+		int best = search(root, lat, lon, Integer.MAX_VALUE);
+		return best == Integer.MAX_VALUE ? -1 : best;
+	}
+
+	/*
+	 * Answers lookups from the mask where it can. The mask has to be built
+	 * from this index (or the same parts), null goes back to exact tests.
+	 */
+	public void setLandMask(LandMask mask)
+	{
+		this.mask = mask;
+	}
+
+	public LandMask getLandMask()
+	{
+		return mask;
+	}
+
+	public int getCountryCount()
+	{
+		return names.length;
+	}
+
+	public int getPartCount()
+	{
+		return partLats.length;
+	}
+
+	public int getVertexCount()
+	{
+		int count = 0;
+		for(float[] lats : partLats)
+		{
+			count += lats.length;
+		}
+		return count;
+	}
+
+	//edges stored in the slabs of all parts, the memory the slabs cost
+	public int getSlabEntryCount()
+	{
+		int count = 0;
+		for(SlabPolygon slabs : partSlabs)
+		{
+			count += slabs.getEntryCount();
+		}
+		return count;
+	}
+
+	public String getCountryName(int country)
+	{
+		return names[country];
+	}
+
+	//vertices of a polygon part, do not modify
+	public float[] getPartLats(int part)
+	{
+		return partLats[part];
+	}
+
+	public float[] getPartLons(int part)
+	{
+		return partLons[part];
+	}
+
+	//position of the country owning a polygon part
+	public int getPartCountry(int part)
+	{
+		return partCountry[part];
+	}
+
+	//depth first search keeping the lowest country position found so far
+	private int search(Node node, float lat, float lon, int best)
+	{
+		for(int i = 0; i < node.size; i++)
+		{
+			if(lat < node.minLat[i] || lat > node.maxLat[i] || lon < node.minLon[i] || lon > node.maxLon[i])
+			{
+				continue;
+			}
+			if(node.children != null)
+			{
+				best = search(node.children[i], lat, lon, best);
+			}
+			else
+			{
+				int part = node.ids[i];
+				if(partCountry[part] < best && partSlabs[part].contains(lat, lon))
+				{
+					best = partCountry[part];
+				}
+			}
+		}
+		return best;
+	}
+
+	//Sort-Tile-Recursive bulk loading
+	private void buildTree()
+	{
+		int numParts = partLats.length;
+		if(numParts == 0)
+		{
+			return;
+		}
+
+		//leaf level entries are the parts themselves
+		float[] minLat = partMinLat.clone();
+		float[] maxLat = partMaxLat.clone();
+		float[] minLon = partMinLon.clone();
+		float[] maxLon = partMaxLon.clone();
+		Integer[] order = new Integer[numParts];
+		for(int i = 0; i < numParts; i++)
+		{
+			order[i] = i;
+		}
+
+		List<Node> level = packLevel(order, minLat, maxLat, minLon, maxLon, null);
+		while(level.size() > 1)
+		{
+			int n = level.size();
+			float[] nMinLat = new float[n];
+			float[] nMaxLat = new float[n];
+			float[] nMinLon = new float[n];
+			float[] nMaxLon = new float[n];
+			Integer[] nodeOrder = new Integer[n];
+			for(int i = 0; i < n; i++)
+			{
+				Node node = level.get(i);
+				nMinLat[i] = node.boundsMinLat();
+				nMaxLat[i] = node.boundsMaxLat();
+				nMinLon[i] = node.boundsMinLon();
+				nMaxLon[i] = node.boundsMaxLon();
+				nodeOrder[i] = i;
+			}
+			level = packLevel(nodeOrder, nMinLat, nMaxLat, nMinLon, nMaxLon, level);
+		}
+		root = level.get(0);
+	}
+
+	private List<Node> packLevel(Integer[] order, final float[] minLat, final float[] maxLat,
+			final float[] minLon, final float[] maxLon, List<Node> children)
+	{
+		int n = order.length;
+		int numNodes = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+		int numSlices = (int)Math.ceil(Math.sqrt(numNodes));
+		int sliceSize = numSlices * NODE_CAPACITY;
+
+		//sort by centre longitude, cut into vertical slices
+		//then sort every slice by centre latitude
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
+			{
+				return Float.compare(minLon[a] + maxLon[a], minLon[b] + maxLon[b]);
+			}
+		});
+		for(int start = 0; start < n; start += sliceSize)
+		{
+			Arrays.sort(order, start, Math.min(n, start + sliceSize), new Comparator<Integer>() {
+				public int compare(Integer a, Integer b)
+				{
+					return Float.compare(minLat[a] + maxLat[a], minLat[b] + maxLat[b]);
+				}
+			});
+		}
+
+		List<Node> nodes = new ArrayList<Node>();
+		for(int start = 0; start < n; start += NODE_CAPACITY)
+		{
+			int size = Math.min(NODE_CAPACITY, n - start);
+			Node node = new Node(size, children != null);
+			for(int i = 0; i < size; i++)
+			{
+				int id = order[start + i];
+				node.minLat[i] = minLat[id];
+				node.maxLat[i] = maxLat[id];
+				node.minLon[i] = minLon[id];
+				node.maxLon[i] = maxLon[id];
+				if(children != null)
+				{
+					node.children[i] = children.get(id);
+				}
+				else
+				{
+					node.ids[i] = id;
+				}
+			}
+			nodes.add(node);
+		}
+		return nodes;
+	}
+
+	//polygon parts of country markers, MultiMarkers contribute one part per marker
+	private static class Parts
+	{
+		final String[] names;
+		final float[][] lats;
+		final float[][] lons;
+		final int[] owners;
+
+		Parts(List<Marker> countries, float tolerance)
+		{
+			names = new String[countries.size()];
+			List<float[]> partLats = new ArrayList<float[]>();
+			List<float[]> partLons = new ArrayList<float[]>();
+			List<Integer> partOwners = new ArrayList<Integer>();
+
+			for(int c = 0; c < countries.size(); c++)
+			{
+				Marker country = countries.get(c);
+				names[c] = country.getStringProperty("name");
+
+				//some countries are represented by MultiMarker
+				List<Marker> parts = new ArrayList<Marker>();
+				if(country.getClass() == MultiMarker.class)
+				{
+					parts.addAll(((MultiMarker)country).getMarkers());
+				}
+				else
+				{
+					parts.add(country);
+				}
+
+				for(Marker part : parts)
+				{
+					List<Location> locations = ((AbstractShapeMarker)part).getLocations();
+					float[] partLat = new float[locations.size()];
+					float[] partLon = new float[locations.size()];
+					for(int i = 0; i < locations.size(); i++)
+					{
+						partLat[i] = locations.get(i).x;
+						partLon[i] = locations.get(i).y;
+					}
+					int[] kept = PolygonSimplifier.simplify(partLat, partLon, tolerance);
+					partLats.add(PolygonSimplifier.select(partLat, kept));
+					partLons.add(PolygonSimplifier.select(partLon, kept));
+					partOwners.add(c);
+				}
+			}
+
+			lats = partLats.toArray(new float[partLats.size()][]);
+			lons = partLons.toArray(new float[partLons.size()][]);
+			owners = new int[partOwners.size()];
+			for(int p = 0; p < owners.length; p++)
+			{
+				owners[p] = partOwners.get(p);
+			}
+		}
+	}
+
+	//a tree node stores the boxes of its entries inline
+	private static class Node
+	{
+		final int size;
+		final float[] minLat;
+		final float[] maxLat;
+		final float[] minLon;
+		final float[] maxLon;
+		final int[] ids;
+		final Node[] children;
+
+		Node(int size, boolean inner)
+		{
+			this.size = size;
+			minLat = new float[size];
+			maxLat = new float[size];
+			minLon = new float[size];
+			maxLon = new float[size];
+			ids = inner ? null : new int[size];
+			children = inner ? new Node[size] : null;
+		}
+
+		float boundsMinLat()
+		{
+			float v = Float.POSITIVE_INFINITY;
+			for(int i = 0; i < size; i++) v = Math.min(v, minLat[i]);
+			return v;
+		}
+
+		float boundsMaxLat()
+		{
+			float v = Float.NEGATIVE_INFINITY;
+			for(int i = 0; i < size; i++) v = Math.max(v, maxLat[i]);
+			return v;
+		}
+
+		float boundsMinLon()
+		{
+			float v = Float.POSITIVE_INFINITY;
+			for(int i = 0; i < size; i++) v = Math.min(v, minLon[i]);
+			return v;
+		}
+
+		float boundsMaxLon()
+		{
+			float v = Float.NEGATIVE_INFINITY;
+			for(int i = 0; i < size; i++) v = Math.max(v, maxLon[i]);
+			return v;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package spatial;
+
+import java.util.BitSet;
+
+/*
+ * Raster of the world answering "which country contains this location"
+ * with two array reads for every cell no border passes through.
+ *
+ * The world is cut into cells of 1 / cellsPerDegree degrees. A cell that
+ * any polygon edge touches is a border cell and the caller has to run the
+ * exact test; every other cell holds the answer the exact test gives for
+ * all points in it: the country position, or ocean. No edge runs between
+ * two neighbouring cells of a row that are not border cells, so each run
+ * of them in a row needs only one exact test when the mask is built.
+ *
+ * Cells are stored in blocks of one degree. Most blocks are open ocean or
+ * inland and keep a single code for all their cells; only blocks with
+ * more than one code keep a grid of cells.
+ */
+public class LandMask {
+
+	//answer for points the exact test has to decide
+	public static final int BORDER = -2;
+	public static final int OCEAN = -1;
+	//block code of blocks keeping a grid of cells
+	private static final short MIXED = -3;
+
+	//how far, in cells, an edge marks cells as border around it, so float
+	//rounding in the crossing test cannot give a point another answer
+	private static final double MARGIN = 0.01;
+
+	private final int cellsPerDegree;
+	//code of every one degree block, MIXED if it has a cell grid
+	private final short[] blockCodes;
+	//start of the cell grid of a MIXED block in cells, row by row
+	private final int[] blockCells;
+	private final short[] cells;
+
+	/*
+	 * A mask read back from its arrays, e.g. from a GeoSnapshot.
+	 * See getBlockCodes, getBlockCells and getCells.
+	 */
+	public LandMask(int cellsPerDegree, short[] blockCodes, int[] blockCells, short[] cells)
+	{
+		this.cellsPerDegree = cellsPerDegree;
+		this.blockCodes = blockCodes;
+		this.blockCells = blockCells;
+		this.cells = cells;
+	}
+
+	/*
+	 * Rasterizes the parts of the index. 20 cells per degree (0.05 degree
+	 * cells) leaves about one in twenty of evenly spread points to the
+	 * exact test.
+	 */
+	public static LandMask build(CountryIndex countries, int cellsPerDegree)
+	{
+		int k = cellsPerDegree;
+		int rows = 180 * k;
+		int columns = 360 * k;
+		BitSet border = new BitSet(rows * columns);
+		for(int p = 0; p < countries.getPartCount(); p++)
+		{
+			float[] lats = countries.getPartLats(p);
+			float[] lons = countries.getPartLons(p);
+			for(int i = 0, j = lats.length - 1; i < lats.length; j = i++)
+			{
+				markEdge(border, k, (lons[j] + 180.0) * k, (lats[j] + 90.0) * k, (lons[i] + 180.0) * k, (lats[i] + 90.0) * k);
+			}
+		}
+
+		short[] blockCodes = new short[180 * 360];
+		int[] blockCells = new int[180 * 360];
+		short[] cells = new short[0];
+		int used = 0;
+		//the codes of one row of blocks
+		short[] band = new short[k * columns];
+		for(int blockRow = 0; blockRow < 180; blockRow++)
+		{
+			for(int y = 0; y < k; y++)
+			{
+				int row = blockRow * k + y;
+				double lat = (row + 0.5) / k - 90;
+				short code = BORDER;
+				for(int column = 0; column < columns; column++)
+				{
+					if(border.get(row * columns + column))
+					{
+						code = BORDER;
+					}
+					else if(code == BORDER)
+					{
+						//the first cell of a run, the rest of the run has its answer
+						code = (short)countries.findCountryIndex((float)lat, (float)((column + 0.5) / k - 180));
+					}
+					band[y * columns + column] = code;
+				}
+			}
+
+			for(int blockColumn = 0; blockColumn < 360; blockColumn++)
+			{
+				int block = blockRow * 360 + blockColumn;
+				short first = band[blockColumn * k];
+				boolean uniform = true;
+				for(int y = 0; y < k && uniform; y++)
+				{
+					for(int x = 0; x < k; x++)
+					{
+						if(band[y * columns + blockColumn * k + x] != first)
+						{
+							uniform = false;
+							break;
+						}
+					}
+				}
+				if(uniform)
+				{
+					blockCodes[block] = first;
+					continue;
+				}
+				if(used + k * k > cells.length)
+				{
+					short[] grown = new short[Math.max(cells.length * 2, used + k * k)];
+					System.arraycopy(cells, 0, grown, 0, used);
+					cells = grown;
+				}
+				blockCodes[block] = MIXED;
+				blockCells[block] = used;
+				for(int y = 0; y < k; y++)
+				{
+					System.arraycopy(band, y * columns + blockColumn * k, cells, used + y * k, k);
+				}
+				used += k * k;
+			}
+		}
+		short[] trimmed = new short[used];
+		System.arraycopy(cells, 0, trimmed, 0, used);
+		return new LandMask(k, blockCodes, blockCells, trimmed);
+	}
+
+	/*
+	 * The position of the country containing the location, OCEAN, or
+	 * BORDER if the location is in a border cell (or off the map) and only
+	 * the exact test can tell.
+	 */
+	public int lookup(float lat, float lon)
+	{
+		double y = (lat + 90.0) * cellsPerDegree;
+		double x = (lon + 180.0) * cellsPerDegree;
+		//also false for NaN
+		if(!(y >= 0 && y < 180 * cellsPerDegree && x >= 0 && x < 360 * cellsPerDegree))
+		{
+			return BORDER;
+		}
+		int row = (int)y;
+		int column = (int)x;
+		int block = row / cellsPerDegree * 360 + column / cellsPerDegree;
+		short code = blockCodes[block];
+		if(code == MIXED)
+		{
+			code = cells[blockCells[block] + row % cellsPerDegree * cellsPerDegree + column % cellsPerDegree];
+		}
+		return code;
+	}
+
+	public int getCellsPerDegree()
+	{
+		return cellsPerDegree;
+	}
+
+	//do not modify
+	public short[] getBlockCodes()
+	{
+		return blockCodes;
+	}
+
+	public int[] getBlockCells()
+	{
+		return blockCells;
+	}
+
+	public short[] getCells()
+	{
+		return cells;
+	}
+
+	public long getSizeInBytes()
+	{
+		return 2L * blockCodes.length + 4L * blockCells.length + 2L * cells.length;
+	}
+
+	//share of the cells whose points go to the exact test
+	public double getBorderShare()
+	{
+		long borderCells = 0;
+		int blockSize = cellsPerDegree * cellsPerDegree;
+		for(short code : blockCodes)
+		{
+			if(code == BORDER)
+			{
+				borderCells += blockSize;
+			}
+		}
+		for(short code : cells)
+		{
+			if(code == BORDER)
+			{
+				borderCells++;
+			}
+		}
+		return (double)borderCells / blockCodes.length / blockSize;
+	}
+
+	/*
+	 * Marks the cells the edge from (x1, y1) to (x2, y2) passes within
+	 * MARGIN of, in cell units with x along the longitude. Every column
+	 * the edge crosses gets the rows of the piece of the edge inside it.
+	 */
+	private static void markEdge(BitSet border, int k, double x1, double y1, double x2, double y2)
+	{
+		int rows = 180 * k;
+		int columns = 360 * k;
+		int firstColumn = Math.max(0, (int)Math.floor(Math.min(x1, x2) - MARGIN));
+		int lastColumn = Math.min(columns - 1, (int)Math.floor(Math.max(x1, x2) + MARGIN));
+		for(int column = firstColumn; column <= lastColumn; column++)
+		{
+			double minY = Math.min(y1, y2);
+			double maxY = Math.max(y1, y2);
+			if(x1 != x2)
+			{
+				double t1 = (column - MARGIN - x1) / (x2 - x1);
+				double t2 = (column + 1 + MARGIN - x1) / (x2 - x1);
+				double from = Math.max(0, Math.min(t1, t2));
+				double to = Math.min(1, Math.max(t1, t2));
+				double ya = y1 + from * (y2 - y1);
+				double yb = y1 + to * (y2 - y1);
+				minY = Math.min(ya, yb);
+				maxY = Math.max(ya, yb);
+			}
+			int firstRow = Math.max(0, (int)Math.floor(minY - MARGIN));
+			int lastRow = Math.min(rows - 1, (int)Math.floor(maxY + MARGIN));
+			for(int row = firstRow; row <= lastRow; row++)
+			{
+				border.set(row * columns + column);
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package spatial;
+
+import java.util.Arrays;
+
+/*
+ * Douglas-Peucker simplification of polygon rings.
+ *
+ * A run of vertices is replaced by the segment between its ends when no
+ * vertex of the run is further than the tolerance from that segment;
+ * otherwise the run is split at the furthest vertex and both halves are
+ * tried again. Distances are measured in degrees on the plain lat/lon
+ * plane, the same plane the crossing test of CountryIndex works in, so
+ * a point further than the tolerance from a border keeps its answer.
+ *
+ * Rings are cut at their first vertex and at the vertex furthest from it,
+ * so both ends of a closed ring survive whether or not the last vertex
+ * repeats the first.
+ */
+public class PolygonSimplifier {
+
+	private PolygonSimplifier()
+	{
+	}
+
+	/*
+	 * Positions of the vertices to keep, in order. A ring that would
+	 * lose its area (fewer than three vertices, or four when it repeats its
+	 * first vertex) keeps all of them, small islands are cheap anyway.
+	 *
+	 * @param tolerance - in degrees, 0 or less keeps every vertex
+	 */
+	public static int[] simplify(float[] xs, float[] ys, float tolerance)
+	{
+		int n = xs.length;
+		int[] all = new int[n];
+		for(int i = 0; i < n; i++)
+		{
+			all[i] = i;
+		}
+		if(tolerance <= 0 || n <= 4)
+		{
+			return all;
+		}
+
+		int far = 0;
+		double farthest = -1;
+		for(int i = 1; i < n; i++)
+		{
+			double dx = xs[i] - xs[0];
+			double dy = ys[i] - ys[0];
+			if(dx * dx + dy * dy > farthest)
+			{
+				farthest = dx * dx + dy * dy;
+				far = i;
+			}
+		}
+
+		boolean[] keep = new boolean[n];
+		keep[0] = true;
+		keep[far] = true;
+		keep[n - 1] = true;
+		double limit = (double)tolerance * tolerance;
+		//runs still to check as (from, to) pairs, instead of recursion
+		int[] stack = new int[2 * n];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = far;
+		stack[top++] = far;
+		stack[top++] = n - 1;
+		while(top > 0)
+		{
+			int to = stack[--top];
+			int from = stack[--top];
+			int split = -1;
+			double worst = limit;
+			for(int i = from + 1; i < to; i++)
+			{
+				double distance = squaredDistance(xs[i], ys[i], xs[from], ys[from], xs[to], ys[to]);
+				if(distance > worst)
+				{
+					worst = distance;
+					split = i;
+				}
+			}
+			if(split >= 0)
+			{
+				keep[split] = true;
+				stack[top++] = from;
+				stack[top++] = split;
+				stack[top++] = split;
+				stack[top++] = to;
+			}
+		}
+
+		int[] kept = new int[n];
+		int count = 0;
+		for(int i = 0; i < n; i++)
+		{
+			if(keep[i])
+			{
+				kept[count++] = i;
+			}
+		}
+		boolean closed = xs[0] == xs[n - 1] && ys[0] == ys[n - 1];
+		if(count < (closed ? 4 : 3))
+		{
+			return all;
+		}
+		return Arrays.copyOf(kept, count);
+	}
+
+	//copies the kept vertices of one coordinate
+	public static float[] select(float[] values, int[] kept)
+	{
+		float[] selected = new float[kept.length];
+		for(int i = 0; i < kept.length; i++)
+		{
+			selected[i] = values[kept[i]];
+		}
+		return selected;
+	}
+
+	//squared distance of (x, y) from the segment (x1, y1)-(x2, y2)
+	private static double squaredDistance(double x, double y, double x1, double y1, double x2, double y2)
+	{
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double length = dx * dx + dy * dy;
+		double t = length == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / length;
+		t = Math.max(0, Math.min(1, t));
+		double ex = x - (x1 + t * dx);
+		double ey = y - (y1 + t * dy);
+		return ex * ex + ey * ey;
+	}
+}
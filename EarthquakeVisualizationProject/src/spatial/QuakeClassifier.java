@@ -0,0 +1,102 @@
+package spatial;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/*
+ * Sorts quakes into land and ocean quakes on all cores.
+ *
+ * Every quake is looked up in the CountryIndex independently and land
+ * quakes get the name of their country as the "country" property, so the
+ * list is split into ranges and the ranges are classified as fork-join
+ * tasks. The list itself is not reordered and each task only writes the
+ * features in its own range, so the result is the same as a sequential
+ * loop in any thread count.
+ */
+public class QuakeClassifier {
+
+	//quakes per task, small enough to balance, big enough to pay for the fork
+	private static final int BATCH_SIZE = 512;
+
+	private static final LatencyHistogram CLASSIFY_TIME = Metrics.histogram("quakes.classify");
+
+	private final CountryIndex countries;
+	private final ForkJoinPool pool;
+
+	//classifies on the common fork-join pool
+	public QuakeClassifier(CountryIndex countries)
+	{
+		this(countries, ForkJoinPool.commonPool());
+	}
+
+	public QuakeClassifier(CountryIndex countries, ForkJoinPool pool)
+	{
+		this.countries = countries;
+		this.pool = pool;
+	}
+
+	/*
+	 * Adds the "country" property to every quake that is inside a country.
+	 * Ocean quakes are left unchanged. Blocks until all quakes are done.
+	 */
+	public void classify(List<PointFeature> quakes)
+	{
+		long start = CLASSIFY_TIME.start();
+		if(quakes.size() <= BATCH_SIZE)
+		{
+			classify(quakes, 0, quakes.size());
+		}
+		else
+		{
+			pool.invoke(new ClassifyTask(quakes, 0, quakes.size()));
+		}
+		CLASSIFY_TIME.stop(start);
+	}
+
+	//the sequential step, also used by the tasks for their range
+	private void classify(List<PointFeature> quakes, int from, int to)
+	{
+		for(int i = from; i < to; i++)
+		{
+			PointFeature quake = quakes.get(i);
+			String country = countries.findCountry(quake.getLocation());
+			if(country != null)
+			{
+				quake.addProperty("country", country);
+			}
+		}
+	}
+
+	private class ClassifyTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final List<PointFeature> quakes;
+		private final int from;
+		private final int to;
+
+		ClassifyTask(List<PointFeature> quakes, int from, int to)
+		{
+			this.quakes = quakes;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute()
+		{
+			if(to - from <= BATCH_SIZE)
+			{
+				classify(quakes, from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new ClassifyTask(quakes, from, mid), new ClassifyTask(quakes, mid, to));
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package spatial;
+
+import java.util.Arrays;
+
+/*
+ * A polygon ring cut into slabs for point-in-polygon tests.
+ *
+ * The distinct longitudes of the vertices cut the ring into slabs, and
+ * every slab lists the edges spanning it. A test finds the slab of the
+ * point by binary search and only runs the crossing test on those edges,
+ * so it costs a logarithm plus the few edges a vertical line through the
+ * point meets, instead of a walk over every vertex.
+ *
+ * An edge spans a slab exactly when the crossing test would look at it
+ * for a point in that slab (it takes the lower end of an edge but not the
+ * upper one), and the crossing is worked out from the same vertices in
+ * the same float arithmetic, so the answer is the same as the full walk.
+ */
+class SlabPolygon {
+
+	private final float[] xs;
+	private final float[] ys;
+	//distinct vertex longitudes, ascending; slab s is [bounds[s], bounds[s + 1])
+	private final float[] bounds;
+	//edges of slab s are edges[slabStart[s]] to edges[slabStart[s + 1] - 1],
+	//edge i runs from vertex i to vertex i - 1 like the loop of the crossing test
+	private final int[] slabStart;
+	private final int[] edges;
+
+	SlabPolygon(float[] xs, float[] ys)
+	{
+		this.xs = xs;
+		this.ys = ys;
+		int n = ys.length;
+
+		float[] sorted = ys.clone();
+		Arrays.sort(sorted);
+		int distinct = 0;
+		for(int i = 0; i < n; i++)
+		{
+			if(distinct == 0 || sorted[i] != sorted[distinct - 1])
+			{
+				sorted[distinct++] = sorted[i];
+			}
+		}
+		bounds = Arrays.copyOf(sorted, distinct);
+		int numSlabs = Math.max(0, distinct - 1);
+
+		//count the edges per slab, then fill them in
+		slabStart = new int[numSlabs + 1];
+		int[] first = new int[n];
+		int[] last = new int[n];
+		for(int i = 0; i < n; i++)
+		{
+			int j = i == 0 ? n - 1 : i - 1;
+			first[i] = Arrays.binarySearch(bounds, Math.min(ys[i], ys[j]));
+			last[i] = Arrays.binarySearch(bounds, Math.max(ys[i], ys[j]));
+			for(int s = first[i]; s < last[i]; s++)
+			{
+				slabStart[s + 1]++;
+			}
+		}
+		for(int s = 0; s < numSlabs; s++)
+		{
+			slabStart[s + 1] += slabStart[s];
+		}
+		edges = new int[slabStart[numSlabs]];
+		int[] fill = Arrays.copyOf(slabStart, numSlabs);
+		for(int i = 0; i < n; i++)
+		{
+			for(int s = first[i]; s < last[i]; s++)
+			{
+				edges[fill[s]++] = i;
+			}
+		}
+	}
+
+	boolean contains(float x, float y)
+	{
+		//the last bound only closes the last slab
+		if(bounds.length < 2 || y < bounds[0] || y >= bounds[bounds.length - 1])
+		{
+			return false;
+		}
+		int low = 0;
+		int high = bounds.length - 2;
+		while(low < high)
+		{
+			int middle = (low + high + 1) >>> 1;
+			if(bounds[middle] <= y)
+			{
+				low = middle;
+			}
+			else
+			{
+				high = middle - 1;
+			}
+		}
+
+		boolean inside = false;
+		for(int e = slabStart[low]; e < slabStart[low + 1]; e++)
+		{
+			int i = edges[e];
+			int j = i == 0 ? xs.length - 1 : i - 1;
+			if(x < (xs[j] - xs[i]) * (y - ys[i]) / (ys[j] - ys[i]) + xs[i])
+			{
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+
+	//slab entries, one per edge and slab it spans
+	int getEntryCount()
+	{
+		return edges.length;
+	}
+}
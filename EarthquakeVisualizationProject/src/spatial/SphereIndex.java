@@ -0,0 +1,245 @@
+package spatial;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.utils.GeoUtils;
+
+/*
+ * Range index answering "which markers are within R km of this location".
+ *
+ * Marker locations are turned into unit vectors on the sphere and kept in
+ * a static 3D k-d tree. A great-circle radius becomes a straight-line
+ * (chord) radius in 3D, so the tree can prune whole subtrees with simple
+ * coordinate comparisons, with no special cases at the poles or the
+ * dateline.
+ *
+ * The index returns candidates: every marker within the radius plus,
+ * at most, ones a rounding error outside it. Callers apply their exact
+ * distance test (Marker.getDistanceTo) to the candidates.
+ */
+public class SphereIndex<T extends Marker> {
+
+	//earth radius used by GeoUtils.getDistance
+	private static final double EARTH_RADIUS_KM = 6371.01;
+
+	//widens the chord so float rounding never drops a match
+	private static final double SLACK = 1e-6;
+
+	private final List<T> markers;
+
+	//tree order: node i holds marker ids[i] at (x[i], y[i], z[i])
+	private final int[] ids;
+	private final double[] x;
+	private final double[] y;
+	private final double[] z;
+	private final byte[] axis;
+
+	public SphereIndex(List<? extends T> markers)
+	{
+		this.markers = new ArrayList<T>(markers);
+		int n = markers.size();
+		ids = new int[n];
+		x = new double[n];
+		y = new double[n];
+		z = new double[n];
+		axis = new byte[n];
+
+		for(int i = 0; i < n; i++)
+		{
+			Location location = markers.get(i).getLocation();
+			double lat = Math.toRadians(location.getLat());
+			double lon = Math.toRadians(location.getLon());
+			ids[i] = i;
+			x[i] = Math.cos(lat) * Math.cos(lon);
+			y[i] = Math.cos(lat) * Math.sin(lon);
+			z[i] = Math.sin(lat);
+		}
+		build(0, n);
+	}
+
+	public int size()
+	{
+		return markers.size();
+	}
+
+	/*
+	 * Returns the markers that can be within radiusKm of the center,
+	 * in no particular order.
+	 */
+	public List<T> candidates(Location center, double radiusKm)
+	{
+		List<T> result = new ArrayList<T>();
+		candidates(center, radiusKm, result);
+		return result;
+	}
+
+	public void candidates(Location center, double radiusKm, List<T> result)
+	{
+		if(markers.isEmpty() || radiusKm < 0)
+		{
+			return;
+		}
+		double lat = Math.toRadians(center.getLat());
+		double lon = Math.toRadians(center.getLon());
+		double cx = Math.cos(lat) * Math.cos(lon);
+		double cy = Math.cos(lat) * Math.sin(lon);
+		double cz = Math.sin(lat);
+
+		//chord length of the great-circle arc, capped at the diameter
+		double angle = Math.min(Math.PI, radiusKm / EARTH_RADIUS_KM);
+		double chord = 2 * Math.sin(angle / 2) + SLACK;
+		search(0, markers.size(), cx, cy, cz, chord, chord * chord, result);
+	}
+
+	/*
+	 * Returns the markers within radiusKm of the center
+	 * using the same distance as Marker.getDistanceTo.
+	 */
+	public List<T> within(Location center, double radiusKm)
+	{
+		List<T> result = new ArrayList<T>();
+		for(T marker : candidates(center, radiusKm))
+		{
+			if(GeoUtils.getDistance(marker.getLocation(), center) <= radiusKm)
+			{
+				result.add(marker);
+			}
+		}
+		return result;
+	}
+
+	private void search(int lo, int hi, double cx, double cy, double cz,
+			double chord, double chordSq, List<T> result)
+	{
+		if(lo >= hi)
+		{
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		double dx = x[mid] - cx;
+		double dy = y[mid] - cy;
+		double dz = z[mid] - cz;
+		if(dx * dx + dy * dy + dz * dz <= chordSq)
+		{
+			result.add(markers.get(ids[mid]));
+		}
+
+		double diff;
+		if(axis[mid] == 0)
+		{
+			diff = cx - x[mid];
+		}
+		else if(axis[mid] == 1)
+		{
+			diff = cy - y[mid];
+		}
+		else
+		{
+			diff = cz - z[mid];
+		}
+
+		//left half has coordinates <= the split, right half >= it
+		if(diff - chord <= 0)
+		{
+			search(lo, mid, cx, cy, cz, chord, chordSq, result);
+		}
+		if(diff + chord >= 0)
+		{
+			search(mid + 1, hi, cx, cy, cz, chord, chordSq, result);
+		}
+	}
+
+	//splits on the axis with the widest spread at every level
+	private void build(int lo, int hi)
+	{
+		if(hi - lo <= 0)
+		{
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		byte splitAxis = widestAxis(lo, hi);
+		select(lo, hi - 1, mid, coordinates(splitAxis));
+		axis[mid] = splitAxis;
+		build(lo, mid);
+		build(mid + 1, hi);
+	}
+
+	private byte widestAxis(int lo, int hi)
+	{
+		double[][] all = { x, y, z };
+		byte best = 0;
+		double bestSpread = -1;
+		for(byte a = 0; a < 3; a++)
+		{
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for(int i = lo; i < hi; i++)
+			{
+				min = Math.min(min, all[a][i]);
+				max = Math.max(max, all[a][i]);
+			}
+			if(max - min > bestSpread)
+			{
+				bestSpread = max - min;
+				best = a;
+			}
+		}
+		return best;
+	}
+
+	private double[] coordinates(byte a)
+	{
+		return a == 0 ? x : (a == 1 ? y : z);
+	}
+
+	//quickselect so that position k holds the median along the given coordinate
+	private void select(int left, int right, int k, double[] key)
+	{
+		while(left < right)
+		{
+			double pivot = key[(left + right) >>> 1];
+			int i = left;
+			int j = right;
+			while(i <= j)
+			{
+				while(key[i] < pivot)
+				{
+					i++;
+				}
+				while(key[j] > pivot)
+				{
+					j--;
+				}
+				if(i <= j)
+				{
+					swap(i, j);
+					i++;
+					j--;
+				}
+			}
+			if(k <= j)
+			{
+				right = j;
+			}
+			else if(k >= i)
+			{
+				left = i;
+			}
+			else
+			{
+				return;
+			}
+		}
+	}
+
+	private void swap(int i, int j)
+	{
+		int id = ids[i]; ids[i] = ids[j]; ids[j] = id;
+		double t = x[i]; x[i] = x[j]; x[j] = t;
+		t = y[i]; y[i] = y[j]; y[j] = t;
+		t = z[i]; z[i] = z[j]; z[j] = t;
+	}
+}
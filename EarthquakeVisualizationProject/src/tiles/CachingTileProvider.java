@@ -0,0 +1,464 @@
+package tiles;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import processing.core.PConstants;
+import processing.core.PImage;
+
+import de.fhpotsdam.unfolding.core.Coordinate;
+import de.fhpotsdam.unfolding.providers.AbstractMapProvider;
+
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+/*
+ * A map provider in front of a tile server provider such as
+ * Microsoft.HybridProvider, which keeps every tile it loads.
+ *
+ * Unfolding's tile loaders ask getTile first and only download the tile
+ * URLs themselves when it returns null, so getTile does the loading:
+ *  1. an LRU memory tier of the encoded tiles, bounded in bytes,
+ *  2. the MBTilesStore on disk, which survives restarts,
+ *  3. the tile server, with the tile stored in both tiers.
+ * A tile that cannot be downloaded is left to the loader, so the map
+ * shows what the disk holds when offline and only unseen tiles stay blank.
+ *
+ * Every tile the map asks for queues its eight neighbours and its four
+ * tiles of the next zoom level on a small background pool, so the tiles
+ * a pan or zoom needs next are usually on disk before they are asked for.
+ * The queue is worked newest first, neighbours before the next zoom
+ * level, and when full drops its oldest entries, so after a pan the pool
+ * works on the tiles around the current view, not the old one.
+ *
+ * Tiles are counted by where they came from, for the hit rate, and the
+ * time getTile takes is recorded as tiles.load and the downloads as
+ * tiles.download in Metrics.
+ */
+public class CachingTileProvider extends AbstractMapProvider {
+
+	private static final LatencyHistogram LOAD_TIME = Metrics.histogram("tiles.load");
+	private static final LatencyHistogram DOWNLOAD_TIME = Metrics.histogram("tiles.download");
+
+	private static final int TIMEOUT_MILLIS = 10000;
+	private static final int PREFETCH_THREADS = 2;
+	private static final int PREFETCH_QUEUE = 256;
+	//deepest zoom level children are prefetched for
+	private static final int MAX_PREFETCH_ZOOM = 18;
+
+	private final AbstractMapProvider provider;
+	private final MBTilesStore store;
+
+	//encoded tiles by key, in access order
+	private final LinkedHashMap<Long, byte[]> memory = new LinkedHashMap<Long, byte[]>(256, 0.75f, true);
+	private final long memoryLimit;
+	private long memoryBytes = 0;
+
+	private final ThreadPoolExecutor prefetcher;
+	//tiles queued or being prefetched
+	private final Set<Long> prefetching = ConcurrentHashMap.newKeySet();
+	private volatile boolean prefetchEnabled = true;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong downloads = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final AtomicLong prefetched = new AtomicLong();
+
+	/*
+	 * @param provider - gives the tile URLs, its projection and tile size are used
+	 * @param store - the disk tier
+	 * @param memoryLimit - bytes of encoded tiles kept in memory
+	 */
+	public CachingTileProvider(AbstractMapProvider provider, MBTilesStore store, long memoryLimit)
+	{
+		super(provider.projection);
+		this.provider = provider;
+		this.store = store;
+		this.memoryLimit = memoryLimit;
+		prefetcher = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS, 0, TimeUnit.SECONDS,
+				new NewestFirstQueue(PREFETCH_QUEUE), new ThreadFactory() {
+					public Thread newThread(Runnable r)
+					{
+						Thread thread = new Thread(r, "tile-prefetch");
+						thread.setDaemon(true);
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				}, new RejectedExecutionHandler() {
+					//drops the oldest queued tile, which never runs and so cannot clear its flag itself
+					public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+					{
+						if(!executor.isShutdown())
+						{
+							Runnable dropped = ((NewestFirstQueue)executor.getQueue()).pollLast();
+							if(dropped instanceof Prefetch)
+							{
+								prefetching.remove(((Prefetch)dropped).key);
+							}
+							executor.execute(r);
+						}
+					}
+				});
+	}
+
+	public PImage getTile(Coordinate coordinate)
+	{
+		long start = LOAD_TIME.start();
+		int zoom = (int)coordinate.zoom;
+		int column = (int)coordinate.column;
+		int row = (int)coordinate.row;
+		int size = 1 << zoom;
+		column = (column % size + size) % size;
+		if(provider.getTileUrls(coordinate) == null)
+		{
+			//not a tile server, e.g. a provider reading its own files
+			return provider.getTile(coordinate);
+		}
+		byte[] data = load(zoom, column, row, true);
+		if(prefetchEnabled)
+		{
+			prefetchAround(zoom, column, row);
+		}
+		PImage image = data == null ? null : decode(data);
+		LOAD_TIME.stop(start);
+		return image;
+	}
+
+	public String[] getTileUrls(Coordinate coordinate)
+	{
+		return provider.getTileUrls(coordinate);
+	}
+
+	public int tileWidth()
+	{
+		return provider.tileWidth();
+	}
+
+	public int tileHeight()
+	{
+		return provider.tileHeight();
+	}
+
+	public Coordinate sourceCoordinate(Coordinate coordinate)
+	{
+		return provider.sourceCoordinate(coordinate);
+	}
+
+	//on by default, off only loads the tiles the map asks for
+	public void setPrefetchEnabled(boolean enabled)
+	{
+		prefetchEnabled = enabled;
+	}
+
+	//tiles the map asked for that were in memory or on disk, of all it asked for
+	public double getHitRate()
+	{
+		long hits = memoryHits.get() + diskHits.get();
+		long total = hits + downloads.get() + failures.get();
+		return total == 0 ? 0 : (double)hits / total;
+	}
+
+	public long getMemoryHits()
+	{
+		return memoryHits.get();
+	}
+
+	public long getDiskHits()
+	{
+		return diskHits.get();
+	}
+
+	//tiles the map asked for that had to be downloaded
+	public long getDownloads()
+	{
+		return downloads.get();
+	}
+
+	//tiles the map asked for that were not cached and could not be downloaded
+	public long getFailures()
+	{
+		return failures.get();
+	}
+
+	//tiles downloaded ahead of the map
+	public long getPrefetched()
+	{
+		return prefetched.get();
+	}
+
+	//tiles queued for prefetching
+	public int getPrefetchBacklog()
+	{
+		return prefetcher.getQueue().size() + prefetcher.getActiveCount();
+	}
+
+	//stops prefetching and closes the store
+	public void close()
+	{
+		prefetcher.shutdownNow();
+		try
+		{
+			prefetcher.awaitTermination(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		store.close();
+	}
+
+	/*
+	 * The encoded tile from the first tier that has it, downloaded and
+	 * stored if none has. Null if it is not cached and cannot be
+	 * downloaded. Only requests of the map are counted.
+	 */
+	private byte[] load(int zoom, int column, int row, boolean counted)
+	{
+		long key = keyOf(zoom, column, row);
+		byte[] data = fromMemory(key);
+		if(data != null)
+		{
+			count(counted, memoryHits);
+			return data;
+		}
+		try
+		{
+			data = store.get(zoom, column, row);
+		}
+		catch(SQLException e)
+		{
+			System.err.println("Could not read tile " + zoom + "/" + column + "/" + row + ": " + e);
+		}
+		if(data != null)
+		{
+			count(counted, diskHits);
+			toMemory(key, data);
+			return data;
+		}
+		String[] urls = provider.getTileUrls(new Coordinate(row, column, zoom));
+		//providers that layer several images are left to the tile loader
+		if(urls == null || urls.length != 1)
+		{
+			return null;
+		}
+		long start = DOWNLOAD_TIME.start();
+		try
+		{
+			data = download(urls[0]);
+		}
+		catch(IOException e)
+		{
+			count(counted, failures);
+			return null;
+		}
+		DOWNLOAD_TIME.stop(start);
+		(counted ? downloads : prefetched).incrementAndGet();
+		toMemory(key, data);
+		try
+		{
+			store.put(zoom, column, row, data);
+		}
+		catch(SQLException e)
+		{
+			System.err.println("Could not store tile " + zoom + "/" + column + "/" + row + ": " + e);
+		}
+		return data;
+	}
+
+	private static void count(boolean counted, AtomicLong counter)
+	{
+		if(counted)
+		{
+			counter.incrementAndGet();
+		}
+	}
+
+	private synchronized byte[] fromMemory(long key)
+	{
+		return memory.get(key);
+	}
+
+	//adds a tile and drops the least recently used ones over the limit
+	private synchronized void toMemory(long key, byte[] data)
+	{
+		byte[] old = memory.put(key, data);
+		memoryBytes += data.length - (old == null ? 0 : old.length);
+		Iterator<Map.Entry<Long, byte[]>> eldest = memory.entrySet().iterator();
+		while(memoryBytes > memoryLimit && eldest.hasNext())
+		{
+			memoryBytes -= eldest.next().getValue().length;
+			eldest.remove();
+		}
+	}
+
+	//queued last so they run first, neighbours are needed by the smallest pan
+	private void prefetchAround(int zoom, int column, int row)
+	{
+		if(zoom < MAX_PREFETCH_ZOOM)
+		{
+			for(int i = 0; i < 4; i++)
+			{
+				prefetch(zoom + 1, column * 2 + (i & 1), row * 2 + (i >> 1));
+			}
+		}
+		for(int dy = -1; dy <= 1; dy++)
+		{
+			for(int dx = -1; dx <= 1; dx++)
+			{
+				if(dx != 0 || dy != 0)
+				{
+					prefetch(zoom, column + dx, row + dy);
+				}
+			}
+		}
+	}
+
+	private void prefetch(int zoom, int column, int row)
+	{
+		int size = 1 << zoom;
+		if(row < 0 || row >= size)
+		{
+			return;
+		}
+		//the world repeats east and west
+		column = (column % size + size) % size;
+		long key = keyOf(zoom, column, row);
+		if(fromMemory(key) != null || !prefetching.add(key))
+		{
+			return;
+		}
+		prefetcher.execute(new Prefetch(zoom, column, row, key));
+	}
+
+	//a bounded queue the pool takes the latest task from
+	private static class NewestFirstQueue extends LinkedBlockingDeque<Runnable>
+	{
+		private static final long serialVersionUID = 1L;
+
+		NewestFirstQueue(int capacity)
+		{
+			super(capacity);
+		}
+
+		public boolean offer(Runnable task)
+		{
+			return offerFirst(task);
+		}
+	}
+
+	private class Prefetch implements Runnable
+	{
+		final int zoom;
+		final int column;
+		final int row;
+		final long key;
+
+		Prefetch(int zoom, int column, int row, long key)
+		{
+			this.zoom = zoom;
+			this.column = column;
+			this.row = row;
+			this.key = key;
+		}
+
+		public void run()
+		{
+			try
+			{
+				//a tile on disk stays there until the map asks for it
+				if(!store.contains(zoom, column, row))
+				{
+					load(zoom, column, row, false);
+				}
+			}
+			catch(SQLException e)
+			{
+				System.err.println("Could not prefetch tile " + zoom + "/" + column + "/" + row + ": " + e);
+			}
+			finally
+			{
+				prefetching.remove(key);
+			}
+		}
+	}
+
+	private static byte[] download(String url) throws IOException
+	{
+		URLConnection connection = new URL(url).openConnection();
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+		if(connection instanceof HttpURLConnection)
+		{
+			int status = ((HttpURLConnection)connection).getResponseCode();
+			if(status != HttpURLConnection.HTTP_OK)
+			{
+				throw new IOException("HTTP " + status + " for " + url);
+			}
+		}
+		InputStream in = connection.getInputStream();
+		try
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream(32 * 1024);
+			byte[] buffer = new byte[16 * 1024];
+			for(int n = in.read(buffer); n >= 0; n = in.read(buffer))
+			{
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	//the tile as an image the map can draw, null if the bytes are not an image
+	private static PImage decode(byte[] data)
+	{
+		BufferedImage decoded;
+		try
+		{
+			decoded = ImageIO.read(new ByteArrayInputStream(data));
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+		if(decoded == null)
+		{
+			return null;
+		}
+		int width = decoded.getWidth();
+		int height = decoded.getHeight();
+		PImage image = new PImage(width, height, decoded.getColorModel().hasAlpha() ? PConstants.ARGB : PConstants.RGB);
+		decoded.getRGB(0, 0, width, height, image.pixels, 0, width);
+		return image;
+	}
+
+	//zoom levels up to 24 fit
+	private static long keyOf(int zoom, int column, int row)
+	{
+		return ((long)zoom << 48) | ((long)column << 24) | row;
+	}
+}
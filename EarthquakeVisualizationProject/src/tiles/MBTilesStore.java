@@ -0,0 +1,157 @@
+package tiles;
+
+import java.io.Closeable;
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/*
+ * Map tiles on disk in an MBTiles file, the SQLite layout most map tools
+ * read: a metadata table of name/value pairs and a tiles table keyed by
+ * zoom, column and row, with rows counted from the south like TMS. Tiles
+ * are stored as the image bytes the server sent.
+ *
+ * One connection is shared by all threads and every call is
+ * synchronized on the store. The database runs in WAL mode without a
+ * sync per insert, so storing a tile is far cheaper than loading it;
+ * a crash can lose the last tiles but not damage the file.
+ */
+public class MBTilesStore implements Closeable {
+
+	private final Connection connection;
+	private final PreparedStatement select;
+	private final PreparedStatement insert;
+	private final PreparedStatement exists;
+
+	/*
+	 * Opens the file, creating it with the MBTiles tables if needed.
+	 *
+	 * @param name - written into the metadata of a new file
+	 * @param format - image format of the tiles for the metadata, "jpg" or "png"
+	 */
+	public MBTilesStore(File file, String name, String format) throws SQLException
+	{
+		try
+		{
+			Class.forName("org.sqlite.JDBC");
+		}
+		catch(ClassNotFoundException e)
+		{
+			throw new SQLException("sqlite-jdbc is not on the class path", e);
+		}
+		File dir = file.getAbsoluteFile().getParentFile();
+		if(dir != null)
+		{
+			dir.mkdirs();
+		}
+		connection = DriverManager.getConnection("jdbc:sqlite:" + file.getPath());
+		Statement statement = connection.createStatement();
+		try
+		{
+			statement.execute("PRAGMA journal_mode=WAL");
+			statement.execute("PRAGMA synchronous=NORMAL");
+			statement.execute("CREATE TABLE IF NOT EXISTS metadata (name TEXT, value TEXT)");
+			statement.execute("CREATE TABLE IF NOT EXISTS tiles (zoom_level INTEGER, tile_column INTEGER,"
+					+ " tile_row INTEGER, tile_data BLOB)");
+			statement.execute("CREATE UNIQUE INDEX IF NOT EXISTS tile_index ON tiles (zoom_level, tile_column, tile_row)");
+			ResultSet metadata = statement.executeQuery("SELECT COUNT(*) FROM metadata");
+			boolean empty = metadata.next() && metadata.getInt(1) == 0;
+			metadata.close();
+			if(empty)
+			{
+				PreparedStatement put = connection.prepareStatement("INSERT INTO metadata VALUES (?, ?)");
+				String[][] values = { { "name", name }, { "type", "baselayer" }, { "version", "1" },
+						{ "description", "tiles cached by the earthquake map" }, { "format", format } };
+				for(String[] value : values)
+				{
+					put.setString(1, value[0]);
+					put.setString(2, value[1]);
+					put.executeUpdate();
+				}
+				put.close();
+			}
+		}
+		finally
+		{
+			statement.close();
+		}
+		select = connection.prepareStatement("SELECT tile_data FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?");
+		insert = connection.prepareStatement("INSERT OR REPLACE INTO tiles VALUES (?, ?, ?, ?)");
+		exists = connection.prepareStatement("SELECT 1 FROM tiles WHERE zoom_level = ? AND tile_column = ? AND tile_row = ?");
+	}
+
+	//the bytes of a tile in map coordinates (rows from the north), null if not stored
+	public synchronized byte[] get(int zoom, int column, int row) throws SQLException
+	{
+		bind(select, zoom, column, row);
+		ResultSet result = select.executeQuery();
+		try
+		{
+			return result.next() ? result.getBytes(1) : null;
+		}
+		finally
+		{
+			result.close();
+		}
+	}
+
+	public synchronized boolean contains(int zoom, int column, int row) throws SQLException
+	{
+		bind(exists, zoom, column, row);
+		ResultSet result = exists.executeQuery();
+		try
+		{
+			return result.next();
+		}
+		finally
+		{
+			result.close();
+		}
+	}
+
+	//stores or replaces a tile
+	public synchronized void put(int zoom, int column, int row, byte[] data) throws SQLException
+	{
+		bind(insert, zoom, column, row);
+		insert.setBytes(4, data);
+		insert.executeUpdate();
+	}
+
+	public synchronized int size() throws SQLException
+	{
+		Statement statement = connection.createStatement();
+		try
+		{
+			ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM tiles");
+			return result.next() ? result.getInt(1) : 0;
+		}
+		finally
+		{
+			statement.close();
+		}
+	}
+
+	public synchronized void close()
+	{
+		try
+		{
+			connection.close();
+		}
+		catch(SQLException e)
+		{
+			System.err.println("Could not close the tile cache: " + e);
+		}
+	}
+
+	//MBTiles counts rows from the south, the map from the north
+	private static void bind(PreparedStatement statement, int zoom, int column, int row) throws SQLException
+	{
+		statement.setInt(1, zoom);
+		statement.setInt(2, column);
+		statement.setInt(3, (1 << zoom) - 1 - row);
+	}
+}
@@ -0,0 +1,155 @@
+package catalog;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import benchmark.BenchmarkData;
+import earthquakeVisualization.CityMarker;
+import spatial.CountryIndex;
+import spatial.LandMask;
+
+/*
+ * A GeoSnapshot written from the JSON load reads back the same countries,
+ * cities and quakes, and a snapshot of other sources or a damaged file
+ * is not loaded.
+ */
+public class GeoSnapshotTest {
+
+	private static final long CHECKSUM = 12345;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static CountryIndex countries;
+	private static List<Marker> cities;
+	private static QuakeCatalog catalog;
+	//every other row, newest first, like markers that are not in row order
+	private static int[] rows;
+	private static String[] ids;
+
+	@BeforeClass
+	public static void loadFromJSON() throws Exception
+	{
+		countries = new CountryIndex(BenchmarkData.loadCountryMarkers());
+		countries.setLandMask(LandMask.build(countries, 20));
+		cities = new ArrayList<Marker>();
+		for(Feature city : BenchmarkData.loadFeatures(BenchmarkData.CITY_FILE))
+		{
+			cities.add(new CityMarker(city));
+		}
+		catalog = new QuakeCatalog();
+		Random random = new Random(3);
+		for(int i = 0; i < 1000; i++)
+		{
+			PointFeature quake = BenchmarkData.randomQuake(random, i);
+			quake.getProperties().remove("country");
+			String country = countries.findCountry(quake.getLocation());
+			if(country != null)
+			{
+				quake.addProperty("country", country);
+			}
+			catalog.add(quake);
+		}
+		rows = new int[catalog.size() / 2];
+		ids = new String[rows.length];
+		for(int i = 0; i < rows.length; i++)
+		{
+			rows[i] = catalog.size() - 1 - 2 * i;
+			ids[i] = "us" + rows[i];
+		}
+	}
+
+	@Test
+	public void readsBackWhatWasWritten() throws Exception
+	{
+		File file = new File(folder.getRoot(), "geodata.snapshot");
+		GeoSnapshot.write(file, CHECKSUM, countries, cities, catalog, rows, ids);
+		GeoSnapshot snapshot = GeoSnapshot.load(file, CHECKSUM);
+		assertNotNull(snapshot);
+
+		CountryIndex loaded = snapshot.getCountryIndex();
+		assertNotNull(loaded.getLandMask());
+		assertEquals(countries.getLandMask().getCellsPerDegree(), loaded.getLandMask().getCellsPerDegree());
+		for(Location point : BenchmarkData.randomLocations(50000, 11))
+		{
+			assertEquals(countries.findCountryIndex(point.x, point.y), loaded.findCountryIndex(point.x, point.y));
+		}
+
+		assertEquals(cities.size(), snapshot.getCities().size());
+		for(int i = 0; i < cities.size(); i++)
+		{
+			Marker city = new CityMarker(snapshot.getCities().get(i));
+			assertEquals(cities.get(i).getLocation(), city.getLocation());
+			assertEquals(cities.get(i).getProperties(), city.getProperties());
+		}
+
+		QuakeCatalog quakes = snapshot.getQuakes();
+		assertArrayEquals(ids, snapshot.getQuakeIds());
+		assertEquals(rows.length, quakes.size());
+		for(int i = 0; i < rows.length; i++)
+		{
+			assertEquals(catalog.getLocation(rows[i]), quakes.getLocation(i));
+			assertEquals(catalog.getProperties(rows[i]), quakes.getProperties(i));
+			assertEquals(catalog.isOnLand(rows[i]), quakes.isOnLand(i));
+		}
+	}
+
+	@Test
+	public void snapshotOfOtherSourcesIsNotLoaded() throws Exception
+	{
+		File file = new File(folder.getRoot(), "geodata.snapshot");
+		GeoSnapshot.write(file, CHECKSUM, countries, cities, catalog, rows, ids);
+		assertNull(GeoSnapshot.load(file, CHECKSUM + 1));
+		assertNull(GeoSnapshot.load(new File(folder.getRoot(), "missing.snapshot"), CHECKSUM));
+	}
+
+	@Test
+	public void damagedSnapshotIsNotLoaded() throws Exception
+	{
+		File file = new File(folder.getRoot(), "geodata.snapshot");
+		GeoSnapshot.write(file, CHECKSUM, countries, cities, catalog, rows, ids);
+		RandomAccessFile damaged = new RandomAccessFile(file, "rw");
+		try
+		{
+			damaged.seek(damaged.length() / 2);
+			int value = damaged.read();
+			damaged.seek(damaged.length() / 2);
+			damaged.write(value ^ 0xFF);
+		}
+		finally
+		{
+			damaged.close();
+		}
+		assertNull(GeoSnapshot.load(file, CHECKSUM));
+
+		GeoSnapshot.write(file, CHECKSUM, countries, cities, catalog, rows, ids);
+		RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+		try
+		{
+			truncated.setLength(truncated.length() - 100);
+		}
+		finally
+		{
+			truncated.close();
+		}
+		assertNull(GeoSnapshot.load(file, CHECKSUM));
+	}
+}
@@ -0,0 +1,131 @@
+package catalog;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+import benchmark.BenchmarkData;
+
+/*
+ * QuakeStore queries against a scan over the same quakes in memory, for
+ * the world and for regions, also across the date line, and upserts of
+ * stored quakes.
+ */
+public class QuakeStoreTest {
+
+	private static final long DAY = 24 * 60 * 60 * 1000L;
+	private static final int COUNT = 20000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private QuakeStore store;
+	private List<PointFeature> quakes;
+	private long last;
+
+	@Before
+	public void fillStore() throws Exception
+	{
+		Random random = new Random(17);
+		quakes = new ArrayList<PointFeature>(COUNT);
+		for(int i = 0; i < COUNT; i++)
+		{
+			quakes.add(quake(random, i));
+		}
+		last = (Long)quakes.get(COUNT - 1).getProperty("time");
+		store = new QuakeStore(new File(folder.getRoot(), "quakes.sqlite"));
+		for(int from = 0; from < COUNT; from += 2000)
+		{
+			assertEquals(2000, store.upsert(quakes.subList(from, from + 2000)));
+		}
+	}
+
+	@After
+	public void closeStore()
+	{
+		store.close();
+	}
+
+	@Test
+	public void queriesFindWhatAScanFinds() throws Exception
+	{
+		assertSameAsScan(5, last - 10 * DAY, last, -90, -180, 90, 180);
+		assertSameAsScan(2.5f, last - DAY, last, -90, -180, 90, 180);
+		assertSameAsScan(4, last - 10 * DAY, last, 0, 100, 60, 180);
+		assertSameAsScan(0, last - 10 * DAY, last, 30, 128, 46, 146);
+		assertSameAsScan(0, 0, Long.MAX_VALUE, -20, 170, 10, -170);
+		assertSameAsScan(6, 0, Long.MAX_VALUE, -90, -180, 90, 180);
+	}
+
+	@Test
+	public void storedQuakesAreReplaced() throws Exception
+	{
+		List<PointFeature> again = quakes.subList(COUNT - 2000, COUNT);
+		assertEquals(0, store.upsert(again));
+		assertEquals(COUNT, store.size());
+
+		//the feed moved a quake to the other side of the world and revised it
+		Random random = new Random(18);
+		int revised = COUNT - 1;
+		PointFeature moved = quake(random, revised);
+		moved.setLocation(new Location(-10, -170));
+		moved.putProperty("magnitude", 8.5f);
+		quakes.set(revised, moved);
+		assertEquals(0, store.upsert(Collections.singletonList(moved)));
+		assertEquals(COUNT, store.size());
+		assertSameAsScan(8, 0, Long.MAX_VALUE, -20, 170, 10, -160);
+		assertSameAsScan(0, last, last, -90, -180, 90, 180);
+	}
+
+	private void assertSameAsScan(float minMagnitude, long from, long to, float south, float west, float north, float east)
+			throws Exception
+	{
+		List<String> expected = new ArrayList<String>();
+		for(PointFeature quake : quakes)
+		{
+			float lat = quake.getLocation().getLat();
+			float lon = quake.getLocation().getLon();
+			long time = (Long)quake.getProperty("time");
+			boolean inLon = west <= east ? lon >= west && lon <= east : lon >= west || lon <= east;
+			if((Float)quake.getProperty("magnitude") >= minMagnitude && time >= from && time <= to
+					&& lat >= south && lat <= north && inLon)
+			{
+				expected.add(quake.getId());
+			}
+		}
+		List<String> found = new ArrayList<String>();
+		long previous = Long.MIN_VALUE;
+		for(PointFeature quake : store.query(minMagnitude, from, to, south, west, north, east))
+		{
+			found.add(quake.getId());
+			//oldest first
+			long time = (Long)quake.getProperty("time");
+			assertTrue(time >= previous);
+			previous = time;
+		}
+		assertTrue(!expected.isEmpty());
+		assertEquals(expected, found);
+	}
+
+	//one quake a minute, so the quakes are in time order like the query results
+	private static PointFeature quake(Random random, int i)
+	{
+		PointFeature quake = BenchmarkData.randomQuake(random, i);
+		quake.setId("bq" + i);
+		return quake;
+	}
+}
@@ -0,0 +1,86 @@
+package earthquakeVisualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import benchmark.BenchmarkData;
+import catalog.QuakeCatalog;
+
+/*
+ * The marker list of BatchedMarkerManager against a set of the markers it
+ * should hold, as quakes come and go the way EarthquakeCityMap applies a
+ * generation. Drawing needs a map and is not covered here.
+ */
+public class BatchedMarkerManagerTest {
+
+	@Test
+	public void addingAndRemovingKeepsTheMarkerList()
+	{
+		Random random = new Random(3);
+		QuakeCatalog catalog = new QuakeCatalog();
+		List<Marker> cities = new ArrayList<Marker>();
+		for(Location location : BenchmarkData.randomLocations(200, 4))
+		{
+			cities.add(new CityMarker(location));
+		}
+		List<Marker> quakes = new ArrayList<Marker>();
+		for(int i = 0; i < 2000; i++)
+		{
+			quakes.add(new OceanQuakeMarker(catalog, catalog.add(BenchmarkData.randomQuake(random, i))));
+		}
+
+		BatchedMarkerManager manager = new BatchedMarkerManager();
+		manager.addMarkers(cities);
+		manager.addMarkers(quakes);
+		assertFalse(manager.addMarker(quakes.get(5)));
+
+		List<Marker> expected = new ArrayList<Marker>(cities);
+		expected.addAll(quakes);
+		for(int i = 0; i < 3000; i++)
+		{
+			if(random.nextBoolean() && expected.size() > cities.size())
+			{
+				Marker gone = expected.remove(cities.size() + random.nextInt(expected.size() - cities.size()));
+				assertTrue(manager.removeMarker(gone));
+				assertFalse(manager.removeMarker(gone));
+			}
+			else
+			{
+				Marker quake = new OceanQuakeMarker(catalog, catalog.add(BenchmarkData.randomQuake(random, 2000 + i)));
+				assertTrue(manager.addMarker(quake));
+				expected.add(quake);
+			}
+		}
+		assertEquals(markers(expected), markers(manager.getMarkers()));
+		assertEquals(expected.size(), manager.getMarkers().size());
+
+		manager.setMarkers(cities);
+		assertEquals(markers(cities), markers(manager.getMarkers()));
+		assertTrue(manager.removeMarker(cities.get(0)));
+		//the manager keeps its own list
+		assertEquals(200, cities.size());
+		manager.clearMarkers();
+		assertTrue(manager.getMarkers().isEmpty());
+		assertTrue(manager.addMarker(cities.get(0)));
+	}
+
+	private static Set<Marker> markers(List<Marker> markers)
+	{
+		Set<Marker> set = Collections.newSetFromMap(new IdentityHashMap<Marker, Boolean>());
+		set.addAll(markers);
+		return set;
+	}
+}
@@ -0,0 +1,180 @@
+package earthquakeVisualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import benchmark.BenchmarkData;
+import catalog.QuakeCatalog;
+
+/*
+ * HoverGrid against the loop calling isInside on every marker in list
+ * order, with and without a filter, for points anywhere in the window and
+ * points on markers, including markers just outside the window, and after
+ * markers were added and removed without rebuilding the grid.
+ */
+public class HoverGridTest {
+
+	private static final int WIDTH = 1000;
+	private static final int HEIGHT = 650;
+
+	private List<Marker> markers;
+	private float[] xs;
+	private float[] ys;
+	private HoverGrid grid;
+	private Random random;
+
+	@Before
+	public void buildGrid()
+	{
+		markers = new ArrayList<Marker>();
+		for(Location location : BenchmarkData.randomLocations(3000, 1))
+		{
+			markers.add(new CityMarker(location));
+		}
+		QuakeCatalog catalog = new QuakeCatalog();
+		random = new Random(2);
+		for(int i = 0; i < 3000; i++)
+		{
+			markers.add(new OceanQuakeMarker(catalog, catalog.add(BenchmarkData.randomQuake(random, i))));
+		}
+		//a window with a margin of markers around it that can still be hit from inside
+		xs = new float[markers.size()];
+		ys = new float[markers.size()];
+		for(int i = 0; i < xs.length; i++)
+		{
+			xs[i] = random.nextFloat() * (WIDTH + 40) - 20;
+			ys[i] = random.nextFloat() * (HEIGHT + 40) - 20;
+		}
+		grid = new HoverGrid(markers);
+		grid.build(xs, ys, WIDTH, HEIGHT);
+	}
+
+	@Test
+	public void findsTheFirstMarkerHitLikeTheLoop()
+	{
+		int hits = 0;
+		for(float[] at : points())
+		{
+			int expected = linear(at[0], at[1], null);
+			assertEquals(expected, grid.query(at[0], at[1]));
+			hits += expected < 0 ? 0 : 1;
+		}
+		assertTrue(hits > 1000);
+	}
+
+	@Test
+	public void filteredMarkersDoNotHideTheOnesUnderThem()
+	{
+		HoverGrid.Filter everyOther = new HoverGrid.Filter() {
+			public boolean accepts(CommonMarker marker)
+			{
+				return markers.indexOf(marker) % 2 == 1;
+			}
+		};
+		for(float[] at : points())
+		{
+			assertEquals(linear(at[0], at[1], everyOther), grid.query(at[0], at[1], everyOther));
+		}
+	}
+
+	@Test
+	public void addedAndRemovedMarkersAreFoundLikeInTheLoop()
+	{
+		QuakeCatalog catalog = new QuakeCatalog();
+		List<Marker> current = new ArrayList<Marker>(markers);
+		List<float[]> positions = new ArrayList<float[]>();
+		for(int i = 0; i < xs.length; i++)
+		{
+			positions.add(new float[] { xs[i], ys[i] });
+		}
+		for(int i = 0; i < 500; i++)
+		{
+			//retire a random marker, then add a new quake
+			int gone = random.nextInt(current.size());
+			grid.remove(current.remove(gone));
+			positions.remove(gone);
+			Marker quake = new OceanQuakeMarker(catalog, catalog.add(BenchmarkData.randomQuake(random, 3000 + i)));
+			float[] at = { random.nextFloat() * (WIDTH + 40) - 20, random.nextFloat() * (HEIGHT + 40) - 20 };
+			grid.add(quake, at[0], at[1]);
+			current.add(quake);
+			positions.add(at);
+		}
+		//an added marker retired again
+		grid.remove(current.remove(current.size() - 1));
+		positions.remove(positions.size() - 1);
+		assertEquals(current.size(), grid.size());
+
+		HoverGrid.Filter everyOther = new HoverGrid.Filter() {
+			public boolean accepts(CommonMarker marker)
+			{
+				return marker.hashCode() % 2 == 0;
+			}
+		};
+		int hits = 0;
+		for(float[] at : points())
+		{
+			Marker expected = null;
+			Marker expectedFiltered = null;
+			for(int i = 0; i < current.size(); i++)
+			{
+				CommonMarker marker = (CommonMarker)current.get(i);
+				if(marker.isInside(at[0], at[1], positions.get(i)[0], positions.get(i)[1]))
+				{
+					expected = expected == null ? marker : expected;
+					if(expectedFiltered == null && everyOther.accepts(marker))
+					{
+						expectedFiltered = marker;
+					}
+				}
+			}
+			assertSame(expected, found(grid.query(at[0], at[1])));
+			assertSame(expectedFiltered, found(grid.query(at[0], at[1], everyOther)));
+			hits += expected == null ? 0 : 1;
+		}
+		assertTrue(hits > 1000);
+	}
+
+	private Marker found(int index)
+	{
+		return index < 0 ? null : grid.getMarker(index);
+	}
+
+	//anywhere in the window, and on or next to a marker
+	private List<float[]> points()
+	{
+		List<float[]> points = new ArrayList<float[]>();
+		for(int i = 0; i < 2000; i++)
+		{
+			points.add(new float[] { random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT });
+			int marker = random.nextInt(xs.length);
+			float x = Math.max(0, Math.min(WIDTH - 1, xs[marker] + random.nextFloat() * 16 - 8));
+			float y = Math.max(0, Math.min(HEIGHT - 1, ys[marker] + random.nextFloat() * 16 - 8));
+			points.add(new float[] { x, y });
+		}
+		return points;
+	}
+
+	private int linear(float x, float y, HoverGrid.Filter filter)
+	{
+		for(int i = 0; i < markers.size(); i++)
+		{
+			CommonMarker marker = (CommonMarker)markers.get(i);
+			if(marker.isInside(x, y, xs[i], ys[i]) && (filter == null || filter.accepts(marker)))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,108 @@
+package earthquakeVisualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import benchmark.BenchmarkData;
+import catalog.QuakeCatalog;
+
+/*
+ * ImpactIndex against the threat circle checks of a linear scan, for
+ * clicks on quakes and on cities, before and after a feed update changed
+ * the quakes one at a time.
+ */
+public class ImpactIndexTest {
+
+	private List<Marker> cities;
+	private QuakeCatalog catalog;
+	private List<Marker> quakes;
+	private Random random;
+
+	@Before
+	public void makeMarkers()
+	{
+		cities = new ArrayList<Marker>();
+		for(Location location : BenchmarkData.randomLocations(5000, 1))
+		{
+			cities.add(new CityMarker(location));
+		}
+		catalog = new QuakeCatalog();
+		quakes = new ArrayList<Marker>();
+		random = new Random(2);
+		for(int i = 0; i < 5000; i++)
+		{
+			quakes.add(new LandQuakeMarker(catalog, catalog.add(BenchmarkData.randomQuake(random, i))));
+		}
+	}
+
+	@Test
+	public void answersLikeTheLinearScan()
+	{
+		ImpactIndex index = new ImpactIndex(cities, quakes);
+		assertEquals(quakes.size(), index.getQuakeCount());
+		assertSameAsScan(index);
+	}
+
+	@Test
+	public void updatedIndexAnswersLikeARebuiltOne()
+	{
+		ImpactIndex index = new ImpactIndex(cities, quakes);
+		//the oldest quakes leave, as many new ones arrive
+		for(int i = 0; i < 500; i++)
+		{
+			index.remove((EarthquakeMarker)quakes.get(i));
+			EarthquakeMarker quake = new LandQuakeMarker(catalog, catalog.add(BenchmarkData.randomQuake(random, 5000 + i)));
+			quakes.set(i, quake);
+			index.add(quake);
+		}
+		assertEquals(new ImpactIndex(cities, quakes).getPairCount(), index.getPairCount());
+		assertEquals(quakes.size(), index.getQuakeCount());
+		assertSameAsScan(index);
+	}
+
+	private void assertSameAsScan(ImpactIndex index)
+	{
+		long found = 0;
+		for(int c = 0; c < 300; c++)
+		{
+			EarthquakeMarker quake = (EarthquakeMarker)quakes.get(random.nextInt(quakes.size()));
+			Set<Marker> expected = new HashSet<Marker>();
+			for(Marker city : cities)
+			{
+				if(!(city.getDistanceTo(quake.getLocation()) > quake.threatCircle()))
+				{
+					expected.add(city);
+				}
+			}
+			assertEquals(expected, new HashSet<Marker>(index.citiesAffectedBy(quake)));
+			found += expected.size();
+
+			Marker city = cities.get(random.nextInt(cities.size()));
+			expected.clear();
+			for(Marker m : quakes)
+			{
+				EarthquakeMarker affecting = (EarthquakeMarker)m;
+				if(!(affecting.getDistanceTo(city.getLocation()) > affecting.threatCircle()))
+				{
+					expected.add(affecting);
+				}
+			}
+			assertEquals(expected, new HashSet<Marker>(index.quakesAffecting(city)));
+			found += expected.size();
+		}
+		//the clicks did find something to compare
+		assertTrue(found > 0);
+	}
+}
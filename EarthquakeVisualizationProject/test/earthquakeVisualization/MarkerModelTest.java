@@ -0,0 +1,390 @@
+package earthquakeVisualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.fhpotsdam.unfolding.data.Feature;
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import benchmark.BenchmarkData;
+import catalog.QuakeCatalog;
+
+/*
+ * MarkerModel generations: the changes between them with and without the
+ * links to older generations, compaction of the catalog, and loaders
+ * publishing generations while a render loop switches to them the way
+ * EarthquakeCityMap does.
+ */
+public class MarkerModelTest {
+
+	private static List<Marker> cities;
+
+	@BeforeClass
+	public static void loadCities() throws Exception
+	{
+		cities = new ArrayList<Marker>();
+		for(Feature city : BenchmarkData.loadFeatures(BenchmarkData.CITY_FILE))
+		{
+			cities.add(new CityMarker(city));
+		}
+	}
+
+	@Test
+	public void changesSinceAddsUpTheGenerationsInBetween()
+	{
+		Random random = new Random(1);
+		MarkerModel.Builder first = MarkerModel.builder(cities, new QuakeCatalog());
+		for(int i = 0; i < 10; i++)
+		{
+			first.addQuake(quake(random, i));
+		}
+		MarkerModel g0 = first.build();
+
+		MarkerModel.Builder second = g0.edit();
+		second.removeQuake("q1");
+		second.addQuake(quake(random, 10));
+		MarkerModel g1 = second.build();
+
+		MarkerModel.Builder third = g1.edit();
+		EarthquakeMarker updated = third.addQuake(quake(random, 2));
+		//added and retired again on the way, no change
+		third.removeQuake("q10");
+		EarthquakeMarker added = third.addQuake(quake(random, 11));
+		MarkerModel g2 = third.build();
+
+		assertEquals(2, g2.getGeneration());
+		assertConsistent(g2);
+		assertSame(updated, g2.getQuake("q2"));
+		assertNull(g2.getQuake("q1"));
+		assertNull(g2.getQuake("q10"));
+		assertEquals(10, g2.getQuakes().size());
+
+		MarkerModel.Changes changes = g2.changesSince(g0);
+		assertFalse(changes.isRenumbered());
+		assertEquals(markers(updated, added), markers(changes.getAdded()));
+		assertEquals(markers(g0.getQuake("q1"), g0.getQuake("q2")), markers(changes.getRemoved()));
+		assertTrue(g2.changesSince(g2).isEmpty());
+
+		//without the links the lists are compared, with the same result
+		g2.forgetOlder();
+		MarkerModel.Changes compared = g2.changesSince(g0);
+		assertEquals(markers(changes.getAdded()), markers(compared.getAdded()));
+		assertEquals(markers(changes.getRemoved()), markers(compared.getRemoved()));
+		assertTrue(g2.changesSince(g1).getAdded().contains(added));
+	}
+
+	@Test
+	public void quakesBeforeTheWindowAreRetired()
+	{
+		Random random = new Random(5);
+		MarkerModel.Builder first = MarkerModel.builder(cities, new QuakeCatalog());
+		for(int i = 0; i < 100; i++)
+		{
+			first.addQuake(quake(random, i));
+		}
+		MarkerModel g0 = first.build();
+
+		MarkerModel.Builder next = g0.edit();
+		long start = g0.getCatalog().getTime(g0.getQuake("q40").getRow());
+		assertEquals(40, next.removeQuakesBefore(start));
+		assertEquals(0, next.removeQuakesBefore(start));
+		MarkerModel g1 = next.build();
+
+		assertConsistent(g1);
+		assertEquals(60, g1.getQuakes().size());
+		for(Marker quake : g1.getQuakes())
+		{
+			assertTrue(((EarthquakeMarker)quake).getTime() >= start);
+		}
+		assertEquals(40, g1.changesSince(g0).getRemoved().size());
+		assertTrue(g1.changesSince(g0).getAdded().isEmpty());
+	}
+
+	@Test
+	public void olderGenerationsDoNotChange()
+	{
+		Random random = new Random(2);
+		MarkerModel.Builder first = MarkerModel.builder(cities, new QuakeCatalog());
+		for(int i = 0; i < 100; i++)
+		{
+			first.addQuake(quake(random, i));
+		}
+		MarkerModel g0 = first.build();
+		List<Marker> before = new ArrayList<Marker>(g0.getQuakes());
+		int rows = g0.getCatalog().size();
+
+		MarkerModel.Builder next = g0.edit();
+		for(int i = 0; i < 50; i++)
+		{
+			next.removeQuake("q" + i * 2);
+			next.addQuake(quake(random, 100 + i));
+		}
+		assertConsistent(next.build());
+
+		assertEquals(before, g0.getQuakes());
+		assertEquals(rows, g0.getCatalog().size());
+		assertConsistent(g0);
+	}
+
+	@Test
+	public void builtBuilderCannotBeChanged()
+	{
+		MarkerModel.Builder builder = MarkerModel.builder(cities, new QuakeCatalog());
+		builder.build();
+		try
+		{
+			builder.addQuake(quake(new Random(3), 0));
+			fail();
+		}
+		catch(IllegalStateException e)
+		{
+		}
+	}
+
+	@Test
+	public void deadRowsAreCompactedAway()
+	{
+		Random random = new Random(4);
+		int quakes = 100;
+		MarkerModel.Builder first = MarkerModel.builder(cities, new QuakeCatalog());
+		for(int i = 0; i < quakes; i++)
+		{
+			first.addQuake(quake(random, i));
+		}
+		MarkerModel model = first.build();
+		int compactions = 0;
+		//every generation updates all quakes, leaving a dead row each
+		for(int generation = 0; generation < 100; generation++)
+		{
+			MarkerModel.Builder next = model.edit();
+			for(int i = 0; i < quakes; i++)
+			{
+				next.addQuake(quake(random, i));
+			}
+			MarkerModel latest = next.build();
+			assertConsistent(latest);
+			assertEquals(quakes, latest.getQuakes().size());
+			//at most 4096 dead rows before a build compacts
+			assertTrue(latest.getCatalog().size() <= quakes + 4096 + quakes);
+
+			MarkerModel.Changes changes = latest.changesSince(model);
+			if(changes.isRenumbered())
+			{
+				compactions++;
+				assertEquals(quakes, latest.getCatalog().size());
+				//every quake has a new marker
+				assertEquals(quakes, changes.getAdded().size());
+				assertEquals(quakes, changes.getRemoved().size());
+			}
+			else
+			{
+				assertEquals(quakes, latest.getCatalog().size() - model.getCatalog().size());
+			}
+			model.forgetOlder();
+			model = latest;
+		}
+		assertEquals(2, compactions);
+	}
+
+	/*
+	 * Loaders add, update and retire quakes and publish a generation every
+	 * millisecond or so, while this thread switches to the latest one
+	 * every frame, keeps a MarkerVisibility and an ImpactIndex up to date
+	 * from the changes and checks them against the generation.
+	 */
+	@Test
+	public void renderLoopSeesWholeGenerations() throws Exception
+	{
+		Random random = new Random(5);
+		final AtomicLong nextQuake = new AtomicLong();
+		MarkerModel.Builder first = MarkerModel.builder(cities, new QuakeCatalog());
+		for(int i = 0; i < 2000; i++)
+		{
+			first.addQuake(quake(random, nextQuake.getAndIncrement()));
+		}
+		final AtomicReference<MarkerModel> model = new AtomicReference<MarkerModel>(first.build());
+		final AtomicBoolean running = new AtomicBoolean(true);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final AtomicLong published = new AtomicLong();
+
+		List<Thread> loaders = new ArrayList<Thread>();
+		for(int t = 0; t < 2; t++)
+		{
+			final long seed = t;
+			Thread loader = new Thread("loader-" + t) {
+				public void run()
+				{
+					Random random = new Random(seed);
+					try
+					{
+						while(running.get())
+						{
+							//the retry loop of EarthquakeCityMap.publish
+							MarkerModel current;
+							MarkerModel.Builder next;
+							do
+							{
+								current = model.get();
+								next = current.edit();
+								List<Marker> old = current.getQuakes();
+								for(int i = 0; i < 40; i++)
+								{
+									next.removeQuake(old.get(random.nextInt(old.size())).getId());
+								}
+								for(int i = 0; i < 60; i++)
+								{
+									String id = old.get(random.nextInt(old.size())).getId();
+									if(next.containsQuake(id))
+									{
+										next.addQuake(quake(random, Long.parseLong(id.substring(1))));
+									}
+								}
+								for(int i = 0; i < 40; i++)
+								{
+									next.addQuake(quake(random, nextQuake.getAndIncrement()));
+								}
+							}
+							while(!model.compareAndSet(current, next.build()));
+							published.incrementAndGet();
+							Thread.sleep(1);
+						}
+					}
+					catch(Throwable e)
+					{
+						failure.compareAndSet(null, e);
+					}
+				}
+			};
+			loader.setDaemon(true);
+			loaders.add(loader);
+			loader.start();
+		}
+
+		MarkerModel shown = model.get();
+		MarkerVisibility visibility = new MarkerVisibility(shown.getCities(), shown.getCatalog(), shown.getQuakes());
+		ImpactIndex impacts = new ImpactIndex(shown.getCities(), shown.getQuakes());
+		int seen = 0;
+		int compactions = 0;
+		try
+		{
+			long end = System.currentTimeMillis() + 3000;
+			while(System.currentTimeMillis() < end && failure.get() == null)
+			{
+				MarkerModel latest = model.get();
+				if(latest == shown)
+				{
+					Thread.sleep(1);
+					continue;
+				}
+				assertTrue(latest.getGeneration() > shown.getGeneration());
+				MarkerModel.Changes changes = latest.changesSince(shown);
+				if(changes.isRenumbered())
+				{
+					impacts = new ImpactIndex(latest.getCities(), latest.getQuakes());
+					visibility.reset(latest.getCatalog(), latest.getQuakes());
+					compactions++;
+				}
+				else
+				{
+					for(EarthquakeMarker marker : changes.getRemoved())
+					{
+						impacts.remove(marker);
+						visibility.removeQuake(marker);
+					}
+					visibility.setCatalog(latest.getCatalog());
+					for(EarthquakeMarker marker : changes.getAdded())
+					{
+						impacts.add(marker);
+						visibility.addQuake(marker);
+					}
+				}
+				shown = latest;
+				shown.forgetOlder();
+				seen++;
+
+				assertConsistent(shown);
+				visibility.update();
+				BitSet visible = visibility.getVisibleQuakes();
+				assertEquals(shown.getQuakes().size(), visible.cardinality());
+				assertEquals(shown.getQuakes().size(), impacts.getQuakeCount());
+				for(int row = visible.nextSetBit(0); row >= 0; row = visible.nextSetBit(row + 1))
+				{
+					EarthquakeMarker marker = visibility.getQuake(row);
+					assertSame(marker, shown.getQuake(marker.getId()));
+				}
+			}
+		}
+		finally
+		{
+			running.set(false);
+			for(Thread loader : loaders)
+			{
+				loader.join();
+			}
+		}
+		if(failure.get() != null)
+		{
+			throw new AssertionError("loader failed", failure.get());
+		}
+		assertTrue(published.get() > 0);
+		assertTrue(seen > 0);
+		//more dead rows than the compaction threshold were left on the way
+		assertTrue(compactions > 0);
+	}
+
+	//the list, the id lookup and the catalog of a generation agree
+	private static void assertConsistent(MarkerModel model)
+	{
+		Set<String> ids = new HashSet<String>();
+		for(Marker quake : model.getQuakes())
+		{
+			EarthquakeMarker marker = (EarthquakeMarker)quake;
+			assertTrue(ids.add(marker.getId()));
+			assertSame(marker, model.getQuake(marker.getId()));
+			assertTrue(marker.getRow() < model.getCatalog().size());
+			//the marker reads the row of its own quake, the title carries the id
+			assertTrue(marker.getTitle().endsWith(" of Place " + marker.getId().substring(1)));
+			assertTrue(marker.getMagnitude() >= 2.5f);
+		}
+	}
+
+	//quake i, an update of it gets the same id and title with other values
+	private static PointFeature quake(Random random, long i)
+	{
+		PointFeature quake = BenchmarkData.randomQuake(random, (int)i);
+		quake.setId("q" + i);
+		return quake;
+	}
+
+	private static Set<Marker> markers(Marker... markers)
+	{
+		Set<Marker> set = Collections.newSetFromMap(new IdentityHashMap<Marker, Boolean>());
+		Collections.addAll(set, markers);
+		return set;
+	}
+
+	private static Set<Marker> markers(List<EarthquakeMarker> markers)
+	{
+		return markers(markers.toArray(new Marker[0]));
+	}
+}
@@ -0,0 +1,247 @@
+package earthquakeVisualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.Marker;
+
+import benchmark.BenchmarkData;
+import catalog.QuakeCatalog;
+
+/*
+ * MarkerVisibility and its QuakeFilter against the same filters tested on
+ * every marker through its getters, as the click handlers used to, while
+ * the catalog grows, quakes are retired and markers are selected.
+ */
+public class MarkerVisibilityTest {
+
+	private static final String COUNTRY = "Country 17";
+
+	private Random random;
+	private QuakeCatalog catalog;
+	private List<Marker> quakes;
+	private List<Marker> cities;
+	private MarkerVisibility visibility;
+	private QuakeFilter filter;
+
+	@Before
+	public void makeMarkers()
+	{
+		random = new Random(13);
+		catalog = new QuakeCatalog();
+		quakes = new ArrayList<Marker>();
+		addQuakes(20000);
+		cities = new ArrayList<Marker>();
+		for(Location location : BenchmarkData.randomLocations(100, 14))
+		{
+			cities.add(new CityMarker(location));
+		}
+		visibility = new MarkerVisibility(cities, catalog, quakes);
+		filter = visibility.getFilter();
+	}
+
+	@Test
+	public void filtersShowWhatTheMarkerTestsShow()
+	{
+		assertFalse(filter.isActive());
+		assertVisible();
+		filter.setMagnitudeRange(4, 6);
+		assertVisible();
+		filter.setDepthClass(QuakeFilter.SHALLOW, false);
+		assertVisible();
+		filter.setSurface(true, false);
+		assertVisible();
+		filter.setCountries(new HashSet<String>(Arrays.asList(COUNTRY, "Country 3")));
+		assertVisible();
+		filter.setMagnitudeRange(Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY);
+		assertVisible();
+		filter.clear();
+		assertFalse(filter.isActive());
+		assertEquals(quakes.size(), visibility.getVisibleQuakeCount());
+		assertVisible();
+	}
+
+	@Test
+	public void updateCountsTheMarkersThatChanged()
+	{
+		visibility.update();
+		int hidden = 0;
+		for(Marker quake : quakes)
+		{
+			hidden += ((EarthquakeMarker)quake).getMagnitude() < 5 ? 1 : 0;
+		}
+		filter.setMagnitudeRange(5, Float.POSITIVE_INFINITY);
+		assertEquals(hidden, visibility.update());
+		assertEquals(0, visibility.update());
+	}
+
+	@Test
+	public void readsBeforeTheUpdateKeepTheChangesPending()
+	{
+		visibility.update();
+		filter.setMagnitudeRange(5, Float.POSITIVE_INFINITY);
+		//a hover between the filter key and the next frame
+		for(Marker quake : quakes)
+		{
+			visibility.isVisible(quake);
+		}
+		visibility.getVisibleQuakeCount();
+		assertTrue(visibility.update() > 0);
+		assertEquals(0, visibility.update());
+
+		EarthquakeMarker clicked = (EarthquakeMarker)quakes.get(0);
+		visibility.selectQuake(clicked, Collections.<Marker>emptyList());
+		assertFalse(visibility.isVisible(cities.get(0)));
+		assertTrue(visibility.update() > 0);
+		visibility.clearSelection();
+		assertTrue(visibility.isVisible(cities.get(0)));
+		assertTrue(visibility.update() > 0);
+	}
+
+	@Test
+	public void newRowsAreFilteredAndRetiredQuakesHidden()
+	{
+		filter.setMagnitudeRange(3, Float.POSITIVE_INFINITY);
+		filter.setSurface(false, true);
+		assertVisible();
+
+		//the next generation: a copy of the catalog with more rows
+		catalog = catalog.copy();
+		int first = quakes.size();
+		addQuakes(5000);
+		visibility.setCatalog(catalog);
+		for(int i = first; i < quakes.size(); i++)
+		{
+			visibility.addQuake((EarthquakeMarker)quakes.get(i));
+		}
+		for(int i = 0; i < 1000; i++)
+		{
+			visibility.removeQuake((EarthquakeMarker)quakes.remove(random.nextInt(quakes.size())));
+		}
+		assertVisible();
+	}
+
+	@Test
+	public void selectionShowsTheClickedMarkerAndTheOnesItAffects()
+	{
+		filter.setMagnitudeRange(3, Float.POSITIVE_INFINITY);
+		EarthquakeMarker clicked = null;
+		for(Marker quake : quakes)
+		{
+			if(((EarthquakeMarker)quake).getMagnitude() >= 3)
+			{
+				clicked = (EarthquakeMarker)quake;
+				break;
+			}
+		}
+		List<Marker> affected = cities.subList(0, 5);
+		visibility.selectQuake(clicked, affected);
+		assertTrue(visibility.hasSelection());
+		assertEquals(1, visibility.getVisibleQuakeCount());
+		assertTrue(visibility.isVisible(clicked));
+		for(Marker city : cities)
+		{
+			assertEquals(affected.contains(city), visibility.isVisible(city));
+		}
+
+		//a city click shows the quakes affecting it that pass the filter
+		EarthquakeMarker small = (EarthquakeMarker)quakes.get(0);
+		for(Marker quake : quakes)
+		{
+			if(((EarthquakeMarker)quake).getMagnitude() < 3)
+			{
+				small = (EarthquakeMarker)quake;
+				break;
+			}
+		}
+		visibility.selectCity(cities.get(7), Arrays.asList(clicked, small));
+		assertTrue(visibility.isVisible(cities.get(7)));
+		assertFalse(visibility.isVisible(cities.get(0)));
+		assertTrue(visibility.isVisible(clicked));
+		assertFalse(visibility.isVisible(small));
+
+		visibility.clearSelection();
+		assertFalse(visibility.hasSelection());
+		for(Marker city : cities)
+		{
+			assertTrue(visibility.isVisible(city));
+		}
+		assertVisible();
+	}
+
+	@Test
+	public void resetKeepsTheFilterForARenumberedCatalog()
+	{
+		filter.setMagnitudeRange(4, Float.POSITIVE_INFINITY);
+		filter.setCountries(Collections.singleton(COUNTRY));
+		visibility.selectCity(cities.get(0), Collections.<EarthquakeMarker>emptyList());
+
+		//every other quake copied to a new catalog, with new markers
+		QuakeCatalog compacted = new QuakeCatalog();
+		List<Marker> renumbered = new ArrayList<Marker>();
+		for(int i = 0; i < quakes.size(); i += 2)
+		{
+			renumbered.add(marker(compacted, compacted.add(catalog, ((EarthquakeMarker)quakes.get(i)).getRow())));
+		}
+		catalog = compacted;
+		quakes = renumbered;
+		visibility.reset(catalog, quakes);
+		assertFalse(visibility.hasSelection());
+		assertEquals(4, filter.getMinMagnitude(), 0);
+		assertVisible();
+	}
+
+	//every quake is visible exactly when it passes the filter as a marker
+	private void assertVisible()
+	{
+		int visible = 0;
+		for(Marker marker : quakes)
+		{
+			EarthquakeMarker quake = (EarthquakeMarker)marker;
+			boolean passes = quake.getMagnitude() >= filter.getMinMagnitude()
+					&& quake.getMagnitude() <= filter.getMaxMagnitude()
+					&& filter.isDepthClassShown(depthClass(quake))
+					&& (quake.isOnLand() ? filter.isLandShown() : filter.isOceanShown())
+					&& (filter.getCountries() == null
+							|| quake instanceof LandQuakeMarker && filter.getCountries().contains(((LandQuakeMarker)quake).getCountry()));
+			assertEquals(passes, visibility.isVisible(quake));
+			visible += passes ? 1 : 0;
+		}
+		assertEquals(visible, visibility.getVisibleQuakeCount());
+	}
+
+	private static int depthClass(EarthquakeMarker quake)
+	{
+		if(quake.getDepth() < EarthquakeMarker.THRESHOLD_INTERMEDIATE)
+		{
+			return QuakeFilter.SHALLOW;
+		}
+		return quake.getDepth() < EarthquakeMarker.THRESHOLD_DEEP ? QuakeFilter.INTERMEDIATE : QuakeFilter.DEEP;
+	}
+
+	private void addQuakes(int count)
+	{
+		int first = catalog.size();
+		for(int i = 0; i < count; i++)
+		{
+			quakes.add(marker(catalog, catalog.add(BenchmarkData.randomQuake(random, first + i))));
+		}
+	}
+
+	private static EarthquakeMarker marker(QuakeCatalog catalog, int row)
+	{
+		return catalog.isOnLand(row) ? new LandQuakeMarker(catalog, row) : new OceanQuakeMarker(catalog, row);
+	}
+}
@@ -0,0 +1,117 @@
+package earthquakeVisualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * PersistentList against an ArrayList doing the same changes, across the
+ * sizes where the tree gains and loses levels, and the old versions
+ * against copies taken on the way.
+ */
+public class PersistentListTest {
+
+	@Test
+	public void growsAndShrinksThroughTheLevels()
+	{
+		PersistentList<Integer> list = PersistentList.empty();
+		List<Integer> expected = new ArrayList<Integer>();
+		//past 32, 1024 and 32768 elements, and back
+		for(int i = 0; i < 33000; i++)
+		{
+			list = list.plus(i);
+			expected.add(i);
+		}
+		assertEquals(expected, list);
+		while(!expected.isEmpty())
+		{
+			list = list.minusLast();
+			expected.remove(expected.size() - 1);
+			if(expected.size() % 997 == 0 || expected.size() <= 33)
+			{
+				assertEquals(expected, list);
+			}
+		}
+		assertTrue(list.isEmpty());
+		list = list.plus(7);
+		assertEquals(7, (int)list.get(0));
+	}
+
+	@Test
+	public void matchesAnArrayListUnderRandomChanges()
+	{
+		Random random = new Random(3);
+		PersistentList<Integer> list = PersistentList.empty();
+		List<Integer> expected = new ArrayList<Integer>();
+		List<PersistentList<Integer>> versions = new ArrayList<PersistentList<Integer>>();
+		List<List<Integer>> copies = new ArrayList<List<Integer>>();
+		for(int step = 0; step < 20000; step++)
+		{
+			int op = random.nextInt(10);
+			if(op < 5 || expected.isEmpty())
+			{
+				list = list.plus(step);
+				expected.add(step);
+			}
+			else if(op < 8)
+			{
+				int index = random.nextInt(expected.size());
+				list = list.with(index, -step);
+				expected.set(index, -step);
+			}
+			else
+			{
+				list = list.minusLast();
+				expected.remove(expected.size() - 1);
+			}
+			assertEquals(expected.size(), list.size());
+			if(step % 500 == 0)
+			{
+				versions.add(list);
+				copies.add(new ArrayList<Integer>(expected));
+			}
+		}
+		assertEquals(expected, list);
+		//later changes left the older versions alone
+		for(int i = 0; i < versions.size(); i++)
+		{
+			assertEquals(copies.get(i), versions.get(i));
+		}
+	}
+
+	@Test
+	public void rejectsIndicesOutsideTheList()
+	{
+		PersistentList<String> list = PersistentList.<String>empty().plus("a");
+		try
+		{
+			list.get(1);
+			fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+		}
+		try
+		{
+			list.with(-1, "b");
+			fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+		}
+		try
+		{
+			list.minusLast().minusLast();
+			fail();
+		}
+		catch(IndexOutOfBoundsException e)
+		{
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package earthquakeVisualization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * PersistentMap against a HashMap doing the same changes, with keys whose
+ * hashes collide in whole or in their low bits, and the old versions
+ * against copies taken on the way.
+ */
+public class PersistentMapTest {
+
+	@Test
+	public void matchesAHashMapUnderRandomChanges()
+	{
+		Random random = new Random(5);
+		PersistentMap<Key, Integer> map = PersistentMap.empty();
+		Map<Key, Integer> expected = new HashMap<Key, Integer>();
+		List<PersistentMap<Key, Integer>> versions = new ArrayList<PersistentMap<Key, Integer>>();
+		List<Map<Key, Integer>> copies = new ArrayList<Map<Key, Integer>>();
+		for(int step = 0; step < 50000; step++)
+		{
+			Key key = new Key(random.nextInt(3000));
+			if(random.nextInt(3) < 2)
+			{
+				map = map.plus(key, step);
+				expected.put(key, step);
+			}
+			else
+			{
+				map = map.minus(key);
+				expected.remove(key);
+			}
+			assertEquals(expected.size(), map.size());
+			assertEquals(expected.get(key), map.get(key));
+			if(step % 2000 == 0)
+			{
+				versions.add(map);
+				copies.add(new HashMap<Key, Integer>(expected));
+			}
+		}
+		assertSameEntries(expected, map);
+		for(int i = 0; i < versions.size(); i++)
+		{
+			assertSameEntries(copies.get(i), versions.get(i));
+		}
+	}
+
+	@Test
+	public void emptiesOutAndFillsAgain()
+	{
+		PersistentMap<Key, Integer> map = PersistentMap.empty();
+		for(int i = 0; i < 1000; i++)
+		{
+			map = map.plus(new Key(i), i);
+		}
+		for(int i = 0; i < 1000; i++)
+		{
+			map = map.minus(new Key(i));
+			assertFalse(map.containsKey(new Key(i)));
+		}
+		assertEquals(0, map.size());
+		map = map.plus(new Key(1), 1);
+		assertEquals(1, map.size());
+		assertEquals(1, (int)map.get(new Key(1)));
+	}
+
+	@Test
+	public void missingKeysLeaveTheMapAlone()
+	{
+		PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("a", 1);
+		assertSame(map, map.minus("b"));
+		assertNull(map.get("b"));
+		assertTrue(map.containsKey("a"));
+		//replacing a value does not count as another key
+		assertEquals(1, map.plus("a", 2).size());
+		assertEquals(1, (int)map.get("a"));
+	}
+
+	private static void assertSameEntries(Map<Key, Integer> expected, PersistentMap<Key, Integer> map)
+	{
+		assertEquals(expected.size(), map.size());
+		for(int id = 0; id < 3000; id++)
+		{
+			Key key = new Key(id);
+			assertEquals(expected.get(key), map.get(key));
+			assertEquals(expected.containsKey(key), map.containsKey(key));
+		}
+	}
+
+	//every 16 ids share a hash, and the hashes share their low bits in groups
+	private static class Key
+	{
+		final int id;
+
+		Key(int id)
+		{
+			this.id = id;
+		}
+
+		public int hashCode()
+		{
+			return (id / 16) << 10;
+		}
+
+		public boolean equals(Object other)
+		{
+			return other instanceof Key && ((Key)other).id == id;
+		}
+	}
+}
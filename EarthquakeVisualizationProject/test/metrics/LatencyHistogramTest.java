@@ -0,0 +1,143 @@
+package metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/*
+ * LatencyHistogram percentiles against the exact ones of the same values,
+ * interval snapshots, recording from several threads and start/stop while
+ * metrics are disabled.
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentilesAreWithinTheBucketWidth()
+	{
+		//log-normal durations around a millisecond, like frame times
+		Random random = new Random(3);
+		long[] values = new long[200000];
+		LatencyHistogram histogram = new LatencyHistogram("test.accuracy");
+		long sum = 0;
+		for(int i = 0; i < values.length; i++)
+		{
+			values[i] = (long)(1e6 * Math.exp(random.nextGaussian()));
+			histogram.record(values[i]);
+			sum += values[i];
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		Arrays.sort(values);
+		for(double percent : new double[] { 1, 50, 90, 99, 99.9, 100 })
+		{
+			long exact = values[(int)Math.ceil(percent / 100 * values.length) - 1];
+			long estimate = snapshot.getPercentile(percent);
+			//the highest value of the bucket, which is 1/64 of the value wide
+			assertTrue(percent + ": " + estimate + " for " + exact, estimate >= exact && estimate <= exact + exact / 64);
+		}
+		assertEquals(snapshot.getPercentile(100), snapshot.getMax());
+		assertEquals(values.length, snapshot.getCount());
+		assertEquals((double)sum / values.length, snapshot.getMean(), 1e-6);
+	}
+
+	@Test
+	public void smallValuesAreExact()
+	{
+		LatencyHistogram histogram = new LatencyHistogram("test.small");
+		for(long value = 0; value < 128; value++)
+		{
+			histogram.record(value);
+		}
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(0, snapshot.getPercentile(0));
+		assertEquals(63, snapshot.getPercentile(50));
+		assertEquals(127, snapshot.getMax());
+	}
+
+	@Test
+	public void outOfRangeValuesAreClamped()
+	{
+		LatencyHistogram histogram = new LatencyHistogram("test.range");
+		histogram.record(-5);
+		histogram.record(Long.MAX_VALUE);
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(0, snapshot.getPercentile(50));
+		assertTrue(snapshot.getMax() >= (1L << 39) && snapshot.getMax() < (1L << 40));
+	}
+
+	@Test
+	public void laterSnapshotMinusEarlierIsTheInterval()
+	{
+		LatencyHistogram histogram = new LatencyHistogram("test.interval");
+		for(int i = 0; i < 1000; i++)
+		{
+			histogram.record(1000000);
+		}
+		LatencyHistogram.Snapshot earlier = histogram.snapshot();
+		for(int i = 0; i < 10; i++)
+		{
+			histogram.record(500);
+		}
+		LatencyHistogram.Snapshot interval = histogram.snapshot().minus(earlier);
+		assertEquals(10, interval.getCount());
+		assertEquals(500, interval.getMean(), 0);
+		assertTrue(interval.getMax() >= 500 && interval.getMax() < 510);
+	}
+
+	@Test
+	public void threadsRecordWithoutLosingValues() throws Exception
+	{
+		final LatencyHistogram histogram = new LatencyHistogram("test.threads");
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 4; t++)
+		{
+			final int seed = t;
+			Thread thread = new Thread() {
+				public void run()
+				{
+					Random random = new Random(seed);
+					for(int i = 0; i < 100000; i++)
+					{
+						histogram.record(random.nextInt(1000000));
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for(Thread thread : threads)
+		{
+			thread.join();
+		}
+		assertEquals(400000, histogram.getCount());
+		assertEquals(400000, histogram.snapshot().getCount());
+	}
+
+	@Test
+	public void disabledMetricsRecordNothing()
+	{
+		boolean enabled = Metrics.isEnabled();
+		LatencyHistogram histogram = new LatencyHistogram("test.disabled");
+		try
+		{
+			Metrics.setEnabled(false);
+			long start = histogram.start();
+			assertEquals(0, start);
+			histogram.stop(start);
+			assertEquals(0, histogram.getCount());
+
+			Metrics.setEnabled(true);
+			histogram.stop(histogram.start());
+			assertEquals(1, histogram.getCount());
+		}
+		finally
+		{
+			Metrics.setEnabled(enabled);
+		}
+	}
+}
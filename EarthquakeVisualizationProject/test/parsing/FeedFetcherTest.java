@@ -0,0 +1,118 @@
+package parsing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import benchmark.BenchmarkData;
+
+/*
+ * FeedFetcher against a local FeedStub: first download, 304, changed
+ * feed, server down with a cache and server down without one.
+ */
+public class FeedFetcherTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private FeedStub stub;
+	private byte[] feed;
+
+	@Before
+	public void startStub() throws IOException {
+		stub = new FeedStub();
+		feed = atomFeed(0);
+		stub.setBody(feed);
+	}
+
+	@After
+	public void stopStub() {
+		stub.stop();
+	}
+
+	@Test
+	public void downloadsGzippedIntoTheCache() throws IOException {
+		FeedFetcher fetcher = new FeedFetcher(stub.getUrl(), folder.newFolder());
+		File file = fetcher.fetch();
+		assertEquals(FeedFetcher.Result.DOWNLOADED, fetcher.getLastResult());
+		assertEquals(fetcher.getCacheFile(), file);
+		assertArrayEquals(feed, Files.readAllBytes(file.toPath()));
+		//the feed is text, gzip has to shrink it
+		assertTrue(fetcher.getLastBytes() > 0 && fetcher.getLastBytes() < feed.length / 2);
+		assertNull(stub.getConditions().get(0));
+	}
+
+	@Test
+	public void unchangedFeedCostsA304() throws IOException {
+		FeedFetcher fetcher = new FeedFetcher(stub.getUrl(), folder.newFolder());
+		fetcher.fetch();
+		File file = fetcher.fetch();
+		assertEquals(FeedFetcher.Result.NOT_MODIFIED, fetcher.getLastResult());
+		assertEquals(0, fetcher.getLastBytes());
+		assertEquals("\"v2\"", stub.getConditions().get(1));
+		assertArrayEquals(feed, Files.readAllBytes(file.toPath()));
+	}
+
+	@Test
+	public void changedFeedIsDownloadedAgain() throws IOException {
+		FeedFetcher fetcher = new FeedFetcher(stub.getUrl(), folder.newFolder());
+		fetcher.fetch();
+		byte[] changed = atomFeed(10);
+		stub.setBody(changed);
+		File file = fetcher.fetch();
+		assertEquals(FeedFetcher.Result.DOWNLOADED, fetcher.getLastResult());
+		assertArrayEquals(changed, Files.readAllBytes(file.toPath()));
+	}
+
+	@Test
+	public void serverDownFallsBackToTheCache() throws IOException {
+		File cacheDir = folder.newFolder();
+		new FeedFetcher(stub.getUrl(), cacheDir).fetch();
+		stub.setFailing(true);
+		//a new fetcher, as after a restart
+		FeedFetcher fetcher = new FeedFetcher(stub.getUrl(), cacheDir);
+		File file = fetcher.fetch();
+		assertEquals(FeedFetcher.Result.OFFLINE, fetcher.getLastResult());
+		assertArrayEquals(feed, Files.readAllBytes(file.toPath()));
+	}
+
+	@Test
+	public void serverDownWithoutCacheThrows() throws IOException {
+		stub.setFailing(true);
+		FeedFetcher fetcher = new FeedFetcher(stub.getUrl(), folder.newFolder());
+		try {
+			fetcher.fetch();
+			fail("fetched without a server and a cache");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("503"));
+		}
+		assertFalse(fetcher.getCacheFile().exists());
+	}
+
+	@Test
+	public void localFilesAreReturnedAsTheyAre() throws IOException {
+		File local = folder.newFile("quakes.atom");
+		FeedFetcher fetcher = new FeedFetcher(local.getPath(), folder.newFolder());
+		assertEquals(local, fetcher.fetch());
+		assertEquals(FeedFetcher.Result.LOCAL, fetcher.getLastResult());
+	}
+
+	private byte[] atomFeed(int first) throws IOException {
+		File file = folder.newFile();
+		BenchmarkData.writeAtomFeed(file, first, 200, 1);
+		return Files.readAllBytes(file.toPath());
+	}
+}
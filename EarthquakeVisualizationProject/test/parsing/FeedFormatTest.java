@@ -0,0 +1,113 @@
+package parsing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+import benchmark.BenchmarkData;
+
+/*
+ * The same quakes written as GeoRSS/Atom, GeoJSON and CSV and read with
+ * ParseFeed.openQuakes. GeoJSON has the most precise values; CSV has the
+ * same ones, Atom only has the magnitude to one decimal in the title and
+ * the depth in whole meters.
+ */
+public class FeedFormatTest {
+
+	private static final int ENTRIES = 2000;
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static List<PointFeature> atom;
+	private static List<PointFeature> geoJson;
+	private static List<PointFeature> csv;
+
+	@BeforeClass
+	public static void readFeeds() throws IOException {
+		File atomFile = folder.newFile("quakes.atom");
+		File geoJsonFile = folder.newFile("quakes.geojson");
+		File csvFile = folder.newFile("quakes.csv");
+		BenchmarkData.writeAtomFeed(atomFile, ENTRIES, 7);
+		BenchmarkData.writeGeoJsonFeed(geoJsonFile, ENTRIES, 7);
+		BenchmarkData.writeCsvFeed(csvFile, ENTRIES, 7);
+		atom = read(atomFile);
+		geoJson = read(geoJsonFile);
+		csv = read(csvFile);
+	}
+
+	@Test
+	public void everyFormatHasEveryQuake() {
+		assertEquals(ENTRIES, atom.size());
+		assertEquals(ENTRIES, geoJson.size());
+		assertEquals(ENTRIES, csv.size());
+	}
+
+	@Test
+	public void formatsAgreeOnTheQuakes() {
+		for (int i = 0; i < ENTRIES; i++) {
+			PointFeature exact = geoJson.get(i);
+			PointFeature fromAtom = atom.get(i);
+			PointFeature fromCsv = csv.get(i);
+
+			assertEquals(exact.getLocation(), fromAtom.getLocation());
+			assertEquals(exact.getLocation(), fromCsv.getLocation());
+			assertEquals(exact.getProperty("time"), fromAtom.getProperty("time"));
+			assertEquals(exact.getProperty("time"), fromCsv.getProperty("time"));
+			assertEquals(magnitude(exact), magnitude(fromCsv), 0);
+			assertEquals(depth(exact), depth(fromCsv), 0);
+			//rounded to one decimal in the Atom title, GeoJSON has two
+			assertEquals(magnitude(exact), magnitude(fromAtom), 0.051);
+			//whole meters in Atom, ten meters in GeoJSON
+			assertEquals(depth(exact), depth(fromAtom), 0.0051);
+		}
+	}
+
+	@Test
+	public void idsTellTheQuakesApart() {
+		assertDistinctKeys(atom);
+		assertDistinctKeys(geoJson);
+		assertDistinctKeys(csv);
+	}
+
+	private static void assertDistinctKeys(List<PointFeature> quakes) {
+		Set<String> keys = new HashSet<String>();
+		for (PointFeature quake : quakes) {
+			keys.add(FeedPoller.keyOf(quake));
+		}
+		assertEquals(quakes.size(), keys.size());
+	}
+
+	private static List<PointFeature> read(File feed) throws IOException {
+		List<PointFeature> quakes = new ArrayList<PointFeature>();
+		QuakeSource source = ParseFeed.openQuakes(feed.getPath());
+		try {
+			while (source.hasNext()) {
+				quakes.add(source.next());
+			}
+		} finally {
+			source.close();
+		}
+		return quakes;
+	}
+
+	private static float magnitude(PointFeature quake) {
+		return (Float) quake.getProperty("magnitude");
+	}
+
+	private static float depth(PointFeature quake) {
+		return (Float) quake.getProperty("depth");
+	}
+}
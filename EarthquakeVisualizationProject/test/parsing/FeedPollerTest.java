@@ -0,0 +1,128 @@
+package parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+
+import benchmark.BenchmarkData;
+import catalog.QuakeCatalog;
+
+/*
+ * What FeedPoller reports as added, updated, removed and unchanged, on a
+ * local file and on a FeedStub, and after priming it the way the map does
+ * from a snapshot.
+ */
+public class FeedPollerTest {
+
+	private static final int ENTRIES = 200;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reportsWhatChangedBetweenPolls() throws IOException {
+		File feed = folder.newFile("quakes.atom");
+		BenchmarkData.writeAtomFeed(feed, 0, ENTRIES, 1);
+		FeedPoller poller = new FeedPoller(new FeedFetcher(feed.getPath(), folder.newFolder()), 60);
+
+		FeedPoller.Delta first = poller.poll();
+		assertEquals(ENTRIES, first.getAdded().size());
+		assertTrue(first.getUpdated().isEmpty() && first.getRemoved().isEmpty());
+
+		FeedPoller.Delta unchanged = poller.poll();
+		assertTrue(unchanged.isEmpty());
+		assertEquals(ENTRIES, unchanged.getSkipped());
+
+		//the window slides by 10 entries and every 20th entry still in it gets a later updated time
+		BenchmarkData.writeAtomFeed(feed, 10, ENTRIES, 1);
+		String text = new String(Files.readAllBytes(feed.toPath()), StandardCharsets.UTF_8);
+		Set<String> revised = new HashSet<String>();
+		for (int i = 20; i < ENTRIES; i += 20) {
+			text = text.replaceFirst("(synth" + i + "</id>\n<title>[^\n]*\n<updated>)2021", "$12022");
+			revised.add("urn:earthquake-usgs-gov:us:synth" + i);
+		}
+		Files.write(feed.toPath(), text.getBytes(StandardCharsets.UTF_8));
+		FeedPoller.Delta changed = poller.poll();
+		assertEquals(10, changed.getAdded().size());
+		assertEquals(10, changed.getRemoved().size());
+		assertEquals(revised, ids(changed.getUpdated()));
+		assertEquals(ENTRIES - 10 - revised.size(), changed.getSkipped());
+		assertEquals(3, poller.getPollCount());
+	}
+
+	@Test
+	public void unchangedOrUnreachableServerSkipsTheParse() throws IOException {
+		FeedStub stub = new FeedStub();
+		try {
+			File feed = folder.newFile();
+			BenchmarkData.writeAtomFeed(feed, 0, ENTRIES, 1);
+			stub.setBody(Files.readAllBytes(feed.toPath()));
+			FeedPoller poller = new FeedPoller(new FeedFetcher(stub.getUrl(), folder.newFolder()), 60);
+			assertEquals(ENTRIES, poller.poll().getAdded().size());
+
+			FeedPoller.Delta notModified = poller.poll();
+			assertTrue(notModified.isEmpty());
+			assertEquals(ENTRIES, notModified.getSkipped());
+
+			stub.setFailing(true);
+			FeedPoller.Delta offline = poller.poll();
+			assertTrue(offline.isEmpty());
+			assertEquals(ENTRIES, offline.getSkipped());
+
+			//the state of the last parsed feed was kept
+			stub.setFailing(false);
+			BenchmarkData.writeAtomFeed(feed, 5, ENTRIES, 1);
+			stub.setBody(Files.readAllBytes(feed.toPath()));
+			FeedPoller.Delta changed = poller.poll();
+			assertEquals(5, changed.getAdded().size());
+			assertEquals(5, changed.getRemoved().size());
+			assertEquals(ENTRIES - 5, changed.getSkipped());
+		} finally {
+			stub.stop();
+		}
+	}
+
+	//primed from catalog rows like the map after a snapshot start, the first poll changes nothing
+	@Test
+	public void primedFromTheCatalogReportsNoChanges() throws IOException {
+		File[] feeds = { folder.newFile("quakes.atom"), folder.newFile("quakes.geojson"), folder.newFile("quakes.csv") };
+		BenchmarkData.writeAtomFeed(feeds[0], ENTRIES, 1);
+		BenchmarkData.writeGeoJsonFeed(feeds[1], ENTRIES, 1);
+		BenchmarkData.writeCsvFeed(feeds[2], ENTRIES, 1);
+		for (File feed : feeds) {
+			QuakeCatalog catalog = new QuakeCatalog();
+			Map<String, Long> known = new HashMap<String, Long>();
+			for (PointFeature quake : ParseFeed.parseEarthquakeStream(feed.getPath())) {
+				known.put(FeedPoller.keyOf(quake), catalog.getUpdated(catalog.add(quake)));
+			}
+			FeedPoller poller = new FeedPoller(new FeedFetcher(feed.getPath(), folder.newFolder()), 60);
+			poller.prime(known);
+			FeedPoller.Delta delta = poller.poll();
+			assertTrue(feed.getName() + ": " + delta, delta.isEmpty());
+			assertEquals(ENTRIES, delta.getSkipped());
+		}
+	}
+
+	private static Set<String> ids(List<PointFeature> quakes) {
+		Set<String> ids = new HashSet<String>();
+		for (PointFeature quake : quakes) {
+			ids.add(FeedPoller.keyOf(quake));
+		}
+		return ids;
+	}
+}
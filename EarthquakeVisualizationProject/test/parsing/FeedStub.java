@@ -0,0 +1,89 @@
+package parsing;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Local stand-in for the USGS feed server. Serves one body with an ETag and
+ * Last-Modified for its version, answers If-None-Match with 304, gzips when
+ * asked to, and can be switched to fail with 503.
+ */
+class FeedStub implements HttpHandler {
+
+	private final HttpServer server;
+	private byte[] body = new byte[0];
+	private int version = 1;
+	private boolean failing = false;
+	//the If-None-Match header of every request, null when there was none
+	private final List<String> conditions = new ArrayList<String>();
+
+	FeedStub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/feed.atom", this);
+		server.start();
+	}
+
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/feed.atom";
+	}
+
+	//a new body gets a new version, so cached copies no longer match
+	synchronized void setBody(byte[] body) {
+		this.body = body;
+		version++;
+	}
+
+	synchronized void setFailing(boolean failing) {
+		this.failing = failing;
+	}
+
+	synchronized List<String> getConditions() {
+		return new ArrayList<String>(conditions);
+	}
+
+	void stop() {
+		server.stop(0);
+	}
+
+	public synchronized void handle(HttpExchange exchange) throws IOException {
+		String condition = exchange.getRequestHeaders().getFirst("If-None-Match");
+		conditions.add(condition);
+		if (failing) {
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+			return;
+		}
+		String etag = "\"v" + version + "\"";
+		exchange.getResponseHeaders().set("ETag", etag);
+		exchange.getResponseHeaders().set("Last-Modified", "Wed, 12 May 2021 10:0" + version % 10 + ":00 GMT");
+		if (etag.equals(condition)) {
+			exchange.sendResponseHeaders(304, -1);
+			exchange.close();
+			return;
+		}
+
+		byte[] payload = body;
+		String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (accept != null && accept.contains("gzip")) {
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+			gzip.write(body);
+			gzip.close();
+			payload = compressed.toByteArray();
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		}
+		exchange.sendResponseHeaders(200, payload.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(payload);
+		out.close();
+	}
+}
@@ -0,0 +1,83 @@
+package parsing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+import processing.data.XML;
+
+import benchmark.BenchmarkData;
+
+/*
+ * The streaming reader against the document parser it replaces: the same
+ * GeoRSS/Atom feed has to give the same features with the same properties.
+ * Their timestamps are read like Instant.parse reads them.
+ */
+public class ParseFeedTest {
+
+	private static final int ENTRIES = 2000;
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void streamMatchesTheDocumentParser() throws Exception {
+		File feed = folder.newFile("quakes.atom");
+		BenchmarkData.writeAtomFeed(feed, ENTRIES, 7);
+
+		//the same document PApplet.loadXML builds
+		List<PointFeature> dom = ParseFeed.parseEarthquake(new XML(feed));
+		List<PointFeature> stream = ParseFeed.parseEarthquakeStream(feed.getPath());
+
+		assertEquals(ENTRIES, dom.size());
+		assertEquals(dom.size(), stream.size());
+		for (int i = 0; i < dom.size(); i++) {
+			PointFeature expected = dom.get(i);
+			PointFeature actual = stream.get(i);
+			assertEquals(expected.getId(), actual.getId());
+			assertEquals(expected.getLocation(), actual.getLocation());
+			assertEquals(expected.getProperties(), actual.getProperties());
+		}
+	}
+
+	@Test
+	public void emptyFeedHasNoQuakes() throws IOException {
+		File feed = folder.newFile("empty.atom");
+		BenchmarkData.writeAtomFeed(feed, 0, 7);
+
+		assertEquals(0, ParseFeed.parseEarthquakeStream(feed.getPath()).size());
+	}
+
+	@Test
+	public void timesMatchInstantParse() {
+		String[] times = { "2021-05-12T10:10:10.040Z", "2021-05-12T10:10:10Z", "2020-02-29T23:59:59.999Z",
+				"1970-01-01T00:00:00Z", "2021-12-31T00:00:00.5Z" };
+		for (String time : times) {
+			assertEquals(time, Instant.parse(time).toEpochMilli(), ParseFeed.parseTime(time));
+		}
+	}
+
+	@Test(expected = DateTimeParseException.class)
+	public void impossibleDateIsRejected() {
+		ParseFeed.parseTime("2021-02-31T10:10:10.040Z");
+	}
+
+	@Test
+	public void badSummaryTimeFallsBackToUpdated() {
+		String updated = "2021-03-01T10:10:10.040Z";
+		PointFeature point = new PointFeature(new Location(0, 0));
+		ParseFeed.putTimes(point, updated, "<dl><dt>Time</dt><dd>2021-02-31 10:10:10 UTC</dd></dl>");
+		assertEquals(Instant.parse(updated).toEpochMilli(), point.getProperty("time"));
+		assertEquals(Instant.parse(updated).toEpochMilli(), point.getProperty("updated"));
+	}
+}
@@ -0,0 +1,133 @@
+package report;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import benchmark.BenchmarkData;
+import catalog.QuakeCatalog;
+import earthquakeVisualization.EarthquakeMarker;
+
+/*
+ * QuakeReport against what printQuakes and sortAndPrint worked out with
+ * a scan per country and a full sort, on the same catalog.
+ */
+public class QuakeReportTest {
+
+	private static final int TOP = 6;
+
+	private static QuakeCatalog catalog;
+	private static QuakeReport report;
+
+	@BeforeClass
+	public static void buildReport()
+	{
+		catalog = new QuakeCatalog();
+		Random random = new Random(9);
+		for(int i = 0; i < 20000; i++)
+		{
+			catalog.add(BenchmarkData.randomQuake(random, i));
+		}
+		report = new QuakeReport(TOP);
+		for(int row = 0; row < catalog.size(); row++)
+		{
+			report.add(catalog, row);
+		}
+	}
+
+	@Test
+	public void countsTheQuakesOfEveryCountry()
+	{
+		Map<String, Integer> expected = new HashMap<String, Integer>();
+		int land = 0;
+		for(int row = 0; row < catalog.size(); row++)
+		{
+			if(catalog.isOnLand(row))
+			{
+				String country = catalog.getCountry(row);
+				expected.put(country, expected.containsKey(country) ? expected.get(country) + 1 : 1);
+				land++;
+			}
+		}
+		List<Map.Entry<String, Integer>> counts = report.getCountryCounts();
+		assertEquals(expected.size(), counts.size());
+		for(int i = 0; i < counts.size(); i++)
+		{
+			Map.Entry<String, Integer> entry = counts.get(i);
+			assertEquals(expected.get(entry.getKey()), entry.getValue());
+			//most quakes first
+			assertTrue(i == 0 || counts.get(i - 1).getValue() >= entry.getValue());
+		}
+		assertEquals(catalog.size(), report.getQuakeCount());
+		assertEquals(land, report.getLandCount());
+		assertEquals(catalog.size() - land, report.getOceanCount());
+	}
+
+	@Test
+	public void keepsTheStrongestQuakesLikeAFullSort()
+	{
+		List<Integer> rows = new ArrayList<Integer>();
+		for(int row = 0; row < catalog.size(); row++)
+		{
+			rows.add(row);
+		}
+		//stable, so of equally strong quakes the first stays first
+		Collections.sort(rows, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b)
+			{
+				return Float.compare(catalog.getMagnitude(b), catalog.getMagnitude(a));
+			}
+		});
+		List<QuakeReport.Quake> top = report.getTop();
+		assertEquals(TOP, top.size());
+		for(int i = 0; i < TOP; i++)
+		{
+			int row = rows.get(i);
+			assertEquals(catalog.getTitle(row), top.get(i).getTitle());
+			assertEquals(catalog.getMagnitude(row), top.get(i).getMagnitude(), 0);
+			assertEquals(catalog.getCountry(row), top.get(i).getCountry());
+		}
+	}
+
+	@Test
+	public void countsTheDepthClassesOfTheMarkerColours()
+	{
+		int[] land = new int[3];
+		int[] ocean = new int[3];
+		for(int row = 0; row < catalog.size(); row++)
+		{
+			float depth = catalog.getDepth(row);
+			int depthClass = depth < EarthquakeMarker.THRESHOLD_INTERMEDIATE ? 0 : depth < EarthquakeMarker.THRESHOLD_DEEP ? 1 : 2;
+			(catalog.isOnLand(row) ? land : ocean)[depthClass]++;
+		}
+		assertArrayEquals(land, report.getLandDepthCounts());
+		assertArrayEquals(ocean, report.getOceanDepthCounts());
+		assertArrayEquals(new int[] { land[0] + ocean[0], land[1] + ocean[1], land[2] + ocean[2] }, report.getDepthCounts());
+	}
+
+	@Test
+	public void writesEveryCsvTable() throws Exception
+	{
+		StringWriter csv = new StringWriter();
+		report.writeCsv(csv);
+		String[] tables = csv.toString().split("\n\n");
+		assertEquals(4, tables.length);
+		assertEquals("quakes,land,ocean\n" + catalog.size() + "," + report.getLandCount() + "," + report.getOceanCount(),
+				tables[0].trim());
+		//header and one line per country
+		assertEquals(report.getCountryCounts().size() + 1, tables[2].split("\n").length);
+		assertEquals(TOP + 1, tables[3].trim().split("\n").length);
+	}
+}
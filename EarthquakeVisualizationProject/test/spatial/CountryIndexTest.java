@@ -0,0 +1,141 @@
+package spatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import de.fhpotsdam.unfolding.marker.AbstractShapeMarker;
+import de.fhpotsdam.unfolding.marker.Marker;
+import de.fhpotsdam.unfolding.marker.MultiMarker;
+
+import benchmark.BenchmarkData;
+
+/*
+ * CountryIndex against the linear scan over the country markers it
+ * replaces, for points spread over the map and points near borders.
+ */
+public class CountryIndexTest {
+
+	private static List<Marker> countries;
+	private static CountryIndex index;
+
+	@BeforeClass
+	public static void loadCountries() throws Exception
+	{
+		countries = BenchmarkData.loadCountryMarkers();
+		index = new CountryIndex(countries);
+	}
+
+	@Test
+	public void exactIndexAnswersLikeTheLinearScan()
+	{
+		assertSameAsScan(BenchmarkData.randomLocations(20000, 42));
+	}
+
+	@Test
+	public void exactIndexAnswersLikeTheLinearScanNearBorders()
+	{
+		assertSameAsScan(BenchmarkData.nearBorders(index, 20000, 43));
+	}
+
+	@Test
+	public void simplifiedIndexOnlyDiffersNearBorders()
+	{
+		float tolerance = 0.05f;
+		CountryIndex simplified = new CountryIndex(countries, tolerance);
+		assertTrue(simplified.getVertexCount() < index.getVertexCount());
+		int land = 0;
+		for(Location location : BenchmarkData.randomLocations(20000, 44))
+		{
+			String expected = index.findCountry(location);
+			if(expected != null)
+			{
+				land++;
+			}
+			//a point further than the tolerance from every border keeps its answer
+			if(!nearBorder(location.x, location.y, tolerance))
+			{
+				assertEquals(expected, simplified.findCountry(location));
+			}
+		}
+		assertTrue(land > 0);
+	}
+
+	@Test
+	public void firstCountryInTheListWinsWhereTheyOverlap()
+	{
+		String[] names = { "A", "B" };
+		float[][] lats = { { 0, 0, 10, 10 }, { 5, 5, 15, 15 } };
+		float[][] lons = { { 0, 10, 10, 0 }, { 5, 15, 15, 5 } };
+		CountryIndex overlapping = new CountryIndex(names, lats, lons, new int[] { 0, 1 });
+		assertEquals("A", overlapping.findCountry(7, 7));
+		assertEquals("A", overlapping.findCountry(2, 2));
+		assertEquals("B", overlapping.findCountry(12, 12));
+		assertNull(overlapping.findCountry(20, 20));
+		assertEquals(-1, overlapping.findCountryIndex(-5, 3));
+	}
+
+	private static void assertSameAsScan(List<Location> locations)
+	{
+		for(Location location : locations)
+		{
+			assertEquals(location.toString(), findCountryLinear(location), index.findCountry(location));
+		}
+	}
+
+	//within distance of a vertex or an edge of any part, in degrees
+	private static boolean nearBorder(float lat, float lon, float distance)
+	{
+		for(int part = 0; part < index.getPartCount(); part++)
+		{
+			float[] lats = index.getPartLats(part);
+			float[] lons = index.getPartLons(part);
+			for(int i = 0, j = lats.length - 1; i < lats.length; j = i++)
+			{
+				if(segmentDistance(lat, lon, lats[j], lons[j], lats[i], lons[i]) <= distance)
+				{
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static double segmentDistance(float x, float y, float x1, float y1, float x2, float y2)
+	{
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double length = dx * dx + dy * dy;
+		double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / length));
+		return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+	}
+
+	//the isLand/isInCountry loop the index replaced
+	private static String findCountryLinear(Location location)
+	{
+		for(Marker country : countries)
+		{
+			if(country.getClass() == MultiMarker.class)
+			{
+				for(Marker marker : ((MultiMarker)country).getMarkers())
+				{
+					if(((AbstractShapeMarker)marker).isInsideByLocation(location))
+					{
+						return country.getStringProperty("name");
+					}
+				}
+			}
+			else if(((AbstractShapeMarker)country).isInsideByLocation(location))
+			{
+				return country.getStringProperty("name");
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,86 @@
+package spatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.fhpotsdam.unfolding.geo.Location;
+
+import benchmark.BenchmarkData;
+
+/*
+ * CountryIndex lookups with a LandMask of several resolutions against the
+ * same index without one, for points spread over the map and points near
+ * borders, where the mask has to fall back to the exact test.
+ */
+public class LandMaskTest {
+
+	private static CountryIndex index;
+	private static List<Location> points;
+	private static int[] expected;
+
+	@BeforeClass
+	public static void lookUpWithoutMask() throws Exception
+	{
+		index = new CountryIndex(BenchmarkData.loadCountryMarkers());
+		points = new ArrayList<Location>(BenchmarkData.randomLocations(50000, 42));
+		points.addAll(BenchmarkData.nearBorders(index, 20000, 43));
+		expected = lookup(index);
+	}
+
+	@Test
+	public void maskedLookupsAnswerLikeTheIndex()
+	{
+		try
+		{
+			for(int cellsPerDegree : new int[] { 1, 4, 20 })
+			{
+				LandMask mask = LandMask.build(index, cellsPerDegree);
+				assertTrue(mask.getBorderShare() > 0 && mask.getBorderShare() < 1);
+				index.setLandMask(mask);
+				int[] found = lookup(index);
+				for(int i = 0; i < found.length; i++)
+				{
+					assertEquals(points.get(i).toString(), expected[i], found[i]);
+				}
+			}
+		}
+		finally
+		{
+			index.setLandMask(null);
+		}
+	}
+
+	@Test
+	public void cellsOffTheBordersAreAnsweredByTheMask()
+	{
+		LandMask mask = LandMask.build(index, 4);
+		int answered = 0;
+		for(int i = 0; i < expected.length; i++)
+		{
+			int cell = mask.lookup(points.get(i).x, points.get(i).y);
+			if(cell != LandMask.BORDER)
+			{
+				//a cell without a border is all ocean or all one country
+				assertEquals(expected[i], cell == LandMask.OCEAN ? -1 : cell);
+				answered++;
+			}
+		}
+		assertTrue(answered > expected.length / 2);
+	}
+
+	private static int[] lookup(CountryIndex index)
+	{
+		int[] countries = new int[points.size()];
+		for(int i = 0; i < countries.length; i++)
+		{
+			countries[i] = index.findCountryIndex(points.get(i).x, points.get(i).y);
+		}
+		return countries;
+	}
+}
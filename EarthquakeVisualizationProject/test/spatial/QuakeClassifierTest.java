@@ -0,0 +1,91 @@
+package spatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.fhpotsdam.unfolding.data.PointFeature;
+import de.fhpotsdam.unfolding.geo.Location;
+
+import benchmark.BenchmarkData;
+
+/*
+ * QuakeClassifier on pools of several sizes against a sequential loop
+ * over the CountryIndex.
+ */
+public class QuakeClassifierTest {
+
+	private static CountryIndex index;
+	private static List<Location> locations;
+	private static String[] expected;
+
+	@BeforeClass
+	public static void classifySequentially() throws Exception
+	{
+		index = new CountryIndex(BenchmarkData.loadCountryMarkers());
+		locations = BenchmarkData.randomLocations(20000, 21);
+		expected = new String[locations.size()];
+		for(int i = 0; i < expected.length; i++)
+		{
+			expected[i] = index.findCountry(locations.get(i));
+		}
+	}
+
+	@Test
+	public void parallelResultIsTheSequentialOne()
+	{
+		for(int threads : new int[] { 1, 2, 4, 8 })
+		{
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try
+			{
+				List<PointFeature> quakes = features(locations);
+				new QuakeClassifier(index, pool).classify(quakes);
+				assertClassified(quakes);
+			}
+			finally
+			{
+				pool.shutdown();
+			}
+		}
+	}
+
+	@Test
+	public void smallListsAreClassifiedToo()
+	{
+		List<PointFeature> quakes = features(locations.subList(0, 100));
+		new QuakeClassifier(index).classify(quakes);
+		assertClassified(quakes);
+	}
+
+	private static void assertClassified(List<PointFeature> quakes)
+	{
+		int land = 0;
+		for(int i = 0; i < quakes.size(); i++)
+		{
+			//ocean quakes are left without the property
+			assertEquals(expected[i], quakes.get(i).getProperty("country"));
+			assertEquals(5.0f, quakes.get(i).getProperty("magnitude"));
+			land += expected[i] == null ? 0 : 1;
+		}
+		assertTrue(land > 0 && land < quakes.size());
+	}
+
+	private static List<PointFeature> features(List<Location> locations)
+	{
+		List<PointFeature> quakes = new ArrayList<PointFeature>(locations.size());
+		for(Location location : locations)
+		{
+			PointFeature quake = new PointFeature(location);
+			quake.putProperty("magnitude", 5.0f);
+			quakes.add(quake);
+		}
+		return quakes;
+	}
+}
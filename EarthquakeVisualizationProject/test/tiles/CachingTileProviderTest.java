@@ -0,0 +1,232 @@
+package tiles;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import de.fhpotsdam.unfolding.core.Coordinate;
+import de.fhpotsdam.unfolding.providers.Microsoft;
+import processing.core.PImage;
+
+/*
+ * CachingTileProvider and MBTilesStore against a local stand-in of the
+ * tile server, which counts the tiles it serves: memory hits, the LRU
+ * limit, a restart on the same file, going offline and prefetching.
+ */
+public class CachingTileProviderTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] tile;
+
+	private HttpServer server;
+	private final AtomicInteger served = new AtomicInteger();
+	private Microsoft.MicrosoftProvider tiles;
+	private File file;
+
+	@Before
+	public void startServer() throws IOException
+	{
+		if(tile == null)
+		{
+			BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+			for(int y = 0; y < 256; y++)
+			{
+				for(int x = 0; x < 256; x++)
+				{
+					image.setRGB(x, y, x << 16 | y);
+				}
+			}
+			ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+			ImageIO.write(image, "png", encoded);
+			tile = encoded.toByteArray();
+		}
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException
+			{
+				served.incrementAndGet();
+				exchange.getResponseHeaders().set("Content-Type", "image/png");
+				exchange.sendResponseHeaders(200, tile.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(tile);
+				out.close();
+			}
+		});
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+		final String base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		tiles = new Microsoft.MicrosoftProvider() {
+			public String[] getTileUrls(Coordinate coordinate)
+			{
+				return new String[] { base + (int)coordinate.zoom + "/" + (int)coordinate.column + "/" + (int)coordinate.row + ".png" };
+			}
+		};
+		file = new File(folder.getRoot(), "tiles.mbtiles");
+	}
+
+	@After
+	public void stopServer()
+	{
+		server.stop(0);
+	}
+
+	@Test
+	public void secondRequestIsAMemoryHit() throws Exception
+	{
+		CachingTileProvider provider = provider(64L << 20, false);
+		PImage first = provider.getTile(new Coordinate(3, 2, 4));
+		PImage second = provider.getTile(new Coordinate(3, 2, 4));
+		provider.close();
+
+		assertNotNull(first);
+		assertEquals(256, first.width);
+		assertArrayEquals(first.pixels, second.pixels);
+		assertEquals(1, served.get());
+		assertEquals(1, provider.getDownloads());
+		assertEquals(1, provider.getMemoryHits());
+		assertEquals(0.5, provider.getHitRate(), 0);
+	}
+
+	@Test
+	public void tilesOverTheMemoryLimitComeFromDisk() throws Exception
+	{
+		//room for one tile
+		CachingTileProvider provider = provider(tile.length, false);
+		provider.getTile(new Coordinate(3, 2, 4));
+		provider.getTile(new Coordinate(3, 3, 4));
+		PImage evicted = provider.getTile(new Coordinate(3, 2, 4));
+		provider.close();
+
+		assertNotNull(evicted);
+		assertEquals(2, served.get());
+		assertEquals(0, provider.getMemoryHits());
+		assertEquals(1, provider.getDiskHits());
+	}
+
+	@Test
+	public void restartLoadsTheSessionFromDisk() throws Exception
+	{
+		CachingTileProvider provider = provider(64L << 20, false);
+		loadView(provider);
+		provider.close();
+		assertEquals(12, served.get());
+
+		CachingTileProvider restarted = provider(64L << 20, false);
+		loadView(restarted);
+		restarted.close();
+		assertEquals(12, served.get());
+		assertEquals(12, restarted.getDiskHits());
+		assertEquals(1.0, restarted.getHitRate(), 0);
+	}
+
+	@Test
+	public void offlineShowsTheCachedTilesOnly() throws Exception
+	{
+		CachingTileProvider provider = provider(64L << 20, false);
+		loadView(provider);
+		provider.close();
+		server.stop(0);
+
+		CachingTileProvider offline = provider(64L << 20, false);
+		assertEquals(12, loadView(offline));
+		assertNull(offline.getTile(new Coordinate(9, 9, 4)));
+		offline.close();
+		assertEquals(12, offline.getDiskHits());
+		assertEquals(1, offline.getFailures());
+		assertEquals(0, offline.getDownloads());
+	}
+
+	@Test
+	public void prefetchedNeighboursAreNotDownloadedAgain() throws Exception
+	{
+		CachingTileProvider provider = provider(64L << 20, true);
+		provider.getTile(new Coordinate(4, 4, 4));
+		long deadline = System.currentTimeMillis() + 10000;
+		while(provider.getPrefetchBacklog() > 0 && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+		}
+		assertEquals(0, provider.getPrefetchBacklog());
+		//the eight neighbours and the four tiles of zoom 5 under the tile
+		assertEquals(12, provider.getPrefetched());
+		int before = served.get();
+
+		provider.setPrefetchEnabled(false);
+		assertNotNull(provider.getTile(new Coordinate(4, 5, 4)));
+		assertNotNull(provider.getTile(new Coordinate(9, 8, 5)));
+		provider.close();
+		assertEquals(before, served.get());
+		assertEquals(1, provider.getDownloads());
+		assertEquals(2, provider.getMemoryHits());
+	}
+
+	@Test
+	public void storeKeepsTilesByCoordinate() throws Exception
+	{
+		MBTilesStore store = new MBTilesStore(file, "test", "png");
+		assertFalse(store.contains(4, 2, 3));
+		store.put(4, 2, 3, tile);
+		store.put(4, 3, 3, new byte[] { 1, 2, 3 });
+		store.put(4, 3, 3, new byte[] { 4 });
+		assertTrue(store.contains(4, 2, 3));
+		assertArrayEquals(tile, store.get(4, 2, 3));
+		assertArrayEquals(new byte[] { 4 }, store.get(4, 3, 3));
+		assertNull(store.get(5, 2, 3));
+		assertEquals(2, store.size());
+		store.close();
+
+		MBTilesStore reopened = new MBTilesStore(file, "test", "png");
+		assertArrayEquals(tile, reopened.get(4, 2, 3));
+		reopened.close();
+	}
+
+	private CachingTileProvider provider(long memoryLimit, boolean prefetch) throws Exception
+	{
+		CachingTileProvider provider = new CachingTileProvider(tiles, new MBTilesStore(file, "test", "png"), memoryLimit);
+		provider.setPrefetchEnabled(prefetch);
+		return provider;
+	}
+
+	//the 4 by 3 tiles of the map window at zoom 4, returns how many loaded
+	private static int loadView(CachingTileProvider provider)
+	{
+		int loaded = 0;
+		for(int row = 4; row < 7; row++)
+		{
+			for(int column = 3; column < 7; column++)
+			{
+				if(provider.getTile(new Coordinate(row, column, 4)) != null)
+				{
+					loaded++;
+				}
+			}
+		}
+		return loaded;
+	}
+}